@@ -179,9 +179,24 @@ public class ClientCommander {
             case Messages.SERVER_addPWM:
                 controller.updateProgress("PWM computation started", false);
                 break;
+            case Messages.SERVER_addSequenceFeatures:
+                controller.updateProgress("Sequence feature computation started", false);
+                break;
+            case Messages.SERVER_addKmerSpectrum:
+                controller.updateProgress("k-mer spectrum computation started", false);
+                break;
+            case Messages.SERVER_saveSession:
+                controller.updateProgress("Session save started", false);
+                break;
+            case Messages.SERVER_restoreSession:
+                controller.updateProgress("Session restore started", false);
+                break;
             case Messages.SERVER_credentials:
                 controller.updateProgress("Connected and ready", true);
                 break;
+            case Messages.SERVER_cancelJob:
+                controller.updateProgress("Cancelling job", false);
+                break;
             default:
                 controller.updateProgress(command, true);
         }
@@ -26,8 +26,14 @@ import com.google.gson.reflect.TypeToken;
 import biovis.hackebeil.client.gui.dialog.ConnectionManagerController;
 import biovis.hackebeil.client.gui.RootLayoutController;
 import biovis.hackebeil.client.gui.StatusBarController;
-import biovis.hackebeil.common.data.BreakSegment;
+import biovis.hackebeil.client.data.DoubleColumn;
+import biovis.hackebeil.common.data.BreakSegmentPage;
+import biovis.hackebeil.common.data.CodeCountMatrices;
+import biovis.hackebeil.common.data.CodePairRelation;
+import biovis.hackebeil.common.data.ColumnCodec;
 import biovis.hackebeil.common.data.DataFile;
+import biovis.hackebeil.common.data.JobStatus;
+import biovis.hackebeil.common.data.KmerSpectrumTotals;
 import biovis.hackebeil.common.data.Messages;
 import biovis.hackebeil.server.worker.segmentation.SegmentationWorker;
 import biovislib.remoteControl.CommandDispatcherInterface;
@@ -46,6 +52,9 @@ public class ClientDispatcher implements CommandDispatcherInterface {
     private RootLayoutController rootLayoutController;
     private StatusBarController statusBarController;
 
+    // collects binary result chunks (feature values)
+    private final ColumnCodec.Decoder columnDecoder = new ColumnCodec.Decoder();
+
     /**
      *
      * @param rootController
@@ -70,6 +79,10 @@ public class ClientDispatcher implements CommandDispatcherInterface {
         }
 
         String scommand = (String) command[0];
+        if (command[1] instanceof byte[]) {
+            dispatchColumns(scommand, (byte[]) command[1]);
+            return;
+        }
         String data = (String) command[1];
 
         switch (scommand) {
@@ -79,6 +92,9 @@ public class ClientDispatcher implements CommandDispatcherInterface {
             case Messages.CLIENT_BUSY:
                 dispatchBusy();
                 break;
+            case Messages.CLIENT_JobStatus:
+                dispatchJobStatus(data);
+                break;
             case Messages.CLIENT_DONE:
                 dispatchStateDone();
                 break;
@@ -94,6 +110,9 @@ public class ClientDispatcher implements CommandDispatcherInterface {
             case Messages.CLIENT_SegmentationBreakSegments:
                 dispatchSegmentationBreakSegments(data);
                 break;
+            case Messages.CLIENT_SegmentationBreakSegmentPage:
+                dispatchSegmentationBreakSegmentPage(data);
+                break;
             case Messages.CLIENT_SegmentationSegmentPairs:
                 dispatchSegmentationSegmentPairs(data);
                 break;
@@ -133,6 +152,15 @@ public class ClientDispatcher implements CommandDispatcherInterface {
             case Messages.CLIENT_FateOfCode:
                 dispatchFateOfCodeResult(data);
                 break;
+            case Messages.CLIENT_SequenceComposition:
+                this.updateLastServerEvent(data);
+                break;
+            case Messages.CLIENT_KmerSpectrum:
+                dispatchKmerSpectrum(data);
+                break;
+            case Messages.CLIENT_Session:
+                this.updateLastServerEvent(data);
+                break;
             case Messages.QUIT:
                 dispatchQuit(data);
                 break;
@@ -179,22 +207,33 @@ public class ClientDispatcher implements CommandDispatcherInterface {
      */
     private void dispatchSegmentationBreakSegments(String results) {
         Gson gson = new GsonBuilder().create();
-        List<BreakSegment> breakSegmentData = gson.fromJson(results,
-                                                            new TypeToken<List<BreakSegment>>() {
-                                                            }.getType());
+        CodeCountMatrices breakSegmentData = gson.fromJson(results, CodeCountMatrices.class);
         rootLayoutController.setBreakSegmentData(breakSegmentData);
 
         this.updateLastServerEvent("segmentationBreakSegments: done");
     }
 
+    /**
+     * Break segments requested with SERVER_getBreakSegments.
+     *
+     * @param results
+     */
+    private void dispatchSegmentationBreakSegmentPage(String results) {
+        Gson gson = new GsonBuilder().create();
+        BreakSegmentPage page = gson.fromJson(results, BreakSegmentPage.class);
+        rootLayoutController.setBreakSegmentPage(page);
+
+        this.updateLastServerEvent("segmentationBreakSegments: "
+                                   + page.getOffset() + "-" + (page.getOffset() + page.getBreakSegments().size())
+                                   + " of " + page.getTotal());
+    }
+
     /**
      * @param results
      */
     private void dispatchSegmentationSegmentPairs(String results) {
         Gson gson = new GsonBuilder().create();
-        Map<String, Integer> segmentPairs = gson.fromJson(results,
-                                                          new TypeToken<Map<String, Integer>>() {
-                                                          }.getType());
+        CodeCountMatrices segmentPairs = gson.fromJson(results, CodeCountMatrices.class);
         rootLayoutController.setSegmentPairsData(segmentPairs);
 
         this.updateLastServerEvent("segmentationSegmentPairs: done");
@@ -205,9 +244,7 @@ public class ClientDispatcher implements CommandDispatcherInterface {
      */
     private void dispatchSegmentationSegmentShortSegmentPairs(String results) {
         Gson gson = new GsonBuilder().create();
-        Map<String, Integer> segmentPairs = gson.fromJson(results,
-                                                          new TypeToken<Map<String, Integer>>() {
-                                                          }.getType());
+        CodeCountMatrices segmentPairs = gson.fromJson(results, CodeCountMatrices.class);
         rootLayoutController.setSegmentShortSegmentPairsData(segmentPairs);
 
         this.updateLastServerEvent("segmentationSegmentShortSegmentPairs: done");
@@ -218,9 +255,7 @@ public class ClientDispatcher implements CommandDispatcherInterface {
      */
     private void dispatchSegmentationShortSegmentSegmentPairs(String results) {
         Gson gson = new GsonBuilder().create();
-        Map<String, Integer> segmentPairs = gson.fromJson(results,
-                                                          new TypeToken<Map<String, Integer>>() {
-                                                          }.getType());
+        CodeCountMatrices segmentPairs = gson.fromJson(results, CodeCountMatrices.class);
         rootLayoutController.setShortSegmentSegmentPairsData(segmentPairs);
 
         this.updateLastServerEvent("segmentationShortSegmentSegmentPairs: done");
@@ -231,9 +266,7 @@ public class ClientDispatcher implements CommandDispatcherInterface {
      */
     private void dispatchSegmentationSegmentPairOccurrence(String results) {
         Gson gson = new GsonBuilder().create();
-        Map<String, Double> segmentPairOccurrence = gson.fromJson(results,
-                                                                new TypeToken<Map<String, Double>>() {
-                                                                }.getType());
+        CodePairRelation segmentPairOccurrence = gson.fromJson(results, CodePairRelation.class);
         rootLayoutController.setSegmentPairOccurrenceData(segmentPairOccurrence);
 
         this.updateLastServerEvent("segmentationSegmentPairOccurrence: done");
@@ -276,6 +309,37 @@ public class ClientDispatcher implements CommandDispatcherInterface {
         this.updateLastServerEvent("SegmentationLengthWorker: " + df.getDataSetName() + " done");
     }
 
+    /**
+     * Collect binary column chunks, dispatch complete results.
+     *
+     * @param scommand client message
+     * @param chunk column chunk
+     */
+    private void dispatchColumns(String scommand, byte[] chunk) {
+        Map<String, double[]> columns = columnDecoder.add(chunk);
+        if (columns == null) {
+            return;
+        }
+        Map<String, List<Double>> values = DoubleColumn.wrap(columns);
+        switch (scommand) {
+            case Messages.CLIENT_AdditionalData:
+                rootLayoutController.updateAdditionalDataTabs(values);
+                this.updateLastServerEvent("AdditionalWorker: done", true);
+                break;
+            case Messages.CLIENT_Motifs:
+                rootLayoutController.updateMotifDataTabs(values);
+                this.updateLastServerEvent("MotifWorker: done", true);
+                break;
+            case Messages.CLIENT_PWM:
+                rootLayoutController.updatePWMDataTabs(values);
+                this.updateLastServerEvent("PWMWorker: done", true);
+                break;
+            default:
+                this.updateLastServerEvent("Unknown command received: " + scommand);
+                break;
+        }
+    }
+
     /**
      * @param results
      */
@@ -289,6 +353,17 @@ public class ClientDispatcher implements CommandDispatcherInterface {
         this.updateLastServerEvent("MotifWorker: done", true);
     }
 
+    /**
+     * @param results
+     */
+    private void dispatchKmerSpectrum(String results) {
+        Gson gson = new Gson();
+        KmerSpectrumTotals spectrum = gson.fromJson(results, KmerSpectrumTotals.class);
+        rootLayoutController.setKmerSpectrum(spectrum);
+
+        this.updateLastServerEvent("KmerSpectrumWorker: done", true);
+    }
+
     /**
      * @param results
      */
@@ -375,6 +450,18 @@ public class ClientDispatcher implements CommandDispatcherInterface {
         this.updateLastServerEvent("State was exported");
     }
 
+    /**
+     * Show state of a server job.
+     *
+     * @param results job status (JSON)
+     */
+    private void dispatchJobStatus(String results) {
+        Gson gson = new GsonBuilder().create();
+        JobStatus status = gson.fromJson(results, JobStatus.class);
+        statusBarController.updateJob(status);
+        this.updateLastServerEvent(status.toString(), status.isFinished());
+    }
+
     /**
      *
      */
@@ -11,6 +11,7 @@ import biovis.hackebeil.client.gui.progress.ProgressAddPWMController;
 import biovis.hackebeil.client.gui.progress.ProgressOverviewController;
 import biovis.hackebeil.client.gui.progress.ProgressReferenceGenomeController;
 import biovis.hackebeil.client.gui.progress.ProgressSegmentationController;
+import biovis.hackebeil.common.data.AnalysisScope;
 import biovis.hackebeil.common.data.DataFile;
 import biovis.hackebeil.common.data.Motif;
 import biovis.hackebeil.common.data.PositionWeightMatrix;
@@ -72,6 +73,9 @@ public class ClientConfiguration {
     // Minimal Segment Length
     private int minSegmentLength = MIN_SEGMENT_LENGTH;
 
+    // Analysis scope of the segmentation (null: whole genome)
+    private AnalysisScope analysisScope = null;
+
     /*
      * Preferences
      */
@@ -120,6 +124,7 @@ public class ClientConfiguration {
         }
 
         this.minSegmentLength = newConfiguration.minSegmentLength;
+        this.analysisScope = newConfiguration.analysisScope;
     }
 
     /**
@@ -149,6 +154,7 @@ public class ClientConfiguration {
         this.pwmList.clear();
 
         this.minSegmentLength = MIN_SEGMENT_LENGTH;
+        this.analysisScope = null;
     }
 
     /**
@@ -431,6 +437,14 @@ public class ClientConfiguration {
         this.minSegmentLength = minSegmentLength;
     }
 
+    public AnalysisScope getAnalysisScope() {
+        return analysisScope;
+    }
+
+    public void setAnalysisScope(AnalysisScope analysisScope) {
+        this.analysisScope = analysisScope;
+    }
+
     public ProgressReferenceGenomeController getProgressReferenceGenomeController() {
         return this.progressReferenceGenomeController;
     }
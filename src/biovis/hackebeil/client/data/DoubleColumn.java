@@ -0,0 +1,102 @@
+/**
+ *  Copyright 2016 Lydia Müller, Dirk Zeckzer
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package biovis.hackebeil.client.data;
+
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Feature values of all segments backed by a double array.
+ *
+ * Charts may use getDouble/toDoubleArray to avoid boxing; as List<Double>
+ * the column is read-only.
+ *
+ * @author Dirk Zeckzer
+ */
+public class DoubleColumn
+    extends AbstractList<Double>
+    implements RandomAccess {
+
+    private final double[] values;
+
+    /**
+     * Constructor.
+     *
+     * @param values values (not copied)
+     */
+    public DoubleColumn(double[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Wrap decoded columns.
+     *
+     * @param columns column name to values
+     * @return column name to column
+     */
+    public static Map<String, List<Double>> wrap(Map<String, double[]> columns) {
+        Map<String, List<Double>> wrapped = new LinkedHashMap<>();
+        for (Map.Entry<String, double[]> entry : columns.entrySet()) {
+            wrapped.put(entry.getKey(), new DoubleColumn(entry.getValue()));
+        }
+        return wrapped;
+    }
+
+    /**
+     * Copy values of a list.
+     *
+     * @param list values
+     * @return values
+     */
+    public static double[] toDoubleArray(List<Double> list) {
+        if (list instanceof DoubleColumn) {
+            return ((DoubleColumn) list).toDoubleArray();
+        }
+        double[] copy = new double[list.size()];
+        for (int i = 0; i < copy.length; ++i) {
+            copy[i] = list.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * @param index index
+     * @return value
+     */
+    public double getDouble(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return copy of values
+     */
+    public double[] toDoubleArray() {
+        return values.clone();
+    }
+
+    @Override
+    public Double get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+}
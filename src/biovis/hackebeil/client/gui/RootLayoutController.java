@@ -21,8 +21,11 @@ import biovis.hackebeil.client.gui.dialog.ConnectionManagerController;
 import biovis.hackebeil.client.gui.dialog.ImportDialogController;
 import biovis.hackebeil.client.gui.dialog.ProgressDialog;
 import biovis.hackebeil.client.io.DataIO;
-import biovis.hackebeil.common.data.BreakSegment;
+import biovis.hackebeil.common.data.BreakSegmentPage;
+import biovis.hackebeil.common.data.CodeCountMatrices;
+import biovis.hackebeil.common.data.CodePairRelation;
 import biovis.hackebeil.common.data.DataFile;
+import biovis.hackebeil.common.data.KmerSpectrumTotals;
 import biovis.hackebeil.common.data.Messages;
 import biovis.hackebeil.server.worker.segmentation.SegmentationWorker;
 import biovislib.vfsjfilechooser.VFSJFileChooser;
@@ -258,6 +261,48 @@ public class RootLayoutController {
         );
     }
 
+    @FXML
+    private void saveServerSession() {
+        String filePath = chooseSessionFile("Save server session", true);
+        if (filePath != null && clientCommander.isActive()) {
+            Object[] command = {Messages.SERVER_saveSession, filePath};
+            clientCommander.sendCommand(command);
+        }
+    }
+
+    @FXML
+    private void restoreServerSession() {
+        String filePath = chooseSessionFile("Restore server session", false);
+        if (filePath != null && clientCommander.isActive()) {
+            Object[] command = {Messages.SERVER_restoreSession, filePath};
+            clientCommander.sendCommand(command);
+        }
+    }
+
+    /**
+     * Choose session snapshot file on the server.
+     *
+     * @param title dialog title
+     * @param save true: save dialog, false: open dialog
+     * @return path of selected file (null if canceled)
+     */
+    private String chooseSessionFile(String title, boolean save) {
+        clientConfiguration.initFileChooser();
+        VFSJFileChooser remoteFileChooser = clientConfiguration.getRemoteFileChooser();
+        remoteFileChooser.setDialogTitle(title);
+        RETURN_TYPE answer = save
+                             ? remoteFileChooser.showSaveDialog(null)
+                             : remoteFileChooser.showOpenDialog(null);
+        if (answer != RETURN_TYPE.APPROVE) {
+            return null;
+        }
+        String pathOfSelectedFile = remoteFileChooser.getSelectedFileObject().getName().getPath();
+        if (save && !pathOfSelectedFile.endsWith(".session")) {
+            pathOfSelectedFile += ".session";
+        }
+        return pathOfSelectedFile;
+    }
+
     @FXML
     public void exportToPng() {
         FileChooser fileChooser = new FileChooser();
@@ -372,6 +417,16 @@ public class RootLayoutController {
         clientConfiguration.setMotifsReady(true);
     }
 
+    /**
+     *
+     * @param spectrum
+     */
+    public void setKmerSpectrum(KmerSpectrumTotals spectrum) {
+        if (clientConfiguration.getProgressAddMotifsController() != null) {
+            clientConfiguration.getProgressAddMotifsController().setKmerSpectrum(spectrum);
+        }
+    }
+
     /**
      *
      * @param pwmValues
@@ -391,23 +446,27 @@ public class RootLayoutController {
         splitScreen.setFateOfCodeData(data);
     }
 
-    public void setBreakSegmentData(List<BreakSegment> breakSegmentData) {
+    public void setBreakSegmentData(CodeCountMatrices breakSegmentData) {
         splitScreen.setBreakSegmentData(breakSegmentData);
     }
 
-    public void setSegmentPairsData(Map<String, Integer> segmentPairsData) {
+    public void setBreakSegmentPage(BreakSegmentPage breakSegmentPage) {
+        splitScreen.setBreakSegmentPage(breakSegmentPage);
+    }
+
+    public void setSegmentPairsData(CodeCountMatrices segmentPairsData) {
         splitScreen.setSegmentPairsData(segmentPairsData);
     }
 
-    public void setSegmentShortSegmentPairsData(Map<String, Integer> segmentShortSegmentPairsData) {
+    public void setSegmentShortSegmentPairsData(CodeCountMatrices segmentShortSegmentPairsData) {
         splitScreen.setSegmentShortSegmentPairsData(segmentShortSegmentPairsData);
     }
 
-    public void setShortSegmentSegmentPairsData(Map<String, Integer> shortSegmentSegmentPairsData) {
+    public void setShortSegmentSegmentPairsData(CodeCountMatrices shortSegmentSegmentPairsData) {
         splitScreen.setShortSegmentSegmentPairsData(shortSegmentSegmentPairsData);
     }
 
-    public void setSegmentPairOccurrenceData(Map<String, Double> segmentPairOccurrenceData) {
+    public void setSegmentPairOccurrenceData(CodePairRelation segmentPairOccurrenceData) {
         splitScreen.setSegmentPairOccurrenceData(segmentPairOccurrenceData);
     }
 
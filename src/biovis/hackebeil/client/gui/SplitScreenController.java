@@ -21,7 +21,9 @@ import biovis.hackebeil.client.commander.ClientCommander;
 import biovis.hackebeil.client.data.ClientConfiguration;
 import biovis.hackebeil.client.gui.output.OutputOverviewController;
 import biovis.hackebeil.client.gui.progress.ProgressOverviewController;
-import biovis.hackebeil.common.data.BreakSegment;
+import biovis.hackebeil.common.data.BreakSegmentPage;
+import biovis.hackebeil.common.data.CodeCountMatrices;
+import biovis.hackebeil.common.data.CodePairRelation;
 import biovis.hackebeil.server.worker.segmentation.SegmentationWorker;
 import java.util.List;
 import java.util.Map;
@@ -209,23 +211,27 @@ public class SplitScreenController {
         outputOverview.exportToPng(filename);
     }
 
-    public void setBreakSegmentData(List<BreakSegment> breakSegmentData) {
+    public void setBreakSegmentData(CodeCountMatrices breakSegmentData) {
         outputOverview.setBreakSegmentData(breakSegmentData);
     }
 
-    public void setSegmentPairsData(Map<String, Integer> segmentPairsData) {
+    public void setBreakSegmentPage(BreakSegmentPage breakSegmentPage) {
+        outputOverview.setBreakSegmentPage(breakSegmentPage);
+    }
+
+    public void setSegmentPairsData(CodeCountMatrices segmentPairsData) {
         outputOverview.setSegmentPairsData(segmentPairsData);
     }
 
-    public void setSegmentShortSegmentPairsData(Map<String, Integer> segmentShortSegmentPairsData) {
+    public void setSegmentShortSegmentPairsData(CodeCountMatrices segmentShortSegmentPairsData) {
         outputOverview.setSegmentShortSegmentPairsData(segmentShortSegmentPairsData);
     }
 
-    public void setShortSegmentSegmentPairsData(Map<String, Integer> shortSegementSegmentPairsData) {
+    public void setShortSegmentSegmentPairsData(CodeCountMatrices shortSegementSegmentPairsData) {
         outputOverview.setShortSegmentSegmentPairsData(shortSegementSegmentPairsData);
     }
 
-    public void setSegmentPairOccurrenceData(Map<String, Double> segmentPairOccurrenceData) {
+    public void setSegmentPairOccurrenceData(CodePairRelation segmentPairOccurrenceData) {
         outputOverview.setSegmentPairOccurrenceData(segmentPairOccurrenceData);
     }
 
@@ -17,16 +17,22 @@ package biovis.hackebeil.client.gui;
 
 import biovis.hackebeil.client.HackebeilClient;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.prefs.Preferences;
 
 import biovis.hackebeil.client.commander.ClientCommander;
+import biovis.hackebeil.common.data.JobStatus;
+import biovis.hackebeil.common.data.Messages;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
+import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressIndicator;
 import javafx.scene.layout.BorderPane;
@@ -58,6 +64,13 @@ public class StatusBarController {
     private Label lastEvent;
     @FXML
     private Label ramUsageState;
+    @FXML
+    private ComboBox<JobStatus> cbJobs;
+    @FXML
+    private Button btnCancelJob;
+
+    // unfinished server jobs by id, in order of submission
+    private final Map<Long, JobStatus> jobs = new LinkedHashMap<>();
 
     private BorderPane statusBar;
 
@@ -142,6 +155,47 @@ public class StatusBarController {
         ramUsageState.setText(String.format("%,d", totalRam) + " MB");
     }
 
+    /**
+     * Track server job: the unfinished jobs are listed, the cancel button
+     * cancels the selected one. The selection is kept while the job is
+     * unfinished, otherwise the first running job is selected.
+     *
+     * @param status job status
+     */
+    public void updateJob(JobStatus status) {
+        Platform.runLater(() -> {
+            JobStatus selected = cbJobs.getValue();
+            if (status.isFinished()) {
+                jobs.remove(status.getId());
+            } else {
+                jobs.put(status.getId(), status);
+            }
+            cbJobs.getItems().setAll(jobs.values());
+
+            JobStatus select = selected == null ? null : jobs.get(selected.getId());
+            if (select == null) {
+                for (JobStatus job : jobs.values()) {
+                    if (select == null || JobStatus.RUNNING.equals(job.getState())
+                                          && !JobStatus.RUNNING.equals(select.getState())) {
+                        select = job;
+                    }
+                }
+            }
+            cbJobs.setValue(select);
+            cbJobs.setVisible(!jobs.isEmpty());
+            btnCancelJob.setVisible(!jobs.isEmpty());
+        });
+    }
+
+    @FXML
+    private void handleCancelJob() {
+        JobStatus selected = cbJobs.getValue();
+        if (selected != null && clientCommander.isActive()) {
+            Object[] command = {Messages.SERVER_cancelJob, selected.getId()};
+            clientCommander.sendCommand(command);
+        }
+    }
+
     /**
      *
      * @param scommand
@@ -29,7 +29,9 @@ import biovis.hackebeil.client.gui.output.motif.MotifTabPaneController;
 import biovis.hackebeil.client.gui.output.overview.OverviewController;
 import biovis.hackebeil.client.gui.output.pwm.PWMTabPaneController;
 import biovis.hackebeil.client.gui.output.segmentation.SegmentationTabPaneController;
-import biovis.hackebeil.common.data.BreakSegment;
+import biovis.hackebeil.common.data.BreakSegmentPage;
+import biovis.hackebeil.common.data.CodeCountMatrices;
+import biovis.hackebeil.common.data.CodePairRelation;
 import biovis.hackebeil.server.worker.segmentation.SegmentationWorker;
 import java.util.List;
 import java.util.Map;
@@ -150,7 +152,7 @@ public class OutputOverviewController {
 
         breakSegmentAnalysisController = BreakSegmentAnalysisController.getInstance();
         Platform.runLater(() -> {
-            Tab tab = breakSegmentAnalysisController.loadView(clientConfiguration);
+            Tab tab = breakSegmentAnalysisController.loadView(clientConfiguration, clientCommander);
             tabs.getTabs().add(tab);
         });
 
@@ -279,26 +281,30 @@ public class OutputOverviewController {
         fateOfCodeController.setFateOfCodeResults(results);
     }
 
-    public void setSegmentPairsData(Map<String, Integer> segmentPairsData) {
+    public void setSegmentPairsData(CodeCountMatrices segmentPairsData) {
         pairsAnalysisController.updateSegmentPairsData(segmentPairsData);
     }
 
-    public void setSegmentShortSegmentPairsData(Map<String, Integer> segmentShortSegmentPairsData) {
+    public void setSegmentShortSegmentPairsData(CodeCountMatrices segmentShortSegmentPairsData) {
         pairsAnalysisController.updateSegmentShortSegmentPairsData(segmentShortSegmentPairsData);
     }
 
-    public void setShortSegmentSegmentPairsData(Map<String, Integer> shortSegmentSegmentPairsData) {
+    public void setShortSegmentSegmentPairsData(CodeCountMatrices shortSegmentSegmentPairsData) {
         pairsAnalysisController.updateShortSegmentSegmentPairsData(shortSegmentSegmentPairsData);
     }
 
-    public void setSegmentPairOccurrenceData(Map<String, Double> segmentPairOccurrenceData) {
+    public void setSegmentPairOccurrenceData(CodePairRelation segmentPairOccurrenceData) {
         pairsAnalysisController.updateSegmentPairOccurrenceData(segmentPairOccurrenceData);
     }
 
-    public void setBreakSegmentData(List<BreakSegment> breakSegmentData) {
+    public void setBreakSegmentData(CodeCountMatrices breakSegmentData) {
         breakSegmentAnalysisController.setBreakSegmentData(breakSegmentData);
     }
 
+    public void setBreakSegmentPage(BreakSegmentPage breakSegmentPage) {
+        breakSegmentAnalysisController.setBreakSegmentPage(breakSegmentPage);
+    }
+
     public void setShortSegmentChainsCounts(SortedMap<Integer, Integer> shortSegmentChainsCounts) {
         segmentationTabPaneController.updateShortSegmentChainsCounts(shortSegmentChainsCounts);
     }
@@ -5,18 +5,25 @@
  */
 package biovis.hackebeil.client.gui.output.breakSegmentAnalysis;
 
+import biovis.hackebeil.client.commander.ClientCommander;
 import biovis.hackebeil.client.data.ClientConfiguration;
 import biovis.hackebeil.client.gui.output.common.CodeDistanceController;
 import biovis.hackebeil.client.gui.output.common.CountHeatmapController;
 import biovis.hackebeil.common.data.BreakSegment;
-import biovislib.utils.HammingDistance;
+import biovis.hackebeil.common.data.BreakSegmentPage;
+import biovis.hackebeil.common.data.CodeCountMatrices;
+import biovis.hackebeil.common.data.Messages;
 import java.io.IOException;
-import java.util.List;
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
 import javafx.scene.layout.AnchorPane;
 
 /**
@@ -26,7 +33,11 @@ import javafx.scene.layout.AnchorPane;
  */
 public class BreakSegmentAnalysisController {
 
+    // number of break segments requested per page
+    private static final int PAGE_SIZE = 100;
+
     private ClientConfiguration clientConfiguration;
+    private ClientCommander clientCommander;
     private Boolean isInitialized = false;
 
     private Tab rootTab;
@@ -43,6 +54,28 @@ public class BreakSegmentAnalysisController {
     private Tab distanceTab;
     @FXML
     private Tab lengthTab;
+    @FXML
+    private Tab breakSegmentsTab;
+    @FXML
+    private TableView<BreakSegment> breakSegmentsTable;
+    @FXML
+    private TableColumn<BreakSegment, String> colChromosome;
+    @FXML
+    private TableColumn<BreakSegment, Integer> colStart;
+    @FXML
+    private TableColumn<BreakSegment, Integer> colEnd;
+    @FXML
+    private TableColumn<BreakSegment, Integer> colLength;
+    @FXML
+    private TableColumn<BreakSegment, Integer> colWrappingCode;
+    @FXML
+    private TableColumn<BreakSegment, Integer> colBreakCode;
+    @FXML
+    private Button btnPreviousPage;
+    @FXML
+    private Button btnNextPage;
+    @FXML
+    private Label lbPage;
 
     private CountHeatmapController breakSegmentHeatmapCodeController;
     private CountHeatmapController breakSegmentHeatmapDistanceController;
@@ -59,6 +92,10 @@ public class BreakSegmentAnalysisController {
     private int codeNonNull;
     private int distanceNonNull;
 
+    // paging of break segments
+    private int pageOffset = 0;
+    private int pageTotal = 0;
+
     public BreakSegmentAnalysisController() {
     }
 
@@ -83,9 +120,11 @@ public class BreakSegmentAnalysisController {
     }
 
     public Tab loadView(
-        ClientConfiguration clientConfiguration
+        ClientConfiguration clientConfiguration,
+        ClientCommander commander
     ) {
         this.clientConfiguration = clientConfiguration;
+        this.clientCommander = commander;
         testForReady();
 
         return rootTab;
@@ -101,6 +140,7 @@ public class BreakSegmentAnalysisController {
 
     private void testForReady() {
         if (clientConfiguration != null
+            && clientCommander != null
             && isInitialized == true) {
             init();
         }
@@ -122,6 +162,13 @@ public class BreakSegmentAnalysisController {
         breakSegmentLengthAnalysisController = BreakSegmentLengthAnalysisController.getInstance();
         AnchorPane anchorPaneLengthAnalysis = breakSegmentLengthAnalysisController.loadView();
         lengthTab.setContent(anchorPaneLengthAnalysis);
+
+        colChromosome.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getLoc().getChr()));
+        colStart.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getLoc().getStart()));
+        colEnd.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getLoc().getEnd()));
+        colLength.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getLength()));
+        colWrappingCode.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getBeforeCode()));
+        colBreakCode.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getBreakCode()));
     }
 
     /**
@@ -129,8 +176,9 @@ public class BreakSegmentAnalysisController {
      * @param breakSegmentData
      */
     public void setBreakSegmentData(
-        List<BreakSegment> breakSegmentData
+        CodeCountMatrices breakSegmentData
     ) {
+        clearBreakSegmentPage();
         if (breakSegmentData == null
             || breakSegmentData.isEmpty()) {
             rootTab.setDisable(true);
@@ -138,8 +186,9 @@ public class BreakSegmentAnalysisController {
         }
 
         rootTab.setDisable(false);
+        requestBreakSegmentPage(0);
 
-        calcMatrix(breakSegmentData);
+        setMatrices(breakSegmentData);
         String[] columnNames = new String[codeCountMatrix[0].length];
         String[] rowNames = new String[codeCountMatrix.length];
         for (int row = 0;
@@ -189,69 +238,26 @@ public class BreakSegmentAnalysisController {
 
         breakSegmentLengthAnalysisController.setBreakSegmentData(
             numberOfCodes,
-            breakSegmentData,
+            breakSegmentData.getLengthCountMatrix(),
             clientConfiguration.getMinSegmentLength() - 1
         );
 
         redraw();
     }
 
-    private void calcMatrix(
-        List<BreakSegment> breakSegmentData
+    private void setMatrices(
+        CodeCountMatrices breakSegmentData
     ) {
-        codeCountMax = 0;
-        distanceCountMax = 0;
-
-        codeNonNull = 0;
-        distanceNonNull = 0;
-
-        numberOfReferences = clientConfiguration.getReferenceDataList().size();
-        numberOfCodes = (int) Math.pow(2, numberOfReferences);
-        codeCountMatrix = new int[numberOfCodes][numberOfCodes];
-        distanceCountMatrix = new int[numberOfCodes][numberOfReferences + 1];
-
-        int beforeCode;
-        int breakCode;
-        for (BreakSegment dp : breakSegmentData) {
-            beforeCode = dp.getBeforeCode();
-            breakCode = dp.getBreakCode();
-
-            // count
-            codeCountMatrix[beforeCode][breakCode]++;
+        codeCountMax = breakSegmentData.getCodeCountMax();
+        distanceCountMax = breakSegmentData.getDistanceCountMax();
 
-            // hamming distance counts
-            distanceCountMatrix[beforeCode][HammingDistance.getDistance(beforeCode, breakCode)]++;
-        }
-
-        for (beforeCode = 0;
-             beforeCode < codeCountMatrix.length;
-             ++beforeCode) {
-            for (breakCode = 0;
-                 breakCode < codeCountMatrix[beforeCode].length;
-                 ++breakCode) {
-                if (codeCountMatrix[beforeCode][breakCode] > codeCountMax) {
-                    codeCountMax = codeCountMatrix[beforeCode][breakCode];
-                }
-                if (codeCountMatrix[beforeCode][breakCode] > 0) {
-                    ++codeNonNull;
-                }
-            }
-        }
+        codeNonNull = breakSegmentData.getCodeNonNull();
+        distanceNonNull = breakSegmentData.getDistanceNonNull();
 
-        for (beforeCode = 0;
-             beforeCode < distanceCountMatrix.length;
-             ++beforeCode) {
-            for (int distance = 0;
-                 distance < distanceCountMatrix[beforeCode].length;
-                 ++distance) {
-                if (distanceCountMatrix[beforeCode][distance] > distanceCountMax) {
-                    distanceCountMax = distanceCountMatrix[beforeCode][distance];
-                }
-                if (distanceCountMatrix[beforeCode][distance] > 0) {
-                    ++distanceNonNull;
-                }
-            }
-        }
+        codeCountMatrix = breakSegmentData.getCodeCountMatrix();
+        distanceCountMatrix = breakSegmentData.getDistanceCountMatrix();
+        numberOfCodes = codeCountMatrix.length;
+        numberOfReferences = distanceCountMatrix[0].length - 1;
     }
 
     /**
@@ -271,6 +277,62 @@ public class BreakSegmentAnalysisController {
         });
     }
 
+    /**
+     * Request break segments [offset, offset + PAGE_SIZE) from the server.
+     *
+     * @param offset index of first break segment
+     */
+    private void requestBreakSegmentPage(int offset) {
+        Object[] command = new Object[3];
+        command[0] = Messages.SERVER_getBreakSegments;
+        command[1] = offset;
+        command[2] = PAGE_SIZE;
+        clientCommander.sendCommand(command);
+    }
+
+    /**
+     * Show page of break segments received from the server.
+     *
+     * @param page
+     */
+    public void setBreakSegmentPage(
+        BreakSegmentPage page
+    ) {
+        pageOffset = page.getOffset();
+        pageTotal = page.getTotal();
+        int end = pageOffset + page.getBreakSegments().size();
+
+        Platform.runLater(() -> {
+            breakSegmentsTable.getItems().setAll(page.getBreakSegments());
+            breakSegmentsTable.scrollTo(0);
+            lbPage.setText((pageTotal == 0 ? 0 : pageOffset + 1) + "-" + end + " of " + pageTotal);
+            btnPreviousPage.setDisable(pageOffset == 0);
+            btnNextPage.setDisable(end >= pageTotal);
+        });
+    }
+
+    private void clearBreakSegmentPage() {
+        pageOffset = 0;
+        pageTotal = 0;
+
+        Platform.runLater(() -> {
+            breakSegmentsTable.getItems().clear();
+            lbPage.setText("");
+            btnPreviousPage.setDisable(true);
+            btnNextPage.setDisable(true);
+        });
+    }
+
+    @FXML
+    private void handlePreviousPage() {
+        requestBreakSegmentPage(Math.max(0, pageOffset - PAGE_SIZE));
+    }
+
+    @FXML
+    private void handleNextPage() {
+        requestBreakSegmentPage(pageOffset + PAGE_SIZE);
+    }
+
     /**
      *
      * @param path
@@ -19,7 +19,6 @@ import java.io.IOException;
 
 import biovis.hackebeil.client.io.ImageExport;
 import biovis.hackebeil.client.utilities.ChartUtilities;
-import biovis.hackebeil.common.data.BreakSegment;
 import biovislib.javafx.chart.AxisLabeling;
 import biovislib.javafx.chart.LogarithmicAxis;
 import biovislib.javafx.chart.AxisLabeling.Label;
@@ -68,7 +67,8 @@ public class BreakSegmentLengthAnalysisController {
 	private CheckBox cbLengthYAxisLogScale;
 
 	private int numberOfCodes;
-	private List<BreakSegment> breakSegmentData;
+	// [wrapping code][length] number of break segments
+	private int[][] lengthCountMatrix;
 	private int maxLength;
 
 	public BreakSegmentLengthAnalysisController() {
@@ -119,7 +119,7 @@ public class BreakSegmentLengthAnalysisController {
 	}
 
 	public void initView() {
-		if (breakSegmentData == null) {
+		if (lengthCountMatrix == null) {
 			return;
 		}
 
@@ -130,7 +130,7 @@ public class BreakSegmentLengthAnalysisController {
 	 *
 	 */
 	public void redraw() {
-		if (breakSegmentData == null) {
+		if (lengthCountMatrix == null) {
 			return;
 		}
 
@@ -141,24 +141,23 @@ public class BreakSegmentLengthAnalysisController {
 	}
 
 	private void redrawLengthsChart() {
-		if (breakSegmentData == null) {
+		if (lengthCountMatrix == null) {
 			return;
 		}
 
 		SortedMap<Integer, Integer> lengths = new TreeMap<>();
 		// Start Computing
 		Platform.runLater(() -> {
-			for (BreakSegment dp : breakSegmentData) {
+			for (int code = 0; code < lengthCountMatrix.length; ++code) {
 				if (choiceLengthCode.getValue() != null
 						&& !choiceLengthCode.getValue().equals("All codes")
-						&& Integer.parseInt(choiceLengthCode.getValue().split(" ")[0]) != dp.getBeforeCode()) {
+						&& Integer.parseInt(choiceLengthCode.getValue().split(" ")[0]) != code) {
 					continue;
 				}
-				Integer key = dp.getLength();
-				if (lengths.containsKey(key)) {
-					lengths.replace(key, lengths.get(key) + 1);
-				} else {
-					lengths.put(key, 1);
+				for (int length = 0; length < lengthCountMatrix[code].length; ++length) {
+					if (lengthCountMatrix[code][length] > 0) {
+						lengths.merge(length, lengthCountMatrix[code][length], Integer::sum);
+					}
 				}
 			}
 
@@ -245,10 +244,11 @@ public class BreakSegmentLengthAnalysisController {
 	 */
 	private void updateChoices() {
 		int[] length = new int[numberOfCodes];
-		if (breakSegmentData != null
-				&& !breakSegmentData.isEmpty()) {
-			for (BreakSegment bp : breakSegmentData) {
-				length[bp.getBeforeCode()]++;
+		if (lengthCountMatrix != null) {
+			for (int code = 0; code < lengthCountMatrix.length; ++code) {
+				for (int count : lengthCountMatrix[code]) {
+					length[code] += count;
+				}
 			}
 		}
 		choiceLengthCode.getItems().clear();
@@ -272,23 +272,23 @@ public class BreakSegmentLengthAnalysisController {
 	/**
 	 *
 	 * @param numberOfCodes
-	 * @param breakSegmentData
+	 * @param lengthCountMatrix number of break segments per wrapping code and length
 	 * @param maxLength
 	 */
 	public void setBreakSegmentData(
 			int numberOfCodes,
-			List<BreakSegment> breakSegmentData,
+			int[][] lengthCountMatrix,
 			int maxLength
 			) {
-		if (breakSegmentData == null
-				|| breakSegmentData.isEmpty()) {
+		if (lengthCountMatrix == null
+				|| lengthCountMatrix.length == 0) {
 			rootPane.setDisable(true);
 			return;
 		}
 
 		rootPane.setDisable(false);
 		this.numberOfCodes = numberOfCodes;
-		this.breakSegmentData = breakSegmentData;
+		this.lengthCountMatrix = lengthCountMatrix;
 		this.maxLength = maxLength;
 
 		redraw();
@@ -15,10 +15,12 @@
  */
 package biovis.hackebeil.client.gui.output.common;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.TreeMap;
 import java.util.logging.Logger;
 
+import biovis.hackebeil.client.data.DoubleColumn;
 import biovis.hackebeil.client.io.ImageExport;
 import biovis.hackebeil.client.utilities.ChartUtilities;
 import biovislib.javafx.chart.AxisLabeling;
@@ -244,17 +246,21 @@ public class ColumnCountController {
 		}
 
 		Platform.runLater(() -> {
-			// Determine correction value
-			logarithmicValues.sort((d1, d2) -> Double.compare(d1, d2));
-			double minValue = logarithmicValues.get(0);
+			// Determine correction value (sorted copy, the values are shared)
+			double[] sortedValues = DoubleColumn.toDoubleArray(logarithmicValues);
+			Arrays.sort(sortedValues);
 			int noMatch = 0;
-			while (minValue == -Double.MAX_VALUE) {
-				logarithmicValues.remove(0);
-				minValue = logarithmicValues.get(0);
+			while (noMatch < sortedValues.length
+					&& sortedValues[noMatch] == -Double.MAX_VALUE) {
 				++noMatch;
 			}
+			if (noMatch == sortedValues.length) {
+				return;
+			}
+			List<Double> matchValues = new DoubleColumn(Arrays.copyOfRange(sortedValues, noMatch, sortedValues.length));
+			double minValue = sortedValues[noMatch];
 
-			double maxValue = logarithmicValues.get(logarithmicValues.size() - 1);
+			double maxValue = sortedValues[sortedValues.length - 1];
 			// Adjust min and max value
 			/*
             double lowerMagnitude = Math.floor(Math.log10(minValue));
@@ -277,7 +283,7 @@ public class ColumnCountController {
 			// Start Computing
 			SortedMap<Integer, Integer> pwmDistribution;
 
-			pwmDistribution = createMap(logarithmicValues,
+			pwmDistribution = createMap(matchValues,
 					correction);
 
 			double from = minValue * correction; //pwmDistribution.firstKey();
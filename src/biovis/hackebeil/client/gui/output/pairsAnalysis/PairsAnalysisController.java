@@ -18,7 +18,8 @@ package biovis.hackebeil.client.gui.output.pairsAnalysis;
 import java.io.IOException;
 
 import biovis.hackebeil.client.data.ClientConfiguration;
-import java.util.Map;
+import biovis.hackebeil.common.data.CodeCountMatrices;
+import biovis.hackebeil.common.data.CodePairRelation;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -159,7 +160,7 @@ public class PairsAnalysisController {
      * @param segmentPairs
      */
     public void updateSegmentPairsData(
-        Map<String, Integer> segmentPairs
+        CodeCountMatrices segmentPairs
     ) {
         rootTab.setDisable(false);
         if (segmentPairController == null) {
@@ -173,7 +174,7 @@ public class PairsAnalysisController {
      * @param segmentShortSegmentPairs
      */
     public void updateSegmentShortSegmentPairsData(
-        Map<String, Integer> segmentShortSegmentPairs
+        CodeCountMatrices segmentShortSegmentPairs
     ) {
         rootTab.setDisable(false);
         if (segmentShortSegmentPairController == null) {
@@ -187,7 +188,7 @@ public class PairsAnalysisController {
      * @param shortSegmentSegmentPairs
      */
     public void updateShortSegmentSegmentPairsData(
-        Map<String, Integer> shortSegmentSegmentPairs
+        CodeCountMatrices shortSegmentSegmentPairs
     ) {
         rootTab.setDisable(false);
         if (shortSegmentSegmentPairController == null) {
@@ -201,7 +202,7 @@ public class PairsAnalysisController {
      * @param segmentPairOccurrence
      */
     public void updateSegmentPairOccurrenceData(
-        Map<String, Double> segmentPairOccurrence
+        CodePairRelation segmentPairOccurrence
     ) {
         rootTab.setDisable(false);
         if (segmentPairOccurrenceController == null) {
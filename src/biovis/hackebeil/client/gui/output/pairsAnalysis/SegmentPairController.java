@@ -21,8 +21,7 @@ import java.io.IOException;
 import java.util.logging.Logger;
 
 import biovis.hackebeil.client.data.ClientConfiguration;
-import biovislib.utils.HammingDistance;
-import java.util.Map;
+import biovis.hackebeil.common.data.CodeCountMatrices;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -140,59 +139,28 @@ public class SegmentPairController {
         });
     }
 
-    private void calcMatrix(
-        Map<String, Integer> segmentPairsData
+    private void setMatrices(
+        CodeCountMatrices segmentPairsData
     ) {
-        if (segmentPairsData == null) {
-            return;
-        }
+        codeCountMax = segmentPairsData.getCodeCountMax();
+        distanceCountMax = segmentPairsData.getDistanceCountMax();
 
-        int hammingDistanceCount;
-        codeCountMax = 0;
-        distanceCountMax = 0;
-
-        int numberOfReferences = clientConfiguration.getReferenceDataList().size();
-        numberOfCodes = (int) Math.pow(2, numberOfReferences);
-        codeCountMatrix = new int[numberOfCodes][numberOfCodes];
-        distanceCountMatrix = new int[numberOfCodes][numberOfReferences + 1];
-        for (int i = 0;
-             i < codeCountMatrix.length;
-             ++i) {
-            for (int j = 0;
-                 j < codeCountMatrix[i].length;
-                 ++j) {
-                String key = i + "-" + j;
-                Integer value = segmentPairsData.get(key);
-                if (value != null) {
-                    codeCountMatrix[i][j] = value;
-                    if (value > codeCountMax) {
-                        codeCountMax = value;
-                    }
-
-                    // hamming distance counts
-                    distanceCountMatrix[i][HammingDistance.getDistance(i, j)] += value;
-                    hammingDistanceCount = distanceCountMatrix[i][HammingDistance.getDistance(i, j)];
-                    if (hammingDistanceCount > distanceCountMax) {
-                        distanceCountMax = hammingDistanceCount;
-                    }
-                } else {
-                    codeCountMatrix[i][j] = 0;
-                }
-            }
-        }
+        codeCountMatrix = segmentPairsData.getCodeCountMatrix();
+        distanceCountMatrix = segmentPairsData.getDistanceCountMatrix();
+        numberOfCodes = codeCountMatrix.length;
     }
 
     /**
      *
      * @param segmentPairsData
      */
-    public void setSegmentPairData(Map<String, Integer> segmentPairsData) {
+    public void setSegmentPairData(CodeCountMatrices segmentPairsData) {
         if (segmentPairsData == null
             || segmentPairsData.isEmpty()) {
             return;
         }
 
-        calcMatrix(segmentPairsData);
+        setMatrices(segmentPairsData);
 
         String[] columnNames = new String[codeCountMatrix[0].length];
         String[] rowNames = new String[codeCountMatrix.length];
@@ -211,7 +179,7 @@ public class SegmentPairController {
             rowNames,
             columnNames,
             codeCountMatrix,
-            segmentPairsData.size(),
+            segmentPairsData.getCodeNonNull(),
             codeCountMax
         );
 
@@ -231,7 +199,7 @@ public class SegmentPairController {
             rowNamesDistance,
             columnNamesDistance,
             distanceCountMatrix,
-            segmentPairsData.size(),
+            segmentPairsData.getCodeNonNull(),
             distanceCountMax
         );
 
@@ -20,8 +20,8 @@ import java.util.logging.Logger;
 
 import biovis.hackebeil.client.data.ClientConfiguration;
 import biovis.hackebeil.client.io.ImageExport;
+import biovis.hackebeil.common.data.CodePairRelation;
 import java.text.DecimalFormat;
-import java.util.Map;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -75,8 +75,12 @@ public class SegmentPairOccurrenceController {
     private Label lbNumberOfSegmentPairs;
     @FXML
     private AnchorPane anchorHeatmap;
+    @FXML
+    private Tab transitionTab;
+    @FXML
+    private AnchorPane anchorTransitionHeatmap;
 
-    private Map<String, Double> segmentPairOccurrenceData;
+    private CodePairRelation segmentPairOccurrenceData;
 
     int numberOfReferences;
     int numberOfCodes;
@@ -147,16 +151,36 @@ public class SegmentPairOccurrenceController {
 
         Platform.runLater(() -> {
             calcMatrix();
-            lbNumberOfSegmentPairs.setText(segmentPairOccurrenceData.size() + "");
-            redrawHeatMap();
+            lbNumberOfSegmentPairs.setText(segmentPairOccurrenceData.getCount() + "");
+            redrawHeatMap(anchorHeatmap, codeCountMatrix, codeCountMax, true);
+
+            // transition probabilities (only if requested with the segmentation)
+            double[][] transitionMatrix = segmentPairOccurrenceData.getTransitionMatrix();
+            transitionTab.setDisable(transitionMatrix == null);
+            anchorTransitionHeatmap.getChildren().clear();
+            if (transitionMatrix != null) {
+                redrawHeatMap(anchorTransitionHeatmap, transitionMatrix, 1.0, false);
+            }
         });
     }
 
-    private void redrawHeatMap() {
+    /**
+     * Draw code x code heat map.
+     *
+     * @param anchor pane
+     * @param matrix values
+     * @param maxValue maximal value
+     * @param logarithmic true: show log(value) / log(maxValue), false: show
+     * value
+     */
+    private void redrawHeatMap(
+        AnchorPane anchor,
+        double[][] matrix,
+        double maxValue,
+        boolean logarithmic
+    ) {
         GridPane heatmap = new GridPane();
-        anchorHeatmap.getChildren().clear();
-        double[][] matrix = codeCountMatrix;
-        double maxValue = codeCountMax;
+        anchor.getChildren().clear();
 
         int lines = matrix.length + 1;
         int cols = matrix[0].length + 1;
@@ -206,7 +230,9 @@ public class SegmentPairOccurrenceController {
                     Tooltip tp = new Tooltip();
                     double value = matrix[yElement][xElement];
                     if (value > 0.0) {
-                        value = Math.log(value) / Math.log(maxValue);
+                        if (logarithmic) {
+                            value = Math.log(value) / Math.log(maxValue);
+                        }
                         label.setText(formatter.format(value) + "");
                         tp.setText("from " + (yElement)
                                    + " to " + (xElement)
@@ -241,15 +267,15 @@ public class SegmentPairOccurrenceController {
         AnchorPane.setLeftAnchor(heatmap, 0.0);
         AnchorPane.setRightAnchor(heatmap, 0.0);
         AnchorPane.setTopAnchor(heatmap, 0.0);
-        anchorHeatmap.getChildren().add(heatmap);
+        anchor.getChildren().add(heatmap);
         MenuItem cmItem1 = new MenuItem("Save as image");
         cmItem1.setOnAction((ActionEvent e) -> {
-            ImageExport.exportPaneToPng(anchorHeatmap, null);
+            ImageExport.exportPaneToPng(anchor, null);
         });
         final ContextMenu cm = new ContextMenu(cmItem1);
-        anchorHeatmap.setOnMouseClicked((event) -> {
+        anchor.setOnMouseClicked((event) -> {
             if (event.getButton() == MouseButton.SECONDARY) {
-                cm.show(anchorHeatmap, event.getScreenX(), event.getScreenY());
+                cm.show(anchor, event.getScreenX(), event.getScreenY());
             }
         });
 
@@ -282,23 +308,12 @@ public class SegmentPairOccurrenceController {
         codeCountMax = 0;
 
         numberOfReferences = clientConfiguration.getReferenceDataList().size();
-        numberOfCodes = (int) Math.pow(2, numberOfReferences);
-        codeCountMatrix = new double[numberOfCodes][numberOfCodes];
-        for (int i = 0;
-             i < codeCountMatrix.length;
-             ++i) {
-            for (int j = 0;
-                 j < codeCountMatrix[i].length;
-                 ++j) {
-                String key = i + "-" + j;
-                Double value = segmentPairOccurrenceData.get(key);
-                if (value != null) {
-                    codeCountMatrix[i][j] = value;
-                    if (value > codeCountMax) {
-                        codeCountMax = value;
-                    }
-                } else {
-                    codeCountMatrix[i][j] = 0;
+        codeCountMatrix = segmentPairOccurrenceData.getRelationMatrix();
+        numberOfCodes = codeCountMatrix.length;
+        for (double[] row : codeCountMatrix) {
+            for (double value : row) {
+                if (value > codeCountMax) {
+                    codeCountMax = value;
                 }
             }
         }
@@ -318,7 +333,7 @@ public class SegmentPairOccurrenceController {
         }
     }
 
-    public void setSegmentPairOccurrenceData(Map<String, Double> segmentPairOccurrenceData) {
+    public void setSegmentPairOccurrenceData(CodePairRelation segmentPairOccurrenceData) {
         this.segmentPairOccurrenceData = segmentPairOccurrenceData;
         redraw();
     }
@@ -330,5 +345,9 @@ public class SegmentPairOccurrenceController {
     public void exportToPng(String path) {
         path += "-segmentPairOccurrence";
         this.saveHeatMapToFile(path + "_");
+        if (segmentPairOccurrenceData != null
+            && segmentPairOccurrenceData.getTransitionMatrix() != null) {
+            ImageExport.exportPaneToPng(this.anchorTransitionHeatmap, path + "-transitions_");
+        }
     }
 }
@@ -60,6 +60,7 @@ public class PWMTab
                     break;
                 case PositionWeightMatrix.COMPUTATION_METHOD_MAX:
                 case PositionWeightMatrix.COMPUTATION_METHOD_MEDIAN:
+                case PositionWeightMatrix.COMPUTATION_METHOD_MEDIAN_APPROXIMATE:
                     // logarithmic values, can be smaller than 0
                     controller.setVisibleElements(false, true, false, false);
                     break;
@@ -90,6 +91,7 @@ public class PWMTab
                     break;
                 case PositionWeightMatrix.COMPUTATION_METHOD_MAX:
                 case PositionWeightMatrix.COMPUTATION_METHOD_MEDIAN:
+                case PositionWeightMatrix.COMPUTATION_METHOD_MEDIAN_APPROXIMATE:
                     // logarithmic values, can be smaller than 0
                     controller.redrawLogarithmicValues(pwm.getMotifId(), pwmValues.get(pwm.getMotifId()));
                     break;
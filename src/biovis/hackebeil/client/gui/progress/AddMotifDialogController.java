@@ -48,6 +48,8 @@ public class AddMotifDialogController {
     @FXML
     private TextField textFieldToAddMotif;
     @FXML
+    private TextField textFieldMismatches;
+    @FXML
     private RadioButton rButtonNormalized;
     @FXML
     private RadioButton rButtonRaw;
@@ -100,13 +102,30 @@ public class AddMotifDialogController {
 
     private boolean isMotifValid(String motif) {
         if (!motif.isEmpty()
-            && Pattern.matches("[AGTCN]+", motif)) {
+            && Pattern.matches("[AGTCRYSWKMBDHVN]+", motif)) {
             return true;
         } else {
             return false;
         }
     }
 
+    /**
+     * @param motif motif
+     * @return number of allowed mismatches (-1 if invalid)
+     */
+    private int getMismatches(String motif) {
+        String mismatches = textFieldMismatches.getText().trim();
+        if (mismatches.isEmpty()) {
+            return 0;
+        }
+        try {
+            int value = Integer.parseInt(mismatches);
+            return value >= 0 && value < motif.length() ? value : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     public void initialize() {
     }
 
@@ -118,18 +137,26 @@ public class AddMotifDialogController {
         } else {
             textFieldToAddMotif.getStyleClass().add("validation-error");
         }
+        if (getMismatches(stringMotif) >= 0) {
+            textFieldMismatches.getStyleClass().remove("validation-error");
+        } else {
+            textFieldMismatches.getStyleClass().add("validation-error");
+        }
     }
 
     @FXML
     private void handleAddMotif() {
         String stringMotif = textFieldToAddMotif.getText().toUpperCase();
-        if (isMotifValid(stringMotif)) {
+        int mismatches = getMismatches(stringMotif);
+        if (isMotifValid(stringMotif) && mismatches >= 0) {
             Motif motif = new Motif();
             motif.setMotif(stringMotif);
+            motif.setMaxMismatches(mismatches);
             motif.setIsNormalized(isNormalized());
             clientConfiguration.addMotif(motif);
 
             textFieldToAddMotif.clear();
+            textFieldMismatches.clear();
             stage.close();
         }
     }
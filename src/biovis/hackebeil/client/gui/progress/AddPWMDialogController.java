@@ -54,6 +54,8 @@ public class AddPWMDialogController {
     @FXML
     private RadioButton rButtonMedian;
     @FXML
+    private RadioButton rButtonMedianApproximate;
+    @FXML
     private RadioButton rButtonMax;
     @FXML
     private RadioButton rButtonCutoff;
@@ -164,6 +166,8 @@ public class AddPWMDialogController {
         pwm.setPWM(filePathValue, dataSetNameValue);
         if (rButtonMedian.isSelected()) {
             pwm.setComputationMethod(PositionWeightMatrix.COMPUTATION_METHOD_MEDIAN);
+        } else if (rButtonMedianApproximate.isSelected()) {
+            pwm.setComputationMethod(PositionWeightMatrix.COMPUTATION_METHOD_MEDIAN_APPROXIMATE);
         } else if (rButtonMax.isSelected()) {
             pwm.setComputationMethod(PositionWeightMatrix.COMPUTATION_METHOD_MAX);
         } else {
@@ -24,6 +24,8 @@ import com.google.gson.Gson;
 
 import biovis.hackebeil.client.commander.ClientCommander;
 import biovis.hackebeil.client.data.ClientConfiguration;
+import biovis.hackebeil.common.data.KmerSpectrumParameter;
+import biovis.hackebeil.common.data.KmerSpectrumTotals;
 import biovis.hackebeil.common.data.Messages;
 import biovis.hackebeil.common.data.Motif;
 import javafx.application.Platform;
@@ -32,9 +34,12 @@ import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.AnchorPane;
@@ -68,6 +73,18 @@ public class ProgressAddMotifsController {
     @FXML
     private TableColumn<Motif, Boolean> colActions;
 
+    @FXML
+    private TextField tfKmerLength;
+    @FXML
+    private CheckBox cbKmerCanonical;
+    @FXML
+    private Button btnKmerSpectrum;
+    @FXML
+    private Label lbKmerSpectrum;
+
+    // number of k-mers shown after computing the k-mer spectrum
+    private static final int TOP_KMERS = 5;
+
     private final static Image IMAGE_UP = new Image(
         ProgressAddMotifsController.class.getResourceAsStream("img/fa-arrow-up.png"));
     private final static Image IMAGE_DOWN = new Image(
@@ -202,6 +219,81 @@ public class ProgressAddMotifsController {
         }
     }
 
+    /**
+     * Compute the k-mer spectrum of the segments. Motifs of the list with
+     * length k are exposed as motif columns.
+     */
+    @FXML
+    public void handleKmerSpectrum() {
+        int k;
+        try {
+            k = Integer.parseInt(tfKmerLength.getText().trim());
+        } catch (NumberFormatException e) {
+            k = 0;
+        }
+        if (k < 1 || k > KmerSpectrumParameter.MAX_K) {
+            lbKmerSpectrum.setText("k must be between 1 and " + KmerSpectrumParameter.MAX_K);
+            return;
+        }
+
+        List<Motif> selection = new ArrayList<>();
+        for (Motif motif : clientConfiguration.getMotifList()) {
+            if (motif.getMotif() != null
+                && motif.getMotif().length() == k
+                && motif.getMaxMismatches() == 0) {
+                selection.add(motif);
+            }
+        }
+        if (clientCommander.isActive()) {
+            lbKmerSpectrum.setText("Counting " + k + "-mers");
+            Object[] command = new Object[2];
+            command[0] = Messages.SERVER_addKmerSpectrum;
+            Gson gson = new Gson();
+            command[1] = gson.toJson(new KmerSpectrumParameter(k, cbKmerCanonical.isSelected(), selection));
+            clientCommander.sendCommand(command);
+        }
+    }
+
+    /**
+     * Show the most frequent k-mers.
+     *
+     * @param spectrum k-mer spectrum
+     */
+    public void setKmerSpectrum(KmerSpectrumTotals spectrum) {
+        long[] totals = spectrum.getTotals();
+        // indices of the most frequent k-mers, descending
+        int[] top = new int[Math.min(TOP_KMERS, totals.length)];
+        int found = 0;
+        for (int code = 0; code < totals.length; ++code) {
+            if (totals[code] == 0) {
+                continue;
+            }
+            int position = found < top.length ? found++ : top.length;
+            while (position > 0 && totals[top[position - 1]] < totals[code]) {
+                if (position < top.length) {
+                    top[position] = top[position - 1];
+                }
+                --position;
+            }
+            if (position < top.length) {
+                top[position] = code;
+            }
+        }
+
+        StringBuilder text = new StringBuilder();
+        text.append(spectrum.getK()).append("-mers");
+        if (spectrum.isCanonical()) {
+            text.append(" (canonical)");
+        }
+        text.append(", most frequent:");
+        for (int i = 0; i < found; ++i) {
+            text.append(i == 0 ? " " : ", ")
+                .append(spectrum.getKmer(top[i]))
+                .append(" (").append(totals[top[i]]).append(")");
+        }
+        Platform.runLater(() -> lbKmerSpectrum.setText(text.toString()));
+    }
+
     public void setDisabled(boolean disable) {
         Platform.runLater(() -> {
             this.btnAddMotif.setDisable(disable);
@@ -209,6 +301,9 @@ public class ProgressAddMotifsController {
             this.btnDown.setDisable(disable);
             setComputeDisabled(disable);
             this.tableView.setDisable(disable);
+            this.tfKmerLength.setDisable(disable);
+            this.cbKmerCanonical.setDisable(disable);
+            this.btnKmerSpectrum.setDisable(disable);
         });
     }
 
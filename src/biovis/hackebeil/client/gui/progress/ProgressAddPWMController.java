@@ -158,6 +158,9 @@ public class ProgressAddPWMController {
                             case PositionWeightMatrix.COMPUTATION_METHOD_MEDIAN:
                                 setText("Median");
                                 break;
+                            case PositionWeightMatrix.COMPUTATION_METHOD_MEDIAN_APPROXIMATE:
+                                setText("Median (approximate)");
+                                break;
                             case PositionWeightMatrix.COMPUTATION_METHOD_MAX:
                                 setText("Maximum");
                                 break;
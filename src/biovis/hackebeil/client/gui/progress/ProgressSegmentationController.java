@@ -37,6 +37,7 @@ import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
@@ -73,6 +74,8 @@ public class ProgressSegmentationController {
     @FXML
     private TextField tfMinSegmentLength;
     @FXML
+    private CheckBox cbSegmentPairTransitions;
+    @FXML
     private Button btnStart;
 
     private final static Image IMAGE_UP = new Image(
@@ -279,13 +282,17 @@ public class ProgressSegmentationController {
 
     private void startSegmentation() {
         if (clientCommander.isActive()) {
-            Object[] command = new Object[3];
+            Object[] command = new Object[5];
             command[0] = Messages.SERVER_startSegmentation;
             Gson gson = new Gson();
             ObservableList<DataFile> fileList = clientConfiguration.getReferenceDataList();
             String dataFileList = gson.toJson(fileList);
             command[1] = dataFileList;
             command[2] = clientConfiguration.getMinSegmentLength();
+            command[3] = clientConfiguration.getAnalysisScope() == null
+                         ? null
+                         : gson.toJson(clientConfiguration.getAnalysisScope());
+            command[4] = cbSegmentPairTransitions.isSelected();
             clientCommander.sendCommand(command);
         }
     }
@@ -304,6 +311,7 @@ public class ProgressSegmentationController {
         this.btnAddFile.setDisable(b);
         this.btnUpFile.setDisable(b);
         this.btnDownFile.setDisable(b);
+        this.cbSegmentPairTransitions.setDisable(b);
         disableStart(b);
     }
 
@@ -0,0 +1,86 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *****************************************************************************
+ */
+package biovis.hackebeil.common.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Part of the genome an analysis is restricted to: a list of chromosomes
+ * and/or regions (given directly or as bed file on the server).
+ *
+ * If chromosomes and regions are given, only the regions on these
+ * chromosomes are analyzed. An empty scope is the whole genome.
+ *
+ * @author zeckzer
+ */
+public class AnalysisScope {
+
+    // chromosomes (empty: all chromosomes)
+    private List<String> chromosomes = new ArrayList<>();
+    // regions (closed intervals like segments)
+    private List<Location> regions = new ArrayList<>();
+    // bed file with regions on the server (null: none)
+    private String regionFile = null;
+
+    /**
+     * Constructor: whole genome.
+     */
+    public AnalysisScope() {
+    }
+
+    /**
+     * @return true iff neither chromosomes nor regions are given
+     */
+    public boolean isGenomeWide() {
+        return (chromosomes == null || chromosomes.isEmpty())
+               && !hasRegions();
+    }
+
+    /**
+     * @return true iff regions are given (directly or as file)
+     */
+    public boolean hasRegions() {
+        return (regions != null && !regions.isEmpty())
+               || (regionFile != null && !regionFile.isEmpty());
+    }
+
+    public List<String> getChromosomes() {
+        return chromosomes;
+    }
+
+    public void setChromosomes(List<String> chromosomes) {
+        this.chromosomes = chromosomes;
+    }
+
+    public List<Location> getRegions() {
+        return regions;
+    }
+
+    public void setRegions(List<Location> regions) {
+        this.regions = regions;
+    }
+
+    public String getRegionFile() {
+        return regionFile;
+    }
+
+    public void setRegionFile(String regionFile) {
+        this.regionFile = regionFile;
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *****************************************************************************
+ */
+package biovis.hackebeil.common.data;
+
+import java.util.List;
+
+/**
+ * Consecutive break segments requested by the client.
+ *
+ * @author zeckzer
+ */
+public class BreakSegmentPage {
+
+    // index of first break segment
+    private int offset;
+    // number of all break segments
+    private int total;
+    private List<BreakSegment> breakSegments;
+
+    /**
+     *
+     * @param offset index of first break segment
+     * @param total number of all break segments
+     * @param breakSegments break segments
+     */
+    public BreakSegmentPage(
+        int offset,
+        int total,
+        List<BreakSegment> breakSegments
+    ) {
+        this.offset = offset;
+        this.total = total;
+        this.breakSegments = breakSegments;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public List<BreakSegment> getBreakSegments() {
+        return breakSegments;
+    }
+}
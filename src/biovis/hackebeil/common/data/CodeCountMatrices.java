@@ -0,0 +1,121 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *****************************************************************************
+ */
+package biovis.hackebeil.common.data;
+
+/**
+ * Aggregated code pairs (segment pairs or break segments), computed by the
+ * server and sent to the client instead of the pairs themselves:
+ * - code x code counts,
+ * - code x Hamming distance counts,
+ * - code x length counts (break segments only).
+ *
+ * @author zeckzer
+ */
+public class CodeCountMatrices {
+
+    // number of aggregated pairs
+    private int count;
+
+    // [first code][second code]
+    private int[][] codeCountMatrix;
+    // [first code][Hamming distance]
+    private int[][] distanceCountMatrix;
+    // [first code][length], null for segment pairs
+    private int[][] lengthCountMatrix;
+
+    private int codeCountMax;
+    private int distanceCountMax;
+    private int codeNonNull;
+    private int distanceNonNull;
+
+    /**
+     * Constructor.
+     *
+     * @param count number of aggregated pairs
+     * @param codeCountMatrix code x code counts
+     * @param distanceCountMatrix code x Hamming distance counts
+     * @param lengthCountMatrix code x length counts (may be null)
+     */
+    public CodeCountMatrices(
+        int count,
+        int[][] codeCountMatrix,
+        int[][] distanceCountMatrix,
+        int[][] lengthCountMatrix
+    ) {
+        this.count = count;
+        this.codeCountMatrix = codeCountMatrix;
+        this.distanceCountMatrix = distanceCountMatrix;
+        this.lengthCountMatrix = lengthCountMatrix;
+
+        for (int[] row : codeCountMatrix) {
+            for (int value : row) {
+                codeCountMax = Math.max(codeCountMax, value);
+                if (value > 0) {
+                    ++codeNonNull;
+                }
+            }
+        }
+        for (int[] row : distanceCountMatrix) {
+            for (int value : row) {
+                distanceCountMax = Math.max(distanceCountMax, value);
+                if (value > 0) {
+                    ++distanceNonNull;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true iff no pairs were aggregated
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int[][] getCodeCountMatrix() {
+        return codeCountMatrix;
+    }
+
+    public int[][] getDistanceCountMatrix() {
+        return distanceCountMatrix;
+    }
+
+    public int[][] getLengthCountMatrix() {
+        return lengthCountMatrix;
+    }
+
+    public int getCodeCountMax() {
+        return codeCountMax;
+    }
+
+    public int getDistanceCountMax() {
+        return distanceCountMax;
+    }
+
+    public int getCodeNonNull() {
+        return codeNonNull;
+    }
+
+    public int getDistanceNonNull() {
+        return distanceNonNull;
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *****************************************************************************
+ */
+package biovis.hackebeil.common.data;
+
+/**
+ * Relation of observed to expected segment pairs per code pair, computed
+ * by the server and sent to the client as matrices:
+ * - observed / expected frequency (0 if the pair does not occur),
+ * - optionally, first-order Markov transition probabilities
+ *   P(second code | first code).
+ *
+ * @author zeckzer
+ */
+public class CodePairRelation {
+
+    // number of code pairs with a relation
+    private int count;
+
+    // [first code][second code]
+    private double[][] relationMatrix;
+    // [first code][second code], null if not computed
+    private double[][] transitionMatrix;
+
+    /**
+     * Constructor.
+     *
+     * @param count number of code pairs with a relation
+     * @param relationMatrix observed / expected
+     * @param transitionMatrix transition probabilities (may be null)
+     */
+    public CodePairRelation(
+        int count,
+        double[][] relationMatrix,
+        double[][] transitionMatrix
+    ) {
+        this.count = count;
+        this.relationMatrix = relationMatrix;
+        this.transitionMatrix = transitionMatrix;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double[][] getRelationMatrix() {
+        return relationMatrix;
+    }
+
+    public double[][] getTransitionMatrix() {
+        return transitionMatrix;
+    }
+}
@@ -0,0 +1,336 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *****************************************************************************
+ */
+package biovis.hackebeil.common.data;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary transfer of numeric columns (feature values of all segments).
+ *
+ * The columns are split into chunks of at most CHUNK_VALUES values, each
+ * chunk is sent as its own message. Chunk (little-endian):
+ * - int magic, byte version,
+ * - long transfer id, int chunk index, int number of chunks,
+ * - int number of blocks, blocks.
+ * Block (part of one column):
+ * - short name length, name (UTF-8),
+ * - int column length, int offset, int count,
+ * - byte type (DOUBLE, FLOAT), byte compression (NONE, DEFLATE),
+ * - int payload length, payload (count values).
+ *
+ * A block is sent as float if all its values are floats (e.g., counts),
+ * and deflated if this is shorter. Thus the encoding is lossless; missing
+ * values (null) become NaN.
+ *
+ * @author zeckzer
+ */
+public class ColumnCodec {
+
+    public static final int MAGIC = 0x4C4F4348;
+    public static final byte VERSION = 1;
+
+    public static final byte TYPE_DOUBLE = 0;
+    public static final byte TYPE_FLOAT = 1;
+
+    public static final byte COMPRESSION_NONE = 0;
+    public static final byte COMPRESSION_DEFLATE = 1;
+
+    // maximal number of values per chunk
+    public static final int CHUNK_VALUES = 1 << 20;
+
+    private static final AtomicLong nextTransferId = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * Part of a column.
+     */
+    private static class Slice {
+
+        private final String name;
+        private final List<Double> column;
+        private final int offset;
+        private final int count;
+
+        Slice(String name, List<Double> column, int offset, int count) {
+            this.name = name;
+            this.column = column;
+            this.offset = offset;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Encode columns into chunks.
+     *
+     * @param columns column name to values
+     * @return chunks
+     */
+    public static List<byte[]> encode(Map<String, ? extends List<Double>> columns) {
+        // split columns into chunks
+        List<List<Slice>> plan = new ArrayList<>();
+        List<Slice> current = new ArrayList<>();
+        int remaining = CHUNK_VALUES;
+        for (Map.Entry<String, ? extends List<Double>> entry : columns.entrySet()) {
+            List<Double> column = entry.getValue();
+            int offset = 0;
+            do {
+                int count = Math.min(remaining, column.size() - offset);
+                current.add(new Slice(entry.getKey(), column, offset, count));
+                offset += count;
+                remaining -= count;
+                if (remaining == 0) {
+                    plan.add(current);
+                    current = new ArrayList<>();
+                    remaining = CHUNK_VALUES;
+                }
+            } while (offset < column.size());
+        }
+        if (!current.isEmpty() || plan.isEmpty()) {
+            plan.add(current);
+        }
+
+        long transferId = nextTransferId.incrementAndGet();
+        List<byte[]> chunks = new ArrayList<>(plan.size());
+        for (int chunk = 0; chunk < plan.size(); ++chunk) {
+            chunks.add(encodeChunk(transferId, chunk, plan.size(), plan.get(chunk)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Encode one chunk.
+     */
+    private static byte[] encodeChunk(
+        long transferId,
+        int chunk,
+        int numberOfChunks,
+        List<Slice> slices
+    ) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(25).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.put(VERSION);
+        header.putLong(transferId);
+        header.putInt(chunk);
+        header.putInt(numberOfChunks);
+        header.putInt(slices.size());
+        out.write(header.array(), 0, header.position());
+
+        for (Slice slice : slices) {
+            encodeBlock(out, slice);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encode one block.
+     */
+    private static void encodeBlock(ByteArrayOutputStream out, Slice slice) {
+        double[] values = new double[slice.count];
+        boolean isFloat = true;
+        for (int i = 0; i < slice.count; ++i) {
+            Double value = slice.column.get(slice.offset + i);
+            values[i] = value == null ? Double.NaN : value;
+            isFloat &= (double) (float) values[i] == values[i] || Double.isNaN(values[i]);
+        }
+
+        byte type = isFloat ? TYPE_FLOAT : TYPE_DOUBLE;
+        ByteBuffer raw = ByteBuffer.allocate(slice.count * (isFloat ? 4 : 8)).order(ByteOrder.LITTLE_ENDIAN);
+        for (double value : values) {
+            if (isFloat) {
+                raw.putFloat((float) value);
+            } else {
+                raw.putDouble(value);
+            }
+        }
+        byte[] payload = raw.array();
+        byte compression = COMPRESSION_NONE;
+        byte[] deflated = deflate(payload);
+        if (deflated != null) {
+            payload = deflated;
+            compression = COMPRESSION_DEFLATE;
+        }
+
+        byte[] name = slice.name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(2 + name.length + 18).order(ByteOrder.LITTLE_ENDIAN);
+        header.putShort((short) name.length);
+        header.put(name);
+        header.putInt(slice.column.size());
+        header.putInt(slice.offset);
+        header.putInt(slice.count);
+        header.put(type);
+        header.put(compression);
+        header.putInt(payload.length);
+        out.write(header.array(), 0, header.position());
+        out.write(payload, 0, payload.length);
+    }
+
+    /**
+     * Deflate data.
+     *
+     * @param data data
+     * @return deflated data, null if not shorter
+     */
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[data.length];
+            int length = 0;
+            while (!deflater.finished() && length < buffer.length) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            if (!deflater.finished()) {
+                return null;
+            }
+            byte[] deflated = new byte[length];
+            System.arraycopy(buffer, 0, deflated, 0, length);
+            return deflated;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Collects the chunks of transfers and decodes their columns.
+     */
+    public static class Decoder {
+
+        /**
+         * Columns of one transfer.
+         */
+        private static class Transfer {
+
+            private final Map<String, double[]> columns = new LinkedHashMap<>();
+            private int receivedChunks = 0;
+        }
+
+        private final Map<Long, Transfer> transfers = new HashMap<>();
+
+        /**
+         * Add chunk.
+         *
+         * @param chunk chunk
+         * @return columns if all chunks of the transfer are received, null
+         * otherwise
+         */
+        public synchronized Map<String, double[]> add(byte[] chunk) {
+            ByteBuffer buffer = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a column chunk");
+            }
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unknown column chunk version " + version);
+            }
+            long transferId = buffer.getLong();
+            buffer.getInt(); // chunk index
+            int numberOfChunks = buffer.getInt();
+            int numberOfBlocks = buffer.getInt();
+
+            Transfer transfer = transfers.get(transferId);
+            if (transfer == null) {
+                transfer = new Transfer();
+                transfers.put(transferId, transfer);
+            }
+            for (int block = 0; block < numberOfBlocks; ++block) {
+                decodeBlock(buffer, transfer.columns);
+            }
+
+            if (++transfer.receivedChunks < numberOfChunks) {
+                return null;
+            }
+            transfers.remove(transferId);
+            return transfer.columns;
+        }
+
+        /**
+         * Decode block into its column.
+         */
+        private static void decodeBlock(ByteBuffer buffer, Map<String, double[]> columns) {
+            byte[] nameBytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            int columnLength = buffer.getInt();
+            int offset = buffer.getInt();
+            int count = buffer.getInt();
+            byte type = buffer.get();
+            byte compression = buffer.get();
+            byte[] payload = new byte[buffer.getInt()];
+            buffer.get(payload);
+
+            double[] column = columns.get(name);
+            if (column == null) {
+                column = new double[columnLength];
+                columns.put(name, column);
+            }
+
+            int rawLength = count * (type == TYPE_FLOAT ? 4 : 8);
+            if (compression == COMPRESSION_DEFLATE) {
+                payload = inflate(payload, rawLength);
+            }
+            ByteBuffer values = ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN);
+            if (type == TYPE_FLOAT) {
+                for (int i = 0; i < count; ++i) {
+                    column[offset + i] = values.getFloat();
+                }
+            } else {
+                values.asDoubleBuffer().get(column, offset, count);
+            }
+        }
+
+        /**
+         * Inflate data.
+         */
+        private static byte[] inflate(byte[] data, int length) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data);
+                byte[] buffer = new byte[length];
+                int inflated = 0;
+                while (inflated < length && !inflater.finished()) {
+                    int n = inflater.inflate(buffer, inflated, length - inflated);
+                    if (n == 0 && inflater.needsInput()) {
+                        break;
+                    }
+                    inflated += n;
+                }
+                if (inflated != length) {
+                    throw new IllegalArgumentException("Column block truncated");
+                }
+                return buffer;
+            } catch (DataFormatException ex) {
+                throw new IllegalArgumentException("Column block corrupt", ex);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
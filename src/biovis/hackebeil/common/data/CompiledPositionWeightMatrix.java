@@ -0,0 +1,393 @@
+/*******************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package biovis.hackebeil.common.data;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Position weight matrix compiled into flat score tables.
+ *
+ * The log-odds weights of both strands are stored as double[4 * length]
+ * indexed by position * 4 + base code (A=0, C=1, G=2, T=3, upper and lower
+ * case). Every other character is INVALID: a window containing it has no
+ * score (NEGATIVE_INFINITY). A base without weights scores
+ * NEGATIVE_INFINITY at every position.
+ *
+ * Windows are scored by adding the weights in order of position, so the
+ * results are identical to scoring with the weight lists. The kernels do
+ * not allocate; the medians use scratch buffers per thread.
+ *
+ * The exact median selects the middle scores in place (quickselect, sorting
+ * the remaining range if partitioning degenerates). Scores are never -0.0
+ * (sums start at 0.0), so this yields the same value as sorting. The
+ * approximate median counts the scores in a histogram of HISTOGRAM_BINS
+ * bins over the range of possible scores and interpolates within the bin
+ * of the median; its error is at most the bin width.
+ *
+ * @author Dirk Zeckzer
+ */
+public class CompiledPositionWeightMatrix {
+
+    public static final int INVALID = 4;
+
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+    private static final byte[] CODES = new byte[128];
+
+    static {
+        Arrays.fill(CODES, (byte) INVALID);
+        for (int code = 0; code < BASES.length; ++code) {
+            CODES[BASES[code]] = (byte) code;
+            CODES[Character.toLowerCase(BASES[code])] = (byte) code;
+        }
+    }
+
+    public static final int HISTOGRAM_BINS = 4096;
+    // partitioning rounds before quickselect falls back to sorting
+    private static final int MAX_SELECT_ROUNDS = 64;
+
+    private static final ThreadLocal<double[]> scratch = ThreadLocal.withInitial(() -> new double[1024]);
+    private static final ThreadLocal<int[]> histogramScratch = ThreadLocal.withInitial(() -> new int[HISTOGRAM_BINS]);
+
+    private final int length;
+    private final double[] forward;
+    private final double[] reverse;
+    private final double[][] strands;
+    // range of scores of windows without invalid characters
+    private final double minScore;
+    private final double maxScore;
+
+    /**
+     * Compile weight lists.
+     *
+     * @param pwm character to weights of forward strand
+     * @param pwmInverseComplement character to weights of reverse strand
+     * @param length number of positions scored
+     */
+    public CompiledPositionWeightMatrix(
+        Map<Character, List<Double>> pwm,
+        Map<Character, List<Double>> pwmInverseComplement,
+        int length
+    ) {
+        this.length = length;
+        this.forward = compile(pwm, length);
+        this.reverse = compile(pwmInverseComplement, length);
+        this.strands = new double[][]{forward, reverse};
+
+        double min = 0.0;
+        double max = 0.0;
+        for (int position = 0; position < length; ++position) {
+            double positionMin = Double.POSITIVE_INFINITY;
+            double positionMax = Double.NEGATIVE_INFINITY;
+            for (double[] table : strands) {
+                for (int code = 0; code < BASES.length; ++code) {
+                    double weight = table[position * 4 + code];
+                    if (weight != Double.NEGATIVE_INFINITY) {
+                        positionMin = Math.min(positionMin, weight);
+                        positionMax = Math.max(positionMax, weight);
+                    }
+                }
+            }
+            if (positionMax != Double.NEGATIVE_INFINITY) {
+                min += positionMin;
+                max += positionMax;
+            }
+        }
+        this.minScore = min;
+        this.maxScore = max;
+    }
+
+    private static double[] compile(
+        Map<Character, List<Double>> pwm,
+        int length
+    ) {
+        double[] table = new double[4 * length];
+        for (int code = 0; code < BASES.length; ++code) {
+            List<Double> weights = pwm.get(BASES[code]);
+            for (int position = 0; position < length; ++position) {
+                table[position * 4 + code] = weights == null
+                                             ? Double.NEGATIVE_INFINITY
+                                             : weights.get(position);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @param c character
+     * @return base code of character (INVALID if not A, C, G, T)
+     */
+    public static int code(char c) {
+        return c < CODES.length ? CODES[c] : INVALID;
+    }
+
+    /**
+     * @return number of positions scored
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Score window.
+     *
+     * @param table score table of one strand
+     * @param segment sequence
+     * @param start start of window
+     * @return score (NEGATIVE_INFINITY if window contains an invalid
+     * character)
+     */
+    private double score(
+        double[] table,
+        char[] segment,
+        int start
+    ) {
+        double result = 0.0;
+        for (int position = 0, index = 0; position < length; ++position, index += 4) {
+            int code = code(segment[start + position]);
+            if (code == INVALID) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            result += table[index + code];
+        }
+        return result;
+    }
+
+    /**
+     * Maximal score of all windows of both strands.
+     *
+     * @param segment sequence
+     * @param numberOfValues number of windows per strand
+     * @return maximal score (-Double.MAX_VALUE if no window has a score)
+     */
+    public double computeMax(
+        char[] segment,
+        int numberOfValues
+    ) {
+        double max = -Double.MAX_VALUE;
+        for (double[] table : strands) {
+            for (int start = 0; start < numberOfValues; ++start) {
+                double result = score(table, segment, start);
+                if (result != Double.NEGATIVE_INFINITY && result > max) {
+                    max = result;
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Number of windows of both strands with a score above the cutoff.
+     *
+     * @param segment sequence
+     * @param numberOfValues number of windows per strand
+     * @param cutoffValue cutoff
+     * @return number of windows
+     */
+    public int computeCutoff(
+        char[] segment,
+        int numberOfValues,
+        double cutoffValue
+    ) {
+        int count = 0;
+        for (double[] table : strands) {
+            for (int start = 0; start < numberOfValues; ++start) {
+                double result = score(table, segment, start);
+                if (result != Double.NEGATIVE_INFINITY && result > cutoffValue) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Median score of all windows of both strands having a score.
+     *
+     * @param segment sequence
+     * @param numberOfValues number of windows per strand
+     * @return median (-Double.MAX_VALUE if no window has a score)
+     */
+    public double computeMedian(
+        char[] segment,
+        int numberOfValues
+    ) {
+        double[] values = scratch.get();
+        if (values.length < 2 * numberOfValues) {
+            values = new double[2 * numberOfValues];
+            scratch.set(values);
+        }
+
+        int nonNulls = 0;
+        for (double[] table : strands) {
+            for (int start = 0; start < numberOfValues; ++start) {
+                double result = score(table, segment, start);
+                if (result != Double.NEGATIVE_INFINITY) {
+                    values[nonNulls++] = result;
+                }
+            }
+        }
+        if (nonNulls == 0) {
+            return -Double.MAX_VALUE;
+        }
+
+        // NaN scores (invalid weights) are sorted behind all other scores
+        int numbers = 0;
+        for (int i = 0; i < nonNulls; ++i) {
+            if (!Double.isNaN(values[i])) {
+                values[numbers++] = values[i];
+            }
+        }
+        int middle = nonNulls / 2;
+        if (middle >= numbers) {
+            return Double.NaN;
+        }
+        select(values, 0, numbers, middle);
+        if (nonNulls % 2 == 0) {
+            // lower middle: maximum of scores before the middle
+            double lower = values[0];
+            for (int i = 1; i < middle; ++i) {
+                if (values[i] > lower) {
+                    lower = values[i];
+                }
+            }
+            return (lower + values[middle]) / 2.0;
+        }
+        return values[middle];
+    }
+
+    /**
+     * Move the k-th smallest value of values[from, to) to position k, all
+     * smaller or equal values before, all larger or equal values after it.
+     *
+     * @param values values (no NaN)
+     * @param from first index
+     * @param to index after last value
+     * @param k position to select
+     */
+    private static void select(
+        double[] values,
+        int from,
+        int to,
+        int k
+    ) {
+        int left = from;
+        int right = to - 1;
+        for (int round = 0; right > left; ++round) {
+            if (round == MAX_SELECT_ROUNDS) {
+                Arrays.sort(values, left, right + 1);
+                return;
+            }
+            // median of three as pivot
+            int center = (left + right) >>> 1;
+            double a = values[left];
+            double b = values[center];
+            double c = values[right];
+            double pivot = a < b
+                           ? (b < c ? b : Math.max(a, c))
+                           : (a < c ? a : Math.max(b, c));
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    ++i;
+                }
+                while (values[j] > pivot) {
+                    --j;
+                }
+                if (i <= j) {
+                    double swap = values[i];
+                    values[i] = values[j];
+                    values[j] = swap;
+                    ++i;
+                    --j;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Approximate median score of all windows of both strands having a
+     * score, computed from a histogram of the scores.
+     *
+     * @param segment sequence
+     * @param numberOfValues number of windows per strand
+     * @return approximate median (-Double.MAX_VALUE if no window has a
+     * score)
+     */
+    public double computeApproximateMedian(
+        char[] segment,
+        int numberOfValues
+    ) {
+        int[] histogram = histogramScratch.get();
+        Arrays.fill(histogram, 0);
+        double binWidth = (maxScore - minScore) / HISTOGRAM_BINS;
+
+        int nonNulls = 0;
+        for (double[] table : strands) {
+            for (int start = 0; start < numberOfValues; ++start) {
+                double result = score(table, segment, start);
+                if (result != Double.NEGATIVE_INFINITY) {
+                    int bin = binWidth > 0.0 ? (int) ((result - minScore) / binWidth) : 0;
+                    ++histogram[Math.max(0, Math.min(HISTOGRAM_BINS - 1, bin))];
+                    ++nonNulls;
+                }
+            }
+        }
+        if (nonNulls == 0) {
+            return -Double.MAX_VALUE;
+        }
+
+        int middle = nonNulls / 2;
+        double upper = histogramValue(histogram, binWidth, middle);
+        if (nonNulls % 2 == 0) {
+            return (histogramValue(histogram, binWidth, middle - 1) + upper) / 2.0;
+        }
+        return upper;
+    }
+
+    /**
+     * Estimate the score of the given rank by linear interpolation within
+     * its histogram bin.
+     *
+     * @param histogram number of scores per bin
+     * @param binWidth width of bins
+     * @param rank rank of score (0: smallest)
+     * @return estimated score
+     */
+    private double histogramValue(
+        int[] histogram,
+        double binWidth,
+        int rank
+    ) {
+        int before = 0;
+        int bin = 0;
+        while (before + histogram[bin] <= rank) {
+            before += histogram[bin];
+            ++bin;
+        }
+        return minScore + binWidth * (bin + (rank - before + 0.5) / histogram[bin]);
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *****************************************************************************
+ */
+package biovis.hackebeil.common.data;
+
+/**
+ * Base composition features of segment sequences.
+ *
+ * @author Dirk Zeckzer
+ */
+public enum CompositionFeature {
+
+    // (C + G) / (A + C + G + T)
+    GC_FRACTION("GC fraction"),
+    // CpG * (A + C + G + T) / (C * G)
+    CPG_OBSERVED_EXPECTED("CpG observed/expected"),
+    // N / length
+    N_FRACTION("N fraction"),
+    // lower case characters / length
+    SOFT_MASKED_FRACTION("soft-masked fraction");
+
+    private final String name;
+
+    private CompositionFeature(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return name of feature (used as column name)
+     */
+    public String getName() {
+        return name;
+    }
+}
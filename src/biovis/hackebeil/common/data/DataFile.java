@@ -41,6 +41,12 @@ public class DataFile {
 
     private boolean useScoreValue;
 
+    // value of signal tracks (bedGraph, wiggle) per segment
+    public static final int SIGNAL_MEAN = 0;
+    public static final int SIGNAL_MAX = 1;
+    public static final int SIGNAL_INTEGRATED = 2;
+    private int signalStatisticValue = SIGNAL_MEAN;
+
     private int columnNumber = -1;
     private int dataListNumber = -1;
 
@@ -153,6 +159,14 @@ public class DataFile {
 
     }
 
+    public int getSignalStatistic() {
+        return signalStatisticValue;
+    }
+
+    public void setSignalStatistic(int signalStatistic) {
+        this.signalStatisticValue = signalStatistic;
+    }
+
     public int getId() {
         return id;
     }
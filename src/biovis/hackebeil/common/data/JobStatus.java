@@ -0,0 +1,89 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *****************************************************************************
+ */
+package biovis.hackebeil.common.data;
+
+/**
+ * State of a server job, sent to the client whenever it changes.
+ *
+ * @author zeckzer
+ */
+public class JobStatus {
+
+    public static final String QUEUED = "queued";
+    public static final String RUNNING = "running";
+    public static final String DONE = "done";
+    public static final String CANCELLED = "cancelled";
+    public static final String FAILED = "failed";
+
+    private long id;
+    // server command of the job
+    private String command;
+    private String state;
+    // progress in percent (running jobs)
+    private int progress;
+
+    /**
+     *
+     * @param id job id
+     * @param command server command
+     * @param state state
+     * @param progress progress in percent
+     */
+    public JobStatus(
+        long id,
+        String command,
+        String state,
+        int progress
+    ) {
+        this.id = id;
+        this.command = command;
+        this.state = state;
+        this.progress = progress;
+    }
+
+    /**
+     * @return true iff the job is done, cancelled or failed
+     */
+    public boolean isFinished() {
+        return DONE.equals(state)
+               || CANCELLED.equals(state)
+               || FAILED.equals(state);
+    }
+
+    @Override
+    public String toString() {
+        return "Job " + id + " (" + command + "): " + state
+               + (RUNNING.equals(state) ? " " + progress + "%" : "");
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public int getProgress() {
+        return progress;
+    }
+}
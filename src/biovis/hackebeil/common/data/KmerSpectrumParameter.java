@@ -0,0 +1,76 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *****************************************************************************
+ */
+package biovis.hackebeil.common.data;
+
+import java.util.List;
+
+/**
+ * Parameters of a k-mer spectrum computation.
+ *
+ * @author zeckzer
+ */
+public class KmerSpectrumParameter {
+
+    // maximal length of k-mers
+    public static final int MAX_K = 10;
+
+    private int k;
+    private boolean canonical;
+    // k-mers exposed as motif columns (motifs of length k)
+    private List<Motif> selection;
+
+    /**
+     *
+     * @param k length of k-mers
+     * @param canonical true: count k-mer and reverse complement together
+     * @param selection k-mers exposed as motif columns
+     */
+    public KmerSpectrumParameter(
+        int k,
+        boolean canonical,
+        List<Motif> selection
+    ) {
+        this.k = k;
+        this.canonical = canonical;
+        this.selection = selection;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public void setK(int k) {
+        this.k = k;
+    }
+
+    public boolean isCanonical() {
+        return canonical;
+    }
+
+    public void setCanonical(boolean canonical) {
+        this.canonical = canonical;
+    }
+
+    public List<Motif> getSelection() {
+        return selection;
+    }
+
+    public void setSelection(List<Motif> selection) {
+        this.selection = selection;
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *****************************************************************************
+ */
+package biovis.hackebeil.common.data;
+
+/**
+ * Result of a k-mer spectrum computation sent to the client: count of each
+ * k-mer in all segments. K-mers are coded with 2 bits per base (A, C, G, T),
+ * the first base in the highest bits.
+ *
+ * @author zeckzer
+ */
+public class KmerSpectrumTotals {
+
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+    private int k;
+    private boolean canonical;
+    // [k-mer code]
+    private long[] totals;
+
+    /**
+     *
+     * @param k length of k-mers
+     * @param canonical true: k-mer and reverse complement counted together
+     * (counts at the smaller code)
+     * @param totals count of each k-mer
+     */
+    public KmerSpectrumTotals(
+        int k,
+        boolean canonical,
+        long[] totals
+    ) {
+        this.k = k;
+        this.canonical = canonical;
+        this.totals = totals;
+    }
+
+    /**
+     * @param code k-mer code
+     * @return k-mer
+     */
+    public String getKmer(int code) {
+        char[] kmer = new char[k];
+        for (int i = k - 1; i >= 0; --i) {
+            kmer[i] = BASES[code & 3];
+            code >>>= 2;
+        }
+        return new String(kmer);
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public boolean isCanonical() {
+        return canonical;
+    }
+
+    public long[] getTotals() {
+        return totals;
+    }
+}
@@ -30,9 +30,15 @@ public class Messages {
     public static final String SERVER_addAdditionalData = "addAdditionalData";
     public static final String SERVER_addMotif = "addMotif";
     public static final String SERVER_addPWM = "addPWM";
+    public static final String SERVER_addSequenceFeatures = "addSequenceFeatures";
+    public static final String SERVER_addKmerSpectrum = "addKmerSpectrum";
     public static final String SERVER_startCorrelation = "startCorrelation";
     public static final String SERVER_startFateOfCodeComputation = "startFateOfCodeComputation";
     public static final String SERVER_exportSegmentation = "exportSegmentation";
+    public static final String SERVER_saveSession = "saveSession";
+    public static final String SERVER_restoreSession = "restoreSession";
+    public static final String SERVER_cancelJob = "cancelJob";
+    public static final String SERVER_getBreakSegments = "getBreakSegments";
     public static final String QUIT = "QUIT";
 
     public static final String CLIENT_ECHO = "ECHO";
@@ -42,6 +48,7 @@ public class Messages {
     public static final String CLIENT_Segmentation = "[Segmentation] results";
     public static final String CLIENT_SegmentationCodeCounts = "[SegmentationCodeCounts] results";
     public static final String CLIENT_SegmentationBreakSegments = "[SegmentationBreakSegments] result";
+    public static final String CLIENT_SegmentationBreakSegmentPage = "[SegmentationBreakSegments] page";
     public static final String CLIENT_SegmentationSegmentPairs = "[SegmentationSegmentPairs] result";
     public static final String CLIENT_SegmentationSegmentShortSegmentPairs = "[SegmentationSegmentShortSegmentPairs] result";
     public static final String CLIENT_SegmentationShortSegmentSegmentPairs = "[SegmentationShortSegmentSegmentPairs] result";
@@ -52,7 +59,11 @@ public class Messages {
     public static final String CLIENT_AdditionalData = "[ADDITIONALDATAWORKER] results";
     public static final String CLIENT_Motifs = "[MOTIFWORKER] results";
     public static final String CLIENT_PWM = "[PWMWORKER] results";
+    public static final String CLIENT_SequenceComposition = "[SequenceFeatureWorker] composition results";
+    public static final String CLIENT_KmerSpectrum = "[KmerSpectrumWorker] results";
     public static final String CLIENT_SegmentationLength = "[SegmentationLengthWorker] result";
     public static final String CLIENT_Correlation = "[CorrelationWorker] results";
     public static final String CLIENT_FateOfCode = "[FateOfCodeWorker] results";
+    public static final String CLIENT_Session = "[Session] result";
+    public static final String CLIENT_JobStatus = "[JobScheduler] status";
 }
@@ -23,6 +23,8 @@ public class Motif
     extends MotifBase {
 
     private String motif;
+    // maximal number of mismatching positions of an occurrence
+    private int maxMismatches = 0;
 
     public Motif() {
         super();
@@ -38,11 +40,21 @@ public class Motif
         return this.motif;
     }
 
+    public void setMaxMismatches(int maxMismatches) {
+        this.maxMismatches = maxMismatches;
+    }
+
+    public int getMaxMismatches() {
+        return this.maxMismatches;
+    }
+
     @Override
     public String getMotifId() {
         if (motifId == null) {
             motifId = motif;
         }
-        return motifId + "-" + (isNormalizedValue ? "Density" : "Count");
+        return motifId
+               + (maxMismatches > 0 ? "-" + maxMismatches + "Mismatches" : "")
+               + "-" + (isNormalizedValue ? "Density" : "Count");
     }
 }
@@ -21,7 +21,6 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +38,7 @@ public class PositionWeightMatrix
     public static final int COMPUTATION_METHOD_MEDIAN = 1;
     public static final int COMPUTATION_METHOD_MAX = 2;
     public static final int COMPUTATION_METHOD_CUTOFF = 3;
+    public static final int COMPUTATION_METHOD_MEDIAN_APPROXIMATE = 4;
 
     public static final int PWM_COUNT = 1;
     public static final int PWM_RELATIVE = 2;
@@ -49,6 +49,7 @@ public class PositionWeightMatrix
 
     private Map<Character, List<Double>> pwm;
     private Map<Character, List<Double>> pwmInverseComplement;
+    private transient CompiledPositionWeightMatrix compiledPwm;
     private int numberOfCharacters;
     private int length;
     private int computationMethod = COMPUTATION_METHOD_MEDIAN;
@@ -82,6 +83,17 @@ public class PositionWeightMatrix
         if (filePathValue.endsWith(".mat")) {
             loadPwmMat(filePathValue);
         }
+        compiledPwm = new CompiledPositionWeightMatrix(pwm, pwmInverseComplement, length);
+    }
+
+    /**
+     * @return score tables (compiled on first use if not loaded)
+     */
+    private CompiledPositionWeightMatrix getCompiledPwm() {
+        if (compiledPwm == null) {
+            compiledPwm = new CompiledPositionWeightMatrix(pwm, pwmInverseComplement, length);
+        }
+        return compiledPwm;
     }
 
     /**
@@ -272,6 +284,7 @@ public class PositionWeightMatrix
         switch (computationMethod) {
             case COMPUTATION_METHOD_MAX:
             case COMPUTATION_METHOD_MEDIAN:
+            case COMPUTATION_METHOD_MEDIAN_APPROXIMATE:
                 setIsNormalized(false);
                 break;
             default:
@@ -287,7 +300,9 @@ public class PositionWeightMatrix
     ) {
         switch (computationMethod) {
             case COMPUTATION_METHOD_MEDIAN:
-                return computePWMMedian(segment);
+                return computePWMMedian(segment, false);
+            case COMPUTATION_METHOD_MEDIAN_APPROXIMATE:
+                return computePWMMedian(segment, true);
             case COMPUTATION_METHOD_MAX:
                 return computePWMMax(segment);
             case COMPUTATION_METHOD_CUTOFF:
@@ -304,136 +319,29 @@ public class PositionWeightMatrix
     }
 
     private double computePWMMedian(
-        char[] segment
+        char[] segment,
+        boolean approximate
     ) {
         int numberOfValues = segment.length - length;
         if (numberOfValues < 1) {
             System.err.println("Segment is shorter than the PWM: " + segment.length + " < " + length);
             return -Double.MAX_VALUE;
         }
-
-        double median = 0.0;
-        int totalNumberOfValues = numberOfValues * 2;
-        int numberOfNulls = 0;
-        double[] result = new double[totalNumberOfValues];
-
-        for (int start = 0; start < numberOfValues; ++start) {
-            result[start] = computeSingleValue(pwm, segment, start);
-            if (result[start] == Double.NEGATIVE_INFINITY) {
-                ++numberOfNulls;
-            }
-            result[start + numberOfValues] = computeSingleValue(pwmInverseComplement, segment, start);
-            if (result[start + numberOfValues] == Double.NEGATIVE_INFINITY) {
-                ++numberOfNulls;
-            }
-        }
-
-        Arrays.sort(result);
-
-        int nonNulls = totalNumberOfValues - numberOfNulls;
-        try {
-            if (nonNulls > 0) {
-                if (nonNulls % 2 == 0) {
-                    median = (result[numberOfNulls + nonNulls / 2 - 1] + result[numberOfNulls + nonNulls / 2]) / 2.0;
-                } else {
-                    median = result[numberOfNulls + nonNulls / 2];
-                }
-                return median;
-            } else {
-                return -Double.MAX_VALUE;
-            }
-        } catch (Exception ex) {
-            System.out.println("Exception thrown: " + ex);
-            System.out.println(numberOfNulls + "|" + nonNulls + "|" + totalNumberOfValues + "|" + result.length);
-            System.out.println((nonNulls / 2));
-            System.out.println((numberOfNulls + nonNulls / 2 - 1) + "|" + +(numberOfNulls + nonNulls / 2));
-            return -Double.MAX_VALUE;
-        }
+        return approximate
+               ? getCompiledPwm().computeApproximateMedian(segment, numberOfValues)
+               : getCompiledPwm().computeMedian(segment, numberOfValues);
     }
 
     private double computePWMMax(
         char[] segment
     ) {
-        double max = -Double.MAX_VALUE;
-        int numberOfValues = segment.length - length;
-
-        max = computePWMMaxLoop(numberOfValues, segment, max, pwm);
-        max = computePWMMaxLoop(numberOfValues, segment, max, pwmInverseComplement);
-
-        return max;
-    }
-
-    private double computePWMMaxLoop(
-        int numberOfValues,
-        char[] segment,
-        double max,
-        Map<Character, List<Double>> pwm
-    ) {
-        double result;
-        for (int start = 0; start < numberOfValues; ++start) {
-            result = computeSingleValue(pwm, segment, start);
-            if (result != Double.NEGATIVE_INFINITY) {
-                if (result > max) {
-                    max = result;
-                }
-            }
-        }
-        return max;
+        return getCompiledPwm().computeMax(segment, segment.length - length);
     }
 
     private int computePWMCutoff(
         char[] segment
     ) {
-        int count = 0;
-        int numberOfValues = segment.length - length;
-
-        count = computePWMCutoffLoop(numberOfValues, segment, count, pwm);
-        count = computePWMCutoffLoop(numberOfValues, segment, count, pwmInverseComplement);
-
-        return count;
-    }
-
-    private int computePWMCutoffLoop(
-        int numberOfValues,
-        char[] segment,
-        int count,
-        Map<Character, List<Double>> pwm
-    ) {
-        double result;
-        for (int start = 0; start < numberOfValues; ++start) {
-            result = computeSingleValue(pwm, segment, start);
-            if (result != Double.NEGATIVE_INFINITY) {
-                if (result > cutoffValue) {
-                    ++count;
-                }
-            }
-        }
-        return count;
-    }
-
-    private double computeSingleValue(
-        Map<Character, List<Double>> pwm,
-        char[] segment,
-        int start
-    ) {
-        double result = 0.0;
-        List<Double> weightList;
-        for (int position = 0; position < length; ++position) {
-            weightList = pwm.get(segment[start + position]);
-            if (weightList != null) {
-                result += weightList.get(position);
-            } else {
-                return Double.NEGATIVE_INFINITY;
-            }
-        }
-
-        /*
-        if (result != Double.NEGATIVE_INFINITY && result < 0) {
-            System.out.println("DZ: " + result +  " < 0 ");
-            System.out.println("segment: " + String.valueOf(segment));
-        }
-        */
-        return result;
+        return getCompiledPwm().computeCutoff(segment, segment.length - length, cutoffValue);
     }
 
     public double getCutoffValue() {
@@ -456,6 +364,9 @@ public class PositionWeightMatrix
             case COMPUTATION_METHOD_MEDIAN:
                 motifId += "-Median";
                 break;
+            case COMPUTATION_METHOD_MEDIAN_APPROXIMATE:
+                motifId += "-ApproximateMedian";
+                break;
             case COMPUTATION_METHOD_MAX:
                 motifId += "-Max";
                 break;
@@ -64,6 +64,15 @@ public class Segment {
         setNucleotids("");
     }
 
+    /**
+     * Constructor for subclasses keeping location, code, and values
+     * elsewhere (no maps are allocated). Subclasses have to override all
+     * accessors of these fields.
+     */
+    protected Segment() {
+        nucleotids = "";
+    }
+
     /**
      * Get location.
      *
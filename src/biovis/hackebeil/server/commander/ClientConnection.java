@@ -0,0 +1,257 @@
+/**
+ *  Copyright 2016 Lydia Müller, Dirk Zeckzer
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package biovis.hackebeil.server.commander;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import biovislib.remoteControl.Commander;
+import biovislib.remoteControl.CommanderException;
+
+/**
+ * Outbound messages of one client: a bounded queue and a sender thread.
+ *
+ * Worker threads only enqueue; the sender thread does the network I/O, so
+ * a slow client delays neither the workers nor the other clients.
+ *
+ * Policies:
+ * - progress messages (sent with a key) replace a queued message with the
+ *   same key at its position in the queue,
+ * - if the queue is full, a new progress message is dropped, otherwise the
+ *   oldest queued progress message is dropped,
+ * - if the queue is full of results, the client is too slow and offer
+ *   fails; the caller disconnects it.
+ *
+ * @author Dirk Zeckzer
+ */
+public class ClientConnection {
+
+    private static final Logger log = Logger.getLogger("ClientConnection");
+
+    /**
+     * Queued message.
+     */
+    private static class Message {
+
+        private Object command;
+        // progress key (null: result, never replaced)
+        private final String key;
+        private final long queued = System.nanoTime();
+
+        Message(Object command, String key) {
+            this.command = command;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Owner informed about a lost connection.
+     */
+    interface ConnectionListener {
+
+        /**
+         * Sending failed, the connection is lost.
+         *
+         * @param connection connection
+         */
+        void connectionLost(ClientConnection connection);
+    }
+
+    private final String hash;
+    private final Commander commander;
+    private final int capacity;
+    private final ConnectionListener listener;
+
+    private final ArrayDeque<Message> queue = new ArrayDeque<>();
+    // queued progress messages by key
+    private final Map<String, Message> progress = new HashMap<>();
+    private boolean closed = false;
+
+    // Delivery metrics
+    private long sent = 0;
+    private long coalesced = 0;
+    private long dropped = 0;
+    private long failed = 0;
+    private int maxQueueLength = 0;
+    private long deliveryNanos = 0;
+
+    /**
+     * Constructor: starts the sender thread.
+     *
+     * @param hash client hash
+     * @param commander commander of the client
+     * @param capacity maximal number of queued messages
+     * @param listener owner
+     */
+    ClientConnection(
+        String hash,
+        Commander commander,
+        int capacity,
+        ConnectionListener listener
+    ) {
+        this.hash = hash;
+        this.commander = commander;
+        this.capacity = Math.max(1, capacity);
+        this.listener = listener;
+
+        Thread sender = new Thread(this::deliver, "ClientConnection " + hash);
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Enqueue message, never waits.
+     *
+     * @param command command
+     * @param key progress key (null: result)
+     * @return false iff the connection is closed or overloaded
+     */
+    public synchronized boolean offer(Object command, String key) {
+        if (closed) {
+            return false;
+        }
+
+        if (key != null) {
+            Message pending = progress.get(key);
+            if (pending != null) {
+                pending.command = command;
+                ++coalesced;
+                return true;
+            }
+        }
+
+        if (queue.size() >= capacity) {
+            if (key != null) {
+                ++dropped;
+                return true;
+            }
+            if (!dropOldestProgress()) {
+                return false;
+            }
+        }
+
+        Message message = new Message(command, key);
+        queue.addLast(message);
+        if (key != null) {
+            progress.put(key, message);
+        }
+        maxQueueLength = Math.max(maxQueueLength, queue.size());
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Remove oldest queued progress message. Caller holds the lock.
+     *
+     * @return false iff only results are queued
+     */
+    private boolean dropOldestProgress() {
+        Iterator<Message> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Message message = iterator.next();
+            if (message.key != null) {
+                iterator.remove();
+                progress.remove(message.key);
+                ++dropped;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Close connection: queued messages are dropped, the sender stops.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        dropped += queue.size();
+        queue.clear();
+        progress.clear();
+        notifyAll();
+    }
+
+    /**
+     * Sender thread: send queued messages in order.
+     */
+    private void deliver() {
+        while (true) {
+            Message message;
+            synchronized (this) {
+                while (queue.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        closed = true;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                message = queue.pollFirst();
+                if (message.key != null) {
+                    // later progress is queued again
+                    progress.remove(message.key);
+                }
+            }
+
+            try {
+                commander.executeCommand(message.command);
+                synchronized (this) {
+                    ++sent;
+                    deliveryNanos += System.nanoTime() - message.queued;
+                }
+            } catch (CommanderException | IOException e) {
+                log.log(Level.WARNING, "Lost connection to {0}", commander.getHost());
+                synchronized (this) {
+                    ++failed;
+                }
+                close();
+                listener.connectionLost(this);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return delivery metrics
+     */
+    public synchronized String getStatistics() {
+        return "client " + hash
+               + ": sent " + sent
+               + ", coalesced " + coalesced
+               + ", dropped " + dropped
+               + ", failed " + failed
+               + ", queued " + queue.size()
+               + ", max queued " + maxQueueLength
+               + ", mean delivery " + (sent == 0 ? 0 : deliveryNanos / sent / 1000000) + " ms";
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public String getHost() {
+        return commander.getHost();
+    }
+}
@@ -15,11 +15,9 @@
  */
 package biovis.hackebeil.server.commander;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,16 +31,19 @@ import biovislib.remoteControl.CommanderException;
  * @author nhinzmann
  *
  */
-public class ServerCommander {
+public class ServerCommander
+    implements ClientConnection.ConnectionListener {
 
     private Logger log = Logger.getLogger("ServerCommander");
 
+    // maximal number of queued messages per client
+    private static final int QUEUE_CAPACITY = 1024;
+
     private String serverHost;
     private int hostPort;
-    private HashMap<String, Commander> nCommanders = new HashMap<>();
-    private Commander commander = null;
+    private HashMap<String, ClientConnection> nCommanders = new HashMap<>();
 
-    private int active = 0;
+    private volatile int active = 0;
     private double oldProgress = 0.0;
     private int counter = 0;
 
@@ -52,9 +53,12 @@ public class ServerCommander {
     private void initCommander(String hash) {
         AddressContainer host = new AddressContainer(serverHost, hostPort);
         try {
-            commander = new Commander(host);
-            nCommanders.put(hash, commander);
-            active++;
+            Commander commander = new Commander(host);
+            ClientConnection old = nCommanders.put(hash, new ClientConnection(hash, commander, QUEUE_CAPACITY, this));
+            if (old != null) {
+                old.close();
+            }
+            active = nCommanders.size();
         } catch (CommanderException cEx) {
             cEx.printStackTrace();
         }
@@ -74,7 +78,8 @@ public class ServerCommander {
     }
 
     /**
-     * Send command.
+     * Send command to all clients. The command is queued for each client
+     * and sent by its sender thread, the caller never waits.
      *
      * @param command command
      */
@@ -89,20 +94,33 @@ public class ServerCommander {
             }
         }
 
-        Set<Entry<String, Commander>> entrySet = nCommanders.entrySet();
-        ArrayList<Entry<String, Commander>> entryList = new ArrayList<>();
-        entryList.addAll(entrySet);
-        // log.info("entryList-size: "+Integer.toString(entryList.size()));
-        for (int i = 0; i < entryList.size(); i++) {
-            Commander com = entryList.get(i).getValue();
-            try {
-                com.executeCommand(command);
-            } catch (CommanderException | IOException e) {
-                log.log(Level.WARNING, "Lost connection to {0}", com.getHost());
-                nCommanders.remove(entryList.get(i).getKey());
-                if (nCommanders.isEmpty()) {
-                    active--;
-                }
+        offer(command, null);
+    }
+
+    /**
+     * Send progress to all clients. A queued progress message with the same
+     * key is replaced, if the queue is full the message is dropped.
+     *
+     * @param command command
+     * @param key progress key (e.g., command and job)
+     */
+    public synchronized void sendProgress(Object command, String key) {
+        offer(command, key);
+    }
+
+    /**
+     * Queue command for all clients, disconnect overloaded clients.
+     * Caller holds the lock.
+     *
+     * @param command command
+     * @param key progress key (null: result)
+     */
+    private void offer(Object command, String key) {
+        ArrayList<ClientConnection> connections = new ArrayList<>(nCommanders.values());
+        for (ClientConnection connection : connections) {
+            if (!connection.offer(command, key)) {
+                log.log(Level.WARNING, "Client {0} does not receive messages", connection.getHost());
+                remove(connection);
             }
         }
     }
@@ -114,25 +132,46 @@ public class ServerCommander {
      * @param host host
      */
     public synchronized void sendCommand(Object command, String host) {
-        try {
-            nCommanders.get(host).executeCommand(command);
-        } catch (Exception e) {
-            // System.err.println("+++++++++++++++++++++++++++++++++++");
-            // logger.log(Level.WARNING, "Lost connection to {0}", host);
-            // logger.log(Level.WARNING, "Clients {0}",clients.size());
-            // logger.log(Level.WARNING, "commanders {0}",commanders.size());
-            // System.err.println("+++++++++++++++++++++++++++++++++++");
-            nCommanders.remove(host);
-            if (nCommanders.isEmpty()) {
-                active--;
-            }
+        ClientConnection connection = nCommanders.get(host);
+        if (connection != null && !connection.offer(command, null)) {
+            remove(connection);
+        }
+    }
+
+    @Override
+    public synchronized void connectionLost(ClientConnection connection) {
+        remove(connection);
+    }
+
+    /**
+     * Remove client. Caller holds the lock.
+     *
+     * @param connection connection of client
+     */
+    private void remove(ClientConnection connection) {
+        connection.close();
+        if (nCommanders.get(connection.getHash()) == connection) {
+            nCommanders.remove(connection.getHash());
+        }
+        active = nCommanders.size();
+        log.info(connection.getStatistics());
+    }
+
+    /**
+     * @return delivery metrics of all clients
+     */
+    public synchronized List<String> getStatistics() {
+        List<String> statistics = new ArrayList<>();
+        for (ClientConnection connection : nCommanders.values()) {
+            statistics.add(connection.getStatistics());
         }
+        return statistics;
     }
 
     /**
      * Is server active?
      *
-     * @return true iff server is active
+     * @return number of connected clients
      */
     public int isActive() {
         return active;
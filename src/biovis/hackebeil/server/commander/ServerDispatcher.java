@@ -15,6 +15,7 @@
  */
 package biovis.hackebeil.server.commander;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -24,29 +25,45 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 
+import biovis.hackebeil.common.data.AnalysisScope;
+import biovis.hackebeil.common.data.BreakSegment;
+import biovis.hackebeil.common.data.BreakSegmentPage;
+import biovis.hackebeil.common.data.ColumnCodec;
 import biovis.hackebeil.common.data.DataFile;
 import biovis.hackebeil.common.data.FateOfCodeParameter;
+import biovis.hackebeil.common.data.JobStatus;
+import biovis.hackebeil.common.data.KmerSpectrumParameter;
+import biovis.hackebeil.common.data.KmerSpectrumTotals;
 import biovis.hackebeil.common.data.Messages;
 import biovis.hackebeil.common.data.Segment;
+import biovis.hackebeil.common.data.CompositionFeature;
 import biovis.hackebeil.common.data.Motif;
 import biovis.hackebeil.common.data.PositionWeightMatrix;
-import biovis.hackebeil.server.data.BedFileLoader;
+import biovis.hackebeil.server.data.KmerSpectrum;
+import biovis.hackebeil.server.data.ScopeFilter;
 import biovis.hackebeil.server.data.ServerCache;
+import biovis.hackebeil.server.data.SessionSnapshot;
 import biovis.hackebeil.server.io.DataIO;
+import biovis.hackebeil.server.job.JobScheduler;
 import biovis.hackebeil.server.worker.AdditionalDataWorker;
 import biovis.hackebeil.server.worker.CorrelationWorker;
 import biovis.hackebeil.server.worker.FateOfCodeWorker;
 import biovis.hackebeil.server.worker.IndexWorker;
+import biovis.hackebeil.server.worker.KmerSpectrumWorker;
 import biovis.hackebeil.server.worker.segmentation.SegmentationWorker;
+import biovis.hackebeil.server.worker.SequenceFeatureWorker;
 import biovis.hackebeil.server.worker.motifWorker.MotifWorkerMotifParallel;
 import biovis.hackebeil.server.worker.positionWeightMatrix.PWMWorker;
 import biovis.hackebeil.server.worker.segmentation.BreakSegmentWorker;
+import biovis.hackebeil.server.worker.segmentation.CodeMatrixWorker;
 import biovis.hackebeil.server.worker.segmentation.SegmentPairWorker;
 import biovis.hackebeil.server.worker.segmentation.ShortSegmentWorker;
 import biovislib.remoteControl.CommandDispatcherInterface;
 import java.lang.reflect.Modifier;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Based on biovis.sierra.server.Commander.PeakDispatcher
@@ -59,12 +76,24 @@ public class ServerDispatcher
 
     private static final Logger log = Logger.getLogger("ServerDispatcher");
 
+    // maximal number of commands computed at the same time
+    private static final int MAX_RUNNING_JOBS = 2;
+    // job group of commands changing features
+    private static final String FEATURE_GROUP = "features";
+
+    // job priorities (higher first)
+    private static final int PRIORITY_INTERACTIVE = 2;
+    private static final int PRIORITY_FEATURE = 1;
+    private static final int PRIORITY_ANALYSIS = 0;
+
     private ServerMapper server;
     private ServerCommander serverCommander = new ServerCommander();
     private ServerCache cache;
 
     private Gson gson = new Gson();
 
+    private final JobScheduler jobScheduler = new JobScheduler(MAX_RUNNING_JOBS, this::sendJobStatus);
+
     /**
      * @param serverMapper
      * @param serverCache
@@ -75,6 +104,110 @@ public class ServerDispatcher
     ) {
         this.server = serverMapper;
         this.cache = serverCache;
+
+        // commands replacing genome or segments run alone
+        jobScheduler.setExclusive(Messages.SERVER_clear);
+        jobScheduler.setExclusive(Messages.SERVER_createIndex);
+        jobScheduler.setExclusive(Messages.SERVER_loadIndex);
+        jobScheduler.setExclusive(Messages.SERVER_startSegmentation);
+        jobScheduler.setExclusive(Messages.SERVER_restoreSession);
+        // commands reading all values run after all earlier jobs, so they
+        // see their results and no later job changes the values meanwhile
+        jobScheduler.setExclusive(Messages.SERVER_exportSegmentation);
+        jobScheduler.setExclusive(Messages.SERVER_saveSession);
+        // commands changing the feature lists and values run one at a time
+        // in order of submission; correlation reads the values
+        for (String command : new String[]{Messages.SERVER_addAdditionalData,
+                                           Messages.SERVER_addMotif,
+                                           Messages.SERVER_addPWM,
+                                           Messages.SERVER_addSequenceFeatures,
+                                           Messages.SERVER_addKmerSpectrum,
+                                           Messages.SERVER_startCorrelation}) {
+            jobScheduler.setGroup(command, FEATURE_GROUP);
+        }
+        jobScheduler.setLimit(FEATURE_GROUP, 1);
+        // pages only read the break segments
+        jobScheduler.setLimit(Messages.SERVER_getBreakSegments, MAX_RUNNING_JOBS);
+        jobScheduler.setLimit(Messages.SERVER_startFateOfCodeComputation, 1);
+    }
+
+    /**
+     * Priority of a command: short, interactive commands before single
+     * feature requests before long analyses (segmentation, indexing,
+     * correlation, fate of code). Exclusive commands do not overtake
+     * earlier jobs, whatever their priority.
+     *
+     * @param command server command
+     * @return priority (higher first)
+     */
+    private static int getPriority(String command) {
+        switch (command) {
+            case Messages.SERVER_getBreakSegments:
+            case Messages.SERVER_exportSegmentation:
+            case Messages.SERVER_saveSession:
+                return PRIORITY_INTERACTIVE;
+            case Messages.SERVER_addAdditionalData:
+            case Messages.SERVER_addMotif:
+            case Messages.SERVER_addPWM:
+            case Messages.SERVER_addSequenceFeatures:
+            case Messages.SERVER_addKmerSpectrum:
+                return PRIORITY_FEATURE;
+            default:
+                return PRIORITY_ANALYSIS;
+        }
+    }
+
+    /**
+     * Cancel job: command[1] job id.
+     *
+     * @param command
+     */
+    private void cancelJob(Object[] command) {
+        Object id = command[1];
+        long jobId = id instanceof Number
+                     ? ((Number) id).longValue()
+                     : Long.parseLong(id.toString());
+        if (!jobScheduler.cancel(jobId)) {
+            log.log(Level.INFO, "No queued or running job {0}", jobId);
+        }
+    }
+
+    /**
+     * Send feature values to client as binary column chunks.
+     *
+     * @param message client message
+     * @param values feature name to values
+     */
+    private void sendColumns(String message, Map<String, List<Double>> values) {
+        if (serverCommander.isActive() > 0) {
+            List<byte[]> chunks = ColumnCodec.encode(values);
+            log.log(Level.INFO, "{0}: {1} chunks", new Object[]{message, chunks.size()});
+            for (byte[] chunk : chunks) {
+                Object[] answer = new Object[2];
+                answer[0] = message;
+                answer[1] = chunk;
+                serverCommander.sendCommand(answer);
+            }
+        }
+    }
+
+    /**
+     * Send job status to client.
+     *
+     * @param status job status
+     */
+    private void sendJobStatus(JobStatus status) {
+        if (serverCommander.isActive() > 0) {
+            Object[] answer = new Object[2];
+            answer[0] = Messages.CLIENT_JobStatus;
+            answer[1] = gson.toJson(status);
+            if (status.isFinished()) {
+                serverCommander.sendCommand(answer);
+            } else {
+                // queued/running states of a job supersede each other
+                serverCommander.sendProgress(answer, Messages.CLIENT_JobStatus + " " + status.getId());
+            }
+        }
     }
 
     /**
@@ -85,78 +218,113 @@ public class ServerDispatcher
         String scommand = (String) command[0];
 
         log.log(Level.INFO, "Command received: {0}", scommand);
-        new Thread(() -> {
-            // try {
-            // Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            // JsonParser jp = new JsonParser();
-            // JsonElement je = jp.parse((String) command[1]);
-            // String prettyJsonString = gson.toJson(je);
-            // FileOutputStream out = new FileOutputStream("ServerDispatcher_" +
-            // scommand + ".json");
-            //
-            // out.write(prettyJsonString.getBytes());
-            // out.close();
-            // } catch (Exception e) {
-            // e.printStackTrace();
-            // }
-            switch (scommand) {
-                case Messages.SERVER_setClient:
-                    log.info("set client");
-                    setClient(command);
-                    break;
-                case Messages.SERVER_credentials:
-                    log.info("received credentials");
-                    setCredentials(command);
-                    break;
-                case Messages.SERVER_clear:
-                    log.info("server clear");
-                    clear();
-                    break;
-                case Messages.SERVER_createIndex:
-                    log.info("create Index");
-                    createIndex(command);
-                    break;
-                case Messages.SERVER_loadIndex:
-                    log.info("load Index");
-                    loadIndex(command);
-                    break;
-                case Messages.SERVER_startSegmentation:
-                    log.info("start Segmentation");
-                    computeSegmentation(command);
-                    break;
-                case Messages.SERVER_addAdditionalData:
-                    log.info("start Additional Data");
-                    computeAdditionalData(command);
-                    break;
-                case Messages.SERVER_addMotif:
-                    log.info("start Motif search");
-                    computeMotifs(command);
-                    break;
-                case Messages.SERVER_addPWM:
-                    log.info("start PWM computation");
-                    computePWM(command);
-                    break;
-                case Messages.SERVER_startCorrelation:
-                    log.info("start Correlation");
-                    computeCorrelation(command);
-                    break;
-                case Messages.SERVER_startFateOfCodeComputation:
-                    log.info("start Fate-of-Code computation");
-                    computeFateOfCode(command);
-                    break;
-                case Messages.SERVER_exportSegmentation:
-                    log.info("export Segmentation");
-                    exportSegmentation(command);
-                    break;
-                case Messages.QUIT:
-                    log.info("quit");
-                    dispatchQuit(command);
-                    break;
-                default:
-                    log.log(Level.INFO, "Received unknown command: {0}", scommand);
-                    break;
-            }
-        }).start();
+        switch (scommand) {
+            case Messages.SERVER_setClient:
+            case Messages.SERVER_credentials:
+            case Messages.SERVER_cancelJob:
+            case Messages.QUIT:
+                // control commands are not queued
+                new Thread(() -> {
+                    execute(command);
+                }).start();
+                break;
+            default:
+                jobScheduler.submit(scommand, getPriority(scommand), () -> {
+                    execute(command);
+                });
+                break;
+        }
+    }
+
+    /**
+     * Execute command.
+     *
+     * @param command
+     */
+    private void execute(Object[] command) {
+        String scommand = (String) command[0];
+
+        switch (scommand) {
+            case Messages.SERVER_setClient:
+                log.info("set client");
+                setClient(command);
+                break;
+            case Messages.SERVER_credentials:
+                log.info("received credentials");
+                setCredentials(command);
+                break;
+            case Messages.SERVER_clear:
+                log.info("server clear");
+                clear();
+                break;
+            case Messages.SERVER_createIndex:
+                log.info("create Index");
+                createIndex(command);
+                break;
+            case Messages.SERVER_loadIndex:
+                log.info("load Index");
+                loadIndex(command);
+                break;
+            case Messages.SERVER_startSegmentation:
+                log.info("start Segmentation");
+                computeSegmentation(command);
+                break;
+            case Messages.SERVER_addAdditionalData:
+                log.info("start Additional Data");
+                computeAdditionalData(command);
+                break;
+            case Messages.SERVER_addMotif:
+                log.info("start Motif search");
+                computeMotifs(command);
+                break;
+            case Messages.SERVER_addPWM:
+                log.info("start PWM computation");
+                computePWM(command);
+                break;
+            case Messages.SERVER_addSequenceFeatures:
+                log.info("start sequence feature computation");
+                computeSequenceFeatures(command);
+                break;
+            case Messages.SERVER_addKmerSpectrum:
+                log.info("start k-mer spectrum computation");
+                computeKmerSpectrum(command);
+                break;
+            case Messages.SERVER_startCorrelation:
+                log.info("start Correlation");
+                computeCorrelation(command);
+                break;
+            case Messages.SERVER_startFateOfCodeComputation:
+                log.info("start Fate-of-Code computation");
+                computeFateOfCode(command);
+                break;
+            case Messages.SERVER_exportSegmentation:
+                log.info("export Segmentation");
+                exportSegmentation(command);
+                break;
+            case Messages.SERVER_saveSession:
+                log.info("save Session");
+                saveSession(command);
+                break;
+            case Messages.SERVER_restoreSession:
+                log.info("restore Session");
+                restoreSession(command);
+                break;
+            case Messages.SERVER_getBreakSegments:
+                log.info("get break segments");
+                getBreakSegments(command);
+                break;
+            case Messages.SERVER_cancelJob:
+                log.info("cancel job");
+                cancelJob(command);
+                break;
+            case Messages.QUIT:
+                log.info("quit");
+                dispatchQuit(command);
+                break;
+            default:
+                log.log(Level.INFO, "Received unknown command: {0}", scommand);
+                break;
+        }
     }
 
     /**
@@ -243,11 +411,21 @@ public class ServerDispatcher
     }
 
     /**
+     * command[1]: reference data files, command[2]: minimal segment length,
+     * command[3] (optional): analysis scope (missing or null: whole genome),
+     * command[4] (optional): true: also compute segment pair transition
+     * probabilities
+     *
      * @param command
      */
     private void computeSegmentation(Object[] command) {
         String dataFileList = (String) command[1];
         Integer minSegmentLength = (Integer) command[2];
+        AnalysisScope scope = null;
+        if (command.length > 3 && command[3] != null) {
+            scope = gson.fromJson((String) command[3], AnalysisScope.class);
+        }
+        boolean segmentPairTransitions = command.length > 4 && Boolean.TRUE.equals(command[4]);
 
         List<DataFile> list = gson.fromJson(dataFileList,
                                             new TypeToken<ArrayList<DataFile>>() {
@@ -261,23 +439,39 @@ public class ServerDispatcher
             log.info("No elements found for segmentation!");
             return;
         }
-        cache.setReferenceList(list);
-        cache.setMinSegmentLength(minSegmentLength);
-        computeLengthDistributionReferenceDataSets(list);
-
+        ScopeFilter scopeFilter = null;
+        if (scope != null && !scope.isGenomeWide()) {
+            try {
+                scopeFilter = new ScopeFilter(scope);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                log.info("Analysis scope could not be read!");
+                return;
+            }
+        }
         SegmentationWorker segmentationWorker = new SegmentationWorker();
 //            SegmentationWorkerD segmentationWorker = new SegmentationWorkerD();
         segmentationWorker.setRefFiles(list);
         segmentationWorker.setSeqLengths(cache.getSeqLengths());
         segmentationWorker.setSeqStart(cache.getSeqStart());
-        if (segmentationWorker.doSegmentation(minSegmentLength)) {
+        segmentationWorker.setNumberOfThreads(cache.getNumberOfThreads());
+        segmentationWorker.setScope(scopeFilter);
+        boolean segmented = segmentationWorker.doSegmentation(minSegmentLength);
+        // length distributions were computed while loading the reference data sets
+        sendLengthDistributionReferenceDataSets(list);
+        if (segmented) {
+            // settings are stored only with their segments: a cancelled or
+            // failed segmentation keeps the previous state
+            cache.setReferenceList(list);
+            cache.setMinSegmentLength(minSegmentLength);
+            cache.setScopeFilter(scopeFilter);
             cache.setSegments(segmentationWorker.getSegments());
             sendSegmentationStatistics(segmentationWorker);
 
             BreakSegmentWorker breakSegmentWorker = new BreakSegmentWorker(segmentationWorker);
             sendBreakSegments(breakSegmentWorker);
 
-            SegmentPairWorker segmentPairWorker = new SegmentPairWorker(segmentationWorker, 200);
+            SegmentPairWorker segmentPairWorker = new SegmentPairWorker(segmentationWorker, 200, segmentPairTransitions);
             sendSegmentPairs(segmentPairWorker);
 
             ShortSegmentWorker shortSegmentWorker = new ShortSegmentWorker(segmentationWorker);
@@ -332,18 +526,17 @@ public class ServerDispatcher
     private void sendBreakSegments(BreakSegmentWorker breakSegmentWorker) {
         log.log(Level.INFO, "send break segments start");
 
+        cache.setBreakSegments(breakSegmentWorker.getBreakSegmentList());
         if (breakSegmentWorker.getBreakSegmentList().isEmpty()) {
             return;
         }
 
-        // Send information about break segments to client
+        // Send aggregated break segments to client, the list is sent on demand
         if (serverCommander.isActive() > 0) {
             Object[] answer = new Object[2];
             answer[0] = Messages.CLIENT_SegmentationBreakSegments;
             Gson toGson = new GsonBuilder().create();
-            // Type listOfResults = new
-            // TypeToken<List<DataPoint>>(){}.getType();
-            answer[1] = toGson.toJson(breakSegmentWorker.getBreakSegmentList());
+            answer[1] = toGson.toJson(createCodeMatrixWorker().computeBreakSegments(breakSegmentWorker.getBreakSegmentList()));
             serverCommander.sendCommand(answer);
             // log.info("SEND SegmentationTrashLengthWorker: done(" +
             // trashLengths.size() + ")");
@@ -352,6 +545,38 @@ public class ServerDispatcher
         log.log(Level.INFO, "send break segments end");
     }
 
+    /**
+     * @return worker aggregating code pairs of the current segmentation
+     */
+    private CodeMatrixWorker createCodeMatrixWorker() {
+        return new CodeMatrixWorker(cache.getReferenceList().size(), cache.getNumberOfThreads());
+    }
+
+    /**
+     * Send break segments to client: command[1] offset, command[2] maximal
+     * number of break segments.
+     *
+     * @param command
+     */
+    private void getBreakSegments(Object[] command) {
+        List<BreakSegment> breakSegments = cache.getBreakSegments();
+        if (breakSegments == null) {
+            log.info("No break segments computed!");
+            return;
+        }
+        int total = breakSegments.size();
+        int offset = Math.max(0, Math.min(total, ((Number) command[1]).intValue()));
+        int end = Math.min(total, offset + Math.max(0, ((Number) command[2]).intValue()));
+
+        if (serverCommander.isActive() > 0) {
+            Object[] answer = new Object[2];
+            answer[0] = Messages.CLIENT_SegmentationBreakSegmentPage;
+            BreakSegmentPage page = new BreakSegmentPage(offset, total, new ArrayList<>(breakSegments.subList(offset, end)));
+            answer[1] = gson.toJson(page);
+            serverCommander.sendCommand(answer);
+        }
+    }
+
     /**
      * Send segment information to client.
      *
@@ -359,6 +584,7 @@ public class ServerDispatcher
      */
     private void sendSegmentPairs(SegmentPairWorker segmentPairWorker) {
         log.log(Level.INFO, "send segments pairs start");
+        CodeMatrixWorker codeMatrixWorker = createCodeMatrixWorker();
 
         // Send information about segment pairs to client
         if (serverCommander.isActive() > 0) {
@@ -367,7 +593,7 @@ public class ServerDispatcher
             Gson toGson = new GsonBuilder().create();
             // Type listOfResults = new
             // TypeToken<List<DataPoint>>(){}.getType();
-            answer[1] = toGson.toJson(segmentPairWorker.getSegmentPairMap());
+            answer[1] = toGson.toJson(codeMatrixWorker.computePairs(segmentPairWorker.getSegmentPairs()));
             serverCommander.sendCommand(answer);
             // log.info("SEND SegmentationTrashLengthWorker: done(" +
             // trashLengths.size() + ")");
@@ -380,7 +606,7 @@ public class ServerDispatcher
             Gson toGson = new GsonBuilder().create();
             // Type listOfResults = new
             // TypeToken<List<DataPoint>>(){}.getType();
-            answer[1] = toGson.toJson(segmentPairWorker.getSegmentShortSegmentPairMap());
+            answer[1] = toGson.toJson(codeMatrixWorker.computePairs(segmentPairWorker.getSegmentShortSegmentPairs()));
             serverCommander.sendCommand(answer);
             // log.info("SEND SegmentationTrashLengthWorker: done(" +
             // trashLengths.size() + ")");
@@ -393,7 +619,7 @@ public class ServerDispatcher
             Gson toGson = new GsonBuilder().create();
             // Type listOfResults = new
             // TypeToken<List<DataPoint>>(){}.getType();
-            answer[1] = toGson.toJson(segmentPairWorker.getShortSegmentSegmentPairMap());
+            answer[1] = toGson.toJson(codeMatrixWorker.computePairs(segmentPairWorker.getShortSegmentSegmentPairs()));
             serverCommander.sendCommand(answer);
             // log.info("SEND SegmentationTrashLengthWorker: done(" +
             // trashLengths.size() + ")");
@@ -406,7 +632,7 @@ public class ServerDispatcher
             Gson toGson = new GsonBuilder().create();
             // Type listOfResults = new
             // TypeToken<List<DataPoint>>(){}.getType();
-            answer[1] = toGson.toJson(segmentPairWorker.getSegmentPairRelationMap());
+            answer[1] = toGson.toJson(segmentPairWorker.getSegmentPairRelation());
             serverCommander.sendCommand(answer);
             // log.info("SEND SegmentationTrashLengthWorker: done(" +
             // trashLengths.size() + ")");
@@ -476,29 +702,22 @@ public class ServerDispatcher
     }
 
     /**
-     * Compute length distribution of peaks in reference data sets.
+     * Send length distribution of peaks in reference data sets.
      *
      * @param dataFiles data files
      */
-    public void computeLengthDistributionReferenceDataSets(
+    public void sendLengthDistributionReferenceDataSets(
         List<DataFile> dataFiles
     ) {
-        new Thread(() -> {
-            log.info("Start length count");
+        if (serverCommander.isActive() > 0) {
+            Gson toGson = new GsonBuilder().excludeFieldsWithModifiers(Modifier.STATIC).create();
             for (DataFile df : dataFiles) {
-                BedFileLoader.readLengths(df);
-                if (serverCommander.isActive() > 0) {
-                    Object[] answer = new Object[2];
-                    answer[0] = Messages.CLIENT_SegmentationLength;
-                    Gson toGson = new GsonBuilder().excludeFieldsWithModifiers(Modifier.STATIC).create();
-                    // Type listOfResults = new
-                    // TypeToken<List<DataPoint>>(){}.getType();
-                    answer[1] = toGson.toJson(df);
-                    serverCommander.sendCommand(answer);
-                }
+                Object[] answer = new Object[2];
+                answer[0] = Messages.CLIENT_SegmentationLength;
+                answer[1] = toGson.toJson(df);
+                serverCommander.sendCommand(answer);
             }
-            log.info("End length count");
-        }).start();
+        }
     }
 
     /**
@@ -516,6 +735,8 @@ public class ServerDispatcher
             AdditionalDataWorker additionalDataWorker = new AdditionalDataWorker();
 //            AdditionalDataWorkerD additionalDataWorker = new AdditionalDataWorkerD();
             additionalDataWorker.setSegments(cache.getSegments());
+            additionalDataWorker.setNumberOfThreads(cache.getNumberOfThreads());
+            additionalDataWorker.setScope(cache.getScopeFilter());
 
             if (additionalDataWorker.compute(dfList)) {
                 cache.setSegments(additionalDataWorker.getSegments());
@@ -529,19 +750,9 @@ public class ServerDispatcher
                     }
                     additionalDataValues.put(dataSetName, valuesForAdditionalData);
                 }
-                cache.setModifications(dfList, additionalDataValues);
+                cache.setModifications(dfList);
 
-                if (serverCommander.isActive() > 0) {
-                    Object[] answer = new Object[2];
-                    answer[0] = Messages.CLIENT_AdditionalData;
-                    Gson toGson = new Gson();
-                    String results = toGson.toJson(additionalDataValues);
-                    // String results =
-                    // toGson.toJson(additionalDataWorker.getTableOfDataSegment());
-                    // System.out.println(results.substring(0, 500));
-                    answer[1] = results;
-                    serverCommander.sendCommand(answer);
-                }
+                sendColumns(Messages.CLIENT_AdditionalData, additionalDataValues);
             }
         }
     }
@@ -562,17 +773,10 @@ public class ServerDispatcher
 
             log.log(Level.INFO, "Put motifs into cache");
             Map<String, List<Double>> motifValues = motifWorker.getMotifValues();
-            cache.setMotifs(motifList, motifValues);
+            cache.setMotifs(motifList);
 
             log.log(Level.INFO, "Motif send command");
-            if (serverCommander.isActive() > 0) {
-                Object[] answer = new Object[2];
-                answer[0] = Messages.CLIENT_Motifs;
-                Gson toGson = new Gson();
-                String results = toGson.toJson(motifValues);
-                answer[1] = results;
-                serverCommander.sendCommand(answer);
-            }
+            sendColumns(Messages.CLIENT_Motifs, motifValues);
         } else {
             log.info("segments is null");
         }
@@ -593,15 +797,120 @@ public class ServerDispatcher
 
             log.log(Level.INFO, "Put PWM into cache");
             Map<String, List<Double>> pwmValues = pwmWorker.getPWMValues();
-            cache.setPWM(pwmList, pwmValues);
+            cache.setPWM(pwmList);
 
             log.log(Level.INFO, "PWM send command");
+            sendColumns(Messages.CLIENT_PWM, pwmValues);
+        } else {
+            log.info("segments is null");
+        }
+    }
+
+    /**
+     * Compute motifs, PWMs and composition features in one pass over the
+     * segments.
+     *
+     * @param command motif list, PWM list, composition feature list (JSON)
+     */
+    private void computeSequenceFeatures(Object[] command) {
+        List<Motif> motifList = gson.fromJson((String) command[1],
+                                              new TypeToken<ArrayList<Motif>>() {
+                                              }.getType());
+        List<PositionWeightMatrix> pwmList = gson.fromJson((String) command[2],
+                                                           new TypeToken<ArrayList<PositionWeightMatrix>>() {
+                                                           }.getType());
+        List<CompositionFeature> compositionList = gson.fromJson((String) command[3],
+                                                                 new TypeToken<ArrayList<CompositionFeature>>() {
+                                                                 }.getType());
+        if (cache.getSegments() != null) {
+            SequenceFeatureWorker sequenceFeatureWorker = new SequenceFeatureWorker(cache);
+            sequenceFeatureWorker.setMotifList(motifList);
+            sequenceFeatureWorker.setPWMList(pwmList);
+            sequenceFeatureWorker.setCompositionList(compositionList);
+            sequenceFeatureWorker.compute();
+
+            log.log(Level.INFO, "Put sequence features into cache");
+            if (!motifList.isEmpty()) {
+                cache.setMotifs(motifList);
+            }
+            if (!pwmList.isEmpty()) {
+                cache.setPWM(pwmList);
+            }
+
+            log.log(Level.INFO, "Sequence features send command");
+            if (!motifList.isEmpty()) {
+                sendColumns(Messages.CLIENT_Motifs, sequenceFeatureWorker.getMotifValues());
+            }
+            if (!pwmList.isEmpty()) {
+                sendColumns(Messages.CLIENT_PWM, sequenceFeatureWorker.getPWMValues());
+            }
             if (serverCommander.isActive() > 0) {
-                Object[] answer = new Object[2];
-                answer[0] = Messages.CLIENT_PWM;
                 Gson toGson = new Gson();
-                String results = toGson.toJson(pwmValues);
-                answer[1] = results;
+                if (!compositionList.isEmpty()) {
+                    Object[] answer = new Object[2];
+                    answer[0] = Messages.CLIENT_SequenceComposition;
+                    answer[1] = toGson.toJson(sequenceFeatureWorker.getCompositionValues());
+                    serverCommander.sendCommand(answer);
+                }
+            }
+        } else {
+            log.info("segments is null");
+        }
+    }
+
+    /**
+     * Compute the k-mer spectrum of the segments and expose the selected
+     * k-mers as motifs. The k-mer motifs are added to the cached motifs
+     * (replacing motifs with the same id).
+     *
+     * @param command k-mer spectrum parameter (JSON)
+     */
+    private void computeKmerSpectrum(Object[] command) {
+        KmerSpectrumParameter parameter = gson.fromJson((String) command[1],
+                                                        new TypeToken<KmerSpectrumParameter>() {
+                                                        }.getType());
+        if (cache.getSegments() != null) {
+            KmerSpectrumWorker kmerSpectrumWorker = new KmerSpectrumWorker(cache);
+            try {
+                kmerSpectrumWorker.compute(parameter.getK(), parameter.isCanonical());
+            } catch (IllegalArgumentException e) {
+                log.log(Level.WARNING, e.getMessage());
+                return;
+            }
+            cache.setKmerSpectrum(kmerSpectrumWorker.getSpectrum());
+
+            List<Motif> selection = parameter.getSelection();
+            if (selection != null && !selection.isEmpty()) {
+                kmerSpectrumWorker.computeMotifs(selection);
+                List<Motif> kmerMotifs = kmerSpectrumWorker.getMotifList();
+                Set<String> kmerMotifIds = new HashSet<>();
+                for (Motif motif : kmerMotifs) {
+                    kmerMotifIds.add(motif.getMotifId());
+                }
+                List<Motif> motifList = new ArrayList<>();
+                if (cache.getMotifList() != null) {
+                    for (Motif motif : cache.getMotifList()) {
+                        if (!kmerMotifIds.contains(motif.getMotifId())) {
+                            motifList.add(motif);
+                        }
+                    }
+                }
+                motifList.addAll(kmerMotifs);
+                cache.setMotifs(motifList);
+            }
+
+            log.log(Level.INFO, "k-mer spectrum send command");
+            if (selection != null && !selection.isEmpty()) {
+                sendColumns(Messages.CLIENT_Motifs, kmerSpectrumWorker.getMotifValues());
+            }
+            if (serverCommander.isActive() > 0) {
+                Gson toGson = new Gson();
+                Object[] answer = new Object[2];
+                answer[0] = Messages.CLIENT_KmerSpectrum;
+                KmerSpectrum spectrum = kmerSpectrumWorker.getSpectrum();
+                answer[1] = toGson.toJson(new KmerSpectrumTotals(spectrum.getK(),
+                                                                 spectrum.isCanonical(),
+                                                                 spectrum.getTotals()));
                 serverCommander.sendCommand(answer);
             }
         } else {
@@ -662,6 +971,108 @@ public class ServerDispatcher
         DataIO.exportData(filename, cache);
     }
 
+    /**
+     * Save analysis state to a session snapshot.
+     *
+     * @param command
+     */
+    private void saveSession(Object[] command) {
+        String filename = (String) command[1];
+        String result;
+        try {
+            SessionSnapshot.save(filename, cache);
+            result = "Session saved to " + filename;
+        } catch (IOException ioEx) {
+            log.log(Level.SEVERE, "Can't save session", ioEx);
+            result = "Can't save session: " + ioEx.getMessage();
+        } catch (RuntimeException ex) {
+            log.log(Level.SEVERE, "Can't save session", ex);
+            result = "Can't save session: " + ex;
+        }
+        sendSessionResult(result);
+    }
+
+    /**
+     * Restore analysis state from a session snapshot.
+     *
+     * @param command
+     */
+    private void restoreSession(Object[] command) {
+        String filename = (String) command[1];
+        String result;
+        try {
+            SessionSnapshot.restore(filename, cache);
+            sendRestoredSession();
+            result = "Session restored from " + filename;
+        } catch (IOException ioEx) {
+            log.log(Level.SEVERE, "Can't restore session", ioEx);
+            result = "Can't restore session: " + ioEx.getMessage();
+        } catch (RuntimeException ex) {
+            log.log(Level.SEVERE, "Can't restore session", ex);
+            result = "Can't restore session: " + ex;
+        }
+        sendSessionResult(result);
+    }
+
+    /**
+     * Send the restored state to the client with the messages of the
+     * commands computing it: index, segmentation, additional data, motifs,
+     * PWMs and composition. Segment pair transitions are not part of a
+     * session.
+     */
+    private void sendRestoredSession() {
+        if (cache.getFilePathToRefGenome() != null
+            && !cache.getSeqLengths().isEmpty()
+            && serverCommander.isActive() > 0) {
+            Object[] answer = {Messages.CLIENT_IndexProgress, "Load successful"};
+            serverCommander.sendCommand(answer);
+        }
+
+        List<Segment> segments = cache.getAllSegments();
+        List<DataFile> referenceList = cache.getReferenceList();
+        if (segments == null || referenceList == null) {
+            return;
+        }
+        SegmentationWorker segmentationWorker = new SegmentationWorker();
+        segmentationWorker.setRefFiles(referenceList);
+        segmentationWorker.setSeqLengths(cache.getSeqLengths());
+        segmentationWorker.setSeqStart(cache.getSeqStart());
+        segmentationWorker.setNumberOfThreads(cache.getNumberOfThreads());
+        segmentationWorker.setScope(cache.getScopeFilter());
+        segmentationWorker.restoreSegmentation(segments);
+        sendLengthDistributionReferenceDataSets(referenceList);
+        sendSegmentationStatistics(segmentationWorker);
+        sendBreakSegments(new BreakSegmentWorker(segmentationWorker));
+        sendSegmentPairs(new SegmentPairWorker(segmentationWorker, 200, false));
+        ShortSegmentWorker shortSegmentWorker = new ShortSegmentWorker(segmentationWorker);
+        sendShortSegmentChains(shortSegmentWorker);
+        sendDroppedPeaks(shortSegmentWorker);
+
+        if (cache.getDfList() != null && !cache.getDfList().isEmpty()) {
+            sendColumns(Messages.CLIENT_AdditionalData, cache.getAdditionalDataValues());
+        }
+        if (cache.getMotifList() != null && !cache.getMotifList().isEmpty()) {
+            sendColumns(Messages.CLIENT_Motifs, cache.getMotifValues());
+        }
+        if (cache.getPWMList() != null && !cache.getPWMList().isEmpty()) {
+            sendColumns(Messages.CLIENT_PWM, cache.getPWMValues());
+        }
+        Map<String, List<Double>> compositionValues = cache.getCompositionValues();
+        if (!compositionValues.isEmpty() && serverCommander.isActive() > 0) {
+            Object[] answer = new Object[2];
+            answer[0] = Messages.CLIENT_SequenceComposition;
+            answer[1] = new Gson().toJson(compositionValues);
+            serverCommander.sendCommand(answer);
+        }
+    }
+
+    private void sendSessionResult(String result) {
+        if (serverCommander.isActive() > 0) {
+            Object[] answer = {Messages.CLIENT_Session, result};
+            serverCommander.sendCommand(answer);
+        }
+    }
+
     /**
      * Quit.
      *
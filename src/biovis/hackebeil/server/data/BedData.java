@@ -18,33 +18,26 @@
 package biovis.hackebeil.server.data;
 
 import biovis.hackebeil.common.data.Location;
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
+import biovis.hackebeil.common.data.ScoredLocation;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Class for handling bed files.
  *
+ * The locations are stored in an interval index.
+ *
  * @author müller, Dirk Zeckzer
  */
 public class BedData {
 
-    //chr        full 10.000  Locations
-    protected Map<String, Map<Integer, SortedSet<Location>>> data = null;
-    protected static final int INTERVAL_SIZE = 10000;
+    protected IntervalIndex index = null;
     protected String name;
 
     /**
@@ -53,17 +46,52 @@ public class BedData {
      * @param file name of the file to load
      */
     public BedData(String file) {
+        this(file, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file name of the file to load
+     * @param scored true iff scores (column 5, 0.0 if missing) should be loaded
+     */
+    protected BedData(String file, boolean scored) {
+        this(file, scored, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file name of the file to load
+     * @param scored true iff scores (column 5, 0.0 if missing) should be loaded
+     * @param visitor additional visitor called for each record while loading
+     * (may be null)
+     */
+    public BedData(String file, boolean scored, BedParser.BedVisitor visitor) {
+        this(file, scored, null, visitor);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file name of the file to load
+     * @param scored true iff scores (column 5, 0.0 if missing) should be loaded
+     * @param scope analysis scope, records outside are skipped (null: whole
+     * genome)
+     * @param visitor additional visitor called for each record while loading
+     * (may be null)
+     */
+    public BedData(String file, boolean scored, ScopeFilter scope, BedParser.BedVisitor visitor) {
         initName(file);
+        index = new IntervalIndex(scored);
 
         try {
-            if (file.endsWith("gz")) {
-                loadBedDataGZ(file);
-            } else {
-                loadBedDataPlain(file);
-            }
+            loadBedData(file, scope, visitor);
         } catch (Exception ex) {
             ex.printStackTrace();
         }
+
+        index.build();
     }
 
     /**
@@ -78,114 +106,76 @@ public class BedData {
     }
 
     /**
-     * Load data gzip format.
+     * Load data (plain text or gzip format).
      *
      * @param file name of file to load
+     * @param scope analysis scope (null: whole genome)
+     * @param visitor additional visitor (may be null)
+     * @throws IOException if file cannot be read
      */
-    private void loadBedDataGZ(String file) {
-        try (FileInputStream fis = new FileInputStream(file);
-             BufferedInputStream bis = new BufferedInputStream(fis);
-             GZIPInputStream gzis = new GZIPInputStream(bis);
-             InputStreamReader isr = new InputStreamReader(gzis)) {
-            loadBedData(isr);
-        } catch (IOException ioEx) {
-            ioEx.printStackTrace();
-        }
+    private void loadBedData(String file, ScopeFilter scope, BedParser.BedVisitor visitor)
+        throws IOException {
+        boolean scored = index.isScored();
+        BedParser.parse(file, scope, record -> {
+            if (scored) {
+                index.add(record.getChr(), record.getStart(), record.getEnd(), record.getScore());
+            } else {
+                index.add(record.getChr(), record.getStart(), record.getEnd());
+            }
+            if (visitor != null) {
+                visitor.visit(record);
+            }
+        });
     }
 
     /**
-     * Load data plain text format.
+     * Compute all overlapping locations.
      *
-     * @param file name of file to load
+     * @param loc location
+     * @return all overlapping locations, sorted
      */
-    private void loadBedDataPlain(String file) {
-        try (FileReader reader = new FileReader(file)) {
-            loadBedData(reader);
-        } catch (IOException ioEx) {
-            ioEx.printStackTrace();
+    public List<Location> overlappingWith(Location loc) {
+        List<Location> overlapLocs = new ArrayList<>();
+        String chr = loc.getChr();
+        if (index.isScored()) {
+            index.forEachOverlap(chr, loc.getStart(), loc.getEnd(),
+                                 (start, end, score) -> overlapLocs.add(new ScoredLocation(chr, start, end, score)));
+        } else {
+            index.forEachOverlap(chr, loc.getStart(), loc.getEnd(),
+                                 (start, end, score) -> overlapLocs.add(new Location(chr, start, end)));
         }
+        return overlapLocs;
     }
 
     /**
-     * load data from reader.
+     * Compute coverage of location by this bed data.
+     * Same as loc.coverage(overlappingWith(loc)).
      *
-     * @param reader reader to use
+     * @param loc location
+     * @return coverage
      */
-    private void loadBedData(Reader reader) {
-        //init data structure
-        data = new HashMap<>();
-
-        //open file
-        try (BufferedReader br = new BufferedReader(reader)) {
-            //read line-wise
-            while (br.ready()) {
-                // create current location
-                String[] line = br.readLine().split("\t");
-                String chr = line[0];
-                int start = Integer.parseInt(line[1]);
-                int end = Integer.parseInt(line[2]);
-                Location loc = new Location(chr, start, end);
-
-                // init chr container if necessary
-                if (!data.containsKey(chr)) {
-                    data.put(chr, new HashMap<>());
-                }
-
-                // calculate search interval containing start and end
-                int startInt = getIntervalStart(start);
-                int endInt = getIntervalStart(end);
-
-                // init search interval container and add location
-                for (; startInt <= endInt; startInt += INTERVAL_SIZE) {
-                    SortedSet<Location> locations = data.get(chr).get(startInt);
-                    if (locations == null) {
-                        data.get(chr).put(startInt, new TreeSet<>());
-                        locations = data.get(chr).get(startInt);
-                    }
-                    locations.add(loc);
-                }
-            }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    public double coverage(Location loc) {
+        return index.coverage(loc.getChr(), loc.getStart(), loc.getEnd());
     }
 
     /**
-     * compute interval start.
+     * Compute coverage score of location by this bed data.
+     * Same as ScoredLocation.coverageScore(loc, overlappingWith(loc)).
      *
-     * @param position position in genome
-     * @return interval border
+     * @param loc location
+     * @return coverage score (0.0 if bed data is not scored)
      */
-    protected static int getIntervalStart(int position) {
-        return (position / INTERVAL_SIZE) * INTERVAL_SIZE;
+    public double coverageScore(Location loc) {
+        return index.coverageScore(loc.getChr(), loc.getStart(), loc.getEnd());
     }
 
     /**
-     * Compute all overlapping locations.
+     * Get interval index.
      *
-     * @param loc location
-     * @return all overlapping locations
+     * @return interval index
      */
-    public List<Location> overlappingWith(Location loc) {
-        List<Location> overlapLocs = new ArrayList<>();
-        SortedSet<Location> locs = new TreeSet<>();
-
-        // get search intervals
-        int startInt = getIntervalStart(loc.getStart());
-        int endInt = getIntervalStart(loc.getEnd());
-        for (; startInt <= endInt; startInt += INTERVAL_SIZE) {
-            // add possible overlapping locations to HashSet --> removes duplicates
-            if (data.get(loc.getChr()) != null
-                && data.get(loc.getChr()).get(startInt) != null) {
-                locs.addAll(data.get(loc.getChr()).get(startInt));
-            }
-        }
-
-        // add unique locations to arraylist and return
-        overlapLocs.addAll(locs);
-        return overlapLocs;
+    public IntervalIndex getIndex() {
+        return index;
     }
 
     /**
@@ -197,19 +187,69 @@ public class BedData {
         SortedSet<Boundary> boundaries = new TreeSet<>();
 
         // iterate over all elements and add start and end as boundary to set
-        for (String chr : data.keySet()) {
-            Map<Integer, SortedSet<Location>> locationMap = data.get(chr);
-            for (Integer interval : locationMap.keySet()) {
-                for (Location loc : locationMap.get(interval)) {
-                    boundaries.add(new Boundary(chr, loc.getStart()));
-                    boundaries.add(new Boundary(chr, loc.getEnd() + 1));
-                }
+        for (String chr : index.getChromosomes()) {
+            int[] starts = index.getStarts(chr);
+            int[] ends = index.getEnds(chr);
+            for (int i = 0; i < starts.length; ++i) {
+                boundaries.add(new Boundary(chr, starts[i]));
+                boundaries.add(new Boundary(chr, ends[i] + 1));
             }
         }
 
         return boundaries;
     }
 
+    /**
+     * Get the names of all chromosomes containing at least one location.
+     *
+     * @return chromosome names
+     */
+    public Set<String> getChromosomes() {
+        return index.getChromosomes();
+    }
+
+    /**
+     * Compute the sorted boundary arrays of one chromosome.
+     *
+     * Index 0 contains the start positions and index 1 the end positions + 1
+     * of all well-formed locations (end &gt;= start), both sorted ascending.
+     * Index 2 contains the sorted boundaries (start and end + 1) of malformed
+     * locations, which delimit segments but never cover them.
+     *
+     * @param chr chromosome name
+     * @return boundary arrays (empty arrays if chromosome is unknown)
+     */
+    public int[][] getBoundaryArrays(String chr) {
+        int[] locStarts = index.getStarts(chr);
+        int[] locEnds = index.getEnds(chr);
+        int size = locStarts.length;
+
+        int[] starts = new int[size];
+        int[] ends = new int[size];
+        int[] malformed = new int[size * 2];
+        int wellFormed = 0;
+        int malformedCount = 0;
+        for (int i = 0; i < size; ++i) {
+            if (locEnds[i] >= locStarts[i]) {
+                starts[wellFormed] = locStarts[i];
+                ends[wellFormed] = locEnds[i] + 1;
+                ++wellFormed;
+            } else {
+                malformed[malformedCount++] = locStarts[i];
+                malformed[malformedCount++] = locEnds[i] + 1;
+            }
+        }
+
+        // starts are already sorted
+        starts = Arrays.copyOf(starts, wellFormed);
+        ends = Arrays.copyOf(ends, wellFormed);
+        malformed = Arrays.copyOf(malformed, malformedCount);
+        Arrays.sort(ends);
+        Arrays.sort(malformed);
+
+        return new int[][]{starts, ends, malformed};
+    }
+
     /**
      * Get name.
      *
@@ -17,126 +17,194 @@
  */
 package biovis.hackebeil.server.data;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.zip.GZIPInputStream;
-
 import biovis.hackebeil.common.data.DataFile;
-import java.io.Reader;
+import biovislib.parallel4.IterationInt;
+import biovislib.parallel4.Parallel2;
+import biovislib.parallel4.ParallelForInt2;
+import biovislib.parallel4.ParallelizationFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * @author: Dirk Zeckzer
  */
 public class BedFileLoader {
 
+    private static final Logger log = Logger.getLogger("BedFileLoader");
+
     /**
-     * @param df
+     * Load bed files in parallel, each file is parsed exactly once.
+     *
+     * @param dataFiles data files to load
+     * @param useScores true iff DataFile.getUseScore() selects scored bed data
+     * @param computeLengths true iff length distributions of the data files
+     * should be computed in the same pass
+     * @param threads number of threads
+     * @return bed data in the order of the data files
      */
-    public static void readLengths(DataFile df) {
-        try {
-            if (df.getFilePath().endsWith("gz")) {
-                readLengthsGZ(df);
-            } else {
-                readLengthsPlain(df);
-            }
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
+    public static List<BedData> loadBedFiles(
+            List<DataFile> dataFiles,
+            boolean useScores,
+            boolean computeLengths,
+            int threads
+    ) {
+        return loadBedFiles(dataFiles, useScores, computeLengths, null, threads);
     }
 
     /**
-     * @param df
+     * Load bed files in parallel, each file is parsed exactly once. Records
+     * outside of the scope are skipped while parsing (the length
+     * distributions contain only records in scope).
+     *
+     * @param dataFiles data files to load
+     * @param useScores true iff DataFile.getUseScore() selects scored bed data
+     * @param computeLengths true iff length distributions of the data files
+     * should be computed in the same pass
+     * @param scope analysis scope (null: whole genome)
+     * @param threads number of threads
+     * @return bed data in the order of the data files
      */
-    private static void readLengthsGZ(DataFile df) {
-        try (FileInputStream fis = new FileInputStream(new File(df.getFilePath()).getPath());
-                BufferedInputStream bis = new BufferedInputStream(fis);
-                GZIPInputStream gzis = new GZIPInputStream(bis);
-                InputStreamReader isr = new InputStreamReader(gzis)) {
-            readLengths(df, isr);
-        } catch (IOException ioEx) {
-            ioEx.printStackTrace();
-        }
+    public static List<BedData> loadBedFiles(
+            List<DataFile> dataFiles,
+            boolean useScores,
+            boolean computeLengths,
+            ScopeFilter scope,
+            int threads
+    ) {
+        final int numberOfFiles = dataFiles.size();
+        final BedData[] beds = new BedData[numberOfFiles];
+        final AtomicInteger readBeds = new AtomicInteger(0);
+
+        Parallel2 p2 = ParallelizationFactory.getInstance(Math.max(1, Math.min(threads, numberOfFiles)));
+        new ParallelForInt2(p2, 0, numberOfFiles).loop(new IterationInt() {
+            @Override
+            public void iteration(int currentFile) {
+                DataFile df = dataFiles.get(currentFile);
+                LengthCounter lengthCounter = computeLengths ? new LengthCounter() : null;
+
+                BedData bed;
+                if (useScores && df.getUseScore()) {
+                    bed = new ScoredBedData(df.getFilePath(), scope, lengthCounter);
+                } else {
+                    bed = new BedData(df.getFilePath(), false, scope, lengthCounter);
+                }
+                beds[currentFile] = bed;
+
+                if (lengthCounter != null) {
+                    synchronized (df) {
+                        lengthCounter.addTo(df);
+                    }
+                }
+
+                log.log(Level.INFO, "reading bed files: {0}/{1}", new Object[]{readBeds.incrementAndGet(), numberOfFiles});
+            }
+        });
+
+        return new ArrayList<>(Arrays.asList(beds));
     }
 
     /**
-     * Load data plain text format.
+     * Read length distributions (chromosome, thick, and block lengths).
      *
-     * @param file name of file to load
+     * @param df data file (plain text or gzip format)
      */
-    private static void readLengthsPlain(DataFile df) {
-        try (FileReader reader = new FileReader(new File(df.getFilePath()).getPath())) {
-            readLengths(df, reader);
-        } catch (IOException ioEx) {
-            ioEx.printStackTrace();
+    public static void readLengths(DataFile df) {
+        try {
+            LengthCounter lengthCounter = new LengthCounter();
+            BedParser.parse(df.getFilePath(), lengthCounter);
+            lengthCounter.addTo(df);
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
     }
 
     /**
-     * @param df
-     * @param reader
+     * Counts chromosome, thick, and block lengths of bed records.
      */
-    private static void readLengths(
-            DataFile df,
-            Reader reader
-    ) {
-        try (BufferedReader br = new BufferedReader(reader)) {
-            int lineNumber = 0;
-            while (br.ready()) {
-                // create current location
-                // System.out.println("Line:"+lineNumber);
-                String[] line = br.readLine().split("\t");
-
-                Integer chromLength = Integer.parseInt(line[2]) - Integer.parseInt(line[1]) + 1;
-                if (df.getChromLengths().containsKey(chromLength)) {
-                    Integer newVal = df.getChromLengths().get(chromLength) + 1;
-                    df.getChromLengths().replace(chromLength, newVal);
-                } else {
-                    df.getChromLengths().put(chromLength, 1);
+    private static class LengthCounter
+            implements BedParser.BedVisitor {
+
+        private final Histogram chromLengths = new Histogram();
+        private final Histogram thickLengths = new Histogram();
+        private final Histogram blockLengths = new Histogram();
+
+        @Override
+        public void visit(BedRecord record) {
+            chromLengths.add(record.getEnd() - record.getStart() + 1);
+
+            if (record.getColumnCount() >= 8) {
+                if (!record.hasThick()) {
+                    // invalid thick start or end: skip blocks
+                    return;
                 }
-                // System.out.print(" chromLength"+chromLength);
-
-                if (line.length >= 7) {
-                    Integer thickLength = 0;
-                    try {
-                        thickLength = Integer.parseInt(line[7]) - Integer.parseInt(line[6]) + 1;
-                    } catch (Exception e) {
-                        continue;
-                    }
-                    if (df.getThickLengths().containsKey(thickLength)) {
-                        Integer newVal = df.getThickLengths().get(thickLength) + 1;
-                        df.getThickLengths().replace(thickLength, newVal);
-                    } else {
-                        df.getThickLengths().put(thickLength, 1);
-                    }
+                thickLengths.add(record.getThickEnd() - record.getThickStart() + 1);
+            }
+
+            if (record.hasBlocks()) {
+                for (int i = 0; i < record.getBlockCount(); i++) {
+                    blockLengths.add(record.getBlockSize(i));
                 }
-                // System.out.print(" thickLength"+thickLength);
-                if (line.length > 10) {
-                    String[] blockLengths = line[10].split(",");
-                    for (int i = 0; i < blockLengths.length; i++) {
-                        int blockLength = Integer.parseInt(blockLengths[i]);
-                        if (df.getBlockLengths().containsKey(blockLength)) {
-                            Integer newVal = df.getBlockLengths().get(blockLength) + 1;
-                            df.getBlockLengths().replace(blockLength, newVal);
-                        } else {
-                            df.getBlockLengths().put(blockLength, 1);
-                        }
-                        // System.out.print(" blockLength("+i+")"+blockLength);
-                    }
+            }
+        }
+
+        /**
+         * Add counted lengths to length distributions of data file.
+         *
+         * @param df data file
+         */
+        private void addTo(DataFile df) {
+            chromLengths.addTo(df.getChromLengths());
+            thickLengths.addTo(df.getThickLengths());
+            blockLengths.addTo(df.getBlockLengths());
+        }
+    }
+
+    /**
+     * Length histogram: dense array for short lengths, map for all others.
+     */
+    private static class Histogram {
+
+        private static final int DENSE_SIZE = 1 << 16;
+
+        private int[] dense = new int[256];
+        private final Map<Integer, Integer> sparse = new HashMap<>();
+
+        /**
+         * Increment count of length.
+         *
+         * @param length length
+         */
+        private void add(int length) {
+            if (length >= 0 && length < DENSE_SIZE) {
+                if (length >= dense.length) {
+                    dense = Arrays.copyOf(dense, Math.min(DENSE_SIZE, Integer.highestOneBit(length) << 1));
                 }
-                // System.out.println();
+                ++dense[length];
+            } else {
+                sparse.merge(length, 1, Integer::sum);
+            }
+        }
 
-                lineNumber++;
+        /**
+         * Add counts to length distribution.
+         *
+         * @param lengths length distribution
+         */
+        private void addTo(Map<Integer, Integer> lengths) {
+            for (int length = 0; length < dense.length; ++length) {
+                if (dense[length] > 0) {
+                    lengths.merge(length, dense[length], Integer::sum);
+                }
+            }
+            for (Map.Entry<Integer, Integer> entry : sparse.entrySet()) {
+                lengths.merge(entry.getKey(), entry.getValue(), Integer::sum);
             }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
         }
     }
 }
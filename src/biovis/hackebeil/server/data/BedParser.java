@@ -0,0 +1,514 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ****************************************************************************
+ */
+package biovis.hackebeil.server.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming parser for bed files (plain or gzip).
+ *
+ * The file is read in large blocks from a channel and tokenized on the byte
+ * level. Columns are parsed directly into primitives of a reused BedRecord,
+ * so no objects are created per line. Chromosome names are created once per
+ * chromosome.
+ *
+ * Empty lines, comments (#) and track and browser lines are skipped.
+ * Lines with less than three columns or invalid start or end positions
+ * abort parsing with an IOException.
+ *
+ * If a scope is given, lines outside of it are skipped: the chromosome is
+ * checked before the line is split into columns (once per chromosome), the
+ * regions after start and end are parsed.
+ *
+ * @author Dirk Zeckzer
+ */
+public class BedParser {
+
+    /**
+     * Visitor for bed records.
+     */
+    public interface BedVisitor {
+
+        /**
+         * Visit one line. The record is reused for the next line.
+         *
+         * @param record current record
+         */
+        void visit(BedRecord record);
+    }
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int GZIP_BUFFER_SIZE = 1 << 16;
+    // mantissas up to 2^53 are exact
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    // powers of ten exactly representable as double
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22
+    };
+    private static final byte[] TRACK = "track".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BROWSER = "browser".getBytes(StandardCharsets.US_ASCII);
+
+    private final BedRecord record = new BedRecord();
+
+    // analysis scope (null: whole genome)
+    private final ScopeFilter scope;
+
+    // chromosome name cache
+    private final Map<String, String> chromosomes = new HashMap<>();
+    private byte[] lastChr = new byte[64];
+    private int lastChrLength = -1;
+    private boolean lastChrInScope = true;
+
+    // column boundaries of current line
+    private int[] columnStarts = new int[16];
+    private int[] columnEnds = new int[16];
+
+    // result of last number parsing
+    private boolean valid;
+
+    /**
+     * Constructor: parse all lines.
+     */
+    public BedParser() {
+        this(null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param scope analysis scope (null: whole genome)
+     */
+    public BedParser(ScopeFilter scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * Parse bed file. Files ending with gz are inflated while reading.
+     *
+     * @param file name of file to parse
+     * @param visitor visitor called for each record
+     * @throws IOException if file cannot be read or contains invalid lines
+     */
+    public static void parse(String file, BedVisitor visitor)
+        throws IOException {
+        parse(file, null, visitor);
+    }
+
+    /**
+     * Parse bed file, visiting only records overlapping the scope.
+     *
+     * @param file name of file to parse
+     * @param scope analysis scope (null: whole genome)
+     * @param visitor visitor called for each record in scope
+     * @throws IOException if file cannot be read or contains invalid lines
+     */
+    public static void parse(String file, ScopeFilter scope, BedVisitor visitor)
+        throws IOException {
+        new BedParser(scope).parseFile(file, visitor);
+    }
+
+    /**
+     * Parse bed file.
+     *
+     * @param file name of file to parse
+     * @param visitor visitor called for each record
+     * @throws IOException if file cannot be read or contains invalid lines
+     */
+    private void parseFile(String file, BedVisitor visitor)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            if (file.endsWith("gz")) {
+                try (InputStream gzis = new GZIPInputStream(Channels.newInputStream(channel), GZIP_BUFFER_SIZE);
+                     ReadableByteChannel inflated = Channels.newChannel(gzis)) {
+                    parse(inflated, visitor);
+                }
+            } else {
+                parse(channel, visitor);
+            }
+        }
+    }
+
+    /**
+     * Parse bed data from channel.
+     *
+     * @param channel channel to read from
+     * @param visitor visitor called for each record
+     * @throws IOException if channel cannot be read or contains invalid lines
+     */
+    public void parse(ReadableByteChannel channel, BedVisitor visitor)
+        throws IOException {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int filled = 0;
+        int lineStart = 0;
+        int scan = 0;
+        int lineNumber = 0;
+        boolean eof = false;
+
+        while (true) {
+            // process complete lines
+            for (int i = scan; i < filled; ++i) {
+                if (bytes[i] == '\n') {
+                    parseLine(bytes, lineStart, i, ++lineNumber, visitor);
+                    lineStart = i + 1;
+                }
+            }
+            scan = filled;
+
+            if (eof) {
+                // last line without line break
+                if (lineStart < filled) {
+                    parseLine(bytes, lineStart, filled, ++lineNumber, visitor);
+                }
+                break;
+            }
+
+            // move incomplete line to front, grow buffer for long lines
+            if (lineStart > 0) {
+                System.arraycopy(bytes, lineStart, bytes, 0, filled - lineStart);
+                filled -= lineStart;
+                scan -= lineStart;
+                lineStart = 0;
+            }
+            if (filled == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                buffer = ByteBuffer.wrap(bytes);
+            }
+
+            buffer.limit(bytes.length);
+            buffer.position(filled);
+            int read = channel.read(buffer);
+            if (read < 0) {
+                eof = true;
+            } else {
+                filled += read;
+            }
+        }
+    }
+
+    /**
+     * Parse one line.
+     *
+     * @param bytes buffer
+     * @param from start of line
+     * @param to end of line (exclusive, without line break)
+     * @param lineNumber line number
+     * @param visitor visitor
+     * @throws IOException if line is invalid
+     */
+    private void parseLine(
+        byte[] bytes,
+        int from,
+        int to,
+        int lineNumber,
+        BedVisitor visitor
+    ) throws IOException {
+        if (to > from && bytes[to - 1] == '\r') {
+            --to;
+        }
+        if (from == to
+            || bytes[from] == '#'
+            || isHeader(bytes, from, to, TRACK)
+            || isHeader(bytes, from, to, BROWSER)) {
+            return;
+        }
+
+        // skip chromosomes out of scope before splitting the line
+        if (scope != null) {
+            int chrEnd = from;
+            while (chrEnd < to && bytes[chrEnd] != '\t') {
+                ++chrEnd;
+            }
+            record.chr = chromosome(bytes, from, chrEnd);
+            if (!lastChrInScope) {
+                return;
+            }
+        }
+
+        // split columns
+        int columnCount = 0;
+        int columnStart = from;
+        for (int i = from; i <= to; ++i) {
+            if (i == to || bytes[i] == '\t') {
+                if (columnCount == columnStarts.length) {
+                    columnStarts = Arrays.copyOf(columnStarts, columnCount * 2);
+                    columnEnds = Arrays.copyOf(columnEnds, columnCount * 2);
+                }
+                columnStarts[columnCount] = columnStart;
+                columnEnds[columnCount] = i;
+                ++columnCount;
+                columnStart = i + 1;
+            }
+        }
+        if (columnCount < 3) {
+            throw new IOException("Invalid bed line " + lineNumber + ": less than 3 columns");
+        }
+
+        record.lineNumber = lineNumber;
+        record.columnCount = columnCount;
+        record.chr = chromosome(bytes, columnStarts[0], columnEnds[0]);
+
+        record.start = parseInt(bytes, columnStarts[1], columnEnds[1]);
+        if (!valid) {
+            throw new IOException("Invalid bed line " + lineNumber + ": invalid start");
+        }
+        record.end = parseInt(bytes, columnStarts[2], columnEnds[2]);
+        if (!valid) {
+            throw new IOException("Invalid bed line " + lineNumber + ": invalid end");
+        }
+        if (scope != null
+            && scope.hasRegions()
+            && !scope.overlaps(record.chr, record.start, record.end)) {
+            return;
+        }
+
+        // score
+        record.hasScore = false;
+        record.score = 0.0;
+        if (columnCount >= 5) {
+            double score = parseDouble(bytes, columnStarts[4], columnEnds[4]);
+            if (valid) {
+                record.hasScore = true;
+                record.score = score;
+            }
+        }
+
+        // thick start and end
+        record.hasThick = false;
+        if (columnCount >= 8) {
+            record.thickStart = parseInt(bytes, columnStarts[6], columnEnds[6]);
+            if (valid) {
+                record.thickEnd = parseInt(bytes, columnStarts[7], columnEnds[7]);
+                record.hasThick = valid;
+            }
+        }
+
+        // blocks
+        record.hasBlocks = false;
+        record.blockCount = 0;
+        if (columnCount >= 11) {
+            int blockCount = parseList(bytes, columnStarts[10], columnEnds[10], true);
+            if (valid) {
+                record.hasBlocks = true;
+                record.blockCount = blockCount;
+                if (columnCount < 12
+                    || parseList(bytes, columnStarts[11], columnEnds[11], false) != blockCount
+                    || !valid) {
+                    Arrays.fill(record.blockStarts, 0, blockCount, 0);
+                }
+            }
+        }
+
+        visitor.visit(record);
+    }
+
+    /**
+     * Check for header line (track, browser).
+     */
+    private static boolean isHeader(byte[] bytes, int from, int to, byte[] keyword) {
+        if (to - from < keyword.length) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length; ++i) {
+            if (bytes[from + i] != keyword[i]) {
+                return false;
+            }
+        }
+        return to - from == keyword.length
+               || bytes[from + keyword.length] == ' '
+               || bytes[from + keyword.length] == '\t';
+    }
+
+    /**
+     * Check whether bytes are the last chromosome name.
+     */
+    private boolean isLastChromosome(byte[] bytes, int from, int length) {
+        for (int i = 0; i < length; ++i) {
+            if (bytes[from + i] != lastChr[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get chromosome name, create string only for new chromosomes.
+     */
+    private String chromosome(byte[] bytes, int from, int to) {
+        int length = to - from;
+        if (length == lastChrLength
+            && isLastChromosome(bytes, from, length)) {
+            return record.chr;
+        }
+
+        String chr = new String(bytes, from, length, StandardCharsets.UTF_8);
+        String known = chromosomes.putIfAbsent(chr, chr);
+        if (known != null) {
+            chr = known;
+        }
+
+        if (lastChr.length < length) {
+            lastChr = new byte[length];
+        }
+        System.arraycopy(bytes, from, lastChr, 0, length);
+        lastChrLength = length;
+        lastChrInScope = scope == null || scope.containsChromosome(chr);
+
+        return chr;
+    }
+
+    /**
+     * Parse comma separated list of integers into block sizes or starts.
+     * A trailing comma is allowed.
+     *
+     * @return number of values
+     */
+    private int parseList(byte[] bytes, int from, int to, boolean sizes) {
+        if (to > from && bytes[to - 1] == ',') {
+            --to;
+        }
+        int count = 0;
+        int valueStart = from;
+        for (int i = from; i <= to; ++i) {
+            if (i == to || bytes[i] == ',') {
+                int value = parseInt(bytes, valueStart, i);
+                if (!valid) {
+                    return 0;
+                }
+                if (count == record.blockSizes.length) {
+                    record.blockSizes = Arrays.copyOf(record.blockSizes, count * 2);
+                    record.blockStarts = Arrays.copyOf(record.blockStarts, count * 2);
+                }
+                if (sizes) {
+                    record.blockSizes[count] = value;
+                } else {
+                    record.blockStarts[count] = value;
+                }
+                ++count;
+                valueStart = i + 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Parse integer like Integer.parseInt. Sets valid.
+     */
+    private int parseInt(byte[] bytes, int from, int to) {
+        valid = false;
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            ++i;
+        }
+        if (i == to) {
+            return 0;
+        }
+
+        long value = 0;
+        for (; i < to; ++i) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return 0;
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return 0;
+            }
+        }
+        if (negative) {
+            value = -value;
+        }
+        if (value > Integer.MAX_VALUE) {
+            return 0;
+        }
+
+        valid = true;
+        return (int) value;
+    }
+
+    /**
+     * Parse floating point number like Double.parseDouble. Sets valid.
+     *
+     * Plain decimal numbers with at most 15 significant digits are converted
+     * exactly (mantissa and power of ten are exact, so the division is
+     * correctly rounded); all other numbers use Double.parseDouble.
+     */
+    private double parseDouble(byte[] bytes, int from, int to) {
+        valid = false;
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            ++i;
+        }
+
+        long mantissa = 0;
+        int fractionDigits = 0;
+        boolean digits = false;
+        boolean dot = false;
+        boolean fastPath = i < to;
+        for (; fastPath && i < to; ++i) {
+            byte c = bytes[i];
+            if (c == '.' && !dot) {
+                dot = true;
+            } else if (c >= '0' && c <= '9') {
+                digits = true;
+                mantissa = mantissa * 10 + (c - '0');
+                if (dot) {
+                    ++fractionDigits;
+                }
+                if (mantissa > MAX_EXACT_MANTISSA || fractionDigits >= POWERS_OF_TEN.length) {
+                    fastPath = false;
+                }
+            } else {
+                fastPath = false;
+            }
+        }
+
+        if (fastPath && digits) {
+            double value = ((double) mantissa) / POWERS_OF_TEN[fractionDigits];
+            valid = true;
+            return negative ? -value : value;
+        }
+
+        // exponents, special values, many digits
+        try {
+            double value = Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.US_ASCII));
+            valid = true;
+            return value;
+        } catch (NumberFormatException ex) {
+            return 0.0;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ****************************************************************************
+ */
+package biovis.hackebeil.server.data;
+
+/**
+ * One line of a bed file.
+ *
+ * The record is reused by BedParser for all lines of a file: visitors must
+ * copy the values they want to keep. Optional columns which are missing or
+ * cannot be parsed are marked as not available.
+ *
+ * @author Dirk Zeckzer
+ */
+public class BedRecord {
+
+    // line number (1-based)
+    int lineNumber;
+    // number of tab separated columns
+    int columnCount;
+    // chromosome name (same instance for all lines of a chromosome)
+    String chr;
+    // start position
+    int start;
+    // end position
+    int end;
+    // score (column 5)
+    boolean hasScore;
+    double score;
+    // thick start and end (columns 7 and 8)
+    boolean hasThick;
+    int thickStart;
+    int thickEnd;
+    // block sizes and starts (columns 11 and 12)
+    boolean hasBlocks;
+    int blockCount;
+    int[] blockSizes = new int[16];
+    int[] blockStarts = new int[16];
+
+    /**
+     * @return line number (1-based)
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return number of columns
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * @return chromosome name
+     */
+    public String getChr() {
+        return chr;
+    }
+
+    /**
+     * @return start position
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return end position
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * @return true iff score is available
+     */
+    public boolean hasScore() {
+        return hasScore;
+    }
+
+    /**
+     * @return score (0.0 if not available)
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * @return true iff thick start and end are available
+     */
+    public boolean hasThick() {
+        return hasThick;
+    }
+
+    /**
+     * @return thick start
+     */
+    public int getThickStart() {
+        return thickStart;
+    }
+
+    /**
+     * @return thick end
+     */
+    public int getThickEnd() {
+        return thickEnd;
+    }
+
+    /**
+     * @return true iff block sizes are available
+     */
+    public boolean hasBlocks() {
+        return hasBlocks;
+    }
+
+    /**
+     * @return number of blocks
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * @param block block index
+     * @return size of block
+     */
+    public int getBlockSize(int block) {
+        return blockSizes[block];
+    }
+
+    /**
+     * @param block block index
+     * @return start of block relative to start (0 if column 12 is missing)
+     */
+    public int getBlockStart(int block) {
+        return blockStarts[block];
+    }
+}
@@ -0,0 +1,439 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ****************************************************************************
+ */
+package biovis.hackebeil.server.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Binary index of a reference genome (fasta file).
+ *
+ * File format (big endian):
+ * - header: magic, version, size and modification time of the fasta file,
+ *   hash of the header lines, number of sequences, number of header lines,
+ *   number of chromosomes, size of the name table
+ * - file positions of the header lines
+ * - chromosome tables: start file position, sequence start, sequence
+ *   length, line length (MIN_VALUE if not available)
+ * - name offsets (number of chromosomes + 1) and names (UTF-8)
+ *
+ * An index is valid for a fasta file if size and modification time are
+ * unchanged and the header lines found at the stored positions have the
+ * stored hash. Checking this only reads the header lines.
+ *
+ * @author Dirk Zeckzer
+ */
+public class GenomeIndex {
+
+    static final int MAGIC = 0x4D474931;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 48;
+
+    private static final long ABSENT_LONG = Long.MIN_VALUE;
+    private static final int ABSENT_INT = Integer.MIN_VALUE;
+
+    private long fastaSize;
+    private long fastaModified;
+    private long headerHash;
+    private int numberOfSeqs;
+    private long[] headerPositions;
+
+    private final Map<String, Long> startFilePos = new HashMap<>();
+    private final Map<String, Integer> seqStart = new HashMap<>();
+    private final Map<String, Integer> seqLengths = new HashMap<>();
+    private final Map<String, Integer> lineLength = new HashMap<>();
+
+    private GenomeIndex() {
+    }
+
+    /**
+     * Check if file starts with the magic number of a genome index.
+     *
+     * @param indexFile index file
+     * @return true iff file is a binary genome index
+     */
+    public static boolean isGenomeIndex(String indexFile) {
+        try (FileChannel channel = FileChannel.open(Paths.get(indexFile), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            return channel.read(magic, 0) == Integer.BYTES && magic.getInt(0) == MAGIC;
+        } catch (IOException ioEx) {
+            return false;
+        }
+    }
+
+    /**
+     * Read index (memory mapped).
+     *
+     * @param indexFile index file
+     * @return index
+     * @throws IOException if file cannot be read or has the wrong format
+     */
+    public static GenomeIndex read(String indexFile)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(indexFile), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File " + indexFile + " is not a genome index");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("File " + indexFile + " is not a genome index");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("File " + indexFile + " has version " + version + " instead of " + VERSION);
+            }
+
+            GenomeIndex index = new GenomeIndex();
+            index.fastaSize = buffer.getLong();
+            index.fastaModified = buffer.getLong();
+            index.headerHash = buffer.getLong();
+            index.numberOfSeqs = buffer.getInt();
+            int numberOfHeaders = buffer.getInt();
+            int numberOfChromosomes = buffer.getInt();
+            int namesSize = buffer.getInt();
+
+            long expectedSize = HEADER_SIZE
+                                + (long) numberOfHeaders * Long.BYTES
+                                + (long) numberOfChromosomes * (Long.BYTES + 4 * Integer.BYTES)
+                                + Integer.BYTES
+                                + namesSize;
+            if (numberOfHeaders < 0 || numberOfChromosomes < 0 || namesSize < 0
+                || expectedSize != channel.size()) {
+                throw new IOException("File " + indexFile + " is truncated or corrupt");
+            }
+
+            index.headerPositions = new long[numberOfHeaders];
+            long[] startFilePos = new long[numberOfChromosomes];
+            int[] seqStart = new int[numberOfChromosomes];
+            int[] seqLengths = new int[numberOfChromosomes];
+            int[] lineLength = new int[numberOfChromosomes];
+            int[] nameOffsets = new int[numberOfChromosomes + 1];
+            byte[] names = new byte[namesSize];
+            readLongs(buffer, index.headerPositions);
+            readLongs(buffer, startFilePos);
+            readInts(buffer, seqStart);
+            readInts(buffer, seqLengths);
+            readInts(buffer, lineLength);
+            readInts(buffer, nameOffsets);
+            buffer.get(names);
+
+            for (int i = 0; i < numberOfChromosomes; ++i) {
+                if (nameOffsets[i] < 0 || nameOffsets[i] > nameOffsets[i + 1] || nameOffsets[i + 1] > namesSize) {
+                    throw new IOException("File " + indexFile + " has an invalid name table");
+                }
+                String chr = new String(names, nameOffsets[i], nameOffsets[i + 1] - nameOffsets[i], StandardCharsets.UTF_8);
+                if (startFilePos[i] != ABSENT_LONG) {
+                    index.startFilePos.put(chr, startFilePos[i]);
+                }
+                if (seqStart[i] != ABSENT_INT) {
+                    index.seqStart.put(chr, seqStart[i]);
+                }
+                if (seqLengths[i] != ABSENT_INT) {
+                    index.seqLengths.put(chr, seqLengths[i]);
+                }
+                if (lineLength[i] != ABSENT_INT) {
+                    index.lineLength.put(chr, lineLength[i]);
+                }
+            }
+            return index;
+        }
+    }
+
+    private static void readLongs(ByteBuffer buffer, long[] values) {
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Long.BYTES);
+    }
+
+    private static void readInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Integer.BYTES);
+    }
+
+    /**
+     * Write index. The file is written to a temporary file and moved to its
+     * final name.
+     *
+     * @param indexFile index file
+     * @param fastaFile fasta file the index belongs to
+     * @param numberOfSeqs number of sequences
+     * @param headerPositions file positions of the header lines
+     * @param headerHash hash of the header lines (see hashHeaders)
+     * @param startFilePos start file positions of the sequences
+     * @param seqStart sequence starts (first none N character)
+     * @param seqLengths sequence lengths (last none N character)
+     * @param lineLength line lengths
+     * @throws IOException if file cannot be written
+     */
+    public static void write(
+        String indexFile,
+        String fastaFile,
+        int numberOfSeqs,
+        long[] headerPositions,
+        long headerHash,
+        Map<String, Long> startFilePos,
+        Map<String, Integer> seqStart,
+        Map<String, Integer> seqLengths,
+        Map<String, Integer> lineLength
+    )
+        throws IOException {
+        Path fasta = Paths.get(fastaFile);
+
+        Set<String> chromosomes = new TreeSet<>(startFilePos.keySet());
+        chromosomes.addAll(seqStart.keySet());
+        chromosomes.addAll(seqLengths.keySet());
+        chromosomes.addAll(lineLength.keySet());
+        byte[][] names = new byte[chromosomes.size()][];
+        int namesSize = 0;
+        int i = 0;
+        for (String chr : chromosomes) {
+            names[i] = chr.getBytes(StandardCharsets.UTF_8);
+            namesSize += names[i].length;
+            ++i;
+        }
+
+        long size = HEADER_SIZE
+                    + (long) headerPositions.length * Long.BYTES
+                    + (long) names.length * (Long.BYTES + 4 * Integer.BYTES)
+                    + Integer.BYTES
+                    + namesSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Genome index is too large");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(Files.size(fasta));
+        buffer.putLong(Files.getLastModifiedTime(fasta).toMillis());
+        buffer.putLong(headerHash);
+        buffer.putInt(numberOfSeqs);
+        buffer.putInt(headerPositions.length);
+        buffer.putInt(names.length);
+        buffer.putInt(namesSize);
+        for (long position : headerPositions) {
+            buffer.putLong(position);
+        }
+        for (String chr : chromosomes) {
+            buffer.putLong(startFilePos.getOrDefault(chr, ABSENT_LONG));
+        }
+        for (String chr : chromosomes) {
+            buffer.putInt(seqStart.getOrDefault(chr, ABSENT_INT));
+        }
+        for (String chr : chromosomes) {
+            buffer.putInt(seqLengths.getOrDefault(chr, ABSENT_INT));
+        }
+        for (String chr : chromosomes) {
+            buffer.putInt(lineLength.getOrDefault(chr, ABSENT_INT));
+        }
+        int offset = 0;
+        for (byte[] name : names) {
+            buffer.putInt(offset);
+            offset += name.length;
+        }
+        buffer.putInt(offset);
+        for (byte[] name : names) {
+            buffer.put(name);
+        }
+        buffer.flip();
+
+        Path path = Paths.get(indexFile);
+        Path temporaryPath = Paths.get(indexFile + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryPath,
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Check if index belongs to the current version of the fasta file.
+     *
+     * @param fastaFile fasta file
+     * @return null if index is valid, reason otherwise
+     */
+    public String validate(String fastaFile) {
+        try {
+            Path fasta = Paths.get(fastaFile);
+            if (Files.size(fasta) != fastaSize) {
+                return "size of " + fastaFile + " has changed";
+            }
+            if (Files.getLastModifiedTime(fasta).toMillis() != fastaModified) {
+                return fastaFile + " has been modified";
+            }
+            try (FileChannel channel = FileChannel.open(fasta, StandardOpenOption.READ)) {
+                HeaderReader reader = new HeaderReader(channel);
+                String[] headers = new String[headerPositions.length];
+                for (int i = 0; i < headerPositions.length; ++i) {
+                    headers[i] = reader.readLine(headerPositions[i]);
+                }
+                if (hashHeaders(headerPositions, headers) != headerHash) {
+                    return "headers of " + fastaFile + " have changed";
+                }
+            }
+            return null;
+        } catch (IOException ioEx) {
+            return "can't read " + fastaFile + ": " + ioEx.getMessage();
+        }
+    }
+
+    /**
+     * Reads header lines of a fasta file through a window, so that nearby
+     * headers (e.g. of many small scaffolds) are read with one access.
+     */
+    public static class HeaderReader {
+
+        private static final int WINDOW_SIZE = 1 << 16;
+
+        private final FileChannel channel;
+        private final ByteBuffer window = ByteBuffer.allocateDirect(WINDOW_SIZE);
+        private final byte[] bytes = new byte[WINDOW_SIZE];
+        private long windowStart = 0;
+        private int windowLength = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param channel fasta file
+         */
+        public HeaderReader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Read line starting at position (without line end).
+         *
+         * @param position file position
+         * @return line (ISO-8859-1)
+         * @throws IOException if file cannot be read
+         */
+        public String readLine(long position)
+            throws IOException {
+            StringBuilder line = null;
+            while (true) {
+                if (position < windowStart || position >= windowStart + windowLength) {
+                    if (!fill(position)) {
+                        break;
+                    }
+                }
+                int from = (int) (position - windowStart);
+                int lineEnd = from;
+                while (lineEnd < windowLength && bytes[lineEnd] != '\n' && bytes[lineEnd] != '\r') {
+                    ++lineEnd;
+                }
+                String part = new String(bytes, from, lineEnd - from, StandardCharsets.ISO_8859_1);
+                if (lineEnd < windowLength) {
+                    return line == null ? part : line.append(part).toString();
+                }
+                // line continues after window
+                if (line == null) {
+                    line = new StringBuilder();
+                }
+                line.append(part);
+                position += lineEnd - from;
+            }
+            return line == null ? "" : line.toString();
+        }
+
+        private boolean fill(long position)
+            throws IOException {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                windowLength = 0;
+                return false;
+            }
+            window.flip();
+            window.get(bytes, 0, read);
+            windowStart = position;
+            windowLength = read;
+            return true;
+        }
+    }
+
+    /**
+     * Hash of the header lines and their positions (64 bit FNV-1a).
+     *
+     * @param positions file positions of the header lines
+     * @param headers header lines
+     * @return hash
+     */
+    public static long hashHeaders(long[] positions, String[] headers) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < positions.length; ++i) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                hash = (hash ^ ((positions[i] >>> shift) & 0xff)) * 0x100000001b3L;
+            }
+            String header = headers[i];
+            for (int c = 0; c < header.length(); ++c) {
+                hash = (hash ^ (header.charAt(c) & 0xff)) * 0x100000001b3L;
+            }
+            hash = (hash ^ '\n') * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return number of sequences
+     */
+    public int getNumberOfSeqs() {
+        return numberOfSeqs;
+    }
+
+    /**
+     * @return start file positions of the sequences
+     */
+    public Map<String, Long> getStartFilePos() {
+        return startFilePos;
+    }
+
+    /**
+     * @return sequence starts (first none N character)
+     */
+    public Map<String, Integer> getSeqStart() {
+        return seqStart;
+    }
+
+    /**
+     * @return sequence lengths (last none N character)
+     */
+    public Map<String, Integer> getSeqLengths() {
+        return seqLengths;
+    }
+
+    /**
+     * @return line lengths
+     */
+    public Map<String, Integer> getLineLength() {
+        return lineLength;
+    }
+}
@@ -0,0 +1,549 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ****************************************************************************
+ */
+package biovis.hackebeil.server.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact interval index.
+ *
+ * Per chromosome, the intervals are stored in primitive arrays sorted by start
+ * (and end). Identical intervals are stored once; for scored intervals, the
+ * score of the first one read is kept. Intervals are closed: [start, end].
+ *
+ * Overlap queries use an implicit binary search tree over the sorted arrays,
+ * augmented with the maximal end position of each subtree (see H. Li,
+ * cgranges). Queries do not allocate and visit the overlapping intervals in
+ * sorted order.
+ *
+ * @author Dirk Zeckzer
+ */
+public class IntervalIndex {
+
+    /**
+     * Visitor for overlapping intervals.
+     */
+    public interface IntervalVisitor {
+
+        /**
+         * Visit one interval.
+         *
+         * @param start start position
+         * @param end end position
+         * @param score score (0.0 if the index is not scored)
+         */
+        void visit(int start, int end, double score);
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // query modes
+    private static final int MODE_COUNT = 0;
+    private static final int MODE_BASES = 1;
+    private static final int MODE_WEIGHTED = 2;
+    private static final int MODE_VISIT = 3;
+
+    private final boolean scored;
+    private final Map<String, Intervals> chromosomes = new HashMap<>();
+    private boolean built = false;
+
+    /**
+     * Intervals of one chromosome.
+     */
+    private static class Intervals {
+
+        private int size = 0;
+        private int[] starts = new int[INITIAL_CAPACITY];
+        private int[] ends = new int[INITIAL_CAPACITY];
+        private double[] scores;
+        private int[] maxEnds;
+        private int maxLevel = -1;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param scored true iff scores are stored
+     */
+    public IntervalIndex(boolean scored) {
+        this.scored = scored;
+    }
+
+    /**
+     * Add interval.
+     *
+     * @param chr chromosome name
+     * @param start start position
+     * @param end end position
+     */
+    public void add(String chr, int start, int end) {
+        add(chr, start, end, 0.0);
+    }
+
+    /**
+     * Add scored interval.
+     *
+     * @param chr chromosome name
+     * @param start start position
+     * @param end end position
+     * @param score score
+     */
+    public void add(String chr, int start, int end, double score) {
+        if (built) {
+            throw new IllegalStateException("Interval index already built");
+        }
+
+        Intervals intervals = chromosomes.get(chr);
+        if (intervals == null) {
+            intervals = new Intervals();
+            if (scored) {
+                intervals.scores = new double[INITIAL_CAPACITY];
+            }
+            chromosomes.put(chr, intervals);
+        }
+
+        if (intervals.size == intervals.starts.length) {
+            int capacity = intervals.size + (intervals.size >> 1);
+            intervals.starts = Arrays.copyOf(intervals.starts, capacity);
+            intervals.ends = Arrays.copyOf(intervals.ends, capacity);
+            if (scored) {
+                intervals.scores = Arrays.copyOf(intervals.scores, capacity);
+            }
+        }
+
+        intervals.starts[intervals.size] = start;
+        intervals.ends[intervals.size] = end;
+        if (scored) {
+            intervals.scores[intervals.size] = score;
+        }
+        ++intervals.size;
+    }
+
+    /**
+     * Sort intervals, remove duplicates, and build search trees.
+     * No intervals can be added afterwards.
+     */
+    public void build() {
+        for (Intervals intervals : chromosomes.values()) {
+            sort(intervals);
+            intervals.maxEnds = new int[intervals.size];
+            intervals.maxLevel = buildTree(intervals.starts, intervals.ends, intervals.maxEnds, intervals.size);
+        }
+        built = true;
+    }
+
+    /**
+     * Sort intervals by start, end, and insertion order, remove duplicates,
+     * and trim arrays.
+     *
+     * @param intervals intervals of one chromosome
+     */
+    private void sort(Intervals intervals) {
+        int size = intervals.size;
+        int[] order = new int[size];
+        for (int i = 0; i < size; ++i) {
+            order[i] = i;
+        }
+        quickSort(order, 0, size - 1, intervals.starts, intervals.ends);
+
+        int[] starts = new int[size];
+        int[] ends = new int[size];
+        double[] scores = scored ? new double[size] : null;
+        int unique = 0;
+        for (int i = 0; i < size; ++i) {
+            int current = order[i];
+            if (unique > 0
+                && starts[unique - 1] == intervals.starts[current]
+                && ends[unique - 1] == intervals.ends[current]) {
+                // duplicate: keep first interval read
+                continue;
+            }
+            starts[unique] = intervals.starts[current];
+            ends[unique] = intervals.ends[current];
+            if (scored) {
+                scores[unique] = intervals.scores[current];
+            }
+            ++unique;
+        }
+
+        intervals.size = unique;
+        intervals.starts = Arrays.copyOf(starts, unique);
+        intervals.ends = Arrays.copyOf(ends, unique);
+        if (scored) {
+            intervals.scores = Arrays.copyOf(scores, unique);
+        }
+    }
+
+    /**
+     * Compare two intervals by start, end, and insertion order.
+     */
+    private static int compare(int a, int b, int[] starts, int[] ends) {
+        if (starts[a] != starts[b]) {
+            return starts[a] < starts[b] ? -1 : 1;
+        }
+        if (ends[a] != ends[b]) {
+            return ends[a] < ends[b] ? -1 : 1;
+        }
+        return Integer.compare(a, b);
+    }
+
+    /**
+     * Sort interval indices (median of three quick sort, insertion sort for
+     * small ranges).
+     */
+    private static void quickSort(int[] order, int low, int high, int[] starts, int[] ends) {
+        while (high - low > 16) {
+            int middle = (low + high) >>> 1;
+            if (compare(order[middle], order[low], starts, ends) < 0) {
+                swap(order, middle, low);
+            }
+            if (compare(order[high], order[low], starts, ends) < 0) {
+                swap(order, high, low);
+            }
+            if (compare(order[high], order[middle], starts, ends) < 0) {
+                swap(order, high, middle);
+            }
+            int pivot = order[middle];
+
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(order[i], pivot, starts, ends) < 0) {
+                    ++i;
+                }
+                while (compare(order[j], pivot, starts, ends) > 0) {
+                    --j;
+                }
+                if (i <= j) {
+                    swap(order, i, j);
+                    ++i;
+                    --j;
+                }
+            }
+
+            // recurse into smaller part, iterate over larger part
+            if (j - low < high - i) {
+                quickSort(order, low, j, starts, ends);
+                low = i;
+            } else {
+                quickSort(order, i, high, starts, ends);
+                high = j;
+            }
+        }
+
+        for (int i = low + 1; i <= high; ++i) {
+            int current = order[i];
+            int j = i - 1;
+            while (j >= low && compare(order[j], current, starts, ends) > 0) {
+                order[j + 1] = order[j];
+                --j;
+            }
+            order[j + 1] = current;
+        }
+    }
+
+    private static void swap(int[] order, int i, int j) {
+        int temp = order[i];
+        order[i] = order[j];
+        order[j] = temp;
+    }
+
+    /**
+     * Compute the maximal end position of each subtree of the implicit
+     * binary search tree. Node i has level k iff the k lowest bits of i are 1.
+     *
+     * @return level of the root node (-1 for empty trees)
+     */
+    private static int buildTree(int[] starts, int[] ends, int[] maxEnds, int size) {
+        if (size == 0) {
+            return -1;
+        }
+
+        // leaves
+        int lastIndex = 0;
+        int last = 0;
+        for (int i = 0; i < size; i += 2) {
+            lastIndex = i;
+            last = maxEnds[i] = ends[i];
+        }
+
+        // internal nodes, bottom up
+        int k;
+        for (k = 1; (1L << k) <= size; ++k) {
+            int x = 1 << (k - 1);
+            int step = x << 2;
+            for (int i = (x << 1) - 1; i < size; i += step) {
+                int endLeft = maxEnds[i - x];
+                int endRight = i + x < size ? maxEnds[i + x] : last;
+                int end = ends[i];
+                if (endLeft > end) {
+                    end = endLeft;
+                }
+                if (endRight > end) {
+                    end = endRight;
+                }
+                maxEnds[i] = end;
+            }
+            // move to the parent of the rightmost node
+            lastIndex = ((lastIndex >> k) & 1) != 0 ? lastIndex - x : lastIndex + x;
+            if (lastIndex < size && maxEnds[lastIndex] > last) {
+                last = maxEnds[lastIndex];
+            }
+        }
+
+        return k - 1;
+    }
+
+    /**
+     * Traverse all intervals overlapping [start, end] in sorted order.
+     * The result is accumulated sequentially in sorted order, so sums are
+     * identical to summing over the sorted list of overlapping intervals.
+     *
+     * @param result value accumulated so far
+     * @return accumulated value according to mode
+     */
+    private double query(
+        Intervals intervals,
+        int level,
+        int node,
+        int start,
+        int end,
+        int mode,
+        IntervalVisitor visitor,
+        double result
+    ) {
+        if (level <= 3) {
+            // small subtree: linear scan
+            int first = (node >> level) << level;
+            int last = Math.min(first + (1 << (level + 1)) - 1, intervals.size);
+            for (int i = first; i < last && intervals.starts[i] <= end; ++i) {
+                if (intervals.ends[i] >= start) {
+                    result += aggregate(intervals, i, start, end, mode, visitor);
+                }
+            }
+            return result;
+        }
+
+        int half = 1 << (level - 1);
+
+        // left subtree
+        int left = node - half;
+        if (left >= intervals.size || intervals.maxEnds[left] >= start) {
+            result = query(intervals, level - 1, left, start, end, mode, visitor, result);
+        }
+
+        // node and right subtree
+        if (node < intervals.size && intervals.starts[node] <= end) {
+            if (intervals.ends[node] >= start) {
+                result += aggregate(intervals, node, start, end, mode, visitor);
+            }
+            result = query(intervals, level - 1, node + half, start, end, mode, visitor, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Aggregate one overlapping interval.
+     */
+    private double aggregate(
+        Intervals intervals,
+        int i,
+        int start,
+        int end,
+        int mode,
+        IntervalVisitor visitor
+    ) {
+        switch (mode) {
+            case MODE_BASES:
+                return overlap(intervals.starts[i], intervals.ends[i], start, end);
+            case MODE_WEIGHTED:
+                return overlap(intervals.starts[i], intervals.ends[i], start, end) * intervals.scores[i];
+            case MODE_VISIT:
+                visitor.visit(intervals.starts[i],
+                              intervals.ends[i],
+                              scored ? intervals.scores[i] : 0.0);
+                return 1.0;
+            case MODE_COUNT:
+            default:
+                return 1.0;
+        }
+    }
+
+    /**
+     * Number of base pairs of [start, end] covered by [intervalStart, intervalEnd].
+     */
+    private static int overlap(int intervalStart, int intervalEnd, int start, int end) {
+        return Math.min(intervalEnd, end) - Math.max(intervalStart, start) + 1;
+    }
+
+    /**
+     * Run query on one chromosome.
+     */
+    private double query(String chr, int start, int end, int mode, IntervalVisitor visitor) {
+        Intervals intervals = chromosomes.get(chr);
+        if (intervals == null || intervals.maxLevel < 0) {
+            return 0.0;
+        }
+        return query(intervals, intervals.maxLevel, (1 << intervals.maxLevel) - 1, start, end, mode, visitor, 0.0);
+    }
+
+    /**
+     * Visit all intervals overlapping [start, end] in sorted order.
+     *
+     * @param chr chromosome name
+     * @param start start position
+     * @param end end position
+     * @param visitor visitor called for each overlapping interval
+     * @return number of overlapping intervals
+     */
+    public int forEachOverlap(String chr, int start, int end, IntervalVisitor visitor) {
+        return (int) query(chr, start, end, MODE_VISIT, visitor);
+    }
+
+    /**
+     * Count intervals overlapping [start, end].
+     *
+     * @param chr chromosome name
+     * @param start start position
+     * @param end end position
+     * @return number of overlapping intervals
+     */
+    public int countOverlaps(String chr, int start, int end) {
+        return (int) query(chr, start, end, MODE_COUNT, null);
+    }
+
+    /**
+     * Sum of base pairs of [start, end] covered by the intervals.
+     * Overlapping intervals are counted multiple times.
+     *
+     * @param chr chromosome name
+     * @param start start position
+     * @param end end position
+     * @return covered base pairs
+     */
+    public long coveredBases(String chr, int start, int end) {
+        return (long) query(chr, start, end, MODE_BASES, null);
+    }
+
+    /**
+     * Coverage of [start, end] normalized by its length.
+     * Same as Location.coverage.
+     *
+     * @param chr chromosome name
+     * @param start start position
+     * @param end end position
+     * @return coverage
+     */
+    public double coverage(String chr, int start, int end) {
+        return ((double) coveredBases(chr, start, end)) / ((double) (end - start + 1));
+    }
+
+    /**
+     * Score of [start, end], weighted by the covered base pairs.
+     * Same as ScoredLocation.coverageScore.
+     *
+     * @param chr chromosome name
+     * @param start start position
+     * @param end end position
+     * @return coverage score (0.0 if not covered or index not scored)
+     */
+    public double coverageScore(String chr, int start, int end) {
+        if (!scored) {
+            return 0.0;
+        }
+        long covLength = coveredBases(chr, start, end);
+        if (covLength == 0) {
+            return 0.0;
+        }
+        return query(chr, start, end, MODE_WEIGHTED, null) / ((double) covLength);
+    }
+
+    /**
+     * @return true iff scores are stored
+     */
+    public boolean isScored() {
+        return scored;
+    }
+
+    /**
+     * @return names of all chromosomes with intervals
+     */
+    public Set<String> getChromosomes() {
+        return chromosomes.keySet();
+    }
+
+    /**
+     * @param chr chromosome name
+     * @return number of intervals on chromosome
+     */
+    public int size(String chr) {
+        Intervals intervals = chromosomes.get(chr);
+        return intervals == null ? 0 : intervals.size;
+    }
+
+    /**
+     * @return number of intervals on all chromosomes
+     */
+    public long size() {
+        long size = 0;
+        for (Intervals intervals : chromosomes.values()) {
+            size += intervals.size;
+        }
+        return size;
+    }
+
+    /**
+     * Start positions sorted ascending. Must not be modified.
+     *
+     * @param chr chromosome name
+     * @return start positions (empty if chromosome unknown)
+     */
+    public int[] getStarts(String chr) {
+        Intervals intervals = chromosomes.get(chr);
+        return intervals == null ? new int[0] : intervals.starts;
+    }
+
+    /**
+     * End positions in the order of the start positions. Must not be modified.
+     *
+     * @param chr chromosome name
+     * @return end positions (empty if chromosome unknown)
+     */
+    public int[] getEnds(String chr) {
+        Intervals intervals = chromosomes.get(chr);
+        return intervals == null ? new int[0] : intervals.ends;
+    }
+
+    /**
+     * Scores in the order of the start positions. Must not be modified.
+     *
+     * @param chr chromosome name
+     * @return scores (null if index not scored, empty if chromosome unknown)
+     */
+    public double[] getScores(String chr) {
+        if (!scored) {
+            return null;
+        }
+        Intervals intervals = chromosomes.get(chr);
+        return intervals == null ? new double[0] : intervals.scores;
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ****************************************************************************
+ */
+package biovis.hackebeil.server.data;
+
+import biovis.hackebeil.common.data.KmerSpectrumParameter;
+import java.util.Arrays;
+
+/**
+ * Counts of all k-mers per segment (segment x 4^k matrix).
+ *
+ * A k-mer is encoded with 2 bits per base (A=0, C=1, G=2, T=3), the first
+ * base in the highest bits. A canonical spectrum counts each k-mer at the
+ * smaller code of k-mer and reverse complement.
+ *
+ * The matrix is stored densely if this takes no more space than storing
+ * the non-zero counts (code and count per entry, offsets per row);
+ * otherwise sparsely with the codes of each row sorted.
+ *
+ * @author Dirk Zeckzer
+ */
+public class KmerSpectrum {
+
+    public static final int MAX_K = KmerSpectrumParameter.MAX_K;
+
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+    private final int k;
+    private final boolean canonical;
+    private final int size;
+    private final int numberOfKmers;
+
+    // dense: counts[row * numberOfKmers + code]
+    private final int[] dense;
+    // sparse: entries rowStarts[row] .. rowStarts[row + 1] - 1
+    private final int[] rowStarts;
+    private final int[] codes;
+    private final int[] counts;
+
+    /**
+     * Constructor.
+     *
+     * @param k length of k-mers
+     * @param canonical true: canonical spectrum
+     * @param rowCodes codes of k-mers occurring in each segment (sorted)
+     * @param rowCounts counts of these k-mers
+     */
+    public KmerSpectrum(
+        int k,
+        boolean canonical,
+        int[][] rowCodes,
+        int[][] rowCounts
+    ) {
+        this.k = k;
+        this.canonical = canonical;
+        this.size = rowCodes.length;
+        this.numberOfKmers = 1 << (2 * k);
+
+        long entries = 0;
+        for (int[] row : rowCodes) {
+            entries += row.length;
+        }
+        long denseSize = (long) size * numberOfKmers;
+        if (denseSize <= 2 * entries + size + 1 && denseSize < Integer.MAX_VALUE) {
+            dense = new int[(int) denseSize];
+            for (int row = 0; row < size; ++row) {
+                int offset = row * numberOfKmers;
+                for (int i = 0; i < rowCodes[row].length; ++i) {
+                    dense[offset + rowCodes[row][i]] = rowCounts[row][i];
+                }
+            }
+            rowStarts = null;
+            codes = null;
+            counts = null;
+        } else {
+            dense = null;
+            rowStarts = new int[size + 1];
+            codes = new int[Math.toIntExact(entries)];
+            counts = new int[codes.length];
+            int entry = 0;
+            for (int row = 0; row < size; ++row) {
+                rowStarts[row] = entry;
+                System.arraycopy(rowCodes[row], 0, codes, entry, rowCodes[row].length);
+                System.arraycopy(rowCounts[row], 0, counts, entry, rowCounts[row].length);
+                entry += rowCodes[row].length;
+            }
+            rowStarts[size] = entry;
+        }
+    }
+
+    /**
+     * @return length of k-mers
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * @return true iff k-mers are counted together with their reverse
+     * complement
+     */
+    public boolean isCanonical() {
+        return canonical;
+    }
+
+    /**
+     * @return number of segments
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of k-mers (4^k)
+     */
+    public int getNumberOfKmers() {
+        return numberOfKmers;
+    }
+
+    /**
+     * @return true iff counts are stored sparsely
+     */
+    public boolean isSparse() {
+        return dense == null;
+    }
+
+    /**
+     * @param row segment
+     * @param code k-mer
+     * @return count of k-mer in segment
+     */
+    public int getCount(int row, int code) {
+        if (dense != null) {
+            return dense[row * numberOfKmers + code];
+        }
+        int entry = Arrays.binarySearch(codes, rowStarts[row], rowStarts[row + 1], code);
+        return entry < 0 ? 0 : counts[entry];
+    }
+
+    /**
+     * @param code k-mer
+     * @return count of k-mer in each segment
+     */
+    public int[] getCounts(int code) {
+        int[] column = new int[size];
+        for (int row = 0; row < size; ++row) {
+            column[row] = getCount(row, code);
+        }
+        return column;
+    }
+
+    /**
+     * @return count of each k-mer in all segments
+     */
+    public long[] getTotals() {
+        long[] totals = new long[numberOfKmers];
+        if (dense != null) {
+            for (int i = 0; i < dense.length; ++i) {
+                totals[i % numberOfKmers] += dense[i];
+            }
+        } else {
+            for (int i = 0; i < codes.length; ++i) {
+                totals[codes[i]] += counts[i];
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Occurrences of a k-mer on both strands in each segment, i.e., the
+     * count of the motif worker (occurrences of k-mer and reverse
+     * complement, palindromes counted twice).
+     *
+     * @param code k-mer
+     * @return count in each segment
+     */
+    public int[] getBothStrandCounts(int code) {
+        int reverseComplement = reverseComplement(code, k);
+        if (canonical) {
+            int[] column = getCounts(Math.min(code, reverseComplement));
+            if (code == reverseComplement) {
+                for (int row = 0; row < size; ++row) {
+                    column[row] *= 2;
+                }
+            }
+            return column;
+        }
+        int[] column = getCounts(code);
+        for (int row = 0; row < size; ++row) {
+            column[row] += getCount(row, reverseComplement);
+        }
+        return column;
+    }
+
+    /**
+     * @param kmer k-mer (A, C, G, T, case-insensitive)
+     * @return code (-1 if k-mer contains another character)
+     */
+    public static int encode(String kmer) {
+        int code = 0;
+        for (int i = 0; i < kmer.length(); ++i) {
+            int base = code(kmer.charAt(i));
+            if (base < 0) {
+                return -1;
+            }
+            code = (code << 2) | base;
+        }
+        return code;
+    }
+
+    /**
+     * @param c character
+     * @return 2 bit code of base (-1 if not A, C, G, T)
+     */
+    public static int code(char c) {
+        switch (c) {
+            case 'A':
+            case 'a':
+                return 0;
+            case 'C':
+            case 'c':
+                return 1;
+            case 'G':
+            case 'g':
+                return 2;
+            case 'T':
+            case 't':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @param code k-mer
+     * @param k length of k-mer
+     * @return k-mer (upper case)
+     */
+    public static String decode(int code, int k) {
+        char[] kmer = new char[k];
+        for (int i = k - 1; i >= 0; --i) {
+            kmer[i] = BASES[code & 3];
+            code >>>= 2;
+        }
+        return new String(kmer);
+    }
+
+    /**
+     * @param code k-mer
+     * @param k length of k-mer
+     * @return reverse complement of k-mer
+     */
+    public static int reverseComplement(int code, int k) {
+        int result = 0;
+        for (int i = 0; i < k; ++i) {
+            result = (result << 2) | (3 - (code & 3));
+            code >>>= 2;
+        }
+        return result;
+    }
+}
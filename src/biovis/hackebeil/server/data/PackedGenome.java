@@ -0,0 +1,291 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ****************************************************************************
+ */
+package biovis.hackebeil.server.data;
+
+import biovis.hackebeil.common.data.Location;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Packed reference genome: 2 bits per base, memory mapped.
+ *
+ * File format (big endian):
+ * - header: magic, version, offset of directory
+ * - packed bases of all chromosomes, 4 bases per byte (A=0, C=1, G=2, T=3,
+ *   first base in the highest bits), each chromosome starts at a new byte
+ * - directory: number of chromosomes, then for each chromosome: name,
+ *   length, offset of packed bases, runs of other characters than A, C, G, T
+ *   (start, length, upper case character; mostly N), and soft-mask runs of
+ *   lower case characters (start, length)
+ *
+ * Sequences are returned exactly as stored in the fasta file (including
+ * case and N). Reading is thread-safe: the mapped buffers are only accessed
+ * by absolute positions. Neighbouring chromosomes share one mapping, so
+ * opening a genome with many scaffolds is fast.
+ *
+ * @author Dirk Zeckzer
+ */
+public class PackedGenome {
+
+    static final int MAGIC = 0x4D475332;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    private static final String EXTENSION = ".packed";
+    // chromosomes are mapped together in regions of this size
+    private static final long MAPPING_SIZE = 1L << 30;
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+    private final Map<String, Chromosome> chromosomes = new HashMap<>();
+
+    /**
+     * Packed bases and runs of one chromosome.
+     */
+    private static class Chromosome {
+
+        private int length;
+        private ByteBuffer packed;
+        // runs of other characters: start, length, character
+        private int[] otherRuns;
+        // soft-mask runs: start, length
+        private int[] maskRuns;
+    }
+
+    /**
+     * Get path of packed genome belonging to fasta file.
+     *
+     * @param fastaFile name of fasta file
+     * @return name of packed genome file
+     */
+    public static String getPath(String fastaFile) {
+        return fastaFile + EXTENSION;
+    }
+
+    /**
+     * Open packed genome belonging to fasta file if it exists and is not
+     * older than the fasta file.
+     *
+     * @param fastaFile name of fasta file
+     * @return packed genome or null if not available
+     */
+    public static PackedGenome openForFasta(String fastaFile) {
+        try {
+            Path fasta = Paths.get(fastaFile);
+            Path packed = Paths.get(getPath(fastaFile));
+            if (!Files.isRegularFile(packed)
+                || Files.getLastModifiedTime(packed).compareTo(Files.getLastModifiedTime(fasta)) < 0) {
+                return null;
+            }
+            return new PackedGenome(packed.toString());
+        } catch (IOException ioEx) {
+            System.err.println("Can't open packed genome: " + ioEx.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Constructor: maps the packed bases and reads the directory.
+     *
+     * @param file name of packed genome file
+     * @throws IOException if file cannot be read or has the wrong format
+     */
+    public PackedGenome(String file)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("File " + file + " is not a packed genome (version " + VERSION + ")");
+            }
+            long directoryOffset = header.getLong();
+
+            long directorySize = channel.size() - directoryOffset;
+            if (directoryOffset < HEADER_SIZE || directorySize > Integer.MAX_VALUE) {
+                throw new IOException("File " + file + " has an invalid directory");
+            }
+            ByteBuffer directory = ByteBuffer.allocate((int) directorySize);
+            readFully(channel, directory, directoryOffset);
+
+            int numberOfChromosomes = directory.getInt();
+            MappedByteBuffer mapping = null;
+            long mappingStart = 0;
+            for (int i = 0; i < numberOfChromosomes; ++i) {
+                byte[] name = new byte[directory.getInt()];
+                directory.get(name);
+
+                Chromosome chromosome = new Chromosome();
+                chromosome.length = directory.getInt();
+                long packedOffset = directory.getLong();
+                chromosome.otherRuns = new int[directory.getInt() * 3];
+                chromosome.maskRuns = new int[directory.getInt() * 2];
+                directory.asIntBuffer().get(chromosome.otherRuns);
+                directory.position(directory.position() + chromosome.otherRuns.length * Integer.BYTES);
+                directory.asIntBuffer().get(chromosome.maskRuns);
+                directory.position(directory.position() + chromosome.maskRuns.length * Integer.BYTES);
+
+                long packedSize = (chromosome.length + 3L) / 4;
+                if (packedOffset < HEADER_SIZE || packedOffset + packedSize > directoryOffset) {
+                    throw new IOException("File " + file + " has an invalid directory");
+                }
+                if (mapping == null
+                    || packedOffset < mappingStart
+                    || packedOffset + packedSize > mappingStart + mapping.capacity()) {
+                    mappingStart = packedOffset;
+                    long mappingSize = Math.min(Math.max(MAPPING_SIZE, packedSize), directoryOffset - packedOffset);
+                    mapping = channel.map(FileChannel.MapMode.READ_ONLY, mappingStart, mappingSize);
+                }
+                ByteBuffer packed = mapping.duplicate();
+                packed.position((int) (packedOffset - mappingStart));
+                packed.limit((int) (packedOffset - mappingStart + packedSize));
+                chromosome.packed = packed.slice();
+
+                chromosomes.put(new String(name, StandardCharsets.UTF_8), chromosome);
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of packed genome");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * @return names of all chromosomes
+     */
+    public Set<String> getChromosomes() {
+        return chromosomes.keySet();
+    }
+
+    /**
+     * @param chr chromosome name
+     * @return true iff chromosome is stored
+     */
+    public boolean contains(String chr) {
+        return chromosomes.containsKey(chr);
+    }
+
+    /**
+     * @param chr chromosome name
+     * @return length of chromosome (-1 if unknown)
+     */
+    public int getLength(String chr) {
+        Chromosome chromosome = chromosomes.get(chr);
+        return chromosome == null ? -1 : chromosome.length;
+    }
+
+    /**
+     * Read sequence of location.
+     *
+     * @param location location
+     * @return sequence (empty if chromosome unknown)
+     */
+    public char[] read(Location location) {
+        return read(location.getChr(), location.getStart(), location.getLength());
+    }
+
+    /**
+     * Read sequence. The sequence is clipped at the end of the chromosome.
+     *
+     * @param chr chromosome name
+     * @param start start position (0-based)
+     * @param length number of bases
+     * @return sequence (empty if chromosome unknown or start invalid)
+     */
+    public char[] read(String chr, int start, int length) {
+        Chromosome chromosome = chromosomes.get(chr);
+        if (chromosome == null || start < 0 || start >= chromosome.length || length <= 0) {
+            return new char[0];
+        }
+        int end = (int) Math.min((long) start + length, chromosome.length);
+        char[] sequence = new char[end - start];
+
+        // bases
+        ByteBuffer packed = chromosome.packed;
+        int position = start;
+        int bits = packed.get(position >> 2);
+        for (int i = 0; i < sequence.length; ++i, ++position) {
+            int shift = (3 - (position & 3)) << 1;
+            if (shift == 6 && i > 0) {
+                bits = packed.get(position >> 2);
+            }
+            sequence[i] = BASES[(bits >> shift) & 3];
+        }
+
+        // other characters
+        int[] runs = chromosome.otherRuns;
+        for (int run = firstRun(runs, 3, start); run < runs.length && runs[run] < end; run += 3) {
+            int from = Math.max(runs[run], start);
+            int to = Math.min(runs[run] + runs[run + 1], end);
+            char c = (char) runs[run + 2];
+            for (int p = from; p < to; ++p) {
+                sequence[p - start] = c;
+            }
+        }
+
+        // soft-masked (lower case) characters
+        runs = chromosome.maskRuns;
+        for (int run = firstRun(runs, 2, start); run < runs.length && runs[run] < end; run += 2) {
+            int from = Math.max(runs[run], start);
+            int to = Math.min(runs[run] + runs[run + 1], end);
+            for (int p = from; p < to; ++p) {
+                sequence[p - start] = Character.toLowerCase(sequence[p - start]);
+            }
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Find first run ending after position (binary search).
+     *
+     * @param runs runs sorted by start
+     * @param width number of ints per run
+     * @param position position
+     * @return index of first run ending after position
+     */
+    private static int firstRun(int[] runs, int width, int position) {
+        int low = 0;
+        int high = runs.length / width;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int run = middle * width;
+            if (runs[run] + runs[run + 1] <= position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low * width;
+    }
+}
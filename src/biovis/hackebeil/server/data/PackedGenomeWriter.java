@@ -0,0 +1,399 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ****************************************************************************
+ */
+package biovis.hackebeil.server.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a packed genome (see PackedGenome) while the fasta file is read.
+ *
+ * Usage: for each sequence call addChromosome with an upper bound of its
+ * length, append the bases to the returned ChromosomeWriter and close it,
+ * and finally close this writer. Every chromosome gets its own region of
+ * the file, so chromosomes can be written by several threads at the same
+ * time. The file is written to a temporary file and moved to its final
+ * name by close, so an incomplete store is never found.
+ *
+ * @author Dirk Zeckzer
+ */
+public class PackedGenomeWriter
+    implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // byte to base code, upper case character of other bases (0: A, C, G, T),
+    // and soft-mask flag
+    private static final byte[] CODE = new byte[256];
+    private static final char[] OTHER = new char[256];
+    private static final boolean[] LOWER_CASE = new boolean[256];
+
+    static {
+        String bases = "ACGT";
+        for (int c = 0; c < 256; ++c) {
+            int code = bases.indexOf(Character.toUpperCase((char) c));
+            if (code >= 0) {
+                CODE[c] = (byte) code;
+            } else {
+                OTHER[c] = Character.toUpperCase((char) c);
+            }
+            LOWER_CASE[c] = Character.isLowerCase((char) c);
+        }
+    }
+
+    private final Path path;
+    private final Path temporaryPath;
+    private final FileChannel channel;
+
+    private final List<ChromosomeEntry> chromosomes = new ArrayList<>();
+    // end of the regions reserved so far
+    private long reservedEnd = PackedGenome.HEADER_SIZE;
+
+    /**
+     * Directory entry of one chromosome.
+     */
+    private static class ChromosomeEntry {
+
+        private final String name;
+        private final long packedOffset;
+        private final long maxLength;
+        private int length = 0;
+        private final IntArray otherRuns = new IntArray();
+        private final IntArray maskRuns = new IntArray();
+
+        private ChromosomeEntry(String name, long packedOffset, long maxLength) {
+            this.name = name;
+            this.packedOffset = packedOffset;
+            this.maxLength = maxLength;
+        }
+    }
+
+    /**
+     * Growable int array.
+     */
+    private static class IntArray {
+
+        private int[] values = new int[64];
+        private int size = 0;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Writes the bases of one chromosome into its reserved region.
+     * A ChromosomeWriter must only be used by one thread.
+     */
+    public class ChromosomeWriter
+        implements AutoCloseable {
+
+        private final ChromosomeEntry entry;
+        // allocated on first write, released by close
+        private ByteBuffer buffer = null;
+        private long position;
+
+        // bases of current byte
+        private int pendingBits = 0;
+        private int pendingBases = 0;
+
+        private ChromosomeWriter(ChromosomeEntry entry) {
+            this.entry = entry;
+            this.position = entry.packedOffset;
+        }
+
+        /**
+         * Append bases.
+         *
+         * @param line bases
+         * @throws IOException if file cannot be written
+         */
+        public void append(CharSequence line)
+            throws IOException {
+            int length = line.length();
+            for (int i = 0; i < length; ++i) {
+                append(line.charAt(i));
+            }
+        }
+
+        /**
+         * Append bases stored as bytes (ISO-8859-1).
+         *
+         * @param bases buffer containing the bases
+         * @param from index of first base
+         * @param to index after last base
+         * @throws IOException if file cannot be written or more bases than
+         * reserved are appended
+         */
+        public void append(ByteBuffer bases, int from, int to)
+            throws IOException {
+            if (entry.length + (long) (to - from) > entry.maxLength) {
+                throw new IOException("Sequence " + entry.name + " is longer than reserved");
+            }
+            for (int i = from; i < to; ++i) {
+                int c = bases.get(i) & 0xff;
+                if (OTHER[c] != 0) {
+                    addRun(entry.otherRuns, entry.length, OTHER[c]);
+                }
+                if (LOWER_CASE[c]) {
+                    addRun(entry.maskRuns, entry.length, -1);
+                }
+                appendCode(CODE[c]);
+            }
+        }
+
+        /**
+         * Append one base.
+         *
+         * @param c base
+         * @throws IOException if file cannot be written or more bases than
+         * reserved are appended
+         */
+        public void append(char c)
+            throws IOException {
+            if (entry.length >= entry.maxLength) {
+                throw new IOException("Sequence " + entry.name + " is longer than reserved");
+            }
+            int code;
+            switch (c) {
+                case 'A':
+                case 'a':
+                    code = 0;
+                    break;
+                case 'C':
+                case 'c':
+                    code = 1;
+                    break;
+                case 'G':
+                case 'g':
+                    code = 2;
+                    break;
+                case 'T':
+                case 't':
+                    code = 3;
+                    break;
+                default:
+                    code = 0;
+                    addRun(entry.otherRuns, entry.length, Character.toUpperCase(c));
+                    break;
+            }
+            if (Character.isLowerCase(c)) {
+                addRun(entry.maskRuns, entry.length, -1);
+            }
+            appendCode(code);
+        }
+
+        private void appendCode(int code)
+            throws IOException {
+            pendingBits = (pendingBits << 2) | code;
+            if (++pendingBases == 4) {
+                writeByte(pendingBits);
+                pendingBits = 0;
+                pendingBases = 0;
+            }
+            ++entry.length;
+        }
+
+        private void writeByte(int value)
+            throws IOException {
+            if (buffer == null) {
+                buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, (entry.maxLength + 3) / 4));
+            }
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) value);
+        }
+
+        private void flush()
+            throws IOException {
+            if (buffer == null) {
+                return;
+            }
+            buffer.flip();
+            position = write(buffer, position);
+            buffer.clear();
+        }
+
+        /**
+         * Finish chromosome (pad last byte).
+         *
+         * @throws IOException if file cannot be written
+         */
+        @Override
+        public void close()
+            throws IOException {
+            if (pendingBases > 0) {
+                writeByte(pendingBits << (2 * (4 - pendingBases)));
+                pendingBits = 0;
+                pendingBases = 0;
+            }
+            flush();
+            buffer = null;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file name of the packed genome file
+     * @throws IOException if file cannot be created
+     */
+    public PackedGenomeWriter(String file)
+        throws IOException {
+        path = Paths.get(file);
+        temporaryPath = Paths.get(file + ".tmp");
+        channel = FileChannel.open(temporaryPath,
+                                   StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Add chromosome and reserve its region. Chromosomes are stored in the
+     * order they are added.
+     *
+     * @param name chromosome name
+     * @param maxLength maximal number of bases
+     * @return writer for the bases of the chromosome
+     */
+    public synchronized ChromosomeWriter addChromosome(String name, long maxLength) {
+        ChromosomeEntry entry = new ChromosomeEntry(name, reservedEnd, maxLength);
+        chromosomes.add(entry);
+        reservedEnd += (maxLength + 3) / 4;
+        return new ChromosomeWriter(entry);
+    }
+
+    /**
+     * Extend last run or add a new one.
+     * Runs are stored as (start, length) or (start, length, character).
+     *
+     * @param runs runs
+     * @param position position of base
+     * @param character character of run (-1: runs without character)
+     */
+    private static void addRun(IntArray runs, int position, int character) {
+        int width = character < 0 ? 2 : 3;
+        int last = runs.size - width;
+        if (last >= 0
+            && runs.values[last] + runs.values[last + 1] == position
+            && (character < 0 || runs.values[last + 2] == character)) {
+            ++runs.values[last + 1];
+            return;
+        }
+        runs.add(position);
+        runs.add(1);
+        if (character >= 0) {
+            runs.add(character);
+        }
+    }
+
+    /**
+     * Write buffer at position (thread-safe).
+     *
+     * @param buffer buffer
+     * @param position file position
+     * @return file position after the written bytes
+     * @throws IOException if file cannot be written
+     */
+    private long write(ByteBuffer buffer, long position)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+
+    /**
+     * Write directory and header, move file to its final name.
+     * All chromosome writers have to be closed before.
+     *
+     * @throws IOException if file cannot be written
+     */
+    @Override
+    public synchronized void close()
+        throws IOException {
+        try {
+            // directory
+            long directoryOffset = reservedEnd;
+            long position = directoryOffset;
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.putInt(chromosomes.size());
+            for (ChromosomeEntry entry : chromosomes) {
+                byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+                int size = (4 + entry.otherRuns.size + entry.maskRuns.size) * Integer.BYTES
+                           + Long.BYTES + name.length;
+                if (buffer.remaining() < size) {
+                    buffer.flip();
+                    position = write(buffer, position);
+                    buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, size));
+                }
+                buffer.putInt(name.length);
+                buffer.put(name);
+                buffer.putInt(entry.length);
+                buffer.putLong(entry.packedOffset);
+                buffer.putInt(entry.otherRuns.size / 3);
+                buffer.putInt(entry.maskRuns.size / 2);
+                for (int i = 0; i < entry.otherRuns.size; ++i) {
+                    buffer.putInt(entry.otherRuns.values[i]);
+                }
+                for (int i = 0; i < entry.maskRuns.size; ++i) {
+                    buffer.putInt(entry.maskRuns.values[i]);
+                }
+            }
+            buffer.flip();
+            write(buffer, position);
+
+            // header
+            ByteBuffer header = ByteBuffer.allocate(PackedGenome.HEADER_SIZE);
+            header.putInt(PackedGenome.MAGIC);
+            header.putInt(PackedGenome.VERSION);
+            header.putLong(directoryOffset);
+            header.flip();
+            write(header, 0);
+        } finally {
+            channel.close();
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Discard the file written so far.
+     */
+    public void abort() {
+        try {
+            channel.close();
+            Files.deleteIfExists(temporaryPath);
+        } catch (IOException ioEx) {
+            ioEx.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ****************************************************************************
+ */
+package biovis.hackebeil.server.data;
+
+import biovis.hackebeil.common.data.AnalysisScope;
+import biovis.hackebeil.common.data.Location;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fast membership tests for an analysis scope.
+ *
+ * The chromosomes are kept in a set. The regions of each chromosome are
+ * sorted and merged, so an overlap test is a binary search. All intervals
+ * are closed like the locations of segments.
+ *
+ * @author Dirk Zeckzer
+ */
+public class ScopeFilter {
+
+    // null: all chromosomes
+    private final Set<String> chromosomes;
+    // null: no regions; chromosome -> {starts, ends} of merged regions
+    private final Map<String, int[][]> regions;
+
+    /**
+     * Constructor. The region file is loaded with the bed parser.
+     *
+     * @param scope analysis scope
+     * @throws IOException if the region file cannot be read
+     */
+    public ScopeFilter(AnalysisScope scope)
+        throws IOException {
+        if (scope.getChromosomes() != null && !scope.getChromosomes().isEmpty()) {
+            chromosomes = new HashSet<>(scope.getChromosomes());
+        } else {
+            chromosomes = null;
+        }
+
+        if (!scope.hasRegions()) {
+            regions = null;
+            return;
+        }
+
+        final Map<String, List<int[]>> intervals = new HashMap<>();
+        if (scope.getRegions() != null) {
+            for (Location region : scope.getRegions()) {
+                addRegion(intervals, region.getChr(), region.getStart(), region.getEnd());
+            }
+        }
+        if (scope.getRegionFile() != null && !scope.getRegionFile().isEmpty()) {
+            BedParser.parse(scope.getRegionFile(),
+                            record -> addRegion(intervals, record.getChr(), record.getStart(), record.getEnd()));
+        }
+
+        regions = new HashMap<>();
+        for (Map.Entry<String, List<int[]>> entry : intervals.entrySet()) {
+            regions.put(entry.getKey(), merge(entry.getValue()));
+        }
+    }
+
+    /**
+     * Add region if its chromosome is in scope.
+     */
+    private void addRegion(
+        Map<String, List<int[]>> intervals,
+        String chr,
+        int start,
+        int end
+    ) {
+        if (end < start || (chromosomes != null && !chromosomes.contains(chr))) {
+            return;
+        }
+        List<int[]> list = intervals.get(chr);
+        if (list == null) {
+            list = new ArrayList<>();
+            intervals.put(chr, list);
+        }
+        list.add(new int[]{start, end});
+    }
+
+    /**
+     * Sort and merge overlapping or adjacent regions.
+     *
+     * @param list regions
+     * @return starts and ends of merged regions
+     */
+    private static int[][] merge(List<int[]> list) {
+        list.sort((a, b) -> Integer.compare(a[0], b[0]));
+        int[] starts = new int[list.size()];
+        int[] ends = new int[list.size()];
+        int size = 0;
+        for (int[] region : list) {
+            if (size > 0 && region[0] <= ends[size - 1] + 1) {
+                ends[size - 1] = Math.max(ends[size - 1], region[1]);
+            } else {
+                starts[size] = region[0];
+                ends[size] = region[1];
+                ++size;
+            }
+        }
+        return new int[][]{Arrays.copyOf(starts, size), Arrays.copyOf(ends, size)};
+    }
+
+    /**
+     * @return true iff the scope is restricted to regions
+     */
+    public boolean hasRegions() {
+        return regions != null;
+    }
+
+    /**
+     * @param chr chromosome
+     * @return true iff (parts of) the chromosome are in scope
+     */
+    public boolean containsChromosome(String chr) {
+        if (regions != null) {
+            return regions.containsKey(chr);
+        }
+        return chromosomes == null || chromosomes.contains(chr);
+    }
+
+    /**
+     * @param chr chromosome
+     * @param start start (inclusive)
+     * @param end end (inclusive)
+     * @return true iff the interval overlaps the scope
+     */
+    public boolean overlaps(String chr, int start, int end) {
+        if (regions == null) {
+            return containsChromosome(chr);
+        }
+        int[][] chrRegions = regions.get(chr);
+        if (chrRegions == null) {
+            return false;
+        }
+        // first region ending at or after start
+        int region = firstEndingAtOrAfter(chrRegions[1], start);
+        return region < chrRegions[1].length && chrRegions[0][region] <= end;
+    }
+
+    /**
+     * Intersect location with scope.
+     *
+     * @param location location
+     * @return parts of location in scope (location itself if it is
+     * completely in scope)
+     */
+    public List<Location> clip(Location location) {
+        List<Location> parts = new ArrayList<>();
+        String chr = location.getChr();
+        int start = location.getStart();
+        int end = location.getEnd();
+        if (regions == null) {
+            if (containsChromosome(chr)) {
+                parts.add(location);
+            }
+            return parts;
+        }
+        int[][] chrRegions = regions.get(chr);
+        if (chrRegions == null) {
+            return parts;
+        }
+        int[] starts = chrRegions[0];
+        int[] ends = chrRegions[1];
+        for (int region = firstEndingAtOrAfter(ends, start);
+             region < ends.length && starts[region] <= end;
+             ++region) {
+            if (starts[region] <= start && ends[region] >= end) {
+                parts.add(location);
+            } else {
+                parts.add(new Location(chr,
+                                       Math.max(start, starts[region]),
+                                       Math.min(end, ends[region])));
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * @param ends sorted ends
+     * @param position position
+     * @return index of first end &gt;= position (ends.length if none)
+     */
+    private static int firstEndingAtOrAfter(int[] ends, int position) {
+        int low = 0;
+        int high = ends.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] < position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
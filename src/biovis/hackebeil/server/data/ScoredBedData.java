@@ -17,19 +17,6 @@
  */
 package biovis.hackebeil.server.data;
 
-import biovis.hackebeil.common.data.ScoredLocation;
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.util.HashMap;
-import java.util.TreeSet;
-import java.util.zip.GZIPInputStream;
-
 /**
  * Class for handling bed files with assigned scores.
  *
@@ -44,87 +31,30 @@ public class ScoredBedData
      * @param file name of the file to load
      */
     public ScoredBedData(String file) {
-        super(file);
-
-        try {
-            if (file.endsWith("gz")) {
-                loadScoredBedDataGZ(file);
-            } else {
-                loadScoredBedDataPlain(file);
-            }
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
-    }
-
-    /**
-     * Load data gzip format.
-     *
-     * @param file name of file to load
-     */
-    private void loadScoredBedDataGZ(String file) {
-        try (FileInputStream fis = new FileInputStream(file);
-             BufferedInputStream bis = new BufferedInputStream(fis);
-             GZIPInputStream gzis = new GZIPInputStream(bis);
-             InputStreamReader isr = new InputStreamReader(gzis)) {
-            loadScoredBedData(isr);
-        } catch (IOException ioEx) {
-            ioEx.printStackTrace();
-        }
+        super(file, true);
     }
 
     /**
-     * Load data plain text format.
+     * Constructor.
      *
-     * @param file name of file to load
+     * @param file name of the file to load
+     * @param visitor additional visitor called for each record while loading
+     * (may be null)
      */
-    private void loadScoredBedDataPlain(String file) {
-        try (FileReader reader = new FileReader(file)) {
-            loadScoredBedData(reader);
-        } catch (IOException ioEx) {
-            ioEx.printStackTrace();
-        }
+    public ScoredBedData(String file, BedParser.BedVisitor visitor) {
+        super(file, true, visitor);
     }
 
     /**
-     * load data from reader.
+     * Constructor.
      *
-     * @param reader reader to use
+     * @param file name of the file to load
+     * @param scope analysis scope, records outside are skipped (null: whole
+     * genome)
+     * @param visitor additional visitor called for each record while loading
+     * (may be null)
      */
-    private void loadScoredBedData(Reader reader) {
-        //init data structure
-        data = new HashMap<>();
-
-        //open file
-        try (BufferedReader br = new BufferedReader(reader)) {
-            //read line-wise
-            while (br.ready()) {
-                // create current location
-                String[] line = br.readLine().split("\t");
-                String chr = line[0];
-                int start = Integer.parseInt(line[1]);
-                int end = Integer.parseInt(line[2]);
-                double score = Double.parseDouble(line[4]);
-                ScoredLocation loc = new ScoredLocation(chr, start, end, score);
-
-                // init chr container if necessary
-                if (!data.containsKey(chr)) {
-                    data.put(chr, new HashMap<>());
-                }
-
-                // calculate search interval containing start and end
-                // init search interval container and add location
-                for (int startInt = getIntervalStart(start), endInt = getIntervalStart(end);
-                     startInt <= endInt;
-                     startInt += INTERVAL_SIZE) {
-                    data.get(chr).put(startInt, new TreeSet<>());
-                    data.get(chr).get(startInt).add(loc);
-                }
-            }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    public ScoredBedData(String file, ScopeFilter scope, BedParser.BedVisitor visitor) {
+        super(file, true, scope, visitor);
     }
 }
@@ -0,0 +1,830 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ****************************************************************************
+ */
+package biovis.hackebeil.server.data;
+
+import biovis.hackebeil.common.data.Location;
+import biovis.hackebeil.common.data.Segment;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Columnar store of segments and their feature values.
+ *
+ * Every segment is a row: chromosome id, start, end, code, and short flag
+ * are kept in primitive arrays, every feature (additional data set, motif,
+ * PWM) is a column of doubles. Feature columns are either heap buffers or
+ * memory mapped from a stored file; a mapped column is copied to the heap
+ * when it is written.
+ *
+ * Segments are served as lightweight views (StoredSegment): reading and
+ * writing values of a view reads and writes the columns. Values of
+ * different rows may be written by different threads.
+ *
+ * File format (big endian):
+ * - header: magic, version, number of segments, number of chromosomes,
+ *   number of feature columns, reserved
+ * - chromosome names, feature directory (group, name, offset of column
+ *   relative to the start of the store)
+ * - chromosome ids, starts, ends, codes (int), short flags (byte)
+ * - feature columns (double), 8 byte aligned
+ *
+ * @author Dirk Zeckzer
+ */
+public class SegmentStore {
+
+    /**
+     * Groups of feature columns.
+     */
+    public enum FeatureGroup {
+        ADDITIONAL_DATA,
+        MOTIF,
+        PWM,
+        COMPOSITION
+    }
+
+    static final int MAGIC = 0x4D535331;
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // marks values which have not been computed (a NaN not produced by arithmetic)
+    private static final long ABSENT_BITS = 0x7ff800000000deadL;
+    private static final double ABSENT = Double.longBitsToDouble(ABSENT_BITS);
+
+    private final List<String> chromosomes = new ArrayList<>();
+    private final int size;
+    private final int[] chrIds;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] codes;
+    private final byte[] shortFlags;
+    private final FeatureColumns[] features = new FeatureColumns[FeatureGroup.values().length];
+
+    /**
+     * Feature columns of one group.
+     */
+    private static class FeatureColumns {
+
+        private final Map<String, DoubleBuffer> columns = new ConcurrentHashMap<>();
+        // names in order of creation
+        private final List<String> names = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Constructor: empty columns.
+     *
+     * @param size number of segments
+     */
+    private SegmentStore(int size) {
+        this.size = size;
+        chrIds = new int[size];
+        starts = new int[size];
+        ends = new int[size];
+        codes = new int[size];
+        shortFlags = new byte[size];
+        for (int group = 0; group < features.length; ++group) {
+            features[group] = new FeatureColumns();
+        }
+    }
+
+    /**
+     * Constructor: copies segments and their values into columns.
+     *
+     * @param segments segments
+     */
+    public SegmentStore(List<Segment> segments) {
+        this(segments.size());
+        Map<String, Integer> chromosomeIds = new HashMap<>();
+        for (int row = 0; row < size; ++row) {
+            Segment segment = segments.get(row);
+            Location location = segment.getLocation();
+            Integer chrId = chromosomeIds.get(location.getChr());
+            if (chrId == null) {
+                chrId = chromosomes.size();
+                chromosomes.add(location.getChr());
+                chromosomeIds.put(location.getChr(), chrId);
+            }
+            chrIds[row] = chrId;
+            starts[row] = location.getStart();
+            ends[row] = location.getEnd();
+            codes[row] = segment.getCode();
+            shortFlags[row] = segment.isShortSegment() ? (byte) 1 : (byte) 0;
+
+            copyValues(FeatureGroup.ADDITIONAL_DATA, segment.getAdditionalData(), row);
+            copyValues(FeatureGroup.MOTIF, segment.getMotifData(), row);
+            copyValues(FeatureGroup.PWM, segment.getPWMData(), row);
+        }
+    }
+
+    private void copyValues(FeatureGroup group, Map<String, Double> values, int row) {
+        if (values == null) {
+            return;
+        }
+        for (Map.Entry<String, Double> value : values.entrySet()) {
+            if (value.getValue() != null) {
+                setValue(group, value.getKey(), row, value.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return number of segments
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param row segment
+     * @return chromosome name
+     */
+    public String getChr(int row) {
+        return chromosomes.get(chrIds[row]);
+    }
+
+    /**
+     * @param row segment
+     * @return start position
+     */
+    public int getStart(int row) {
+        return starts[row];
+    }
+
+    /**
+     * @param row segment
+     * @return end position
+     */
+    public int getEnd(int row) {
+        return ends[row];
+    }
+
+    /**
+     * @param row segment
+     * @return length
+     */
+    public int getLength(int row) {
+        return ends[row] - starts[row] + 1;
+    }
+
+    /**
+     * @param row segment
+     * @return code
+     */
+    public int getCode(int row) {
+        return codes[row];
+    }
+
+    /**
+     * @param row segment
+     * @return true iff segment is a short segment
+     */
+    public boolean isShortSegment(int row) {
+        return shortFlags[row] != 0;
+    }
+
+    /**
+     * @param row segment
+     * @param shortSegment short flag
+     */
+    public void setShortSegment(int row, boolean shortSegment) {
+        shortFlags[row] = shortSegment ? (byte) 1 : (byte) 0;
+    }
+
+    /**
+     * @param row segment
+     * @return new location of segment
+     */
+    public Location getLocation(int row) {
+        return new Location(getChr(row), starts[row], ends[row]);
+    }
+
+    /**
+     * @param group feature group
+     * @return names of feature columns in order of creation
+     */
+    public List<String> getFeatureNames(FeatureGroup group) {
+        return features[group.ordinal()].names;
+    }
+
+    /**
+     * Get column of feature. Values not computed are marked (see isAbsent).
+     *
+     * @param group feature group
+     * @param name feature name
+     * @return read-only column (null if feature is unknown)
+     */
+    public DoubleBuffer getColumn(FeatureGroup group, String name) {
+        DoubleBuffer column = features[group.ordinal()].columns.get(name);
+        return column == null ? null : column.asReadOnlyBuffer();
+    }
+
+    /**
+     * @param value value of a column
+     * @return true iff value has not been computed
+     */
+    public static boolean isAbsent(double value) {
+        return Double.doubleToRawLongBits(value) == ABSENT_BITS;
+    }
+
+    /**
+     * @param group feature group
+     * @param name feature name
+     * @param row segment
+     * @return value (null if not computed)
+     */
+    public Double getValue(FeatureGroup group, String name, int row) {
+        DoubleBuffer column = features[group.ordinal()].columns.get(name);
+        if (column == null) {
+            return null;
+        }
+        double value = column.get(row);
+        return isAbsent(value) ? null : value;
+    }
+
+    /**
+     * Set value. The column is created if necessary.
+     *
+     * @param group feature group
+     * @param name feature name
+     * @param row segment
+     * @param value value
+     */
+    public void setValue(FeatureGroup group, String name, int row, double value) {
+        writableColumn(group, name).put(row, value);
+    }
+
+    /**
+     * Set values of one feature for a list of segments. Views of a store
+     * are written column-wise, other segments one by one.
+     *
+     * @param segments segments
+     * @param group feature group
+     * @param name feature name
+     * @param values value of each segment (same order as segments)
+     */
+    public static void setValues(List<Segment> segments, FeatureGroup group, String name, double[] values) {
+        if (segments instanceof SegmentList) {
+            SegmentList view = (SegmentList) segments;
+            DoubleBuffer column = view.getStore().writableColumn(group, name);
+            if (view.rows == null) {
+                DoubleBuffer target = column.duplicate();
+                target.clear();
+                target.put(values, 0, view.size());
+            } else {
+                for (int i = 0; i < view.rows.length; ++i) {
+                    column.put(view.rows[i], values[i]);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < segments.size(); ++i) {
+            Segment segment = segments.get(i);
+            switch (group) {
+                case ADDITIONAL_DATA:
+                    segment.add(name, values[i]);
+                    break;
+                case MOTIF:
+                    segment.addMotifData(name, values[i]);
+                    break;
+                case PWM:
+                    segment.addPWMData(name, values[i]);
+                    break;
+                // composition values are only kept in a store
+                default:
+            }
+        }
+    }
+
+    /**
+     * Get column for writing: create it or copy a mapped column to the heap.
+     *
+     * @param group feature group
+     * @param name feature name
+     * @return writable column
+     */
+    private DoubleBuffer writableColumn(FeatureGroup group, String name) {
+        FeatureColumns featureColumns = features[group.ordinal()];
+        DoubleBuffer column = featureColumns.columns.get(name);
+        if (column != null && !column.isReadOnly()) {
+            return column;
+        }
+        synchronized (featureColumns) {
+            column = featureColumns.columns.get(name);
+            if (column == null) {
+                double[] values = new double[size];
+                Arrays.fill(values, ABSENT);
+                column = DoubleBuffer.wrap(values);
+                featureColumns.columns.put(name, column);
+                featureColumns.names.add(name);
+            } else if (column.isReadOnly()) {
+                DoubleBuffer source = column.duplicate();
+                source.clear();
+                source.limit(size);
+                DoubleBuffer copy = DoubleBuffer.allocate(size);
+                copy.put(source);
+                copy.clear();
+                column = copy;
+                featureColumns.columns.put(name, column);
+            }
+            return column;
+        }
+    }
+
+    /**
+     * @param group feature group
+     * @param row segment
+     * @return computed values of segment (new map)
+     */
+    public Map<String, Double> getValues(FeatureGroup group, int row) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (String name : getFeatureNames(group)) {
+            Double value = getValue(group, name, row);
+            if (value != null) {
+                values.put(name, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Select segments by length.
+     *
+     * @param minSegmentLength minimal length of a (long) segment
+     * @param shortSegments true: segments shorter than minSegmentLength,
+     * false: all other segments
+     * @return rows of selected segments
+     */
+    private int[] selectRows(int minSegmentLength, boolean shortSegments) {
+        int[] rows = new int[size];
+        int count = 0;
+        for (int row = 0; row < size; ++row) {
+            if ((getLength(row) < minSegmentLength) == shortSegments) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * @return view of all segments
+     */
+    public List<Segment> getSegments() {
+        return new SegmentList(null);
+    }
+
+    /**
+     * @param minSegmentLength minimal length of a (long) segment
+     * @param shortSegments true: short segments, false: long segments
+     * @return view of selected segments
+     */
+    public List<Segment> getSegments(int minSegmentLength, boolean shortSegments) {
+        return new SegmentList(selectRows(minSegmentLength, shortSegments));
+    }
+
+    /**
+     * @param segments list of segments
+     * @return true iff list is a view of this store
+     */
+    public boolean isView(List<Segment> segments) {
+        return segments instanceof SegmentList && ((SegmentList) segments).getStore() == this;
+    }
+
+    /**
+     * Values of all features of a group for the long segments.
+     *
+     * @param group feature group
+     * @param minSegmentLength minimal length of a (long) segment
+     * @return feature name to view of values (null if not computed)
+     */
+    public Map<String, List<Double>> getFeatureValues(FeatureGroup group, int minSegmentLength) {
+        final int[] rows = selectRows(minSegmentLength, false);
+        Map<String, List<Double>> values = new LinkedHashMap<>();
+        for (final String name : getFeatureNames(group)) {
+            values.put(name, new ValueList(group, name, rows));
+        }
+        return values;
+    }
+
+    /**
+     * View of segments (all or selected rows).
+     */
+    private class SegmentList
+        extends AbstractList<Segment>
+        implements RandomAccess {
+
+        private final int[] rows;
+
+        private SegmentList(int[] rows) {
+            this.rows = rows;
+        }
+
+        private SegmentStore getStore() {
+            return SegmentStore.this;
+        }
+
+        @Override
+        public Segment get(int index) {
+            if (rows == null) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+                }
+                return new StoredSegment(SegmentStore.this, index);
+            }
+            return new StoredSegment(SegmentStore.this, rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return rows == null ? size : rows.length;
+        }
+    }
+
+    /**
+     * View of the values of one feature for selected rows.
+     */
+    private class ValueList
+        extends AbstractList<Double>
+        implements RandomAccess {
+
+        private final FeatureGroup group;
+        private final String name;
+        private final int[] rows;
+
+        private ValueList(FeatureGroup group, String name, int[] rows) {
+            this.group = group;
+            this.name = name;
+            this.rows = rows;
+        }
+
+        @Override
+        public Double get(int index) {
+            return getValue(group, name, rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return rows.length;
+        }
+    }
+
+    /**
+     * Segment backed by a row of a store.
+     */
+    public static class StoredSegment
+        extends Segment {
+
+        private final transient SegmentStore store;
+        private final transient int row;
+
+        /**
+         * Constructor.
+         *
+         * @param store store
+         * @param row row of segment
+         */
+        public StoredSegment(SegmentStore store, int row) {
+            this.store = store;
+            this.row = row;
+        }
+
+        /**
+         * @return row of segment in store
+         */
+        public int getRow() {
+            return row;
+        }
+
+        @Override
+        public Location getLocation() {
+            return store.getLocation(row);
+        }
+
+        @Override
+        public int getCode() {
+            return store.getCode(row);
+        }
+
+        @Override
+        public int getLength() {
+            return store.getLength(row);
+        }
+
+        @Override
+        public String getLongId() {
+            return getLocation().getLongId();
+        }
+
+        @Override
+        public String getShortId() {
+            return getLocation().getShortId();
+        }
+
+        @Override
+        public Map<String, Double> getMotifData() {
+            return store.getValues(FeatureGroup.MOTIF, row);
+        }
+
+        @Override
+        public Map<String, Double> getPWMData() {
+            return store.getValues(FeatureGroup.PWM, row);
+        }
+
+        @Override
+        public Map<String, Double> getAdditionalData() {
+            return store.getValues(FeatureGroup.ADDITIONAL_DATA, row);
+        }
+
+        @Override
+        public void add(String df, double val) {
+            store.setValue(FeatureGroup.ADDITIONAL_DATA, df, row, val);
+        }
+
+        @Override
+        public void addMotifData(String motifId, double value) {
+            store.setValue(FeatureGroup.MOTIF, motifId, row, value);
+        }
+
+        @Override
+        public void addPWMData(String pwmId, double value) {
+            store.setValue(FeatureGroup.PWM, pwmId, row, value);
+        }
+
+        @Override
+        public Double getMotifValue(String motif) {
+            return store.getValue(FeatureGroup.MOTIF, motif, row);
+        }
+
+        @Override
+        public Double getPWMValue(String pwm) {
+            return store.getValue(FeatureGroup.PWM, pwm, row);
+        }
+
+        @Override
+        public Double getAdditionalDataValue(String df) {
+            return store.getValue(FeatureGroup.ADDITIONAL_DATA, df, row);
+        }
+
+        @Override
+        public boolean isShortSegment() {
+            return store.isShortSegment(row);
+        }
+
+        @Override
+        public void setShortSegment(boolean shortSegment) {
+            store.setShortSegment(row, shortSegment);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(store) + row;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof StoredSegment)) {
+                return false;
+            }
+            StoredSegment other = (StoredSegment) obj;
+            return store == other.store && row == other.row;
+        }
+    }
+
+    /**
+     * Save store. The file is written to a temporary file and moved to its
+     * final name.
+     *
+     * @param file file name
+     * @throws IOException if file cannot be written
+     */
+    public void save(String file)
+        throws IOException {
+        Path path = Paths.get(file);
+        Path temporaryPath = Paths.get(file + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryPath,
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            save(channel, 0);
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Write store into a file at the given (8 byte aligned) position, e.g.,
+     * as part of a larger file. Offsets in the store are relative to this
+     * position.
+     *
+     * @param channel file channel opened for writing
+     * @param base position of store in file
+     * @return position after store
+     * @throws IOException if store cannot be written
+     */
+    public long save(FileChannel channel, long base)
+        throws IOException {
+        // names and feature directory
+        List<byte[]> chromosomeNames = new ArrayList<>();
+        int directorySize = 0;
+        for (String chr : chromosomes) {
+            byte[] name = chr.getBytes(StandardCharsets.UTF_8);
+            chromosomeNames.add(name);
+            directorySize += Integer.BYTES + name.length;
+        }
+        List<FeatureGroup> columnGroups = new ArrayList<>();
+        List<String> columnNames = new ArrayList<>();
+        List<byte[]> columnNameBytes = new ArrayList<>();
+        for (FeatureGroup group : FeatureGroup.values()) {
+            for (String name : getFeatureNames(group)) {
+                byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+                columnGroups.add(group);
+                columnNames.add(name);
+                columnNameBytes.add(nameBytes);
+                directorySize += 2 * Integer.BYTES + nameBytes.length + Long.BYTES;
+            }
+        }
+        long dataOffset = align(HEADER_SIZE + (long) directorySize);
+        long columnOffset = align(dataOffset + 4L * Integer.BYTES * size + size);
+
+        ByteBuffer header = ByteBuffer.allocate((int) dataOffset);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(size);
+        header.putInt(chromosomes.size());
+        header.putInt(columnNames.size());
+        header.putInt(0);
+        for (byte[] name : chromosomeNames) {
+            header.putInt(name.length);
+            header.put(name);
+        }
+        for (int column = 0; column < columnNames.size(); ++column) {
+            header.putInt(columnGroups.get(column).ordinal());
+            header.putInt(columnNameBytes.get(column).length);
+            header.put(columnNameBytes.get(column));
+            header.putLong(columnOffset + (long) column * Double.BYTES * size);
+        }
+        header.position(0);
+        write(channel, header, base);
+
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = base + dataOffset;
+        for (int[] values : new int[][]{chrIds, starts, ends, codes}) {
+            for (int from = 0; from < size; from += BUFFER_SIZE / Integer.BYTES) {
+                int to = Math.min(size, from + BUFFER_SIZE / Integer.BYTES);
+                buffer.clear();
+                buffer.asIntBuffer().put(values, from, to - from);
+                buffer.limit((to - from) * Integer.BYTES);
+                position = write(channel, buffer, position);
+            }
+        }
+        position = write(channel, ByteBuffer.wrap(shortFlags), position);
+
+        for (int column = 0; column < columnNames.size(); ++column) {
+            DoubleBuffer values = features[columnGroups.get(column).ordinal()].columns.get(columnNames.get(column));
+            position = base + columnOffset + (long) column * Double.BYTES * size;
+            DoubleBuffer source = values.duplicate();
+            for (int from = 0; from < size; from += BUFFER_SIZE / Double.BYTES) {
+                int to = Math.min(size, from + BUFFER_SIZE / Double.BYTES);
+                source.limit(to);
+                source.position(from);
+                buffer.clear();
+                buffer.asDoubleBuffer().put(source);
+                buffer.limit((to - from) * Double.BYTES);
+                position = write(channel, buffer, position);
+            }
+        }
+        return base + columnOffset + (long) columnNames.size() * Double.BYTES * size;
+    }
+
+    private static long align(long position) {
+        return (position + Double.BYTES - 1) & ~(long) (Double.BYTES - 1);
+    }
+
+    private static long write(FileChannel channel, ByteBuffer buffer, long position)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+
+    /**
+     * Open stored segments: segment columns are read, feature columns are
+     * memory mapped.
+     *
+     * @param file file name
+     * @return store
+     * @throws IOException if file cannot be read or has the wrong format
+     */
+    public static SegmentStore open(String file)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            return open(channel, 0, file);
+        }
+    }
+
+    /**
+     * Open store written at the given position of a file. Feature columns
+     * stay mapped after the channel is closed.
+     *
+     * @param channel file channel opened for reading
+     * @param base position of store in file
+     * @param file file name (for messages)
+     * @return store
+     * @throws IOException if store cannot be read or has the wrong format
+     */
+    public static SegmentStore open(FileChannel channel, long base, String file)
+        throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        read(channel, header, base);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("File " + file + " is not a segment store (version " + VERSION + ")");
+        }
+        int size = header.getInt();
+        int numberOfChromosomes = header.getInt();
+        int numberOfColumns = header.getInt();
+        if (size < 0 || numberOfChromosomes < 0 || numberOfColumns < 0) {
+            throw new IOException("File " + file + " is corrupt");
+        }
+
+        SegmentStore store = new SegmentStore(size);
+        ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, base + HEADER_SIZE,
+                                           Math.min(channel.size() - base, Integer.MAX_VALUE) - HEADER_SIZE);
+        for (int chr = 0; chr < numberOfChromosomes; ++chr) {
+            byte[] name = new byte[directory.getInt()];
+            directory.get(name);
+            store.chromosomes.add(new String(name, StandardCharsets.UTF_8));
+        }
+        FeatureGroup[] groups = FeatureGroup.values();
+        for (int column = 0; column < numberOfColumns; ++column) {
+            FeatureGroup group = groups[directory.getInt()];
+            byte[] name = new byte[directory.getInt()];
+            directory.get(name);
+            long offset = base + directory.getLong();
+            if (offset + (long) Double.BYTES * size > channel.size()) {
+                throw new IOException("File " + file + " is truncated");
+            }
+            FeatureColumns featureColumns = store.features[group.ordinal()];
+            String columnName = new String(name, StandardCharsets.UTF_8);
+            featureColumns.columns.put(columnName,
+                                       channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) Double.BYTES * size)
+                                           .asDoubleBuffer());
+            featureColumns.names.add(columnName);
+        }
+
+        long position = base + align(HEADER_SIZE + (long) directory.position());
+        for (int[] values : new int[][]{store.chrIds, store.starts, store.ends, store.codes}) {
+            IntBuffer column = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) Integer.BYTES * size)
+                .asIntBuffer();
+            column.get(values);
+            position += (long) Integer.BYTES * size;
+        }
+        channel.map(FileChannel.MapMode.READ_ONLY, position, size).get(store.shortFlags);
+        return store;
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment store");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -15,12 +15,12 @@
  */
 package biovis.hackebeil.server.data;
 
+import biovis.hackebeil.common.data.BreakSegment;
 import biovis.hackebeil.common.data.DataFile;
 import biovis.hackebeil.common.data.Motif;
 import biovis.hackebeil.common.data.PositionWeightMatrix;
 import biovis.hackebeil.common.data.Segment;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -48,23 +48,30 @@ public class ServerCache {
 
     // genome reader, stays open!
     private BufferedRandomAccessFile genomeReader;
+    // packed genome (null if not available)
+    transient private PackedGenome packedGenome;
 
     // Reference data sets and segmentation
     transient private List<DataFile> referenceList;
-    private List<Segment> allSegments;
+    // segments and their values (null if not segmented)
+    transient private SegmentStore segmentStore;
     private int minSegmentLength = MIN_SEGMENT_LENGTH;
+    // analysis scope of the segmentation (null: whole genome)
+    transient private ScopeFilter scopeFilter;
+    // break segments of the segmentation (sent to the client on demand)
+    transient private List<BreakSegment> breakSegments;
 
     // Additional data sets
     transient private List<DataFile> dfList;
-    private Map<String, List<Double>> additionalDataValues;
 
     // Motifs
     transient private List<Motif> motifList;
-    private Map<String, List<Double>> motifValues;
 
     // PWMs
     transient private List<PositionWeightMatrix> pwmList;
-    private Map<String, List<Double>> pwmValues;
+
+    // k-mer spectrum of segments (null if not computed)
+    transient private KmerSpectrum kmerSpectrum;
 
     // Number of threads
     private int numberOfThreads = 6;
@@ -98,15 +105,17 @@ public class ServerCache {
                 //
             }
         }
+        genomeReader = null;
+        packedGenome = null;
 
         referenceList = null;
-        allSegments = null;
+        segmentStore = null;
         dfList = null;
-        additionalDataValues = null;
         motifList = null;
-        motifValues = null;
         pwmList = null;
-        pwmValues = null;
+        kmerSpectrum = null;
+        scopeFilter = null;
+        breakSegments = null;
 
         minSegmentLength = MIN_SEGMENT_LENGTH;
     }
@@ -156,91 +165,193 @@ public class ServerCache {
     }
 
     /**
-     * @param segments
+     * Set segments. The segments are copied into a new segment store unless
+     * they are a view of the current store.
+     *
+     * @param segments segments (null: remove segments)
      */
     public void setSegments(List<Segment> segments) {
-        this.allSegments = segments;
+        kmerSpectrum = null;
+        if (segments == null) {
+            this.segmentStore = null;
+        } else if (segmentStore == null || !segmentStore.isView(segments)) {
+            this.segmentStore = new SegmentStore(segments);
+        }
+    }
 
+    /**
+     * @return segment store (null if not segmented)
+     */
+    public SegmentStore getSegmentStore() {
+        return segmentStore;
+    }
+
+    /**
+     * @param segmentStore segment store
+     */
+    public void setSegmentStore(SegmentStore segmentStore) {
+        this.segmentStore = segmentStore;
     }
 
+    /**
+     * @return view of all segments (null if not segmented)
+     */
     public List<Segment> getAllSegments() {
-        return this.allSegments;
+        return segmentStore == null ? null : segmentStore.getSegments();
     }
 
+    /**
+     * @return view of segments with at least minimal segment length (null
+     * if not segmented)
+     */
     public List<Segment> getSegments() {
-        List<Segment> segments = new ArrayList<>();
-        for (Segment segment : allSegments) {
-            if (segment.getLength() >= minSegmentLength) {
-                segments.add(segment);
-            }
-        }
-        return segments;
+        return segmentStore == null ? null : segmentStore.getSegments(minSegmentLength, false);
     }
 
+    /**
+     * @return view of segments shorter than minimal segment length (null if
+     * not segmented)
+     */
     public List<Segment> getShortSegments() {
-        List<Segment> segments = new ArrayList<>();
-        for (Segment segment : allSegments) {
-            if (segment.getLength() < minSegmentLength) {
-                segments.add(segment);
-            }
-        }
-        return segments;
+        return segmentStore == null ? null : segmentStore.getSegments(minSegmentLength, true);
     }
 
     public int getMinSegmentLength() {
         return minSegmentLength;
     }
 
+    /**
+     * @return analysis scope of the segmentation (null: whole genome)
+     */
+    public ScopeFilter getScopeFilter() {
+        return scopeFilter;
+    }
+
+    /**
+     * @param scopeFilter analysis scope of the segmentation (null: whole
+     * genome)
+     */
+    public void setScopeFilter(ScopeFilter scopeFilter) {
+        this.scopeFilter = scopeFilter;
+    }
+
+    /**
+     * @return break segments of the segmentation (null if not computed)
+     */
+    public List<BreakSegment> getBreakSegments() {
+        return breakSegments;
+    }
+
+    /**
+     * @param breakSegments break segments of the segmentation
+     */
+    public void setBreakSegments(List<BreakSegment> breakSegments) {
+        this.breakSegments = breakSegments;
+    }
+
     public void setMinSegmentLength(int minSegmentLength) {
+        if (minSegmentLength != this.minSegmentLength) {
+            kmerSpectrum = null;
+        }
         this.minSegmentLength = minSegmentLength;
     }
 
+    /**
+     * Set additional data sets. The values are kept in the segment store.
+     *
+     * @param dfList additional data sets
+     */
     public void setModifications(
-        List<DataFile> dfList,
-        Map<String, List<Double>> additionalDataValues
+        List<DataFile> dfList
     ) {
         this.dfList = dfList;
-        this.additionalDataValues = additionalDataValues;
     }
 
     public List<DataFile> getDfList() {
         return dfList;
     }
 
+    /**
+     * @return additional data set name to values of segments (views of the
+     * segment store)
+     */
     public Map<String, List<Double>> getAdditionalDataValues() {
-        return additionalDataValues;
+        return getFeatureValues(SegmentStore.FeatureGroup.ADDITIONAL_DATA);
     }
 
+    /**
+     * Set motifs. The values are kept in the segment store.
+     *
+     * @param motifList motifs
+     */
     public void setMotifs(
-        List<Motif> motifList,
-        Map<String, List<Double>> motifValues
+        List<Motif> motifList
     ) {
         this.motifList = motifList;
-        this.motifValues = motifValues;
     }
 
     public List<Motif> getMotifList() {
         return motifList;
     }
 
+    /**
+     * @return motif id to values of segments (views of the segment store)
+     */
     public Map<String, List<Double>> getMotifValues() {
-        return motifValues;
+        return getFeatureValues(SegmentStore.FeatureGroup.MOTIF);
     }
 
+    /**
+     * Set PWMs. The values are kept in the segment store.
+     *
+     * @param pwmList PWMs
+     */
     public void setPWM(
-        List<PositionWeightMatrix> pwmList,
-        Map<String, List<Double>> pwmValues
+        List<PositionWeightMatrix> pwmList
     ) {
         this.pwmList = pwmList;
-        this.pwmValues = pwmValues;
     }
 
     public List<PositionWeightMatrix> getPWMList() {
         return pwmList;
     }
 
+    /**
+     * @return PWM id to values of segments (views of the segment store)
+     */
     public Map<String, List<Double>> getPWMValues() {
-        return pwmValues;
+        return getFeatureValues(SegmentStore.FeatureGroup.PWM);
+    }
+
+    /**
+     * @return composition feature name to values of segments (views of the
+     * segment store)
+     */
+    public Map<String, List<Double>> getCompositionValues() {
+        return getFeatureValues(SegmentStore.FeatureGroup.COMPOSITION);
+    }
+
+    /**
+     * @return k-mer spectrum of the segments (null if not computed)
+     */
+    public KmerSpectrum getKmerSpectrum() {
+        return kmerSpectrum;
+    }
+
+    /**
+     * @param kmerSpectrum k-mer spectrum of the segments
+     */
+    public void setKmerSpectrum(KmerSpectrum kmerSpectrum) {
+        this.kmerSpectrum = kmerSpectrum;
+    }
+
+    /**
+     * @param group feature group
+     * @return feature name to values of segments with at least minimal
+     * segment length (null if not segmented)
+     */
+    private Map<String, List<Double>> getFeatureValues(SegmentStore.FeatureGroup group) {
+        return segmentStore == null ? null : segmentStore.getFeatureValues(group, minSegmentLength);
     }
 
     /**
@@ -285,6 +396,20 @@ public class ServerCache {
         this.genomeReader = genomeReader;
     }
 
+    /**
+     * @return the packed genome (null if not available)
+     */
+    public PackedGenome getPackedGenome() {
+        return packedGenome;
+    }
+
+    /**
+     * @param packedGenome the packed genome to set
+     */
+    public void setPackedGenome(PackedGenome packedGenome) {
+        this.packedGenome = packedGenome;
+    }
+
     /**
      * @return the filePathToRefGenome
      */
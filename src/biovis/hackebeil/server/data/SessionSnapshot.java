@@ -0,0 +1,235 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ****************************************************************************
+ */
+package biovis.hackebeil.server.data;
+
+import biovis.hackebeil.common.data.BreakSegment;
+import biovis.hackebeil.common.data.DataFile;
+import biovis.hackebeil.common.data.Motif;
+import biovis.hackebeil.common.data.PositionWeightMatrix;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of the analysis state of a server (ServerCache): reference
+ * genome and its index, reference data sets, minimal segment length,
+ * analysis scope, additional data sets, motifs, PWMs, segments, break
+ * segments, and all computed values. The k-mer spectrum is not saved, it
+ * has to be computed again after restoring.
+ *
+ * File format (big endian):
+ * - header: magic, version, size of state, offset of segment store
+ * - state (UTF-8 JSON): file names, genome index maps, size and
+ *   modification time of the reference genome, data set, motif, and PWM
+ *   lists, minimal segment length, scope filter, break segments
+ * - segment store (see SegmentStore), 8 byte aligned, missing if not
+ *   segmented (offset 0)
+ *
+ * Restoring reads the state and the segment columns, the value columns
+ * are memory mapped and only paged in when used.
+ *
+ * @author Dirk Zeckzer
+ */
+public class SessionSnapshot {
+
+    static final int MAGIC = 0x4D534E31;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+
+    /**
+     * Analysis state besides the segment store.
+     */
+    private static class State {
+
+        private String filePathToRefGenome;
+        private String filePathToIndex;
+        private long refGenomeSize;
+        private long refGenomeModified;
+
+        private Map<String, Integer> seqLengths;
+        private Map<String, Integer> seqStart;
+        private Map<String, Long> startFilePos;
+        private Map<String, Integer> lineLength;
+
+        private List<DataFile> referenceList;
+        private int minSegmentLength;
+        private ScopeFilter scopeFilter;
+        private List<BreakSegment> breakSegments;
+        private List<DataFile> dfList;
+        private List<Motif> motifList;
+        private List<PositionWeightMatrix> pwmList;
+    }
+
+    private SessionSnapshot() {
+    }
+
+    /**
+     * Save analysis state. The file is written to a temporary file and
+     * moved to its final name.
+     *
+     * @param file snapshot file
+     * @param cache server cache
+     * @throws IOException if snapshot cannot be written
+     */
+    public static void save(String file, ServerCache cache)
+        throws IOException {
+        State state = new State();
+        state.filePathToRefGenome = cache.getFilePathToRefGenome();
+        state.filePathToIndex = cache.getFilePathToIndex();
+        if (state.filePathToRefGenome != null) {
+            Path refGenome = Paths.get(state.filePathToRefGenome);
+            state.refGenomeSize = Files.size(refGenome);
+            state.refGenomeModified = Files.getLastModifiedTime(refGenome).toMillis();
+        }
+        state.seqLengths = cache.getSeqLengths();
+        state.seqStart = cache.getSeqStart();
+        state.startFilePos = cache.getStartFilePos();
+        state.lineLength = cache.getLineLength();
+        state.referenceList = cache.getReferenceList();
+        state.minSegmentLength = cache.getMinSegmentLength();
+        state.scopeFilter = cache.getScopeFilter();
+        state.breakSegments = cache.getBreakSegments();
+        state.dfList = cache.getDfList();
+        state.motifList = cache.getMotifList();
+        state.pwmList = cache.getPWMList();
+        byte[] json = createGson().toJson(state).getBytes(StandardCharsets.UTF_8);
+
+        SegmentStore segmentStore = cache.getSegmentStore();
+        long storeOffset = segmentStore == null
+                           ? 0
+                           : (HEADER_SIZE + json.length + Double.BYTES - 1) & ~(long) (Double.BYTES - 1);
+
+        Path path = Paths.get(file);
+        Path temporaryPath = Paths.get(file + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryPath,
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + json.length);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(json.length);
+            header.putLong(storeOffset);
+            header.put(json);
+            header.flip();
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+            if (segmentStore != null) {
+                segmentStore.save(channel, storeOffset);
+            }
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Restore analysis state into the (cleared) server cache. The reference
+     * genome has to be unchanged since the snapshot was taken.
+     *
+     * @param file snapshot file
+     * @param cache server cache
+     * @throws IOException if snapshot cannot be read, has the wrong format,
+     * or the reference genome has changed
+     */
+    public static void restore(String file, ServerCache cache)
+        throws IOException {
+        State state;
+        SegmentStore segmentStore = null;
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("File " + file + " is not a session snapshot");
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("File " + file + " is not a session snapshot (version " + VERSION + ")");
+            }
+            long stateSize = header.getLong();
+            long storeOffset = header.getLong();
+            if (stateSize < 0 || stateSize > Integer.MAX_VALUE
+                || HEADER_SIZE + stateSize > channel.size()
+                || (storeOffset != 0 && storeOffset < HEADER_SIZE + stateSize)) {
+                throw new IOException("File " + file + " is corrupt");
+            }
+
+            ByteBuffer json = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, stateSize);
+            try {
+                state = createGson().fromJson(StandardCharsets.UTF_8.decode(json).toString(), State.class);
+            } catch (JsonParseException jsonEx) {
+                throw new IOException("File " + file + " is corrupt: " + jsonEx.getMessage());
+            }
+            if (storeOffset != 0) {
+                segmentStore = SegmentStore.open(channel, storeOffset, file);
+            }
+        }
+
+        if (state.filePathToRefGenome != null) {
+            Path refGenome = Paths.get(state.filePathToRefGenome);
+            if (!Files.isRegularFile(refGenome)) {
+                throw new IOException("Reference genome " + refGenome + " not found");
+            }
+            if (Files.size(refGenome) != state.refGenomeSize
+                || Files.getLastModifiedTime(refGenome).toMillis() != state.refGenomeModified) {
+                throw new IOException("Reference genome " + refGenome + " has changed since the snapshot was taken");
+            }
+        }
+
+        cache.clear();
+        cache.setFilePathToRefGenome(state.filePathToRefGenome);
+        cache.setFilePathToIndex(state.filePathToIndex);
+        cache.getSeqLengths().putAll(state.seqLengths);
+        cache.getSeqStart().putAll(state.seqStart);
+        cache.getStartFilePos().putAll(state.startFilePos);
+        cache.getLineLength().putAll(state.lineLength);
+        if (state.filePathToRefGenome != null) {
+            cache.setGenomeReader(new BufferedRandomAccessFile(state.filePathToRefGenome, "r", 1024 * 16));
+            cache.setPackedGenome(PackedGenome.openForFasta(state.filePathToRefGenome));
+        }
+        cache.setReferenceList(state.referenceList);
+        cache.setMinSegmentLength(state.minSegmentLength);
+        cache.setScopeFilter(state.scopeFilter);
+        cache.setBreakSegments(state.breakSegments);
+        cache.setSegmentStore(segmentStore);
+        cache.setModifications(state.dfList);
+        cache.setMotifs(state.motifList);
+        cache.setPWM(state.pwmList);
+    }
+
+    /**
+     * PWM weights are logarithms and may be -Infinity.
+     *
+     * @return Gson for the state
+     */
+    private static Gson createGson() {
+        return new GsonBuilder().serializeSpecialFloatingPointValues().create();
+    }
+}
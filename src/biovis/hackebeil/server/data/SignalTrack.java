@@ -0,0 +1,559 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ****************************************************************************
+ */
+package biovis.hackebeil.server.data;
+
+import biovis.hackebeil.common.data.Location;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Continuous signal (bedGraph, fixedStep or variableStep wiggle, plain or
+ * gzip).
+ *
+ * Positions are 0-based like the bed positions of the segments, i.e., a
+ * bedGraph line covers [start, end), a wiggle position p (1-based) is
+ * position p - 1. A location [start, end] covers the positions start to end.
+ *
+ * Each chromosome is stored as runs of constant signal sorted by position:
+ * run starts and ends (exclusive), values, the prefix sums of value times
+ * run length, and the maxima of blocks of runs (with a sparse table over
+ * the block maxima). Adjacent runs with equal values are merged, positions
+ * covered by several lines keep the value of the line starting first.
+ * Positions without signal have signal 0.
+ *
+ * The integrated and mean signal of a location take two binary searches;
+ * the maximum additionally scans at most two blocks of runs and a sparse
+ * table of block maxima.
+ *
+ * @author Dirk Zeckzer
+ */
+public class SignalTrack {
+
+    private static final int BLOCK_SIZE = 64;
+
+    private final Map<String, Runs> chromosomes = new HashMap<>();
+    protected String name;
+
+    /**
+     * Runs of one chromosome.
+     */
+    private static class Runs {
+
+        private int size = 0;
+        private int[] starts = new int[1024];
+        private int[] ends = new int[1024];
+        private double[] values = new double[1024];
+        // prefix[i]: signal integrated over runs 0 .. i - 1
+        private double[] prefix;
+        // lengths[i]: positions covered by runs 0 .. i - 1
+        private long[] lengths;
+        // blockMax[level][b]: maximum of blocks b .. b + 2^level - 1
+        private double[][] blockMax;
+
+        private void add(int start, int end, double value) {
+            if (size == starts.length) {
+                int capacity = size + (size >> 1);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            values[size] = value;
+            ++size;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file name of the file to load
+     */
+    public SignalTrack(String file) {
+        this(file, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file name of the file to load
+     * @param scope analysis scope, runs outside are skipped (null: whole
+     * genome)
+     */
+    public SignalTrack(String file, ScopeFilter scope) {
+        name = file.substring(file.lastIndexOf(File.separator) + 1);
+
+        try {
+            load(file, scope);
+        } catch (IOException | RuntimeException ex) {
+            ex.printStackTrace();
+        }
+
+        for (Runs runs : chromosomes.values()) {
+            build(runs);
+        }
+    }
+
+    /**
+     * Check if file is a signal track (extension .bedGraph, .bg, .wig,
+     * .wiggle, optionally followed by .gz; case-insensitive).
+     *
+     * @param file file name
+     * @return true iff file is a signal track
+     */
+    public static boolean isSignalTrack(String file) {
+        String lowerCase = file.toLowerCase();
+        if (lowerCase.endsWith(".gz")) {
+            lowerCase = lowerCase.substring(0, lowerCase.length() - 3);
+        }
+        return lowerCase.endsWith(".bedgraph")
+               || lowerCase.endsWith(".bg")
+               || lowerCase.endsWith(".wig")
+               || lowerCase.endsWith(".wiggle");
+    }
+
+    /**
+     * Load file.
+     *
+     * @param file file name
+     * @param scope analysis scope (null: whole genome)
+     * @throws IOException if file cannot be read or is malformed
+     */
+    private void load(String file, ScopeFilter scope)
+        throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        if (file.toLowerCase().endsWith(".gz")) {
+            inputStream = new GZIPInputStream(inputStream, 1 << 16);
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.US_ASCII), 1 << 20)) {
+            // wiggle state
+            boolean fixedStep = false;
+            boolean variableStep = false;
+            Runs runs = null;
+            String chr = null;
+            int position = 0;
+            int step = 1;
+            int span = 1;
+
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                ++lineNumber;
+                line = line.trim();
+                if (line.isEmpty()
+                    || line.startsWith("#")
+                    || line.startsWith("track")
+                    || line.startsWith("browser")) {
+                    continue;
+                }
+
+                if (line.startsWith("fixedStep") || line.startsWith("variableStep")) {
+                    fixedStep = line.startsWith("fixedStep");
+                    variableStep = !fixedStep;
+                    chr = parameter(line, "chrom", null, lineNumber);
+                    runs = scope == null || scope.containsChromosome(chr) ? getRuns(chr) : null;
+                    step = Integer.parseInt(parameter(line, "step", "1", lineNumber));
+                    span = Integer.parseInt(parameter(line, "span", "1", lineNumber));
+                    if (fixedStep) {
+                        position = Integer.parseInt(parameter(line, "start", null, lineNumber)) - 1;
+                    }
+                    continue;
+                }
+
+                if (fixedStep) {
+                    if (runs != null && inScope(scope, chr, position, position + span)) {
+                        runs.add(position, position + span, Double.parseDouble(line));
+                    }
+                    position += step;
+                } else if (variableStep) {
+                    if (runs == null) {
+                        continue;
+                    }
+                    String[] columns = line.split("\\s+");
+                    int start = Integer.parseInt(columns[0]) - 1;
+                    if (inScope(scope, chr, start, start + span)) {
+                        runs.add(start, start + span, Double.parseDouble(columns[1]));
+                    }
+                } else {
+                    // bedGraph
+                    String[] columns = line.split("\\s+");
+                    if (columns.length < 4) {
+                        throw new IOException("Line " + lineNumber + ": bedGraph line needs 4 columns");
+                    }
+                    if (scope != null && !scope.containsChromosome(columns[0])) {
+                        continue;
+                    }
+                    int start = Integer.parseInt(columns[1]);
+                    int end = Integer.parseInt(columns[2]);
+                    if (inScope(scope, columns[0], start, end)) {
+                        getRuns(columns[0]).add(start, end, Double.parseDouble(columns[3]));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param scope analysis scope (null: whole genome)
+     * @param chr chromosome
+     * @param start start of run (inclusive)
+     * @param end end of run (exclusive)
+     * @return true iff the run overlaps the scope
+     */
+    private static boolean inScope(ScopeFilter scope, String chr, int start, int end) {
+        return scope == null || scope.overlaps(chr, start, end - 1);
+    }
+
+    /**
+     * Get value of parameter key=value of a wiggle declaration line.
+     *
+     * @param line declaration line
+     * @param key key
+     * @param defaultValue value if parameter is missing (null: required)
+     * @param lineNumber line number (for error message)
+     * @return value
+     * @throws IOException if a required parameter is missing
+     */
+    private static String parameter(String line, String key, String defaultValue, int lineNumber)
+        throws IOException {
+        for (String token : line.split("\\s+")) {
+            if (token.startsWith(key + "=")) {
+                return token.substring(key.length() + 1);
+            }
+        }
+        if (defaultValue == null) {
+            throw new IOException("Line " + lineNumber + ": missing " + key);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @param chr chromosome name
+     * @return runs of chromosome (created if necessary)
+     */
+    private Runs getRuns(String chr) {
+        Runs runs = chromosomes.get(chr);
+        if (runs == null) {
+            runs = new Runs();
+            chromosomes.put(chr, runs);
+        }
+        return runs;
+    }
+
+    /**
+     * Sort runs, clip overlaps, merge equal adjacent runs, and build prefix
+     * sums and block maxima.
+     *
+     * @param runs runs of one chromosome
+     */
+    private static void build(Runs runs) {
+        int size = runs.size;
+        boolean sorted = true;
+        for (int i = 1; i < size && sorted; ++i) {
+            sorted = runs.starts[i - 1] <= runs.starts[i];
+        }
+        int[] order = new int[size];
+        for (int i = 0; i < size; ++i) {
+            order[i] = i;
+        }
+        if (!sorted) {
+            Integer[] boxed = new Integer[size];
+            for (int i = 0; i < size; ++i) {
+                boxed[i] = i;
+            }
+            final int[] starts = runs.starts;
+            Arrays.sort(boxed, (a, b) -> Integer.compare(starts[a], starts[b]));
+            for (int i = 0; i < size; ++i) {
+                order[i] = boxed[i];
+            }
+        }
+
+        int[] starts = new int[size];
+        int[] ends = new int[size];
+        double[] values = new double[size];
+        int count = 0;
+        for (int i = 0; i < size; ++i) {
+            int run = order[i];
+            int start = runs.starts[run];
+            int end = runs.ends[run];
+            double value = runs.values[run];
+            if (count > 0 && start < ends[count - 1]) {
+                start = ends[count - 1];
+            }
+            if (end <= start) {
+                continue;
+            }
+            if (count > 0 && start == ends[count - 1] && value == values[count - 1]) {
+                ends[count - 1] = end;
+                continue;
+            }
+            starts[count] = start;
+            ends[count] = end;
+            values[count] = value;
+            ++count;
+        }
+
+        runs.size = count;
+        runs.starts = Arrays.copyOf(starts, count);
+        runs.ends = Arrays.copyOf(ends, count);
+        runs.values = Arrays.copyOf(values, count);
+
+        runs.prefix = new double[count + 1];
+        runs.lengths = new long[count + 1];
+        for (int i = 0; i < count; ++i) {
+            runs.prefix[i + 1] = runs.prefix[i] + runs.values[i] * (runs.ends[i] - runs.starts[i]);
+            runs.lengths[i + 1] = runs.lengths[i] + (runs.ends[i] - runs.starts[i]);
+        }
+
+        int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int levels = 1;
+        while ((1 << levels) <= blocks) {
+            ++levels;
+        }
+        runs.blockMax = new double[levels][];
+        runs.blockMax[0] = new double[blocks];
+        for (int b = 0; b < blocks; ++b) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = b * BLOCK_SIZE; i < Math.min(count, (b + 1) * BLOCK_SIZE); ++i) {
+                max = Math.max(max, runs.values[i]);
+            }
+            runs.blockMax[0][b] = max;
+        }
+        for (int level = 1; level < levels; ++level) {
+            int width = 1 << level;
+            double[] previous = runs.blockMax[level - 1];
+            double[] current = new double[Math.max(0, blocks - width + 1)];
+            for (int b = 0; b < current.length; ++b) {
+                current[b] = Math.max(previous[b], previous[b + (width >> 1)]);
+            }
+            runs.blockMax[level] = current;
+        }
+    }
+
+    /**
+     * @param runs runs
+     * @param start first position
+     * @return first run ending after start
+     */
+    private static int firstRun(Runs runs, int start) {
+        // ends are sorted: first run with end > start
+        int low = 0;
+        int high = runs.size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (runs.ends[middle] <= start) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param runs runs
+     * @param end last position
+     * @return index after the last run starting at or before end
+     */
+    private static int lastRun(Runs runs, int end) {
+        int low = 0;
+        int high = runs.size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (runs.starts[middle] <= end) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Signal integrated over [start, end].
+     *
+     * @param chr chromosome name
+     * @param start first position
+     * @param end last position
+     * @return integrated signal
+     */
+    public double integrated(String chr, int start, int end) {
+        Runs runs = chromosomes.get(chr);
+        if (runs == null || end < start) {
+            return 0.0;
+        }
+        int first = firstRun(runs, start);
+        int last = lastRun(runs, end);
+        if (first >= last) {
+            return 0.0;
+        }
+        double sum = runs.prefix[last] - runs.prefix[first];
+        if (runs.starts[first] < start) {
+            sum -= runs.values[first] * (start - runs.starts[first]);
+        }
+        if (runs.ends[last - 1] > end + 1) {
+            sum -= runs.values[last - 1] * (runs.ends[last - 1] - (end + 1));
+        }
+        return sum;
+    }
+
+    /**
+     * Mean signal over [start, end] (positions without signal count as 0).
+     *
+     * @param chr chromosome name
+     * @param start first position
+     * @param end last position
+     * @return mean signal
+     */
+    public double mean(String chr, int start, int end) {
+        if (end < start) {
+            return 0.0;
+        }
+        return integrated(chr, start, end) / ((double) (end - start + 1));
+    }
+
+    /**
+     * Maximal signal over [start, end] (0 if a position has no signal and
+     * all signals are negative).
+     *
+     * @param chr chromosome name
+     * @param start first position
+     * @param end last position
+     * @return maximal signal
+     */
+    public double max(String chr, int start, int end) {
+        Runs runs = chromosomes.get(chr);
+        if (runs == null || end < start) {
+            return 0.0;
+        }
+        int first = firstRun(runs, start);
+        int last = lastRun(runs, end);
+        if (first >= last) {
+            return 0.0;
+        }
+
+        double max = Double.NEGATIVE_INFINITY;
+        int firstFullBlock = (first + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int lastFullBlock = last / BLOCK_SIZE;
+        if (firstFullBlock < lastFullBlock) {
+            for (int i = first; i < firstFullBlock * BLOCK_SIZE; ++i) {
+                max = Math.max(max, runs.values[i]);
+            }
+            int level = 31 - Integer.numberOfLeadingZeros(lastFullBlock - firstFullBlock);
+            max = Math.max(max, runs.blockMax[level][firstFullBlock]);
+            max = Math.max(max, runs.blockMax[level][lastFullBlock - (1 << level)]);
+            for (int i = lastFullBlock * BLOCK_SIZE; i < last; ++i) {
+                max = Math.max(max, runs.values[i]);
+            }
+        } else {
+            for (int i = first; i < last; ++i) {
+                max = Math.max(max, runs.values[i]);
+            }
+        }
+
+        // positions without signal have signal 0
+        if (max < 0.0 && coveredPositions(runs, first, last, start, end) < (long) end - start + 1) {
+            max = 0.0;
+        }
+        return max;
+    }
+
+    /**
+     * @return number of positions of [start, end] covered by runs first ..
+     * last - 1 (all runs overlapping [start, end])
+     */
+    private static long coveredPositions(Runs runs, int first, int last, int start, int end) {
+        long covered = runs.lengths[last] - runs.lengths[first];
+        if (runs.starts[first] < start) {
+            covered -= start - runs.starts[first];
+        }
+        if (runs.ends[last - 1] > end + 1) {
+            covered -= runs.ends[last - 1] - (end + 1);
+        }
+        return covered;
+    }
+
+    /**
+     * @param loc location
+     * @return mean signal of location
+     */
+    public double mean(Location loc) {
+        return mean(loc.getChr(), loc.getStart(), loc.getEnd());
+    }
+
+    /**
+     * @param loc location
+     * @return maximal signal of location
+     */
+    public double max(Location loc) {
+        return max(loc.getChr(), loc.getStart(), loc.getEnd());
+    }
+
+    /**
+     * @param loc location
+     * @return integrated signal of location
+     */
+    public double integrated(Location loc) {
+        return integrated(loc.getChr(), loc.getStart(), loc.getEnd());
+    }
+
+    /**
+     * @return names of chromosomes with signal
+     */
+    public Set<String> getChromosomes() {
+        return chromosomes.keySet();
+    }
+
+    /**
+     * @param chr chromosome name
+     * @return number of runs of chromosome
+     */
+    public int size(String chr) {
+        Runs runs = chromosomes.get(chr);
+        return runs == null ? 0 : runs.size;
+    }
+
+    /**
+     * Get name.
+     *
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Change name.
+     *
+     * @param name name to change to
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+}
@@ -29,6 +29,7 @@ import biovis.hackebeil.common.data.DataFile;
 import biovis.hackebeil.common.data.Segment;
 import biovis.hackebeil.common.data.Motif;
 import biovis.hackebeil.common.data.PositionWeightMatrix;
+import biovis.hackebeil.server.data.SegmentStore;
 import biovis.hackebeil.server.data.ServerCache;
 import java.util.logging.Level;
 
@@ -41,6 +42,7 @@ public class DataIO {
     private static final Logger log = Logger.getLogger(DataIO.class.getName());
 
     /**
+     * Export data (on the calling thread, i.e., the job of the command).
      *
      * @param filename
      * @param data
@@ -49,18 +51,15 @@ public class DataIO {
         String filename,
         ServerCache data
     ) {
-        new Thread(() -> {
-            log.log(Level.INFO, "Export data to: {0}", filename);
-            // test for ending
-            if (filename.endsWith(".data")) {
-                exportDataPlain(filename, data);
-            } else if (filename.endsWith(".data.gz")) {
-                exportDataGZ(filename, data);
-            } else {
-                log.warning("not '.data' or '.data.gz'");
-            }
-        }).start();
-
+        log.log(Level.INFO, "Export data to: {0}", filename);
+        // test for ending
+        if (filename.endsWith(".data")) {
+            exportDataPlain(filename, data);
+        } else if (filename.endsWith(".data.gz")) {
+            exportDataGZ(filename, data);
+        } else {
+            log.warning("not '.data' or '.data.gz'");
+        }
     }
 
     /**
@@ -131,6 +130,16 @@ public class DataIO {
                 printWriter.print(";" + pwm.getMotifId());
             }
         }
+        // write composition data
+        SegmentStore segmentStore = data.getSegmentStore();
+        List<String> compositionData = segmentStore == null
+                                       ? null
+                                       : segmentStore.getFeatureNames(SegmentStore.FeatureGroup.COMPOSITION);
+        if (compositionData != null) {
+            for (String composition : compositionData) {
+                printWriter.print(";" + composition);
+            }
+        }
         printWriter.println(";" + "length");
 
         // write Datatypes (line 2)
@@ -153,10 +162,16 @@ public class DataIO {
                 printWriter.print(";Double");
             }
         }
+        if (compositionData != null) {
+            for (int i = 0; i < compositionData.size(); i++) {
+                printWriter.print(";Double");
+            }
+        }
         printWriter.println(";Integer");
 
         // print data
         List<Segment> dataPoints = data.getAllSegments();
+        int row = 0;
         for (Segment dp : dataPoints) {
             printWriter.print(dp.getShortId()
                               + ";" + dp.getLongId()
@@ -177,7 +192,13 @@ public class DataIO {
                     printWriter.print(";" + dp.getPWMValue(pwm.getMotifId()));
                 }
             }
+            if (compositionData != null) {
+                for (String composition : compositionData) {
+                    printWriter.print(";" + segmentStore.getValue(SegmentStore.FeatureGroup.COMPOSITION, composition, row));
+                }
+            }
             printWriter.println(";" + dp.getLength());
+            ++row;
         }
     }
 }
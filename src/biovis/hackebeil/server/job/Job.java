@@ -0,0 +1,188 @@
+/**
+ *  Copyright 2016 Lydia Müller, Dirk Zeckzer
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package biovis.hackebeil.server.job;
+
+import biovis.hackebeil.common.data.JobStatus;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A server command run by the job scheduler.
+ *
+ * Cancellation is cooperative: workers check the job of the current thread
+ * (Job.current(), Job.checkCancelled()) inside their loops. Workers running
+ * parallel loops get the job on the calling thread and pass it on.
+ *
+ * @author Dirk Zeckzer
+ */
+public class Job {
+
+    // job run by the current thread
+    private static final ThreadLocal<Job> CURRENT = new ThreadLocal<>();
+
+    private final long id;
+    private final String command;
+    private final int priority;
+    // exclusive jobs submitted before (jobs never overtake exclusive jobs)
+    private final long phase;
+    // submission order (FIFO for equal priority)
+    private final long sequence;
+    private final Runnable task;
+    private final JobScheduler scheduler;
+
+    private volatile String state = JobStatus.QUEUED;
+    private volatile boolean cancelled = false;
+    private final AtomicInteger progress = new AtomicInteger(0);
+
+    /**
+     * Constructor.
+     *
+     * @param id job id
+     * @param command server command
+     * @param priority priority (higher first)
+     * @param phase 2 * number of exclusive jobs submitted before, + 1 for
+     * exclusive jobs
+     * @param sequence submission order
+     * @param task task
+     * @param scheduler scheduler (progress is reported to its listener)
+     */
+    Job(
+        long id,
+        String command,
+        int priority,
+        long phase,
+        long sequence,
+        Runnable task,
+        JobScheduler scheduler
+    ) {
+        this.id = id;
+        this.command = command;
+        this.priority = priority;
+        this.phase = phase;
+        this.sequence = sequence;
+        this.task = task;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return job run by the current thread (null if none)
+     */
+    public static Job current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Throw CancellationException if the job of the current thread is
+     * cancelled.
+     */
+    public static void checkCancelled() {
+        Job job = CURRENT.get();
+        if (job != null) {
+            job.check();
+        }
+    }
+
+    /**
+     * Set progress of the job of the current thread (if any).
+     *
+     * @param fraction progress (0.0 .. 1.0)
+     */
+    public static void setCurrentProgress(double fraction) {
+        Job job = CURRENT.get();
+        if (job != null) {
+            job.setProgress(fraction);
+        }
+    }
+
+    /**
+     * Throw CancellationException if the job is cancelled.
+     */
+    public void check() {
+        if (cancelled) {
+            throw new CancellationException("Job " + id + " (" + command + ") cancelled");
+        }
+    }
+
+    /**
+     * Set progress; the listener is informed if the percentage changes.
+     * Thread-safe.
+     *
+     * @param fraction progress (0.0 .. 1.0)
+     */
+    public void setProgress(double fraction) {
+        int percent = (int) Math.max(0, Math.min(100, Math.floor(100.0 * fraction)));
+        if (progress.getAndSet(percent) != percent) {
+            scheduler.notifyListener(getStatus());
+        }
+    }
+
+    /**
+     * Run task on the current thread.
+     */
+    void run() {
+        CURRENT.set(this);
+        try {
+            task.run();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Request cancellation.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true iff cancellation was requested
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void setState(String state) {
+        this.state = state;
+    }
+
+    /**
+     * @return current status
+     */
+    public JobStatus getStatus() {
+        return new JobStatus(id, command, state, progress.get());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    long getPhase() {
+        return phase;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+}
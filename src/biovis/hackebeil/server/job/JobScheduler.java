@@ -0,0 +1,325 @@
+/**
+ *  Copyright 2016 Lydia Müller, Dirk Zeckzer
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package biovis.hackebeil.server.job;
+
+import biovis.hackebeil.common.data.JobStatus;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs server commands as jobs on a bounded pool of threads.
+ *
+ * Queued jobs are started by priority (higher first), then in order of
+ * submission, as long as
+ * - fewer jobs than threads are running,
+ * - fewer jobs of the same command than its limit (default 1) are running;
+ *   commands of a group share the limit of the group,
+ * - no exclusive job is running.
+ * An exclusive job (e.g., one replacing the segments) starts only if no
+ * other job is running. Priorities apply between exclusive jobs only: an
+ * exclusive job starts after all jobs submitted before it, and no later
+ * job overtakes it while it waits.
+ *
+ * The listener is informed about every change of a job: queued, running,
+ * progress, done, cancelled, failed.
+ *
+ * @author Dirk Zeckzer
+ */
+public class JobScheduler {
+
+    private static final Logger log = Logger.getLogger("JobScheduler");
+
+    private static final int DEFAULT_LIMIT = 1;
+
+    /**
+     * Listener for job changes.
+     */
+    public interface JobListener {
+
+        /**
+         * Job changed.
+         *
+         * @param status new status
+         */
+        void jobChanged(JobStatus status);
+    }
+
+    private final int numberOfThreads;
+    private final ExecutorService pool;
+    private final JobListener listener;
+
+    // queued jobs in start order
+    private final TreeSet<Job> queue = new TreeSet<>((a, b) -> {
+        if (a.getPhase() != b.getPhase()) {
+            return Long.compare(a.getPhase(), b.getPhase());
+        }
+        if (a.getPriority() != b.getPriority()) {
+            return Integer.compare(b.getPriority(), a.getPriority());
+        }
+        return Long.compare(a.getSequence(), b.getSequence());
+    });
+    // queued and running jobs
+    private final Map<Long, Job> jobs = new HashMap<>();
+
+    // command or group -> limit
+    private final Map<String, Integer> limits = new HashMap<>();
+    // command -> group
+    private final Map<String, String> groups = new HashMap<>();
+    private final Set<String> exclusiveCommands = new HashSet<>();
+    // command or group -> number of running jobs
+    private final Map<String, Integer> runningPerCommand = new HashMap<>();
+    private int numberOfRunning = 0;
+    private boolean exclusiveRunning = false;
+    private long nextId = 1;
+    private long numberOfExclusiveSubmitted = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param numberOfThreads maximal number of jobs running at the same time
+     * @param listener listener (may be null)
+     */
+    public JobScheduler(
+        int numberOfThreads,
+        JobListener listener
+    ) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+        this.pool = Executors.newFixedThreadPool(this.numberOfThreads);
+        this.listener = listener;
+    }
+
+    /**
+     * Set maximal number of running jobs of a command or group.
+     *
+     * @param command server command or group
+     * @param limit maximal number of running jobs
+     */
+    public synchronized void setLimit(String command, int limit) {
+        limits.put(command, Math.max(1, limit));
+    }
+
+    /**
+     * Jobs of the command count for the limit of the group, e.g., commands
+     * changing the same data.
+     *
+     * @param command server command
+     * @param group group
+     */
+    public synchronized void setGroup(String command, String group) {
+        groups.put(command, group);
+    }
+
+    /**
+     * Jobs of the command run alone.
+     *
+     * @param command server command
+     */
+    public synchronized void setExclusive(String command) {
+        exclusiveCommands.add(command);
+    }
+
+    /**
+     * Submit job.
+     *
+     * @param command server command
+     * @param priority priority (higher first)
+     * @param task task
+     * @return job
+     */
+    public Job submit(
+        String command,
+        int priority,
+        Runnable task
+    ) {
+        Job job;
+        synchronized (this) {
+            long id = nextId++;
+            long phase = 2 * numberOfExclusiveSubmitted;
+            if (exclusiveCommands.contains(command)) {
+                ++phase;
+                ++numberOfExclusiveSubmitted;
+            }
+            job = new Job(id, command, priority, phase, id, task, this);
+            queue.add(job);
+            jobs.put(id, job);
+        }
+        log.log(Level.INFO, "Job {0} queued: {1}", new Object[]{job.getId(), command});
+        // queued is reported before the job can start
+        notifyListener(new JobStatus(job.getId(), command, JobStatus.QUEUED, 0));
+        synchronized (this) {
+            schedule();
+        }
+        return job;
+    }
+
+    /**
+     * Cancel job: queued jobs are removed, running jobs are asked to stop.
+     *
+     * @param id job id
+     * @return true iff the job was queued or running
+     */
+    public boolean cancel(long id) {
+        Job removed = null;
+        synchronized (this) {
+            Job job = jobs.get(id);
+            if (job == null) {
+                return false;
+            }
+            job.cancel();
+            if (queue.remove(job)) {
+                jobs.remove(id);
+                job.setState(JobStatus.CANCELLED);
+                removed = job;
+            }
+        }
+        log.log(Level.INFO, "Job {0} cancelled", id);
+        if (removed != null) {
+            notifyListener(removed.getStatus());
+        }
+        return true;
+    }
+
+    /**
+     * @return status of queued and running jobs
+     */
+    public synchronized List<JobStatus> getJobs() {
+        List<JobStatus> statuses = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            statuses.add(job.getStatus());
+        }
+        return statuses;
+    }
+
+    /**
+     * Cancel all jobs and stop the threads.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            for (Job job : jobs.values()) {
+                job.cancel();
+            }
+            queue.clear();
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Start queued jobs as allowed by the limits. Caller holds the lock.
+     */
+    private void schedule() {
+        Iterator<Job> iterator = queue.iterator();
+        while (iterator.hasNext()
+               && numberOfRunning < numberOfThreads
+               && !exclusiveRunning) {
+            Job job = iterator.next();
+            String command = job.getCommand();
+            if (exclusiveCommands.contains(command)) {
+                if (numberOfRunning == 0) {
+                    iterator.remove();
+                    exclusiveRunning = true;
+                    start(job);
+                }
+                // later jobs wait for the exclusive job
+                break;
+            }
+
+            String limited = groups.getOrDefault(command, command);
+            int running = runningPerCommand.getOrDefault(limited, 0);
+            if (running < limits.getOrDefault(limited, DEFAULT_LIMIT)) {
+                iterator.remove();
+                runningPerCommand.put(limited, running + 1);
+                start(job);
+            }
+        }
+    }
+
+    /**
+     * Start job. Caller holds the lock.
+     *
+     * @param job job
+     */
+    private void start(final Job job) {
+        ++numberOfRunning;
+        job.setState(JobStatus.RUNNING);
+        pool.execute(() -> execute(job));
+    }
+
+    /**
+     * Run job and start the next ones.
+     *
+     * @param job job
+     */
+    private void execute(Job job) {
+        log.log(Level.INFO, "Job {0} started: {1}", new Object[]{job.getId(), job.getCommand()});
+        notifyListener(job.getStatus());
+        String state = JobStatus.FAILED;
+        try {
+            job.run();
+            state = JobStatus.DONE;
+        } catch (CancellationException ex) {
+            state = JobStatus.CANCELLED;
+        } catch (Throwable ex) {
+            // also errors: the bookkeeping below must not be skipped
+            ex.printStackTrace();
+            state = JobStatus.FAILED;
+        } finally {
+            log.log(Level.INFO, "Job {0} {1}", new Object[]{job.getId(), state});
+
+            synchronized (this) {
+                job.setState(state);
+                jobs.remove(job.getId());
+                --numberOfRunning;
+                String command = job.getCommand();
+                if (exclusiveCommands.contains(command)) {
+                    exclusiveRunning = false;
+                } else {
+                    String limited = groups.getOrDefault(command, command);
+                    runningPerCommand.put(limited, runningPerCommand.get(limited) - 1);
+                }
+            }
+            notifyListener(job.getStatus());
+            synchronized (this) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * Inform listener (not holding the lock).
+     *
+     * @param status job status
+     */
+    void notifyListener(JobStatus status) {
+        if (listener != null) {
+            try {
+                listener.jobChanged(status);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+}
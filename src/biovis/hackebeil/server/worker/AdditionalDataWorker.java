@@ -19,8 +19,18 @@ import biovis.hackebeil.common.data.DataFile;
 import biovis.hackebeil.common.data.Segment;
 import biovis.hackebeil.server.data.BedData;
 import biovis.hackebeil.common.data.Location;
-import biovis.hackebeil.common.data.ScoredLocation;
+import biovis.hackebeil.server.data.BedFileLoader;
 import biovis.hackebeil.server.data.ScoredBedData;
+import biovis.hackebeil.server.data.ScopeFilter;
+import biovis.hackebeil.server.data.SegmentStore;
+import biovis.hackebeil.server.data.SignalTrack;
+import biovis.hackebeil.server.job.Job;
+import biovislib.parallel4.IterationInt;
+import biovislib.parallel4.Parallel2;
+import biovislib.parallel4.ParallelForInt2;
+import biovislib.parallel4.ParallelizationFactory;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -33,6 +43,10 @@ import java.util.logging.Logger;
 public class AdditionalDataWorker {
 
     private List<Segment> segments;
+    // number of threads for loading the bed files and computing coverage
+    private int numberOfThreads = 1;
+    // analysis scope (null: whole genome)
+    private ScopeFilter scope = null;
 
     /**
      *
@@ -42,6 +56,8 @@ public class AdditionalDataWorker {
     }
 
     /**
+     * Add data files: bed files (coverage or coverage score) and signal
+     * tracks (bedGraph, wiggle; see DataFile.getSignalStatistic).
      *
      * @param modsData
      * @return
@@ -49,19 +65,28 @@ public class AdditionalDataWorker {
     public boolean compute(List<DataFile> modsData) {
         Logger log = Logger.getLogger("Add modifications");
         log.info("Adding Modifications");
+        List<DataFile> bedFiles = new ArrayList<>();
+        List<DataFile> signalFiles = new ArrayList<>();
         for (DataFile df : modsData) {
             log.log(Level.INFO, "Adding Modification {0}", df.getDataSetName());
-            if (df.getUseScore()) {
-                // System.out.println("use score");
-                ScoredBedData bed = new ScoredBedData(df.getFilePath());
-                bed.setName(df.getDataSetName());
-                addBedData(bed);
+            if (SignalTrack.isSignalTrack(df.getFilePath())) {
+                signalFiles.add(df);
             } else {
-                // System.out.println("use not score");
-                BedData bed = new BedData(df.getFilePath());
-                bed.setName(df.getDataSetName());
-                addBedData(bed);
+                bedFiles.add(df);
+            }
+        }
+
+        if (!bedFiles.isEmpty()) {
+            List<BedData> beds = BedFileLoader.loadBedFiles(bedFiles, true, false, scope, numberOfThreads);
+            for (int i = 0; i < bedFiles.size(); ++i) {
+                beds.get(i).setName(bedFiles.get(i).getDataSetName());
             }
+            Job.checkCancelled();
+            addBedData(beds);
+        }
+        if (!signalFiles.isEmpty()) {
+            Job.checkCancelled();
+            addSignalData(signalFiles);
         }
         log.info("Modifications added");
         return true;
@@ -131,27 +156,85 @@ public class AdditionalDataWorker {
      * @param bed bed data to add
      */
     private void addBedData(BedData bed) {
-        for (Segment dp : segments) {
-            Location loc = dp.getLocation();
-            double cov = loc.coverage(bed.overlappingWith(loc));
-            dp.add(bed.getName(), cov);
+        addBedData(Collections.singletonList(bed));
+    }
+
+    /**
+     * Add additional bed data: coverage (plain bed data) or coverage score
+     * (scored bed data) of each segment, computed by a sweep over the
+     * sorted segments and intervals.
+     *
+     * @param beds bed data to add
+     */
+    private void addBedData(List<BedData> beds) {
+        CoverageEngine coverageEngine = new CoverageEngine(segments, numberOfThreads);
+        double[][] values = coverageEngine.compute(beds);
+        for (int i = 0; i < beds.size(); ++i) {
+            SegmentStore.setValues(segments, SegmentStore.FeatureGroup.ADDITIONAL_DATA, beds.get(i).getName(), values[i]);
         }
     }
 
     /**
-     * Add additional bed data (scored).
+     * Add signal tracks: mean, maximal, or integrated signal of each
+     * segment. The files are loaded and evaluated in parallel.
      *
-     * @param bed bed data to add
+     * @param signalFiles signal track files
      */
-    private void addBedData(ScoredBedData bed) {
+    private void addSignalData(final List<DataFile> signalFiles) {
+        final int size = segments.size();
+        final double[][] values = new double[signalFiles.size()][size];
+        final Job job = Job.current();
+
+        Parallel2 p2 = ParallelizationFactory.getInstance(Math.max(1, Math.min(numberOfThreads, signalFiles.size())));
+        new ParallelForInt2(p2, 0, signalFiles.size()).loop(new IterationInt() {
+            @Override
+            public void iteration(int currentFile) {
+                if (job != null && job.isCancelled()) {
+                    return;
+                }
+                DataFile df = signalFiles.get(currentFile);
+                SignalTrack signal = new SignalTrack(df.getFilePath(), scope);
+                double[] column = values[currentFile];
+                for (int i = 0; i < size; ++i) {
+                    Location loc = segments.get(i).getLocation();
+                    switch (df.getSignalStatistic()) {
+                        case DataFile.SIGNAL_MAX:
+                            column[i] = signal.max(loc);
+                            break;
+                        case DataFile.SIGNAL_INTEGRATED:
+                            column[i] = signal.integrated(loc);
+                            break;
+                        case DataFile.SIGNAL_MEAN:
+                        default:
+                            column[i] = signal.mean(loc);
+                    }
+                }
+            }
+        });
+        if (job != null) {
+            job.check();
+        }
 
-        for (Segment dp : segments) {
-            Location loc = dp.getLocation();
-            double cov = ScoredLocation.coverageScore(loc, bed.overlappingWith(loc));
-            dp.add(bed.getName(), cov);
+        for (int i = 0; i < signalFiles.size(); ++i) {
+            SegmentStore.setValues(segments, SegmentStore.FeatureGroup.ADDITIONAL_DATA, signalFiles.get(i).getDataSetName(), values[i]);
         }
     }
 
+    /**
+     * @param numberOfThreads number of threads for loading the bed files
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * @param scope analysis scope, records outside are skipped while loading
+     * (null: whole genome)
+     */
+    public void setScope(ScopeFilter scope) {
+        this.scope = scope;
+    }
+
     /**
      * @return the segments
      */
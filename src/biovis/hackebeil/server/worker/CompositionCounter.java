@@ -0,0 +1,130 @@
+/**
+ *  Copyright 2016 Lydia Müller, Dirk Zeckzer
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package biovis.hackebeil.server.worker;
+
+import biovis.hackebeil.common.data.CompositionFeature;
+import java.util.List;
+
+/**
+ * Computes base composition features of a sequence in one pass. Features
+ * which are undefined for a sequence (e.g., GC fraction of a sequence
+ * consisting of N only) are 0.
+ *
+ * @author Dirk Zeckzer
+ */
+public class CompositionCounter {
+
+    private static final int A = 0;
+    private static final int C = 1;
+    private static final int G = 2;
+    private static final int T = 3;
+    private static final int N = 4;
+    private static final int OTHER = 5;
+    private static final int[] CLASSES = new int[128];
+
+    static {
+        java.util.Arrays.fill(CLASSES, OTHER);
+        char[] characters = {'A', 'C', 'G', 'T', 'N'};
+        for (int i = 0; i < characters.length; ++i) {
+            CLASSES[characters[i]] = i;
+            CLASSES[Character.toLowerCase(characters[i])] = i;
+        }
+    }
+
+    private final CompositionFeature[] features;
+
+    /**
+     * Constructor.
+     *
+     * @param features features to compute
+     */
+    public CompositionCounter(List<CompositionFeature> features) {
+        this.features = features.toArray(new CompositionFeature[0]);
+    }
+
+    /**
+     * @return number of features
+     */
+    public int size() {
+        return features.length;
+    }
+
+    /**
+     * @param feature index of feature
+     * @return feature
+     */
+    public CompositionFeature getFeature(int feature) {
+        return features[feature];
+    }
+
+    /**
+     * Compute values of all features.
+     *
+     * @param sequence sequence
+     * @param values values[feature][index] is set
+     * @param index index of sequence
+     */
+    public void computeValues(
+        char[] sequence,
+        double[][] values,
+        int index
+    ) {
+        long[] counts = new long[OTHER + 1];
+        long lowerCase = 0;
+        long cpg = 0;
+        int previous = OTHER;
+        for (char c : sequence) {
+            int characterClass = c < CLASSES.length ? CLASSES[c] : OTHER;
+            ++counts[characterClass];
+            if (c >= 'a' && c <= 'z') {
+                ++lowerCase;
+            }
+            if (previous == C && characterClass == G) {
+                ++cpg;
+            }
+            previous = characterClass;
+        }
+
+        long bases = counts[A] + counts[C] + counts[G] + counts[T];
+        for (int feature = 0; feature < features.length; ++feature) {
+            double value = 0.0;
+            switch (features[feature]) {
+                case GC_FRACTION:
+                    if (bases > 0) {
+                        value = (double) (counts[C] + counts[G]) / bases;
+                    }
+                    break;
+                case CPG_OBSERVED_EXPECTED:
+                    if (counts[C] > 0 && counts[G] > 0) {
+                        value = (double) cpg * bases / ((double) counts[C] * counts[G]);
+                    }
+                    break;
+                case N_FRACTION:
+                    if (sequence.length > 0) {
+                        value = (double) counts[N] / sequence.length;
+                    }
+                    break;
+                case SOFT_MASKED_FRACTION:
+                    if (sequence.length > 0) {
+                        value = (double) lowerCase / sequence.length;
+                    }
+                    break;
+                default:
+            }
+            values[feature][index] = value;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import biovis.hackebeil.common.data.Motif;
 import biovis.hackebeil.common.data.PositionWeightMatrix;
 import biovis.hackebeil.common.data.Segment;
 import biovis.hackebeil.server.data.ServerCache;
+import biovis.hackebeil.server.job.Job;
 import biovislib.parallel4.Parallel2;
 import biovislib.statistics.correlation.SpearmanCorrelationParallelFast;
 import java.util.ArrayList;
@@ -31,6 +32,9 @@ import java.util.List;
  */
 public class CorrelationWorker {
 
+    // segments between checks for cancellation
+    private static final int CANCEL_CHECK_STEP = 1 << 14;
+
     private List<double[]> baseData = new ArrayList<>();
     private SpearmanCorrelationParallelFast correlationFast;
     private double[][] resultTable;
@@ -44,8 +48,10 @@ public class CorrelationWorker {
     }
 
     public boolean compute() {
+        Job.checkCancelled();
         MyCorrelationList cl = new MyCorrelationList(baseData);
         this.resultTable = this.correlationFast.calculateCorrelations(cl);
+        Job.checkCancelled();
         return true;
     }
 
@@ -84,6 +90,9 @@ public class CorrelationWorker {
 
         List<Segment> segments = cache.getSegments();
         for (int i = 0; i < lines; i++) {
+            if (i % CANCEL_CHECK_STEP == 0) {
+                Job.checkCancelled();
+            }
             segment = segments.get(i);
 
             // value array for this line
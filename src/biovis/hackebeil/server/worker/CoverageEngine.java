@@ -0,0 +1,202 @@
+/**
+ *  Copyright 2016 Lydia Müller, Dirk Zeckzer
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package biovis.hackebeil.server.worker;
+
+import biovis.hackebeil.common.data.Location;
+import biovis.hackebeil.common.data.Segment;
+import biovis.hackebeil.server.data.BedData;
+import biovis.hackebeil.server.data.IntervalIndex;
+import biovislib.parallel4.IterationInt;
+import biovislib.parallel4.Parallel2;
+import biovislib.parallel4.ParallelForInt2;
+import biovislib.parallel4.ParallelizationFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the coverage of segments by bed data by sweeping the segments of
+ * each chromosome (sorted by start) against the intervals of the chromosome
+ * (sorted by start).
+ *
+ * The sweep keeps the intervals which started before the end of the
+ * current segment and did not end before its start, in order of the
+ * interval index. Thus each segment and interval is visited once, plus the
+ * overlapping pairs. The overlaps are summed in the same order as the
+ * interval index queries, so the values are identical to
+ * BedData.coverage (plain) and BedData.coverageScore (scored).
+ *
+ * Chromosomes and bed files are processed in parallel.
+ *
+ * @author Dirk Zeckzer
+ */
+public class CoverageEngine {
+
+    private final int threads;
+    private final int[] starts;
+    private final int[] ends;
+    // chromosome -> segments sorted by start and end
+    private final Map<String, int[]> chromosomeRows = new HashMap<>();
+    private final List<String> chromosomes = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param segments segments
+     * @param threads number of threads
+     */
+    public CoverageEngine(
+        List<Segment> segments,
+        int threads
+    ) {
+        this.threads = threads;
+        int size = segments.size();
+        starts = new int[size];
+        ends = new int[size];
+
+        Map<String, List<Integer>> rows = new HashMap<>();
+        for (int i = 0; i < size; ++i) {
+            Location location = segments.get(i).getLocation();
+            starts[i] = location.getStart();
+            ends[i] = location.getEnd();
+            List<Integer> chromosomeList = rows.get(location.getChr());
+            if (chromosomeList == null) {
+                chromosomeList = new ArrayList<>();
+                rows.put(location.getChr(), chromosomeList);
+                chromosomes.add(location.getChr());
+            }
+            chromosomeList.add(i);
+        }
+
+        for (String chr : chromosomes) {
+            List<Integer> chromosomeList = rows.get(chr);
+            int[] sorted = new int[chromosomeList.size()];
+            boolean isSorted = true;
+            for (int i = 0; i < sorted.length; ++i) {
+                sorted[i] = chromosomeList.get(i);
+                if (i > 0 && compare(sorted[i - 1], sorted[i]) > 0) {
+                    isSorted = false;
+                }
+            }
+            if (!isSorted) {
+                Integer[] boxed = chromosomeList.toArray(new Integer[0]);
+                Arrays.sort(boxed, this::compare);
+                for (int i = 0; i < sorted.length; ++i) {
+                    sorted[i] = boxed[i];
+                }
+            }
+            chromosomeRows.put(chr, sorted);
+        }
+    }
+
+    /**
+     * Compare segments by start and end.
+     */
+    private int compare(int a, int b) {
+        if (starts[a] != starts[b]) {
+            return Integer.compare(starts[a], starts[b]);
+        }
+        return Integer.compare(ends[a], ends[b]);
+    }
+
+    /**
+     * Compute coverage of all segments for all bed data. Scored bed data
+     * yield the coverage score, others the coverage.
+     *
+     * @param beds bed data
+     * @return values[bed][segment]
+     */
+    public double[][] compute(final List<BedData> beds) {
+        final double[][] values = new double[beds.size()][starts.length];
+        final int numberOfChromosomes = chromosomes.size();
+
+        Parallel2 p2 = ParallelizationFactory.getInstance(threads);
+        new ParallelForInt2(p2, 0, beds.size() * numberOfChromosomes).loop(new IterationInt() {
+            @Override
+            public void iteration(int task) {
+                int bed = task / numberOfChromosomes;
+                String chr = chromosomes.get(task % numberOfChromosomes);
+                sweep(beds.get(bed).getIndex(), chr, values[bed]);
+            }
+        });
+
+        return values;
+    }
+
+    /**
+     * Compute coverage of the segments of one chromosome.
+     *
+     * @param index interval index of bed data
+     * @param chr chromosome
+     * @param values coverage of each segment (set for segments of chr)
+     */
+    private void sweep(
+        IntervalIndex index,
+        String chr,
+        double[] values
+    ) {
+        boolean scored = index.isScored();
+        int[] intervalStarts = index.getStarts(chr);
+        int[] intervalEnds = index.getEnds(chr);
+        double[] scores = index.getScores(chr);
+        int numberOfIntervals = intervalStarts.length;
+
+        int[] active = new int[16];
+        int numberOfActive = 0;
+        int next = 0;
+        for (int row : chromosomeRows.get(chr)) {
+            int start = starts[row];
+            int end = ends[row];
+
+            // intervals starting before the end of the segment
+            while (next < numberOfIntervals && intervalStarts[next] <= end) {
+                if (numberOfActive == active.length) {
+                    active = Arrays.copyOf(active, 2 * active.length);
+                }
+                active[numberOfActive++] = next++;
+            }
+
+            // drop intervals ending before the start (segments are sorted by start)
+            double covered = 0.0;
+            double weighted = 0.0;
+            int kept = 0;
+            for (int i = 0; i < numberOfActive; ++i) {
+                int interval = active[i];
+                if (intervalEnds[interval] < start) {
+                    continue;
+                }
+                active[kept++] = interval;
+                if (intervalStarts[interval] <= end) {
+                    int overlap = Math.min(intervalEnds[interval], end) - Math.max(intervalStarts[interval], start) + 1;
+                    covered += overlap;
+                    if (scored) {
+                        weighted += overlap * scores[interval];
+                    }
+                }
+            }
+            numberOfActive = kept;
+
+            long coveredBases = (long) covered;
+            if (scored) {
+                values[row] = coveredBases == 0 ? 0.0 : weighted / ((double) coveredBases);
+            } else {
+                values[row] = ((double) coveredBases) / ((double) (end - start + 1));
+            }
+        }
+    }
+}
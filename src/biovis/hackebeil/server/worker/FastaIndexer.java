@@ -0,0 +1,501 @@
+/**
+ *  Copyright 2016 Lydia Müller, Dirk Zeckzer
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package biovis.hackebeil.server.worker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import biovis.hackebeil.common.data.Messages;
+import biovis.hackebeil.server.commander.ServerCommander;
+import biovis.hackebeil.server.data.GenomeIndex;
+import biovis.hackebeil.server.data.PackedGenomeWriter;
+import biovis.hackebeil.server.job.Job;
+
+import biovislib.parallel4.IterationInt;
+import biovislib.parallel4.Parallel2;
+import biovislib.parallel4.ParallelForInt2;
+import biovislib.parallel4.ParallelizationFactory;
+
+/**
+ * Indexes a fasta file in parallel.
+ *
+ * The file is memory mapped and split at the header lines ('>' at the
+ * start of a line). The headers are searched in blocks, then the sequences
+ * are scanned in parallel. The result is the same as reading the file line
+ * by line (lines end with '\n', '\r', or "\r\n", sequence lines are
+ * trimmed, A, C, G, T in any case are none N characters).
+ *
+ * @author Dirk Zeckzer
+ */
+public class FastaIndexer {
+
+    // size of blocks searched for headers
+    private static final int BLOCK_SIZE = 1 << 26;
+    // number of bytes between progress updates of one thread
+    private static final long PROGRESS_STEP = 1 << 24;
+
+    // A, C, G, T (any case)
+    private static final boolean[] NONE_N = new boolean[256];
+
+    static {
+        for (char c : "ACGTacgt".toCharArray()) {
+            NONE_N[c] = true;
+        }
+    }
+
+    private final String fastaFile;
+    private final int threads;
+    private final ServerCommander serverCommander;
+
+    private long fileSize;
+    private final AtomicLong scannedBytes = new AtomicLong();
+    private final AtomicInteger reportedPercent = new AtomicInteger();
+    private final AtomicBoolean packedGenomeFailed = new AtomicBoolean();
+    private int numberOfSequences = 0;
+
+    /**
+     * Index of one sequence.
+     */
+    public static class SequenceIndex {
+
+        private final String chr;
+        private final String header;
+        private final long headerPos;
+        private final long startFilePos;
+        private long endFilePos;
+        private int lineLength = -1;
+        private int length = 0;
+        private int firstNoneN = -1;
+        private int lastNoneN = -1;
+
+        private SequenceIndex(String chr, String header, long headerPos, long startFilePos) {
+            this.chr = chr;
+            this.header = header;
+            this.headerPos = headerPos;
+            this.startFilePos = startFilePos;
+        }
+
+        /**
+         * @return chromosome name ("" for lines before the first header)
+         */
+        public String getChr() {
+            return chr;
+        }
+
+        /**
+         * @return header line
+         */
+        public String getHeader() {
+            return header;
+        }
+
+        /**
+         * @return file position of header line (-1 for lines before the
+         * first header)
+         */
+        public long getHeaderPos() {
+            return headerPos;
+        }
+
+        /**
+         * @return file position of first sequence line
+         */
+        public long getStartFilePos() {
+            return startFilePos;
+        }
+
+        /**
+         * @return length of first sequence line (-1 if there is none)
+         */
+        public int getLineLength() {
+            return lineLength;
+        }
+
+        /**
+         * @return number of characters of the sequence
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return position of first none N character (-1 if there is none)
+         */
+        public int getFirstNoneN() {
+            return firstNoneN;
+        }
+
+        /**
+         * @return position of last none N character (-1 if there is none)
+         */
+        public int getLastNoneN() {
+            return lastNoneN;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param fastaFile fasta file
+     * @param threads number of threads
+     * @param serverCommander commander for progress messages
+     */
+    public FastaIndexer(
+        String fastaFile,
+        int threads,
+        ServerCommander serverCommander
+    ) {
+        this.fastaFile = fastaFile;
+        this.threads = threads;
+        this.serverCommander = serverCommander;
+    }
+
+    /**
+     * Index the fasta file.
+     *
+     * @param packedWriter writer for the packed genome (may be null)
+     * @return sequences in file order, lines before the first header are
+     * returned as sequence with empty name
+     * @throws IOException if file cannot be read
+     */
+    public List<SequenceIndex> index(PackedGenomeWriter packedWriter)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fastaFile), StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            scannedBytes.set(0);
+            reportedPercent.set(0);
+            packedGenomeFailed.set(packedWriter == null);
+
+            final Job job = Job.current();
+            List<SequenceIndex> sequences = findHeaders(channel, job);
+            numberOfSequences = sequences.size();
+
+            // lines before the first header
+            long firstHeader = sequences.isEmpty() ? fileSize : sequences.get(0).headerPos;
+            SequenceIndex preamble = null;
+            if (firstHeader > 0) {
+                preamble = new SequenceIndex("", "", -1, 0);
+                preamble.endFilePos = firstHeader;
+            }
+
+            // reserve regions of packed genome in file order
+            final PackedGenomeWriter.ChromosomeWriter[] writers
+                = new PackedGenomeWriter.ChromosomeWriter[sequences.size()];
+            if (packedWriter != null) {
+                for (int i = 0; i < sequences.size(); ++i) {
+                    SequenceIndex sequence = sequences.get(i);
+                    writers[i] = packedWriter.addChromosome(sequence.chr, sequence.endFilePos - sequence.startFilePos);
+                }
+            }
+
+            // scan longest sequences first
+            final List<SequenceIndex> scan = new ArrayList<>(sequences);
+            final List<PackedGenomeWriter.ChromosomeWriter> scanWriters = new ArrayList<>(Arrays.asList(writers));
+            if (preamble != null) {
+                scan.add(preamble);
+                scanWriters.add(null);
+            }
+            final Integer[] order = new Integer[scan.size()];
+            for (int i = 0; i < order.length; ++i) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(
+                        (Integer i) -> scan.get(i).endFilePos - scan.get(i).startFilePos).reversed());
+
+            final AtomicReference<IOException> error = new AtomicReference<>();
+            Parallel2 p2 = ParallelizationFactory.getInstance(threads);
+            new ParallelForInt2(p2, 0, order.length).loop(new IterationInt() {
+                @Override
+                public void iteration(final int current) {
+                    if (job != null && job.isCancelled()) {
+                        return;
+                    }
+                    SequenceIndex sequence = scan.get(order[current]);
+                    try {
+                        scanSequence(channel, sequence, scanWriters.get(order[current]), job);
+                    } catch (IOException ioEx) {
+                        error.compareAndSet(null, ioEx);
+                    }
+                }
+            });
+            if (error.get() != null) {
+                throw error.get();
+            }
+            if (job != null) {
+                job.check();
+            }
+
+            // the line based reader did not reset the length at the first header
+            if (preamble != null && !sequences.isEmpty()) {
+                SequenceIndex first = sequences.get(0);
+                if (first.firstNoneN != -1) {
+                    first.firstNoneN += preamble.length;
+                    first.lastNoneN += preamble.length;
+                }
+                first.length += preamble.length;
+                sequences.add(0, preamble);
+            } else if (preamble != null) {
+                sequences.add(preamble);
+            }
+
+            return sequences;
+        }
+    }
+
+    /**
+     * @return number of sequences (headers) of the last indexed file
+     */
+    public int getNumberOfSequences() {
+        return numberOfSequences;
+    }
+
+    /**
+     * @return true iff all sequences have been written to the packed genome
+     */
+    public boolean isPackedGenomeComplete() {
+        return !packedGenomeFailed.get();
+    }
+
+    /**
+     * Find all header lines (in parallel blocks) and parse them.
+     *
+     * @param channel fasta file
+     * @param job job of the calling thread (may be null)
+     * @return sequences in file order
+     * @throws IOException if file cannot be read
+     */
+    private List<SequenceIndex> findHeaders(final FileChannel channel, final Job job)
+        throws IOException {
+        final int numberOfBlocks = (int) ((fileSize + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        final List<List<SequenceIndex>> blockHeaders = new ArrayList<>();
+        for (int block = 0; block < numberOfBlocks; ++block) {
+            blockHeaders.add(new ArrayList<>());
+        }
+
+        final AtomicReference<IOException> error = new AtomicReference<>();
+        Parallel2 p2 = ParallelizationFactory.getInstance(threads);
+        new ParallelForInt2(p2, 0, numberOfBlocks).loop(new IterationInt() {
+            @Override
+            public void iteration(final int block) {
+                if (job != null && job.isCancelled()) {
+                    return;
+                }
+                try {
+                    // include last byte of previous block to detect line starts
+                    long blockStart = (long) block * BLOCK_SIZE;
+                    long mapStart = Math.max(0, blockStart - 1);
+                    long mapEnd = Math.min(fileSize, blockStart + BLOCK_SIZE);
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+                    GenomeIndex.HeaderReader reader = new GenomeIndex.HeaderReader(channel);
+                    int limit = buffer.limit();
+                    for (int i = (int) (blockStart - mapStart); i < limit; ++i) {
+                        if (buffer.get(i) == '>') {
+                            byte previous = i + mapStart == 0 ? (byte) '\n' : buffer.get(i - 1);
+                            if (previous == '\n' || previous == '\r') {
+                                blockHeaders.get(block).add(readHeader(channel, reader, mapStart + i));
+                            }
+                        }
+                    }
+                } catch (IOException ioEx) {
+                    error.compareAndSet(null, ioEx);
+                }
+            }
+        });
+        if (error.get() != null) {
+            throw error.get();
+        }
+        if (job != null) {
+            job.check();
+        }
+
+        List<SequenceIndex> sequences = new ArrayList<>();
+        for (List<SequenceIndex> headers : blockHeaders) {
+            sequences.addAll(headers);
+        }
+        for (int i = 0; i < sequences.size(); ++i) {
+            sequences.get(i).endFilePos = i + 1 < sequences.size() ? sequences.get(i + 1).headerPos : fileSize;
+        }
+        return sequences;
+    }
+
+    /**
+     * Read header line: the chromosome name ends at the first space.
+     *
+     * @param channel fasta file
+     * @param reader header reader of channel
+     * @param headerPos file position of '>'
+     * @return sequence without content
+     * @throws IOException if file cannot be read
+     */
+    private SequenceIndex readHeader(
+        FileChannel channel,
+        GenomeIndex.HeaderReader reader,
+        long headerPos
+    )
+        throws IOException {
+        String line = reader.readLine(headerPos);
+
+        // skip line end
+        long position = headerPos + line.length();
+        if (position < fileSize) {
+            ByteBuffer buffer = ByteBuffer.allocate(2);
+            channel.read(buffer, position);
+            position += buffer.get(0) == '\r' && buffer.position() > 1 && buffer.get(1) == '\n' ? 2 : 1;
+        }
+
+        String chr;
+        if (line.contains(" ")) {
+            chr = line.substring(1, line.indexOf(" "));
+        } else {
+            chr = line.substring(1);
+        }
+        return new SequenceIndex(chr, line, headerPos, position);
+    }
+
+    /**
+     * Scan the lines of one sequence.
+     *
+     * @param channel fasta file
+     * @param sequence sequence
+     * @param writer writer for packed genome (may be null)
+     * @param job job of the calling thread (may be null): the scan stops if
+     * it is cancelled
+     * @throws IOException if file cannot be read
+     */
+    private void scanSequence(
+        FileChannel channel,
+        SequenceIndex sequence,
+        PackedGenomeWriter.ChromosomeWriter writer,
+        Job job
+    )
+        throws IOException {
+        long size = sequence.endFilePos - sequence.startFilePos;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Sequence " + sequence.chr + " is too long");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, sequence.startFilePos, size);
+        int limit = buffer.limit();
+        int position = 0;
+        int length = 0;
+        int firstNoneN = -1;
+        int lastNoneN = -1;
+        long unreported = 0;
+        while (position < limit) {
+            // find line end
+            int lineStart = position;
+            byte b = 0;
+            while (position < limit && (b = buffer.get(position)) != '\n' && b != '\r') {
+                ++position;
+            }
+            int lineEnd = position;
+            if (position < limit) {
+                position += b == '\r' && position + 1 < limit && buffer.get(position + 1) == '\n' ? 2 : 1;
+            }
+            if (sequence.lineLength == -1) {
+                sequence.lineLength = lineEnd - lineStart;
+            }
+
+            // trim
+            int from = lineStart;
+            int to = lineEnd;
+            while (from < to && (buffer.get(from) & 0xff) <= ' ') {
+                ++from;
+            }
+            while (to > from && (buffer.get(to - 1) & 0xff) <= ' ') {
+                --to;
+            }
+
+            // none N characters and packed genome
+            for (int i = from; i < to; ++i) {
+                int c = buffer.get(i) & 0xff;
+                if (NONE_N[c]) {
+                    if (firstNoneN == -1) {
+                        firstNoneN = length + i - from;
+                    }
+                    lastNoneN = length + i - from;
+                }
+            }
+            if (writer != null && !packedGenomeFailed.get()) {
+                try {
+                    writer.append(buffer, from, to);
+                } catch (IOException ioEx) {
+                    System.err.println("Can't write packed genome: " + ioEx.getMessage());
+                    packedGenomeFailed.set(true);
+                }
+            }
+            length += to - from;
+
+            unreported += position - lineStart;
+            if (unreported >= PROGRESS_STEP) {
+                reportProgress(unreported);
+                unreported = 0;
+                if (job != null && job.isCancelled()) {
+                    return;
+                }
+            }
+        }
+        reportProgress(unreported + sequence.startFilePos - Math.max(0, sequence.headerPos));
+
+        if (writer != null && !packedGenomeFailed.get()) {
+            try {
+                writer.close();
+            } catch (IOException ioEx) {
+                System.err.println("Can't write packed genome: " + ioEx.getMessage());
+                packedGenomeFailed.set(true);
+            }
+        }
+
+        sequence.length = length;
+        sequence.firstNoneN = firstNoneN;
+        sequence.lastNoneN = lastNoneN;
+    }
+
+    /**
+     * Add scanned bytes and send progress message for every new percent.
+     *
+     * @param bytes newly scanned bytes
+     */
+    private void reportProgress(long bytes) {
+        long scanned = scannedBytes.addAndGet(bytes);
+        if (fileSize == 0) {
+            return;
+        }
+        int percent = (int) (scanned * 100 / fileSize);
+        int reported = reportedPercent.get();
+        while (percent > reported) {
+            if (reportedPercent.compareAndSet(reported, percent)) {
+                final String log = "indexing genome: " + percent + "% ("
+                                   + (scanned >> 20) + " of " + (fileSize >> 20) + " MB)";
+                Object[] command = {Messages.CLIENT_IndexProgress, log};
+                serverCommander.sendProgress(command, Messages.CLIENT_IndexProgress);
+                return;
+            }
+            reported = reportedPercent.get();
+        }
+    }
+}
@@ -20,6 +20,7 @@ package biovis.hackebeil.server.worker;
 import biovis.hackebeil.common.data.DataFile;
 import biovis.hackebeil.common.data.Segment;
 import biovis.hackebeil.server.data.ServerCache;
+import biovis.hackebeil.server.job.Job;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -33,6 +34,9 @@ import javafx.scene.control.Alert.AlertType;
  */
 public class FateOfCodeWorker {
 
+    // segments between checks for cancellation
+    private static final int CANCEL_CHECK_STEP = 1 << 14;
+
     private ServerCache cache;
     private List<int[][]> results;
 
@@ -85,7 +89,11 @@ public class FateOfCodeWorker {
             results.add(new int[numberOfCodes][numberOfCodes]);
         }
 
+        int processed = 0;
         for (Segment row : cache.getSegments()) {
+            if (processed++ % CANCEL_CHECK_STEP == 0) {
+                Job.checkCancelled();
+            }
             int fromCode = row.getCode();
             int newCode = 0;
 
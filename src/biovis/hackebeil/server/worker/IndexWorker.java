@@ -15,14 +15,12 @@
  */
 package biovis.hackebeil.server.worker;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
 import java.util.logging.Logger;
 
 import com.google.gson.Gson;
@@ -31,6 +29,10 @@ import biovis.hackebeil.common.data.Segment;
 import biovis.hackebeil.server.commander.ServerCommander;
 import biovis.hackebeil.server.data.ServerCache;
 import biovis.hackebeil.server.data.BufferedRandomAccessFile;
+import biovis.hackebeil.server.data.GenomeIndex;
+import biovis.hackebeil.server.data.PackedGenome;
+import biovis.hackebeil.server.data.PackedGenomeWriter;
+import biovis.hackebeil.server.job.Job;
 import biovis.hackebeil.common.data.Location;
 import biovis.hackebeil.common.data.Messages;
 
@@ -50,6 +52,11 @@ public class IndexWorker {
 
     // number of sequences in fasta DB
     private Integer numberOfSeqs;
+    // file positions and hash of header lines
+    private long[] headerPositions;
+    private long headerHash;
+    // index read by checkIndex
+    private GenomeIndex genomeIndex;
 
     /**
      *
@@ -66,7 +73,7 @@ public class IndexWorker {
 
     /**
      * Create index. Extracts the chromosomes and the none N part of the
-     * chromosome.
+     * chromosome. The fasta file is scanned in parallel by FastaIndexer.
      *
      *
      * @throws IOException in case of IO errors
@@ -76,8 +83,6 @@ public class IndexWorker {
         Object[] startCommand = {Messages.CLIENT_IndexProgress, startLog};
         serverCommander.sendCommand(startCommand);
 
-        numberOfSeqs = 0;
-
         // init HashMaps
         Map<String, Integer> seqLengths = cache.getSeqLengths();
         Map<String, Integer> seqStart = cache.getSeqStart();
@@ -87,189 +92,122 @@ public class IndexWorker {
         // read and parse fasta
         BufferedRandomAccessFile genomeReader = new BufferedRandomAccessFile(cache.getFilePathToRefGenome(), "r", 1024 * 16);
         cache.setGenomeReader(genomeReader);
-        String line = genomeReader.readLine();
-        String chr = "";
-        boolean measureLineLength = false;
-        Integer length = 0;
-        Integer firstNoneN = -1;
-        Integer lastNoneN = -1;
-        while (line != null) {
-            if (line.startsWith(">")) {
-                numberOfSeqs++;
-
-                // Send progress message
-                final String log1 = "loading genome: " + numberOfSeqs + " sequences";
-                Object[] command = {Messages.CLIENT_IndexProgress, log1};
-                serverCommander.sendCommand(command);
-
-                // set line measurement to true
-                measureLineLength = true;
-                // save old line length
-                if (!chr.equals("")) {
-                    // save sequence length
-                    if (lastNoneN != -1) {
-                        seqLengths.put(chr, lastNoneN);
-                    } else {
-                        seqLengths.put(chr, length);
-                    }
-                    // just if sequence purely N put length as sequence start
-                    if (firstNoneN == -1) {
-                        seqStart.put(chr, length);
-                    }
-                    length = 0;
-                }
-                // reset variables
-                firstNoneN = -1;
-                lastNoneN = -1;
-                // parse chromosome name
-                if (line.contains(" ")) {
-                    chr = line.substring(1, line.indexOf(" "));
-                } else {
-                    chr = line.substring(1);
-                }
-                // save start position of sequence
-                startFilePos.put(chr, genomeReader.getFilePointer());
-            } else {
-                // System.err.println("processing line "+line);
-                // measure line length if first line after header
-                if (measureLineLength) {
-                    lineLength.put(chr, line.length());
-                    measureLineLength = false;
-                }
-
-                // look for first none N character
-                line = line.trim();
-                line = line.toUpperCase();
-                if (firstNoneN == -1) {
-                    Integer noneN = -1;
-
-                    Integer a = line.indexOf("A");
-                    if (a != -1) {
-                        noneN = a;
-                    }
-
-                    Integer t = line.indexOf("T");
-                    if (t != -1) {
-                        if (noneN == -1) {
-                            noneN = t;
-                        } else if (t < noneN) {
-                            noneN = t;
-                        }
-                    }
-
-                    Integer c = line.indexOf("C");
-                    if (c != -1) {
-                        if (noneN == -1) {
-                            noneN = c;
-                        } else if (c < noneN) {
-                            noneN = c;
-                        }
-                    }
-
-                    Integer g = line.indexOf("G");
-                    if (g != -1) {
-                        if (noneN == -1) {
-                            noneN = g;
-                        } else if (g < noneN) {
-                            noneN = g;
-                        }
-                    }
-
-                    if (noneN != -1) {
-                        firstNoneN = length + noneN;
-                        seqStart.put(chr, firstNoneN);
-                    }
-                }
-
-                // look for the last none N character
-                Integer noneN = -1;
-
-                Integer a = line.lastIndexOf("A");
-                if (a != -1) {
-                    noneN = a;
-                }
-
-                Integer t = line.lastIndexOf("T");
-                if (t != -1) {
-                    if (t > noneN) {
-                        noneN = t;
-                    }
-                }
-
-                Integer c = line.lastIndexOf("C");
-                if (c != -1) {
-                    if (c > noneN) {
-                        noneN = c;
-                    }
-                }
-
-                Integer g = line.lastIndexOf("G");
-                if (g != -1) {
-                    if (g > noneN) {
-                        noneN = g;
-                    }
-                }
-
-                if (noneN != -1) {
-                    lastNoneN = length + noneN;
-                }
-
-                // measure sequence length
-                length += line.length();
+        PackedGenomeWriter packedWriter = createPackedGenomeWriter();
+        FastaIndexer indexer = new FastaIndexer(cache.getFilePathToRefGenome(),
+                                                cache.getNumberOfThreads(),
+                                                serverCommander);
+        List<FastaIndexer.SequenceIndex> sequences;
+        try {
+            sequences = indexer.index(packedWriter);
+        } catch (IOException | CancellationException ex) {
+            if (packedWriter != null) {
+                packedWriter.abort();
             }
-
-            // read next line
-            line = genomeReader.readLine();
+            throw ex;
         }
-
-        // save last line length
-        if (!chr.equals("")) {
-            if (lastNoneN != -1) {
-                seqLengths.put(chr, lastNoneN);
+        numberOfSeqs = indexer.getNumberOfSequences();
+
+        // header lines identify the fasta file
+        headerPositions = new long[numberOfSeqs];
+        String[] headers = new String[numberOfSeqs];
+        int header = 0;
+        for (FastaIndexer.SequenceIndex sequence : sequences) {
+            if (sequence.getHeaderPos() >= 0) {
+                headerPositions[header] = sequence.getHeaderPos();
+                headers[header] = sequence.getHeader();
+                ++header;
+            }
+        }
+        headerHash = GenomeIndex.hashHeaders(headerPositions, headers);
+
+        for (FastaIndexer.SequenceIndex sequence : sequences) {
+            String chr = sequence.getChr();
+            if (chr.equals("")) {
+                // lines before the first header
+                if (sequence.getFirstNoneN() != -1) {
+                    seqStart.put(chr, sequence.getFirstNoneN());
+                }
+                continue;
+            }
+            // save start position of sequence
+            startFilePos.put(chr, sequence.getStartFilePos());
+            // line length of first line after header
+            if (sequence.getLineLength() != -1) {
+                lineLength.put(chr, sequence.getLineLength());
+            }
+            // save sequence length
+            if (sequence.getLastNoneN() != -1) {
+                seqLengths.put(chr, sequence.getLastNoneN());
             } else {
-                seqLengths.put(chr, length);
+                seqLengths.put(chr, sequence.getLength());
             }
             // just if sequence purely N put length as sequence start
-            if (firstNoneN == -1) {
-                seqStart.put(chr, length);
+            if (sequence.getFirstNoneN() != -1) {
+                seqStart.put(chr, sequence.getFirstNoneN());
+            } else {
+                seqStart.put(chr, sequence.getLength());
             }
         }
 
+        if (indexer.isPackedGenomeComplete()) {
+            closePackedGenomeWriter(packedWriter);
+        } else if (packedWriter != null) {
+            packedWriter.abort();
+        }
+
         final String isCreated = "Create index of reference genome complete";
         Object[] isCreatedCommand = {Messages.CLIENT_IndexProgress, isCreated};
         serverCommander.sendCommand(isCreatedCommand);
     }
 
     /**
-     * Save index file
+     * Create writer for packed genome.
      *
+     * @return writer (null if packed genome cannot be written)
      */
-    private void saveIndex() {
-        try (FileWriter fw = new FileWriter(cache.getFilePathToIndex());
-             BufferedWriter bw = new BufferedWriter(fw);
-             PrintWriter pw = new PrintWriter(bw)) {
-
-            pw.println("!filename: " + cache.getFilePathToIndex());
-            pw.println("!numberOfSeqs: " + numberOfSeqs);
-            pw.println("!startFilePos: " + cache.getStartFilePos().size());
-            for (Entry<String, Long> sfpEntry : cache.getStartFilePos().entrySet()) {
-                pw.println(sfpEntry.getKey() + " " + sfpEntry.getValue());
-            }
-
-            pw.println("!seqStart: " + cache.getSeqStart().size());
-            for (Entry<String, Integer> seqStartEntry : cache.getSeqStart().entrySet()) {
-                pw.println(seqStartEntry.getKey() + " " + seqStartEntry.getValue());
-            }
+    private PackedGenomeWriter createPackedGenomeWriter() {
+        cache.setPackedGenome(null);
+        try {
+            return new PackedGenomeWriter(PackedGenome.getPath(cache.getFilePathToRefGenome()));
+        } catch (IOException ioEx) {
+            System.err.println("Can't create packed genome: " + ioEx.getMessage());
+            return null;
+        }
+    }
 
-            pw.println("!seqLenghts: " + cache.getSeqLengths().size());
-            for (Entry<String, Integer> seqLengthsEntry : cache.getSeqLengths().entrySet()) {
-                pw.println(seqLengthsEntry.getKey() + " " + seqLengthsEntry.getValue());
-            }
+    /**
+     * Finish packed genome and make it available to the workers.
+     *
+     * @param packedWriter writer (may be null)
+     */
+    private void closePackedGenomeWriter(PackedGenomeWriter packedWriter) {
+        if (packedWriter == null) {
+            return;
+        }
+        try {
+            packedWriter.close();
+            cache.setPackedGenome(new PackedGenome(PackedGenome.getPath(cache.getFilePathToRefGenome())));
+        } catch (IOException ioEx) {
+            System.err.println("Can't write packed genome: " + ioEx.getMessage());
+            packedWriter.abort();
+        }
+    }
 
-            pw.println("!lineLenghts: " + cache.getLineLength().size());
-            for (Entry<String, Integer> lineLengthEntry : cache.getLineLength().entrySet()) {
-                pw.println(lineLengthEntry.getKey() + " " + lineLengthEntry.getValue());
-            }
+    /**
+     * Save index file
+     *
+     */
+    private void saveIndex() {
+        try {
+            GenomeIndex.write(cache.getFilePathToIndex(),
+                              cache.getFilePathToRefGenome(),
+                              numberOfSeqs,
+                              headerPositions,
+                              headerHash,
+                              cache.getStartFilePos(),
+                              cache.getSeqStart(),
+                              cache.getSeqLengths(),
+                              cache.getLineLength());
 
             final String isSaved = "Save index of reference genome";
             Object[] command = {Messages.CLIENT_IndexProgress, isSaved};
@@ -284,95 +222,38 @@ public class IndexWorker {
     }
 
     /**
-     * Load index file.
-     *
-     * @throws IOException
+     * Check if index file exists and belongs to the reference genome.
      *
+     * @return null if index can be loaded, reason for rebuilding otherwise
      */
-    private String loadIndex() {
-        // System.err.println(cache.getFilePathToIndex());
-        String result = "Unknown";
-
-        try (FileReader fr = new FileReader(cache.getFilePathToIndex());
-             BufferedReader br = new BufferedReader(fr)) {
-            String[] content;
-
-            // Read filename
-            String line = br.readLine().trim();
-            if (!line.startsWith("!filename: ")) {
-                return "File " + cache.getFilePathToIndex()
-                       + " has the wrong format: First line has to contain '!Data' only!";
-            }
-
-            // Read number of sequences
-            line = br.readLine().trim();
-            content = line.split(": ");
-            numberOfSeqs = Integer.parseInt(content[1]);
-
-            // Read number of chromosome start positions
-            line = br.readLine().trim();
-            // System.err.println(line);
-            content = line.split(": ");
-            int startFilePosSize = Integer.parseInt(content[1]);
-
-            // construct map of chromosome start positions
-            Map<String, Long> startFilePos = cache.getStartFilePos();
-            for (int currentStartFilePos = 0; currentStartFilePos < startFilePosSize; ++currentStartFilePos) {
-                line = br.readLine().trim();
-                content = line.split(" ");
-                startFilePos.put(content[0], Long.parseLong(content[1]));
-            }
-
-            // Read number of sequence start positions
-            line = br.readLine().trim();
-            content = line.split(": ");
-            int seqStartSize = Integer.parseInt(content[1]);
-
-            // construct map of sequence start positions
-            Map<String, Integer> seqStart = cache.getSeqStart();
-            for (int currentSeqStart = 0; currentSeqStart < seqStartSize; ++currentSeqStart) {
-                line = br.readLine().trim();
-                content = line.split(" ");
-                seqStart.put(content[0], Integer.parseInt(content[1]));
-            }
-
-            // Read number of sequence lengths
-            line = br.readLine().trim();
-            content = line.split(": ");
-            int seqLengthsSize = Integer.parseInt(content[1]);
-
-            // construct map of sequence lengths
-            Map<String, Integer> seqLengths = cache.getSeqLengths();
-            for (int currentSeqLengths = 0; currentSeqLengths < seqLengthsSize; ++currentSeqLengths) {
-                line = br.readLine().trim();
-                content = line.split(" ");
-                seqLengths.put(content[0], Integer.parseInt(content[1]));
-            }
-
-            // Read number of line lengths
-            line = br.readLine().trim();
-            content = line.split(": ");
-            int lineLengthSize = Integer.parseInt(content[1]);
-
-            // construct map of line lengths
-            Map<String, Integer> lineLength = cache.getLineLength();
-            for (int currentLineLength = 0; currentLineLength < lineLengthSize; ++currentLineLength) {
-                line = br.readLine().trim();
-                content = line.split(" ");
-                lineLength.put(content[0], Integer.parseInt(content[1]));
-            }
-            return result = "Load successful";
+    private String checkIndex() {
+        String indexFile = cache.getFilePathToIndex();
+        if (!Files.isRegularFile(Paths.get(indexFile))) {
+            return "index file " + indexFile + " not found";
+        }
+        if (!GenomeIndex.isGenomeIndex(indexFile)) {
+            return "index file " + indexFile + " has an old format";
+        }
+        try {
+            genomeIndex = GenomeIndex.read(indexFile);
         } catch (IOException ioEx) {
-            System.err.println("Exception: " + ioEx.toString());
-            System.err.println("Exception: " + ioEx.getMessage());
-            ioEx.printStackTrace();
-            return "Exception: " + ioEx.toString() + " -- " + ioEx.getMessage();
-        } catch (Exception ex) {
-            System.err.println("Exception: " + ex.toString());
-            System.err.println("Exception: " + ex.getMessage());
-            ex.printStackTrace();
-            return "Exception: " + ex.toString() + " -- " + ex.getMessage();
+            return ioEx.getMessage();
         }
+        return genomeIndex.validate(cache.getFilePathToRefGenome());
+    }
+
+    /**
+     * Load index file checked by checkIndex.
+     *
+     */
+    private String loadIndex() {
+        numberOfSeqs = genomeIndex.getNumberOfSeqs();
+        cache.getStartFilePos().putAll(genomeIndex.getStartFilePos());
+        cache.getSeqStart().putAll(genomeIndex.getSeqStart());
+        cache.getSeqLengths().putAll(genomeIndex.getSeqLengths());
+        cache.getLineLength().putAll(genomeIndex.getLineLength());
+        cache.setPackedGenome(PackedGenome.openForFasta(cache.getFilePathToRefGenome()));
+        return "Load successful";
     }
 
     public void startCreateAndSaveIndex() {
@@ -393,8 +274,19 @@ public class IndexWorker {
     }
 
     /**
+     * Load index. If the index is missing, has an old format, or does not
+     * belong to the reference genome, it is rebuilt.
      */
     public void startLoadIndex() {
+        String reason = checkIndex();
+        if (reason != null) {
+            final String message = "Index has to be rebuilt: " + reason;
+            Object[] command = {Messages.CLIENT_IndexProgress, message};
+            serverCommander.sendCommand(command);
+            startCreateAndSaveIndex();
+            return;
+        }
+        Job.checkCancelled();
         String result = loadIndex();
         Object[] command = {Messages.CLIENT_IndexProgress, result};
         serverCommander.sendCommand(command);
@@ -417,6 +309,15 @@ public class IndexWorker {
                 isTooBig = true;
                 length = 100000;
             }
+            PackedGenome packedGenome = cache.getPackedGenome();
+            if (packedGenome != null && packedGenome.contains(loc.getChr())) {
+                result = new String(packedGenome.read(loc.getChr(), loc.getStart(), length));
+                if (isTooBig) {
+                    result = "Too many Nucleotides. Showing the first 100k:\n" + result;
+                }
+                dp.setNucleotids(result);
+                return;
+            }
             long fileStart = startFilePos.get(loc.getChr());
             int linelen = lineLength.get(loc.getChr());
             long posInFile = (long) ((loc.getStart() / linelen) * (linelen + 1) + loc.getStart() % linelen) + fileStart;
@@ -0,0 +1,212 @@
+/**
+ *  Copyright 2016 Lydia Müller, Dirk Zeckzer
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package biovis.hackebeil.server.worker;
+
+import biovis.hackebeil.common.data.Motif;
+import biovis.hackebeil.common.data.Segment;
+import biovis.hackebeil.server.data.KmerSpectrum;
+import biovis.hackebeil.server.data.SegmentStore;
+import biovis.hackebeil.server.data.ServerCache;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Computes the k-mer spectrum of all segments: each segment is scanned once
+ * with a rolling 2 bit code of the last k bases, counting every k-mer.
+ * Windows containing other characters than A, C, G, T (case-insensitive)
+ * are not counted.
+ *
+ * Selected k-mers can be exposed as motif columns; their values are the
+ * same as computed by the motif worker for these motifs.
+ *
+ * @author Dirk Zeckzer
+ */
+public class KmerSpectrumWorker {
+
+    private static final Logger log = Logger.getLogger("KmerSpectrumWorker");
+
+    private final ServerCache cache;
+    private final List<Segment> segments;
+
+    private KmerSpectrum spectrum;
+    private List<Motif> motifList;
+    private Map<String, List<Double>> motifValues;
+
+    /**
+     * Counts of the current segment of a chunk.
+     */
+    private static class ChunkState {
+
+        private final int[] counts;
+        // k-mers with count > 0
+        private int[] occurring = new int[1024];
+        private int numberOfOccurring = 0;
+
+        private ChunkState(int numberOfKmers) {
+            counts = new int[numberOfKmers];
+        }
+
+        private void add(int code) {
+            if (counts[code]++ == 0) {
+                if (numberOfOccurring == occurring.length) {
+                    occurring = Arrays.copyOf(occurring, 2 * occurring.length);
+                }
+                occurring[numberOfOccurring++] = code;
+            }
+        }
+    }
+
+    /**
+     *
+     * @param cache
+     */
+    public KmerSpectrumWorker(
+        ServerCache cache
+    ) {
+        this.cache = cache;
+        this.segments = cache.getSegments();
+    }
+
+    /**
+     * Compute spectrum.
+     *
+     * @param k length of k-mers (1 .. KmerSpectrum.MAX_K)
+     * @param canonical true: count k-mer and reverse complement together
+     */
+    public void compute(
+        final int k,
+        final boolean canonical
+    ) {
+        log.log(Level.INFO, "k-mer spectrum computation start: k = {0}, canonical = {1}",
+                new Object[]{k, canonical});
+        if (k < 1 || k > KmerSpectrum.MAX_K) {
+            throw new IllegalArgumentException("k must be between 1 and " + KmerSpectrum.MAX_K + ": " + k);
+        }
+
+        final int numberOfKmers = 1 << (2 * k);
+        final int mask = numberOfKmers - 1;
+        final int reverseShift = 2 * (k - 1);
+        final int[][] rowCodes = new int[segments.size()][];
+        final int[][] rowCounts = new int[segments.size()][];
+
+        SegmentScheduler scheduler = new SegmentScheduler(cache, segments, new SequenceReader(cache));
+        scheduler.run(new SegmentScheduler.SegmentTask<ChunkState>() {
+            @Override
+            public ChunkState createState() {
+                return new ChunkState(numberOfKmers);
+            }
+
+            @Override
+            public void process(ChunkState state, int index, Segment segment, char[] segmentDNA) {
+                int forward = 0;
+                int reverse = 0;
+                int valid = 0;
+                for (char c : segmentDNA) {
+                    int base = KmerSpectrum.code(c);
+                    if (base < 0) {
+                        valid = 0;
+                        continue;
+                    }
+                    forward = ((forward << 2) | base) & mask;
+                    reverse = (reverse >>> 2) | ((3 - base) << reverseShift);
+                    if (++valid >= k) {
+                        state.add(canonical ? Math.min(forward, reverse) : forward);
+                    }
+                }
+
+                int[] codes = Arrays.copyOf(state.occurring, state.numberOfOccurring);
+                Arrays.sort(codes);
+                int[] counts = new int[codes.length];
+                for (int i = 0; i < codes.length; ++i) {
+                    counts[i] = state.counts[codes[i]];
+                    state.counts[codes[i]] = 0;
+                }
+                state.numberOfOccurring = 0;
+                rowCodes[index] = codes;
+                rowCounts[index] = counts;
+            }
+        });
+
+        spectrum = new KmerSpectrum(k, canonical, rowCodes, rowCounts);
+        log.log(Level.INFO, "k-mer spectrum computation end (sparse: {0})", spectrum.isSparse());
+    }
+
+    /**
+     * Expose k-mers as motif columns. Motifs which are no k-mers of the
+     * spectrum (other length, other characters, mismatches) are skipped.
+     *
+     * @param selection motifs
+     */
+    public void computeMotifs(List<Motif> selection) {
+        motifList = new ArrayList<>();
+        motifValues = new HashMap<>();
+        int k = spectrum.getK();
+        double[] values = new double[segments.size()];
+        for (Motif motif : selection) {
+            int code = KmerSpectrum.encode(motif.getMotif());
+            if (motif.getMotif().length() != k || code < 0 || motif.getMaxMismatches() > 0) {
+                log.log(Level.WARNING, "Motif {0} is no {1}-mer", new Object[]{motif.getMotif(), k});
+                continue;
+            }
+
+            int[] counts = spectrum.getBothStrandCounts(code);
+            for (int i = 0; i < values.length; ++i) {
+                if (motif.getIsNormalized()) {
+                    long theoCount = segments.get(i).getLocation().getLength() - k + 1;
+                    values[i] = ((double) counts[i]) / (((double) theoCount) * 2);
+                } else {
+                    values[i] = counts[i];
+                }
+            }
+            SegmentStore.setValues(segments, SegmentStore.FeatureGroup.MOTIF, motif.getMotifId(), values);
+
+            List<Double> valuesForMotif = new ArrayList<>();
+            for (int i = 0; i < segments.size(); ++i) {
+                if (segments.get(i).getLength() >= cache.getMinSegmentLength()) {
+                    valuesForMotif.add(values[i]);
+                }
+            }
+            motifList.add(motif);
+            motifValues.put(motif.getMotifId(), valuesForMotif);
+        }
+    }
+
+    /**
+     * @return spectrum (rows: segments of the cache at computation time)
+     */
+    public KmerSpectrum getSpectrum() {
+        return spectrum;
+    }
+
+    /**
+     * @return motifs exposed by computeMotifs
+     */
+    public List<Motif> getMotifList() {
+        return motifList;
+    }
+
+    /**
+     * @return motif id to values of exposed motifs
+     */
+    public Map<String, List<Double>> getMotifValues() {
+        return motifValues;
+    }
+}
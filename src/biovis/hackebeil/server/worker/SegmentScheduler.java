@@ -0,0 +1,190 @@
+/**
+ *  Copyright 2016 Lydia Müller, Dirk Zeckzer
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package biovis.hackebeil.server.worker;
+
+import biovis.hackebeil.common.data.Segment;
+import biovis.hackebeil.server.data.BufferedRandomAccessFile;
+import biovis.hackebeil.server.data.ServerCache;
+import biovis.hackebeil.server.job.Job;
+import biovislib.parallel4.IterationInt;
+import biovislib.parallel4.Parallel2;
+import biovislib.parallel4.ParallelForInt2;
+import biovislib.parallel4.ParallelizationFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a task on the sequences of all segments in parallel.
+ *
+ * The segments are split into chunks of consecutive segments having about
+ * the same number of base pairs (segments range from 200 bp to megabases),
+ * a few chunks per thread. All chunks are processed by one parallel loop.
+ * Each chunk has its own genome reader and its own task state (e.g.,
+ * scratch buffers), so tasks need no synchronization as long as they only
+ * write results of their own segments (e.g., into arrays indexed by
+ * segment).
+ *
+ * @author Dirk Zeckzer
+ */
+public class SegmentScheduler {
+
+    private static final Logger log = Logger.getLogger("SegmentScheduler");
+
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int READER_BUFFER_SIZE = 1024 * 16;
+
+    /**
+     * Task run on the sequence of each segment.
+     *
+     * @param <S> type of state of a chunk
+     */
+    public interface SegmentTask<S> {
+
+        /**
+         * @return state used for the segments of one chunk
+         */
+        S createState();
+
+        /**
+         * Process segment.
+         *
+         * @param state state of chunk
+         * @param index index of segment
+         * @param segment segment
+         * @param sequence sequence of segment
+         */
+        void process(S state, int index, Segment segment, char[] sequence);
+    }
+
+    private final String fileName;
+    private final int threads;
+    private final List<Segment> segments;
+    private final SequenceReader sequenceReader;
+
+    // first segment of each chunk, last entry: number of segments
+    private final int[] chunkStarts;
+    // number of base pairs of all segments
+    private long totalLength;
+
+    /**
+     * Constructor.
+     *
+     * @param cache server cache
+     * @param segments segments to process
+     * @param sequenceReader reader of segment sequences
+     */
+    public SegmentScheduler(
+        ServerCache cache,
+        List<Segment> segments,
+        SequenceReader sequenceReader
+    ) {
+        this.fileName = cache.getFilePathToRefGenome();
+        this.threads = cache.getNumberOfThreads();
+        this.segments = segments;
+        this.sequenceReader = sequenceReader;
+        this.chunkStarts = computeChunks();
+    }
+
+    /**
+     * Split segments into chunks with about the same number of base pairs.
+     *
+     * @return first segment of each chunk, last entry: number of segments
+     */
+    private int[] computeChunks() {
+        int numberOfSegments = segments.size();
+        long[] ends = new long[numberOfSegments];
+        totalLength = 0;
+        for (int i = 0; i < numberOfSegments; ++i) {
+            totalLength += Math.max(1, segments.get(i).getLength());
+            ends[i] = totalLength;
+        }
+
+        int numberOfChunks = Math.max(1, Math.min(numberOfSegments, threads * CHUNKS_PER_THREAD));
+        int[] starts = new int[numberOfChunks + 1];
+        int segment = 0;
+        for (int chunk = 1; chunk < numberOfChunks; ++chunk) {
+            long chunkEnd = totalLength * chunk / numberOfChunks;
+            while (segment < numberOfSegments && ends[segment] <= chunkEnd) {
+                ++segment;
+            }
+            starts[chunk] = segment;
+        }
+        starts[numberOfChunks] = numberOfSegments;
+        return starts;
+    }
+
+    /**
+     * Run task on all segments and wait until all segments are processed.
+     *
+     * If the job of the calling thread is cancelled, the remaining segments
+     * are skipped and CancellationException is thrown after the loop. If a
+     * chunk cannot be read, the remaining chunks are skipped and
+     * UncheckedIOException is thrown after the loop.
+     *
+     * @param <S> type of state of a chunk
+     * @param task task
+     */
+    public <S> void run(final SegmentTask<S> task) {
+        final int numberOfChunks = chunkStarts.length - 1;
+        log.log(Level.INFO, "{0} segments in {1} chunks", new Object[]{segments.size(), numberOfChunks});
+
+        final Job job = Job.current();
+        final AtomicLong processedLength = new AtomicLong(0);
+        final AtomicReference<IOException> error = new AtomicReference<>();
+
+        Parallel2 p2 = ParallelizationFactory.getInstance(threads);
+        new ParallelForInt2(p2, 0, numberOfChunks).loop(new IterationInt() {
+            @Override
+            public void iteration(final int currentChunk) {
+                int chunkStart = chunkStarts[currentChunk];
+                int chunkEnd = chunkStarts[currentChunk + 1];
+                if (chunkStart >= chunkEnd || error.get() != null) {
+                    return;
+                }
+
+                S state = task.createState();
+                try (BufferedRandomAccessFile bufferedReader = new BufferedRandomAccessFile(fileName, "r", READER_BUFFER_SIZE)) {
+                    long chunkLength = 0;
+                    for (int i = chunkStart; i < chunkEnd; ++i) {
+                        if (job != null && job.isCancelled()) {
+                            return;
+                        }
+                        Segment segment = segments.get(i);
+                        task.process(state, i, segment, sequenceReader.readSegment(segment, bufferedReader));
+                        chunkLength += Math.max(1, segment.getLength());
+                    }
+                    if (job != null) {
+                        job.setProgress((double) processedLength.addAndGet(chunkLength) / totalLength);
+                    }
+                } catch (IOException ioEx) {
+                    error.compareAndSet(null, ioEx);
+                }
+            }
+        });
+        if (error.get() != null) {
+            // the values of the failed chunk are wrong: fail the job
+            throw new UncheckedIOException(error.get());
+        }
+        if (job != null) {
+            job.check();
+        }
+    }
+}
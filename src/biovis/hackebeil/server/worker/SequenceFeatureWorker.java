@@ -0,0 +1,196 @@
+/**
+ *  Copyright 2016 Lydia Müller, Dirk Zeckzer
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package biovis.hackebeil.server.worker;
+
+import biovis.hackebeil.common.data.CompositionFeature;
+import biovis.hackebeil.common.data.Motif;
+import biovis.hackebeil.common.data.PositionWeightMatrix;
+import biovis.hackebeil.common.data.Segment;
+import biovis.hackebeil.server.data.SegmentStore;
+import biovis.hackebeil.server.data.ServerCache;
+import biovis.hackebeil.server.worker.motifWorker.MotifCounter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Computes all sequence features (motifs, PWMs, base composition) of the
+ * segments in one pass: the sequence of each segment is read once and fed
+ * to every requested feature. Segments are processed in parallel by the
+ * SegmentScheduler; the values are stored in the segments (segment store)
+ * and returned per feature for segments with at least minimal segment
+ * length.
+ *
+ * @author Dirk Zeckzer
+ */
+public class SequenceFeatureWorker {
+
+    private static final Logger log = Logger.getLogger("SequenceFeatureWorker");
+
+    private final ServerCache cache;
+    private final List<Segment> segments;
+
+    private List<Motif> motifList = Collections.emptyList();
+    private List<PositionWeightMatrix> pwmList = Collections.emptyList();
+    private List<CompositionFeature> compositionList = Collections.emptyList();
+
+    private Map<String, List<Double>> motifValues;
+    private Map<String, List<Double>> pwmValues;
+    private Map<String, List<Double>> compositionValues;
+
+    /**
+     *
+     * @param cache
+     */
+    public SequenceFeatureWorker(
+        ServerCache cache
+    ) {
+        this.cache = cache;
+        this.segments = cache.getSegments();
+    }
+
+    /**
+     * @param motifList motifs to count
+     */
+    public void setMotifList(List<Motif> motifList) {
+        this.motifList = motifList;
+    }
+
+    /**
+     * @param pwmList PWMs to compute (are loaded)
+     */
+    public void setPWMList(List<PositionWeightMatrix> pwmList) {
+        this.pwmList = pwmList;
+        for (PositionWeightMatrix pwm : pwmList) {
+            pwm.loadPwm();
+        }
+    }
+
+    /**
+     * @param compositionList composition features to compute
+     */
+    public void setCompositionList(List<CompositionFeature> compositionList) {
+        this.compositionList = compositionList;
+    }
+
+    /**
+     * Compute all features.
+     */
+    public void compute() {
+        log.log(Level.INFO, "Sequence feature computation start: {0} motifs, {1} PWMs, {2} composition features",
+                new Object[]{motifList.size(), pwmList.size(), compositionList.size()});
+
+        final MotifCounter motifCounter = new MotifCounter(motifList);
+        final CompositionCounter compositionCounter = new CompositionCounter(compositionList);
+        final int numberOfPWM = pwmList.size();
+        final double[][] motifs = new double[motifCounter.size()][segments.size()];
+        final double[][] pwms = new double[numberOfPWM][segments.size()];
+        final double[][] compositions = new double[compositionCounter.size()][segments.size()];
+
+        SegmentScheduler scheduler = new SegmentScheduler(cache, segments, new SequenceReader(cache));
+        scheduler.run(new SegmentScheduler.SegmentTask<long[]>() {
+            @Override
+            public long[] createState() {
+                return motifCounter.newCounts();
+            }
+
+            @Override
+            public void process(long[] counts, int index, Segment segment, char[] segmentDNA) {
+                if (segment.getLength() <= 0) {
+                    log.log(Level.FINE, "Segment too short: {0}", segment.getLocation());
+                }
+                if (segmentDNA.length <= 0) {
+                    log.log(Level.FINE, "SegmentDNA too short: {0}", segment.getLocation());
+                }
+
+                motifCounter.computeValues(segmentDNA, segment.getLocation(), counts, motifs, index);
+                for (int currentPWM = 0; currentPWM < numberOfPWM; ++currentPWM) {
+                    pwms[currentPWM][index] = pwmList.get(currentPWM).computePWM(segmentDNA);
+                }
+                compositionCounter.computeValues(segmentDNA, compositions, index);
+            }
+        });
+
+        log.log(Level.INFO, "Sequence feature values");
+        motifValues = new HashMap<>();
+        for (int currentMotif = 0; currentMotif < motifCounter.size(); ++currentMotif) {
+            storeValues(SegmentStore.FeatureGroup.MOTIF, motifCounter.getMotifId(currentMotif),
+                        motifs[currentMotif], motifValues);
+        }
+        pwmValues = new HashMap<>();
+        for (int currentPWM = 0; currentPWM < numberOfPWM; ++currentPWM) {
+            storeValues(SegmentStore.FeatureGroup.PWM, pwmList.get(currentPWM).getMotifId(),
+                        pwms[currentPWM], pwmValues);
+        }
+        compositionValues = new HashMap<>();
+        for (int feature = 0; feature < compositionCounter.size(); ++feature) {
+            storeValues(SegmentStore.FeatureGroup.COMPOSITION, compositionCounter.getFeature(feature).getName(),
+                        compositions[feature], compositionValues);
+        }
+        log.log(Level.INFO, "Sequence feature computation end");
+    }
+
+    /**
+     * Store values of one feature in the segments and collect the values of
+     * segments with at least minimal segment length.
+     *
+     * @param group feature group
+     * @param name feature name
+     * @param values value of each segment
+     * @param featureValues feature name to values
+     */
+    private void storeValues(
+        SegmentStore.FeatureGroup group,
+        String name,
+        double[] values,
+        Map<String, List<Double>> featureValues
+    ) {
+        SegmentStore.setValues(segments, group, name, values);
+
+        List<Double> valuesForFeature = new ArrayList<>();
+        for (int i = 0; i < segments.size(); ++i) {
+            if (segments.get(i).getLength() >= cache.getMinSegmentLength()) {
+                valuesForFeature.add(values[i]);
+            }
+        }
+        featureValues.put(name, valuesForFeature);
+    }
+
+    /**
+     * @return motif id to values
+     */
+    public Map<String, List<Double>> getMotifValues() {
+        return motifValues;
+    }
+
+    /**
+     * @return PWM id to values
+     */
+    public Map<String, List<Double>> getPWMValues() {
+        return pwmValues;
+    }
+
+    /**
+     * @return composition feature name to values
+     */
+    public Map<String, List<Double>> getCompositionValues() {
+        return compositionValues;
+    }
+}
@@ -18,6 +18,7 @@ package biovis.hackebeil.server.worker;
 import biovis.hackebeil.common.data.Location;
 import biovis.hackebeil.common.data.Segment;
 import biovis.hackebeil.server.data.BufferedRandomAccessFile;
+import biovis.hackebeil.server.data.PackedGenome;
 import biovis.hackebeil.server.data.ServerCache;
 import java.io.IOException;
 import java.util.HashMap;
@@ -39,6 +40,7 @@ public class SequenceReader {
     private Map<String, Long> startFilePos;
     private Map<String, Integer> lineLength;
     private Map<Location, Long> posInFileMap;
+    private PackedGenome packedGenome;
 
     /**
      *
@@ -49,13 +51,15 @@ public class SequenceReader {
     ) {
         this.startFilePos = cache.getStartFilePos();
         this.lineLength = cache.getLineLength();
+        this.packedGenome = cache.getPackedGenome();
         preProcessing(cache.getSegments());
     }
 
     /**
      *
      * @param segment segment
-     * @param bufferedReader reader specially for threading
+     * @param bufferedReader reader specially for threading (not used if the
+     * packed genome is available)
      * @return character array containing nt's of current segment
      */
     public char[] readSegment(
@@ -66,6 +70,13 @@ public class SequenceReader {
 
         Location location = segment.getLocation();
 
+        // packed genome: no per line I/O
+        if (packedGenome != null
+            && packedGenome.contains(location.getChr())
+            && location.getStart() >= 0) {
+            return packedGenome.read(location.getChr(), location.getStart(), segment.getLength());
+        }
+
         try {
             Long posInFile = posInFileMap.get(location);
             if (posInFile != null
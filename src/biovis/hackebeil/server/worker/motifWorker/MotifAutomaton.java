@@ -0,0 +1,226 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ****************************************************************************
+ */
+package biovis.hackebeil.server.worker.motifWorker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton counting all motifs (forward and reverse
+ * complement, case-insensitive) in one pass over a sequence.
+ *
+ * The sequence is mapped to the alphabet A, C, G, T, N, and other.
+ * Occurrences may overlap; a palindromic motif is counted twice per
+ * occurrence, like the forward plus reverse complement search.
+ * Motifs containing characters other than A, C, G, T (any case) or allowing
+ * mismatches are not compiled and have to be counted separately (see
+ * isCompiled).
+ *
+ * The automaton is immutable and can be used by several threads.
+ *
+ * @author zeckzer
+ */
+public class MotifAutomaton {
+
+    private static final int ALPHABET_SIZE = 6;
+    private static final int N = 4;
+    private static final int OTHER = 5;
+    private static final int[] EMPTY = new int[0];
+
+    // character to alphabet index
+    private static final byte[] CHARACTER_CLASS = new byte[128];
+
+    static {
+        Arrays.fill(CHARACTER_CLASS, (byte) OTHER);
+        String characters = "ACGTN";
+        for (int i = 0; i < characters.length(); ++i) {
+            CHARACTER_CLASS[characters.charAt(i)] = (byte) i;
+            CHARACTER_CLASS[Character.toLowerCase(characters.charAt(i))] = (byte) i;
+        }
+    }
+
+    private final boolean[] compiled;
+    // transitions: state * ALPHABET_SIZE + character class
+    private final int[] transitions;
+    // motif indices found when reaching state (with multiplicity)
+    private final int[][] outputs;
+
+    /**
+     * Build automaton.
+     *
+     * @param motifs motifs, counts are indexed by position in this list
+     */
+    public MotifAutomaton(List<MotifChars> motifs) {
+        compiled = new boolean[motifs.size()];
+
+        // trie
+        List<int[]> children = new ArrayList<>();
+        List<int[]> terminal = new ArrayList<>();
+        children.add(newState());
+        terminal.add(EMPTY);
+        for (int motif = 0; motif < motifs.size(); ++motif) {
+            MotifChars motifChars = motifs.get(motif);
+            if (!isSupported(motifChars)) {
+                continue;
+            }
+            compiled[motif] = true;
+            insert(motifChars.getMotifCharsUpperCase(), motif, children, terminal);
+            insert(motifChars.getMotifCharsRCUpperCase(), motif, children, terminal);
+        }
+
+        // breadth first: failure links, transitions, and outputs
+        int states = children.size();
+        transitions = new int[states * ALPHABET_SIZE];
+        outputs = new int[states][];
+        int[] failure = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+
+        outputs[0] = terminal.get(0);
+        for (int c = 0; c < ALPHABET_SIZE; ++c) {
+            int child = children.get(0)[c];
+            if (child > 0) {
+                failure[child] = 0;
+                transitions[c] = child;
+                queue[tail++] = child;
+            } else {
+                transitions[c] = 0;
+            }
+        }
+
+        while (head < tail) {
+            int state = queue[head++];
+            outputs[state] = merge(terminal.get(state), outputs[failure[state]]);
+            for (int c = 0; c < ALPHABET_SIZE; ++c) {
+                int child = children.get(state)[c];
+                if (child > 0) {
+                    failure[child] = transitions[failure[state] * ALPHABET_SIZE + c];
+                    transitions[state * ALPHABET_SIZE + c] = child;
+                    queue[tail++] = child;
+                } else {
+                    transitions[state * ALPHABET_SIZE + c] = transitions[failure[state] * ALPHABET_SIZE + c];
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if motif can be compiled (non-empty, only A, C, G, T, exact).
+     *
+     * @param motifChars motif
+     * @return true iff motif can be compiled
+     */
+    public static boolean isSupported(MotifChars motifChars) {
+        char[] upperCase = motifChars.getMotifCharsUpperCase();
+        if (upperCase.length == 0
+            || motifChars.getMaxMismatches() > 0
+            || upperCase.length != motifChars.length()
+            || motifChars.getMotifCharsLowerCase().length != upperCase.length) {
+            return false;
+        }
+        for (char c : upperCase) {
+            if (c >= CHARACTER_CLASS.length || CHARACTER_CLASS[c] >= N) {
+                return false;
+            }
+        }
+        for (char c : motifChars.getMotifCharsLowerCase()) {
+            if (c >= CHARACTER_CLASS.length || CHARACTER_CLASS[c] >= N) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param motif motif index
+     * @return true iff motif is counted by this automaton
+     */
+    public boolean isCompiled(int motif) {
+        return compiled[motif];
+    }
+
+    /**
+     * Count occurrences of all compiled motifs in sequence.
+     *
+     * @param sequence sequence
+     * @param counts counts (indexed by motif), found occurrences are added
+     */
+    public void count(char[] sequence, long[] counts) {
+        int state = 0;
+        for (char c : sequence) {
+            int characterClass = c < CHARACTER_CLASS.length ? CHARACTER_CLASS[c] : OTHER;
+            state = transitions[state * ALPHABET_SIZE + characterClass];
+            for (int motif : outputs[state]) {
+                ++counts[motif];
+            }
+        }
+    }
+
+    /**
+     * @return new state without children
+     */
+    private static int[] newState() {
+        int[] state = new int[ALPHABET_SIZE];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    /**
+     * Insert pattern into trie.
+     */
+    private static void insert(
+        char[] pattern,
+        int motif,
+        List<int[]> children,
+        List<int[]> terminal
+    ) {
+        int state = 0;
+        for (char c : pattern) {
+            int characterClass = CHARACTER_CLASS[c];
+            int child = children.get(state)[characterClass];
+            if (child < 0) {
+                child = children.size();
+                children.get(state)[characterClass] = child;
+                children.add(newState());
+                terminal.add(EMPTY);
+            }
+            state = child;
+        }
+        int[] motifs = terminal.get(state);
+        motifs = Arrays.copyOf(motifs, motifs.length + 1);
+        motifs[motifs.length - 1] = motif;
+        terminal.set(state, motifs);
+    }
+
+    /**
+     * Concatenate output lists.
+     */
+    private static int[] merge(int[] own, int[] inherited) {
+        if (inherited.length == 0) {
+            return own;
+        }
+        if (own.length == 0) {
+            return inherited;
+        }
+        int[] merged = Arrays.copyOf(own, own.length + inherited.length);
+        System.arraycopy(inherited, 0, merged, own.length, inherited.length);
+        return merged;
+    }
+}
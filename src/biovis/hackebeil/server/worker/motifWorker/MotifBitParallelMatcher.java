@@ -0,0 +1,239 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ****************************************************************************
+ */
+package biovis.hackebeil.server.worker.motifWorker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bit-parallel (Shift-And) search of degenerate motifs with a bounded
+ * number of mismatches (Hamming distance), counting all motifs (forward
+ * and reverse complement, case-insensitive) in one pass over a sequence.
+ *
+ * Every motif position has a bit mask of the characters it matches: a base
+ * matches itself, an IUPAC code the bases it represents (N additionally
+ * matches N in the sequence), every other character itself. Thus a
+ * degenerate position costs nothing extra. A motif with k allowed
+ * mismatches keeps k + 1 state words (occurrences with at most d
+ * mismatches for d = 0 .. k), updated with a few word operations per
+ * character.
+ *
+ * Occurrences may overlap; a motif whose reverse complement is the same
+ * pattern is counted twice per occurrence, like the forward plus reverse
+ * complement search. Motifs longer than 64 positions are checked window by
+ * window.
+ *
+ * The matcher is immutable and can be used by several threads.
+ *
+ * @author zeckzer
+ */
+public class MotifBitParallelMatcher {
+
+    private static final int WORD_SIZE = 64;
+    private static final int CHARACTERS = 128;
+
+    // motif index of each pattern (forward and reverse complement)
+    private final int[] motifs;
+    private final int[] lengths;
+    private final int[] mismatches;
+    // pattern -> character -> positions matching the character
+    private final long[][] masks;
+    // patterns longer than WORD_SIZE: pattern -> position * CHARACTERS + character
+    private final boolean[][] longMatches;
+
+    /**
+     * Build matcher.
+     *
+     * @param motifChars motifs
+     * @param selected indices of motifs to count (counts are indexed by
+     * position in motifChars)
+     */
+    public MotifBitParallelMatcher(
+        List<MotifChars> motifChars,
+        List<Integer> selected
+    ) {
+        List<char[]> patterns = new ArrayList<>();
+        List<Integer> patternMotifs = new ArrayList<>();
+        for (int motif : selected) {
+            MotifChars chars = motifChars.get(motif);
+            if (chars.getMotifCharsUpperCase().length == 0) {
+                continue;
+            }
+            patterns.add(chars.getMotifCharsUpperCase());
+            patternMotifs.add(motif);
+            patterns.add(chars.getMotifCharsRCUpperCase());
+            patternMotifs.add(motif);
+        }
+
+        int numberOfPatterns = patterns.size();
+        motifs = new int[numberOfPatterns];
+        lengths = new int[numberOfPatterns];
+        mismatches = new int[numberOfPatterns];
+        masks = new long[numberOfPatterns][];
+        longMatches = new boolean[numberOfPatterns][];
+        for (int pattern = 0; pattern < numberOfPatterns; ++pattern) {
+            char[] chars = patterns.get(pattern);
+            motifs[pattern] = patternMotifs.get(pattern);
+            lengths[pattern] = chars.length;
+            mismatches[pattern] = Math.max(0, motifChars.get(motifs[pattern]).getMaxMismatches());
+            if (chars.length <= WORD_SIZE) {
+                masks[pattern] = new long[CHARACTERS];
+                for (int position = 0; position < chars.length; ++position) {
+                    for (char c : matchingCharacters(chars[position])) {
+                        masks[pattern][c] |= 1L << position;
+                    }
+                }
+            } else {
+                longMatches[pattern] = new boolean[chars.length * CHARACTERS];
+                for (int position = 0; position < chars.length; ++position) {
+                    for (char c : matchingCharacters(chars[position])) {
+                        longMatches[pattern][position * CHARACTERS + c] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param motifChar character of motif (upper case)
+     * @return sequence characters matched by motif character
+     */
+    private static char[] matchingCharacters(char motifChar) {
+        String bases;
+        switch (motifChar) {
+            case 'R':
+                bases = "AG";
+                break;
+            case 'Y':
+                bases = "CT";
+                break;
+            case 'S':
+                bases = "CG";
+                break;
+            case 'W':
+                bases = "AT";
+                break;
+            case 'K':
+                bases = "GT";
+                break;
+            case 'M':
+                bases = "AC";
+                break;
+            case 'B':
+                bases = "CGT";
+                break;
+            case 'D':
+                bases = "AGT";
+                break;
+            case 'H':
+                bases = "ACT";
+                break;
+            case 'V':
+                bases = "ACG";
+                break;
+            case 'N':
+                bases = "ACGTN";
+                break;
+            default:
+                bases = String.valueOf(motifChar);
+        }
+        StringBuilder characters = new StringBuilder();
+        for (char c : bases.toCharArray()) {
+            if (c < CHARACTERS) {
+                characters.append(c);
+                char lowerCase = Character.toLowerCase(c);
+                if (lowerCase != c && lowerCase < CHARACTERS) {
+                    characters.append(lowerCase);
+                }
+            }
+        }
+        return characters.toString().toCharArray();
+    }
+
+    /**
+     * Count occurrences of all motifs in sequence.
+     *
+     * @param sequence sequence
+     * @param counts counts (indexed by motif), found occurrences are added
+     */
+    public void count(char[] sequence, long[] counts) {
+        for (int pattern = 0; pattern < motifs.length; ++pattern) {
+            if (masks[pattern] == null) {
+                counts[motifs[pattern]] += countLong(pattern, sequence);
+            }
+        }
+
+        int numberOfPatterns = motifs.length;
+        long[][] states = new long[numberOfPatterns][];
+        for (int pattern = 0; pattern < numberOfPatterns; ++pattern) {
+            states[pattern] = new long[mismatches[pattern] + 1];
+        }
+
+        for (char c : sequence) {
+            int character = c < CHARACTERS ? c : 0;
+            for (int pattern = 0; pattern < numberOfPatterns; ++pattern) {
+                long[] mask = masks[pattern];
+                if (mask == null) {
+                    continue;
+                }
+                long matching = mask[character];
+                long[] state = states[pattern];
+
+                // state[d]: bit i set iff the last i + 1 characters match
+                // the first i + 1 positions with at most d mismatches
+                long previous = state[0];
+                state[0] = ((previous << 1) | 1L) & matching;
+                for (int d = 1; d < state.length; ++d) {
+                    long current = state[d];
+                    state[d] = (((current << 1) | 1L) & matching) | ((previous << 1) | 1L);
+                    previous = current;
+                }
+                if ((state[state.length - 1] & (1L << (lengths[pattern] - 1))) != 0) {
+                    ++counts[motifs[pattern]];
+                }
+            }
+        }
+    }
+
+    /**
+     * Count occurrences of a pattern longer than WORD_SIZE window by window.
+     *
+     * @param pattern pattern
+     * @param sequence sequence
+     * @return number of occurrences
+     */
+    private long countLong(int pattern, char[] sequence) {
+        boolean[] matches = longMatches[pattern];
+        int length = lengths[pattern];
+        int allowed = mismatches[pattern];
+        long count = 0;
+        for (int start = 0; start + length <= sequence.length; ++start) {
+            int mismatching = 0;
+            for (int position = 0; position < length && mismatching <= allowed; ++position) {
+                char c = sequence[start + position];
+                if (c >= CHARACTERS || !matches[position * CHARACTERS + c]) {
+                    ++mismatching;
+                }
+            }
+            if (mismatching <= allowed) {
+                ++count;
+            }
+        }
+        return count;
+    }
+}
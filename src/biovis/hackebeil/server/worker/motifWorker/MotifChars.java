@@ -61,6 +61,9 @@ public class MotifChars {
     }
 
     /**
+     * Complement of a base or IUPAC code (R = A/G, Y = C/T, S = C/G,
+     * W = A/T, K = G/T, M = A/C, B = not A, D = not C, H = not G,
+     * V = not T, N = any).
      *
      * @param orig
      * @return
@@ -83,6 +86,38 @@ public class MotifChars {
                 return 'C';
             case 'g':
                 return 'c';
+            case 'R':
+                return 'Y';
+            case 'r':
+                return 'y';
+            case 'Y':
+                return 'R';
+            case 'y':
+                return 'r';
+            case 'K':
+                return 'M';
+            case 'k':
+                return 'm';
+            case 'M':
+                return 'K';
+            case 'm':
+                return 'k';
+            case 'B':
+                return 'V';
+            case 'b':
+                return 'v';
+            case 'V':
+                return 'B';
+            case 'v':
+                return 'b';
+            case 'D':
+                return 'H';
+            case 'd':
+                return 'h';
+            case 'H':
+                return 'D';
+            case 'h':
+                return 'd';
             default:
                 return orig;
         }
@@ -96,6 +131,10 @@ public class MotifChars {
         return motif.getMotifId();
     }
 
+    public int getMaxMismatches() {
+        return motif.getMaxMismatches();
+    }
+
     public int length() {
         return motif.getMotif().length();
     }
@@ -0,0 +1,129 @@
+/**
+ * *****************************************************************************
+ * Copyright 2015 Dirk Zeckzer, Lydia Müller, Daniel Gerighausen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ****************************************************************************
+ */
+package biovis.hackebeil.server.worker.motifWorker;
+
+import biovis.hackebeil.common.data.Location;
+import biovis.hackebeil.common.data.Motif;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the values (count or density) of a list of motifs for a
+ * sequence. Exact A, C, G, T motifs are counted by an Aho-Corasick
+ * automaton, all other motifs (IUPAC codes, mismatches) by a bit-parallel
+ * matcher; each scans the sequence once for all of its motifs.
+ *
+ * Thread-safe: every thread uses its own counts array (newCounts).
+ *
+ * @author Dirk Zeckzer
+ */
+public class MotifCounter {
+
+    private final List<MotifChars> motifs;
+    private final MotifAutomaton automaton;
+    private final MotifBitParallelMatcher matcher;
+
+    /**
+     * Constructor.
+     *
+     * @param motifList motifs
+     */
+    public MotifCounter(List<Motif> motifList) {
+        motifs = new MotifCharsList(motifList).getList();
+        automaton = new MotifAutomaton(motifs);
+        List<Integer> notCompiled = new ArrayList<>();
+        for (int motif = 0; motif < motifs.size(); ++motif) {
+            if (!automaton.isCompiled(motif)) {
+                notCompiled.add(motif);
+            }
+        }
+        matcher = notCompiled.isEmpty() ? null : new MotifBitParallelMatcher(motifs, notCompiled);
+    }
+
+    /**
+     * @return number of motifs
+     */
+    public int size() {
+        return motifs.size();
+    }
+
+    /**
+     * @param motif index of motif
+     * @return motif identifier
+     */
+    public String getMotifId(int motif) {
+        return motifs.get(motif).getMotifId();
+    }
+
+    /**
+     * @return counts array for computeValues
+     */
+    public long[] newCounts() {
+        return new long[motifs.size()];
+    }
+
+    /**
+     * Compute values of all motifs.
+     *
+     * @param segmentDNA sequence
+     * @param location location of sequence
+     * @param counts counts array (see newCounts)
+     * @param values values[motif][index] is set
+     * @param index index of sequence
+     */
+    public void computeValues(
+        char[] segmentDNA,
+        Location location,
+        long[] counts,
+        double[][] values,
+        int index
+    ) {
+        Arrays.fill(counts, 0);
+        automaton.count(segmentDNA, counts);
+        if (matcher != null) {
+            matcher.count(segmentDNA, counts);
+        }
+
+        for (int currentMotif = 0; currentMotif < motifs.size(); ++currentMotif) {
+            MotifChars motifChars = motifs.get(currentMotif);
+            long count = counts[currentMotif];
+
+            if (motifChars.getIsNormalized()) {
+                values[currentMotif][index] = computeMotifDensity(motifChars, location, count);
+            } else {
+                values[currentMotif][index] = count;
+            }
+        }
+    }
+
+    /**
+     *
+     * @param motifChars
+     * @param location
+     * @param count number of motif occurrences (forward and reverse complement)
+     */
+    private double computeMotifDensity(
+        MotifChars motifChars,
+        Location location,
+        long count
+    ) {
+        long theoCount = location.getLength() - motifChars.length() + 1;
+        return ((double) count) / (((double) theoCount) * 2);
+    }
+}
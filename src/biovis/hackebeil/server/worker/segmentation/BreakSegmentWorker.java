@@ -55,7 +55,15 @@ public class BreakSegmentWorker {
      */
     private void compute() {
         if (segmentationWorker.isDivided()) {
-            computeBreakSegments(segmentationWorker.getSegments());
+            SegmentPartitionAnalysis partitionAnalysis = segmentationWorker.getPartitionAnalysis();
+            if (partitionAnalysis != null) {
+                // computed during partitioned segmentation
+                breakSegmentList.clear();
+                breakSegmentList.addAll(partitionAnalysis.getBreakSegmentList());
+                log.log(Level.INFO, "BreakSegments Count: {0}", breakSegmentList.size());
+            } else {
+                computeBreakSegments(segmentationWorker.getSegments());
+            }
         }
     }
 
@@ -0,0 +1,142 @@
+/**
+ *  Copyright 2016 Lydia Müller, Dirk Zeckzer
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package biovis.hackebeil.server.worker.segmentation;
+
+import biovis.hackebeil.common.data.BreakSegment;
+import biovis.hackebeil.common.data.CodeCountMatrices;
+import biovislib.parallel4.IterationInt;
+import biovislib.parallel4.Parallel2;
+import biovislib.parallel4.ParallelForInt2;
+import biovislib.parallel4.ParallelizationFactory;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Aggregates break segments and segment pairs into code x code, code x
+ * Hamming distance, and code x length matrices (see CodeCountMatrices), so
+ * only the matrices are sent to the client.
+ *
+ * Break segments are counted in parallel: each thread counts its part of
+ * the break segments into its own counts (sparse for many codes), which are
+ * added and turned into matrices afterwards.
+ *
+ * @author Dirk Zeckzer
+ */
+public class CodeMatrixWorker {
+
+    private static final Logger log = Logger.getLogger("CodeMatrixWorker");
+
+    private final int numberOfReferences;
+    private final int numberOfCodes;
+    private final int numberOfThreads;
+
+    /**
+     * Constructor.
+     *
+     * @param numberOfReferences number of reference data sets
+     * @param numberOfThreads number of threads
+     */
+    public CodeMatrixWorker(
+        int numberOfReferences,
+        int numberOfThreads
+    ) {
+        this.numberOfReferences = numberOfReferences;
+        this.numberOfCodes = 1 << numberOfReferences;
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
+    /**
+     * Aggregate break segments: wrapping code x break code, wrapping code x
+     * Hamming distance, wrapping code x length.
+     *
+     * @param breakSegments break segments
+     * @return matrices
+     */
+    public CodeCountMatrices computeBreakSegments(final List<BreakSegment> breakSegments) {
+        final int size = breakSegments.size();
+        int maxLength = 0;
+        for (int i = 0; i < size; ++i) {
+            maxLength = Math.max(maxLength, breakSegments.get(i).getLength());
+        }
+        final int lengths = maxLength + 1;
+
+        final int numberOfParts = Math.max(1, Math.min(size, numberOfThreads));
+        final CodePairCounts[] codeCounts = new CodePairCounts[numberOfParts];
+        final int[][][] distanceCounts = new int[numberOfParts][][];
+        final CodePairCounts[] lengthCounts = new CodePairCounts[numberOfParts];
+
+        Parallel2 p2 = ParallelizationFactory.getInstance(numberOfParts);
+        new ParallelForInt2(p2, 0, numberOfParts).loop(new IterationInt() {
+            @Override
+            public void iteration(int part) {
+                CodePairCounts codeCount = new CodePairCounts(numberOfCodes);
+                int[][] distanceCount = new int[numberOfCodes][numberOfReferences + 1];
+                CodePairCounts lengthCount = new CodePairCounts(numberOfCodes, lengths);
+
+                int end = (int) ((long) size * (part + 1) / numberOfParts);
+                for (int i = (int) ((long) size * part / numberOfParts); i < end; ++i) {
+                    BreakSegment breakSegment = breakSegments.get(i);
+                    int beforeCode = breakSegment.getBeforeCode();
+                    int breakCode = breakSegment.getBreakCode();
+                    codeCount.increment(beforeCode, breakCode);
+                    ++distanceCount[beforeCode][Integer.bitCount(beforeCode ^ breakCode)];
+                    lengthCount.increment(beforeCode, breakSegment.getLength());
+                }
+                codeCounts[part] = codeCount;
+                distanceCounts[part] = distanceCount;
+                lengthCounts[part] = lengthCount;
+            }
+        });
+
+        for (int part = 1; part < numberOfParts; ++part) {
+            codeCounts[0].add(codeCounts[part]);
+            add(distanceCounts[0], distanceCounts[part]);
+            lengthCounts[0].add(lengthCounts[part]);
+        }
+        log.log(Level.INFO, "{0} break segments aggregated", size);
+        return new CodeCountMatrices(size, codeCounts[0].toMatrix(), distanceCounts[0], lengthCounts[0].toMatrix());
+    }
+
+    /**
+     * Aggregate segment pairs: first code x second code, first code x
+     * Hamming distance.
+     *
+     * @param pairs code pair counts
+     * @return matrices
+     */
+    public CodeCountMatrices computePairs(CodePairCounts pairs) {
+        final int[][] distanceCount = new int[numberOfCodes][numberOfReferences + 1];
+        pairs.forEach(new CodePairCounts.Visitor() {
+            @Override
+            public void visit(int first, int second, int count) {
+                distanceCount[first][Integer.bitCount(first ^ second)] += count;
+            }
+        });
+        return new CodeCountMatrices((int) pairs.getTotal(), pairs.toMatrix(), distanceCount, null);
+    }
+
+    /**
+     * Add counts.
+     */
+    private static void add(int[][] counts, int[][] additionalCounts) {
+        for (int i = 0; i < counts.length; ++i) {
+            for (int j = 0; j < counts[i].length; ++j) {
+                counts[i][j] += additionalCounts[i][j];
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ *  Copyright 2016 Lydia Müller, Dirk Zeckzer
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package biovis.hackebeil.server.worker.segmentation;
+
+/**
+ * Counts of code pairs (first code, second code) indexed by the codes.
+ * The second value may also be another small number, e.g., a length.
+ *
+ * Up to DENSE_MAX_CODES x DENSE_MAX_CODES pairs, the counts are kept in a
+ * dense array, otherwise in a sparse map keyed by first * seconds + second.
+ * One instance is kept per chromosome partition (SegmentPartitionAnalysis),
+ * thus the dense limit keeps these small.
+ *
+ * @author Dirk Zeckzer
+ */
+public class CodePairCounts {
+
+    // 256 x 256 counts = 256 KB
+    public static final int DENSE_MAX_CODES = 1 << 8;
+
+    private final int numberOfCodes;
+    private final int numberOfSeconds;
+    // [first * numberOfSeconds + second], null if sparse
+    private final int[] dense;
+    // null if dense
+    private final SparseCounts sparse;
+    private long total = 0;
+
+    /**
+     * Visitor of the code pairs.
+     */
+    public interface Visitor {
+
+        /**
+         * @param first first code
+         * @param second second code
+         * @param count count (> 0)
+         */
+        void visit(int first, int second, int count);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param numberOfCodes number of codes
+     */
+    public CodePairCounts(int numberOfCodes) {
+        this(numberOfCodes, numberOfCodes);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param numberOfCodes number of first codes
+     * @param numberOfSeconds number of second values
+     */
+    public CodePairCounts(int numberOfCodes, int numberOfSeconds) {
+        this.numberOfCodes = numberOfCodes;
+        this.numberOfSeconds = numberOfSeconds;
+        if ((long) numberOfCodes * numberOfSeconds <= (long) DENSE_MAX_CODES * DENSE_MAX_CODES) {
+            dense = new int[numberOfCodes * numberOfSeconds];
+            sparse = null;
+        } else {
+            dense = null;
+            sparse = new SparseCounts();
+        }
+    }
+
+    /**
+     * Count pair.
+     *
+     * @param first first code
+     * @param second second code
+     */
+    public void increment(int first, int second) {
+        if (dense != null) {
+            ++dense[first * numberOfSeconds + second];
+        } else {
+            sparse.add((long) first * numberOfSeconds + second, 1);
+        }
+        ++total;
+    }
+
+    /**
+     * @param first first code
+     * @param second second code
+     * @return count of pair
+     */
+    public int get(int first, int second) {
+        if (dense != null) {
+            return dense[first * numberOfSeconds + second];
+        }
+        return sparse.get((long) first * numberOfSeconds + second);
+    }
+
+    /**
+     * Add counts of the same number of codes and second values.
+     *
+     * @param counts additional counts
+     */
+    public void add(CodePairCounts counts) {
+        if (dense != null) {
+            for (int i = 0; i < dense.length; ++i) {
+                dense[i] += counts.dense[i];
+            }
+        } else {
+            sparse.add(counts.sparse);
+        }
+        total += counts.total;
+    }
+
+    /**
+     * Visit all pairs with count > 0.
+     *
+     * @param visitor visitor
+     */
+    public void forEach(final Visitor visitor) {
+        if (dense != null) {
+            for (int i = 0; i < dense.length; ++i) {
+                if (dense[i] != 0) {
+                    visitor.visit(i / numberOfSeconds, i % numberOfSeconds, dense[i]);
+                }
+            }
+        } else {
+            sparse.forEach(new SparseCounts.Visitor() {
+                @Override
+                public void visit(long key, int count) {
+                    visitor.visit((int) (key / numberOfSeconds), (int) (key % numberOfSeconds), count);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return first code x second value counts
+     */
+    public int[][] toMatrix() {
+        final int[][] matrix = new int[numberOfCodes][numberOfSeconds];
+        forEach(new Visitor() {
+            @Override
+            public void visit(int first, int second, int count) {
+                matrix[first][second] = count;
+            }
+        });
+        return matrix;
+    }
+
+    public int getNumberOfCodes() {
+        return numberOfCodes;
+    }
+
+    /**
+     * @return number of counted pairs
+     */
+    public long getTotal() {
+        return total;
+    }
+}
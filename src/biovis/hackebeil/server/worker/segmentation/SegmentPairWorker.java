@@ -15,12 +15,11 @@
  */
 package biovis.hackebeil.server.worker.segmentation;
 
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import biovis.hackebeil.common.data.CodePairRelation;
 import biovis.hackebeil.common.data.Segment;
-import java.util.HashMap;
 import java.util.List;
 import java.util.SortedMap;
 
@@ -28,6 +27,10 @@ import java.util.SortedMap;
  * Based on epiwgseg.segmentation.TableBuilder.java and
  * epiwgseg.segmentation.DataTable.java
  *
+ * Segment pairs are counted by code in one pass over the segments (see
+ * CodePairCounts). Optionally, the first-order Markov transition
+ * probabilities are derived from the segment pairs.
+ *
  * @author nhinzmann, Alrik Hausdorf, Dirk Zeckzer, Lydia Mueller
  *
  */
@@ -35,12 +38,15 @@ public class SegmentPairWorker {
 
     transient private Logger log = Logger.getLogger(SegmentPairWorker.class.toString());
 
+    private final int numberOfCodes;
+    private final boolean transitions;
+
     // Segment pairs
-    private Map<String, Integer> segmentPairMap = new HashMap<>();
-    private Map<String, Integer> segmentShortSegmentPairMap = new HashMap<>();
-    private Map<String, Integer> shortSegmentSegmentPairMap = new HashMap<>();
+    private CodePairCounts segmentPairs;
+    private CodePairCounts segmentShortSegmentPairs;
+    private CodePairCounts shortSegmentSegmentPairs;
 
-    private Map<String, Double> segmentPairRelationMap = new HashMap<>();
+    private CodePairRelation segmentPairRelation;
     private SortedMap<Integer, Integer> segmentCodeMap;
 
     transient private SegmentationWorker segmentationWorker;
@@ -54,8 +60,25 @@ public class SegmentPairWorker {
     public SegmentPairWorker(
         SegmentationWorker segmentationWorker,
         int minLength
+    ) {
+        this(segmentationWorker, minLength, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param segmentationWorker
+     * @param minLength
+     * @param transitions also compute transition probabilities
+     */
+    public SegmentPairWorker(
+        SegmentationWorker segmentationWorker,
+        int minLength,
+        boolean transitions
     ) {
         this.segmentationWorker = segmentationWorker;
+        this.numberOfCodes = segmentationWorker.getNumberOfCodes();
+        this.transitions = transitions;
         compute(minLength);
     }
 
@@ -68,16 +91,24 @@ public class SegmentPairWorker {
     private void compute(
         int minLength
     ) {
-        computeSegmentPairs(segmentationWorker.getSegments());
-        computeSegmentShortSegmentPairs(segmentationWorker.getSegments());
-        computeShortSegmentSegmentPairs(segmentationWorker.getSegments());
+        SegmentPartitionAnalysis partitionAnalysis = segmentationWorker.getPartitionAnalysis();
+        if (partitionAnalysis != null) {
+            // computed during partitioned segmentation
+            segmentPairs = partitionAnalysis.getSegmentPairs();
+            segmentShortSegmentPairs = partitionAnalysis.getSegmentShortSegmentPairs();
+            shortSegmentSegmentPairs = partitionAnalysis.getShortSegmentSegmentPairs();
+        } else {
+            computeSegmentPairs(segmentationWorker.getSegments());
+        }
 
         segmentCodeMap = segmentationWorker.getCodeCounts(minLength);
         computeSegmentPairRelation();
     }
 
     /**
-     * Compute pairs of segments statistics.
+     * Compute segment-segment, segment-short segment, and short
+     * segment-segment pairs in one pass. Pairs are neighbours on the same
+     * chromosome; segment-segment pairs are interrupted by short segments.
      *
      * @param segments segments
      *
@@ -87,27 +118,34 @@ public class SegmentPairWorker {
     ) {
         log.log(Level.INFO, "compute segment pairs start");
 
-        // compute information to transfer to server
-        segmentPairMap.clear();
+        segmentPairs = new CodePairCounts(numberOfCodes);
+        segmentShortSegmentPairs = new CodePairCounts(numberOfCodes);
+        shortSegmentSegmentPairs = new CodePairCounts(numberOfCodes);
 
-        Segment lastSegment = null;
-        String key = null;
-        Integer value = 0;
+        // previous segment if long / if short
+        Segment lastLongSegment = null;
+        Segment lastShortSegment = null;
         for (Segment segment : segments) {
+            String chr = segment.getLocation().getChr();
+            int code = segment.getCode();
             if (!segment.isShortSegment()) {
-                if ((lastSegment != null)
-                    && segment.getLocation().getChr().equals(lastSegment.getLocation().getChr())) {
-                    key = lastSegment.getCode() + "-" + segment.getCode();
-                    value = segmentPairMap.get(key);
-                    if (value == null) {
-                        segmentPairMap.put(key, 1);
-                    } else {
-                        segmentPairMap.put(key, value + 1);
-                    }
+                if (lastLongSegment != null
+                    && chr.equals(lastLongSegment.getLocation().getChr())) {
+                    segmentPairs.increment(lastLongSegment.getCode(), code);
+                }
+                if (lastShortSegment != null
+                    && chr.equals(lastShortSegment.getLocation().getChr())) {
+                    shortSegmentSegmentPairs.increment(lastShortSegment.getCode(), code);
                 }
-                lastSegment = segment;
+                lastLongSegment = segment;
+                lastShortSegment = null;
             } else {
-                lastSegment = null;
+                if (lastLongSegment != null
+                    && chr.equals(lastLongSegment.getLocation().getChr())) {
+                    segmentShortSegmentPairs.increment(lastLongSegment.getCode(), code);
+                }
+                lastLongSegment = null;
+                lastShortSegment = segment;
             }
         }
 
@@ -115,127 +153,85 @@ public class SegmentPairWorker {
     }
 
     /**
-     * Compute pairs of segments statistics.
-     *
-     * @param segments segments
+     * Compute relation of observed to expected segment pairs for codes
+     * occurring in segments of minimal length, and optionally the
+     * transition probabilities.
      *
      */
-    private void computeSegmentShortSegmentPairs(
-        List<Segment> segments
-    ) {
-        log.log(Level.INFO, "compute segment-short segment pairs start");
-
-        // compute information to transfer to server
-        segmentShortSegmentPairMap.clear();
+    private void computeSegmentPairRelation() {
+        log.log(Level.INFO, "compute segment pair relation start");
 
-        Segment lastSegment = null;
-        String key = null;
-        Integer value = 0;
-        for (Segment segment : segments) {
-            if (!segment.isShortSegment()) {
-                lastSegment = segment;
-            } else {
-                if ((lastSegment != null)
-                    && segment.getLocation().getChr().equals(lastSegment.getLocation().getChr())) {
-                    key = lastSegment.getCode() + "-" + segment.getCode();
-                    value = segmentShortSegmentPairMap.get(key);
-                    if (value == null) {
-                        segmentShortSegmentPairMap.put(key, 1);
-                    } else {
-                        segmentShortSegmentPairMap.put(key, value + 1);
-                    }
-                }
-                lastSegment = null;
-            }
+        long codeTotal = 0;
+        for (Integer count : segmentCodeMap.values()) {
+            codeTotal += count;
         }
-
-        log.log(Level.INFO, "compute segment-short segment pairs end");
-    }
-
-    /**
-     * Compute pairs of segments statistics.
-     *
-     * @param segments segments
-     *
-     */
-    private void computeShortSegmentSegmentPairs(
-        List<Segment> segments
-    ) {
-        log.log(Level.INFO, "compute segment pairs start");
-
-        // compute information to transfer to server
-        shortSegmentSegmentPairMap.clear();
-
-        Segment lastSegment = null;
-        String key = null;
-        Integer value = 0;
-        for (Segment segment : segments) {
-            if (!segment.isShortSegment()) {
-                if ((lastSegment != null)
-                    && segment.getLocation().getChr().equals(lastSegment.getLocation().getChr())) {
-                    key = lastSegment.getCode() + "-" + segment.getCode();
-                    value = shortSegmentSegmentPairMap.get(key);
-                    if (value == null) {
-                        shortSegmentSegmentPairMap.put(key, 1);
-                    } else {
-                        shortSegmentSegmentPairMap.put(key, value + 1);
-                    }
+        final double total = codeTotal;
+
+        final double[][] relationMatrix = new double[numberOfCodes][numberOfCodes];
+        final int[] count = new int[1];
+        segmentPairs.forEach(new CodePairCounts.Visitor() {
+            @Override
+            public void visit(int first, int second, int pairCount) {
+                Integer firstCount = segmentCodeMap.get(first);
+                Integer secondCount = segmentCodeMap.get(second);
+                if (firstCount == null || secondCount == null) {
+                    return;
                 }
-                lastSegment = null;
-            } else {
-                lastSegment = segment;
+                double observed = pairCount / total;
+                long pairs = (long) firstCount * secondCount;
+                double expected = pairs / (total * total * 2.0);
+                relationMatrix[first][second] = observed / expected;
+                ++count[0];
             }
+        });
+
+        double[][] transitionMatrix = null;
+        if (transitions) {
+            transitionMatrix = computeTransitions();
         }
+        segmentPairRelation = new CodePairRelation(count[0], relationMatrix, transitionMatrix);
 
-        log.log(Level.INFO, "compute segment pairs end");
+        log.log(Level.INFO, "compute segment pair relation end");
     }
 
     /**
-     * Compute pairs of segments statistics.
+     * First-order Markov transition probabilities of the segment pairs:
+     * P(second | first) = pairs(first, second) / pairs(first, *).
      *
+     * @return transition probabilities
      */
-    private void computeSegmentPairRelation() {
-        log.log(Level.INFO, "compute segment pair relation start");
-
-        // compute information to transfer to server
-        segmentPairRelationMap.clear();
-
-        long total = 0;
-        for (Integer count : segmentCodeMap.values()) {
-            total += count;
-        }
-
-        String key = null;
-        Integer value = 0;
-        for (Integer i : segmentCodeMap.keySet()) {
-            for (Integer j : segmentCodeMap.keySet()) {
-                key = i + "-" + j;
-                value = segmentPairMap.get(key);
-                if (value != null) {
-                    double observed = value / ((double) total);
-                    long pairs  = segmentCodeMap.get(i) * segmentCodeMap.get(j);
-                    double expected = pairs / (total * total * 2.0);
-                    segmentPairRelationMap.put(key, observed / expected);
-                }
+    private double[][] computeTransitions() {
+        final long[] rowTotals = new long[numberOfCodes];
+        segmentPairs.forEach(new CodePairCounts.Visitor() {
+            @Override
+            public void visit(int first, int second, int pairCount) {
+                rowTotals[first] += pairCount;
             }
-        }
+        });
 
-        log.log(Level.INFO, "compute segment pair relation end");
+        final double[][] transitionMatrix = new double[numberOfCodes][numberOfCodes];
+        segmentPairs.forEach(new CodePairCounts.Visitor() {
+            @Override
+            public void visit(int first, int second, int pairCount) {
+                transitionMatrix[first][second] = pairCount / (double) rowTotals[first];
+            }
+        });
+        return transitionMatrix;
     }
 
-    public Map<String, Integer> getSegmentPairMap() {
-        return segmentPairMap;
+    public CodePairCounts getSegmentPairs() {
+        return segmentPairs;
     }
 
-    public Map<String, Integer> getSegmentShortSegmentPairMap() {
-        return segmentShortSegmentPairMap;
+    public CodePairCounts getSegmentShortSegmentPairs() {
+        return segmentShortSegmentPairs;
     }
 
-    public Map<String, Integer> getShortSegmentSegmentPairMap() {
-        return shortSegmentSegmentPairMap;
+    public CodePairCounts getShortSegmentSegmentPairs() {
+        return shortSegmentSegmentPairs;
     }
 
-    public Map<String, Double> getSegmentPairRelationMap() {
-        return segmentPairRelationMap;
+    public CodePairRelation getSegmentPairRelation() {
+        return segmentPairRelation;
     }
 }
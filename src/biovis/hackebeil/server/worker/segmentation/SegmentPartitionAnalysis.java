@@ -0,0 +1,245 @@
+/**
+ *  Copyright 2016 Lydia Müller, Dirk Zeckzer
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package biovis.hackebeil.server.worker.segmentation;
+
+import biovis.hackebeil.common.data.BreakSegment;
+import biovis.hackebeil.common.data.Location;
+import biovis.hackebeil.common.data.Segment;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Neighbourhood analysis of a consecutive part of the segments in one pass:
+ * segment pairs (SegmentPairWorker), break segments (BreakSegmentWorker),
+ * short segment chains and dropped peaks (ShortSegmentWorker).
+ *
+ * The state after a long segment depends only on this segment. Thus the
+ * segments can be cut at long segments: each part is analyzed after
+ * seeding the state with the long segment preceding it, and adding the
+ * results of all parts in order of the segments gives the results of the
+ * sequential workers.
+ *
+ * @author Dirk Zeckzer
+ */
+public class SegmentPartitionAnalysis {
+
+    private final SegmentationWorker segmentationWorker;
+
+    // Results
+    private final CodePairCounts segmentPairs;
+    private final CodePairCounts segmentShortSegmentPairs;
+    private final CodePairCounts shortSegmentSegmentPairs;
+    private final List<BreakSegment> breakSegmentList = new ArrayList<>();
+    private final SortedMap<Integer, Integer> shortSegmentChainsCounts = new TreeMap<>();
+    private final SortedMap<Integer, Integer> shortSegmentChainsLengths = new TreeMap<>();
+    private final Map<String, List<Location>> droppedPeaks = new HashMap<>();
+
+    // State: previous segment if long / if short
+    private Segment lastLongSegment = null;
+    private Segment lastShortSegment = null;
+    private BreakSegment breakSegment = null;
+    // current short segment chain
+    private int chainCount = 0;
+    private int chainLength = 0;
+    private Location droppedLocation = null;
+
+    /**
+     * Constructor: state at the first segment.
+     *
+     * @param segmentationWorker segmentation (for dropped peaks and the
+     * number of codes)
+     */
+    public SegmentPartitionAnalysis(SegmentationWorker segmentationWorker) {
+        this.segmentationWorker = segmentationWorker;
+        int numberOfCodes = segmentationWorker.getNumberOfCodes();
+        segmentPairs = new CodePairCounts(numberOfCodes);
+        segmentShortSegmentPairs = new CodePairCounts(numberOfCodes);
+        shortSegmentSegmentPairs = new CodePairCounts(numberOfCodes);
+    }
+
+    /**
+     * Set state to the state after a long segment.
+     *
+     * @param segment long segment
+     */
+    public void seed(Segment segment) {
+        lastLongSegment = segment;
+        lastShortSegment = null;
+        breakSegment = null;
+        chainCount = 0;
+        chainLength = 0;
+        droppedLocation = null;
+    }
+
+    /**
+     * Analyze next segment.
+     *
+     * @param segment segment
+     */
+    public void add(Segment segment) {
+        String chr = segment.getLocation().getChr();
+        if (!segment.isShortSegment()) {
+            // segment pairs
+            if (lastLongSegment != null
+                && chr.equals(lastLongSegment.getLocation().getChr())) {
+                segmentPairs.increment(lastLongSegment.getCode(), segment.getCode());
+            }
+            if (lastShortSegment != null
+                && chr.equals(lastShortSegment.getLocation().getChr())) {
+                shortSegmentSegmentPairs.increment(lastShortSegment.getCode(), segment.getCode());
+            }
+
+            // break segments
+            if (breakSegment != null
+                && chr.equals(breakSegment.getLoc().getChr())
+                && segment.getCode() == breakSegment.getBeforeCode()) {
+                breakSegment.setAfterCode(segment.getCode());
+                breakSegmentList.add(breakSegment);
+            }
+            breakSegment = null;
+
+            // short segment chains
+            if (chainCount != 0) {
+                increment(shortSegmentChainsCounts, chainCount);
+            }
+            if (chainLength != 0) {
+                increment(shortSegmentChainsLengths, chainLength);
+            }
+            chainCount = 0;
+            chainLength = 0;
+
+            // dropped peaks
+            if (droppedLocation != null) {
+                addDroppedPeaks(segmentationWorker.getDroppedPeaks(droppedLocation));
+            }
+            droppedLocation = null;
+
+            lastLongSegment = segment;
+            lastShortSegment = null;
+        } else {
+            // segment pairs
+            if (lastLongSegment != null
+                && chr.equals(lastLongSegment.getLocation().getChr())) {
+                segmentShortSegmentPairs.increment(lastLongSegment.getCode(), segment.getCode());
+            }
+
+            // break segments
+            if (lastLongSegment == null) {
+                breakSegment = null;
+            } else {
+                breakSegment = new BreakSegment(segment.getLocation(),
+                                                segment.getCode(),
+                                                lastLongSegment.getCode());
+            }
+
+            // short segment chains
+            ++chainCount;
+            chainLength += segment.getLength();
+
+            // dropped peaks
+            if (droppedLocation == null) {
+                droppedLocation = new Location(segment.getLocation());
+            } else {
+                droppedLocation.setEnd(segment.getLocation().getEnd());
+            }
+
+            lastLongSegment = null;
+            lastShortSegment = segment;
+        }
+    }
+
+    /**
+     * Add results of the following part of the segments.
+     *
+     * @param next analysis of the following part
+     */
+    public void add(SegmentPartitionAnalysis next) {
+        segmentPairs.add(next.segmentPairs);
+        segmentShortSegmentPairs.add(next.segmentShortSegmentPairs);
+        shortSegmentSegmentPairs.add(next.shortSegmentSegmentPairs);
+        breakSegmentList.addAll(next.breakSegmentList);
+        addCounts(shortSegmentChainsCounts, next.shortSegmentChainsCounts);
+        addCounts(shortSegmentChainsLengths, next.shortSegmentChainsLengths);
+        addDroppedPeaks(next.droppedPeaks);
+    }
+
+    /**
+     * Increment count of key.
+     */
+    private static <K> void increment(Map<K, Integer> counts, K key) {
+        Integer value = counts.get(key);
+        if (value == null) {
+            counts.put(key, 1);
+        } else {
+            counts.put(key, value + 1);
+        }
+    }
+
+    /**
+     * Add counts.
+     */
+    private static <K> void addCounts(Map<K, Integer> counts, Map<K, Integer> additionalCounts) {
+        for (Map.Entry<K, Integer> entry : additionalCounts.entrySet()) {
+            counts.merge(entry.getKey(), entry.getValue(), Integer::sum);
+        }
+    }
+
+    /**
+     * Append dropped peaks.
+     */
+    private void addDroppedPeaks(Map<String, List<Location>> newDroppedPeaks) {
+        for (Map.Entry<String, List<Location>> entry : newDroppedPeaks.entrySet()) {
+            List<Location> value = droppedPeaks.get(entry.getKey());
+            if (value == null) {
+                droppedPeaks.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            } else {
+                value.addAll(entry.getValue());
+            }
+        }
+    }
+
+    public CodePairCounts getSegmentPairs() {
+        return segmentPairs;
+    }
+
+    public CodePairCounts getSegmentShortSegmentPairs() {
+        return segmentShortSegmentPairs;
+    }
+
+    public CodePairCounts getShortSegmentSegmentPairs() {
+        return shortSegmentSegmentPairs;
+    }
+
+    public List<BreakSegment> getBreakSegmentList() {
+        return breakSegmentList;
+    }
+
+    public SortedMap<Integer, Integer> getShortSegmentChainsCounts() {
+        return shortSegmentChainsCounts;
+    }
+
+    public SortedMap<Integer, Integer> getShortSegmentChainsLengths() {
+        return shortSegmentChainsLengths;
+    }
+
+    public Map<String, List<Location>> getDroppedPeaks() {
+        return droppedPeaks;
+    }
+}
@@ -18,6 +18,7 @@ package biovis.hackebeil.server.worker.segmentation;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,11 +26,20 @@ import biovis.hackebeil.common.data.DataFile;
 import biovis.hackebeil.common.data.Segment;
 import biovis.hackebeil.common.data.Location;
 import biovis.hackebeil.server.data.BedData;
+import biovis.hackebeil.server.data.BedFileLoader;
 import biovis.hackebeil.server.data.Boundary;
+import biovis.hackebeil.server.data.ScopeFilter;
+import biovis.hackebeil.server.job.Job;
+import biovislib.parallel4.IterationInt;
+import biovislib.parallel4.Parallel2;
+import biovislib.parallel4.ParallelForInt2;
+import biovislib.parallel4.ParallelizationFactory;
 import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.SortedMap;
@@ -71,6 +81,20 @@ public class SegmentationWorker {
 
     private boolean divided = false;
 
+    // construct segments by sweeping over sorted boundary arrays
+    transient private boolean sweepLine = true;
+
+    // number of threads for loading the reference files
+    transient private int numberOfThreads = 1;
+
+    // analysis scope (null: whole genome)
+    transient private ScopeFilter scope = null;
+
+    // construct and analyze segments per chromosome in parallel
+    transient private boolean partitioned = true;
+    // neighbourhood analysis of partitioned segmentation (null: sequential)
+    transient private SegmentPartitionAnalysis partitionAnalysis = null;
+
     /**
      * Constructor.
      *
@@ -79,7 +103,9 @@ public class SegmentationWorker {
     }
 
     /**
-     * Load bed file content.
+     * Load bed file content (in parallel).
+     * The length distributions of the reference files are computed in the
+     * same pass.
      *
      * @param refFiles
      *            names of the reference files
@@ -89,14 +115,7 @@ public class SegmentationWorker {
         // load Bed files
         log.info("reading bed files");
 
-        int readBeds = 0;
-        List<BedData> beds = new ArrayList<>();
-        for (DataFile refFile : refFiles) {
-            log.log(Level.INFO, "reading bed files: {0}/{1}", new Object[]{(readBeds + 1), refFiles.size()});
-            BedData bed = new BedData(refFile.getFilePath());
-            beds.add(bed);
-            readBeds++;
-        }
+        List<BedData> beds = BedFileLoader.loadBedFiles(refFiles, false, true, scope, numberOfThreads);
         log.info("bed files read");
 
         return beds;
@@ -109,6 +128,11 @@ public class SegmentationWorker {
      *
      */
     private void constructSegments(List<BedData> references) {
+        if (sweepLine) {
+            constructSegmentsSweepLine(references);
+            return;
+        }
+
         log.log(Level.INFO, "construct segments start");
 
         divided = false;
@@ -167,6 +191,282 @@ public class SegmentationWorker {
         log.log(Level.INFO, "construct segments end");
     }
 
+    /**
+     * Construct segments from references using a sweep line.
+     *
+     * The sorted boundary arrays of all references are merged chromosome by
+     * chromosome. Per reference, the number of locations covering the current
+     * position is updated at each boundary. As no boundary lies inside a
+     * segment, a reference covers either the complete segment or nothing of it.
+     * Thus, the code is maintained incrementally and is identical to the one
+     * computed by calcCode2.
+     *
+     * @param references reference modifications
+     */
+    private void constructSegmentsSweepLine(List<BedData> references) {
+        log.log(Level.INFO, "construct segments (sweep line) start");
+
+        divided = false;
+
+        // construct segments
+        segments.clear();
+
+        boolean found = false;
+        for (String chr : getChromosomes(references)) {
+            found |= constructSegmentsSweepLine(chr, references, segments);
+        }
+        if (!found) {
+            // no boundaries: end segment like constructSegments
+            createSegment(new Location("",
+                                       -1,
+                                       getSeqLength("")),
+                          0,
+                          segments);
+        }
+
+        log.log(Level.INFO, "construct segments (sweep line) end");
+    }
+
+    /**
+     * Chromosomes of the references in the same order as the boundaries.
+     *
+     * @param references reference modifications
+     * @return chromosomes
+     */
+    private SortedSet<String> getChromosomes(List<BedData> references) {
+        SortedSet<String> chromosomes = new TreeSet<>();
+        for (BedData bed : references) {
+            chromosomes.addAll(bed.getChromosomes());
+        }
+        return chromosomes;
+    }
+
+    /**
+     * Construct segments of one chromosome using a sweep line: start
+     * segment, segments between boundaries, end segment.
+     *
+     * @param chr chromosome
+     * @param references reference modifications
+     * @param target list the segments are added to
+     * @return true iff the chromosome has boundaries
+     */
+    private boolean constructSegmentsSweepLine(
+        String chr,
+        List<BedData> references,
+        List<Segment> target
+    ) {
+        int numberOfReferences = references.size();
+        int[][] starts = new int[numberOfReferences][];
+        int[][] ends = new int[numberOfReferences][];
+        int[][] malformed = new int[numberOfReferences][];
+        int[] startIndex = new int[numberOfReferences];
+        int[] endIndex = new int[numberOfReferences];
+        int[] malformedIndex = new int[numberOfReferences];
+        int[] coverage = new int[numberOfReferences];
+
+        for (int i = 0; i < numberOfReferences; ++i) {
+            int[][] boundaryArrays = references.get(i).getBoundaryArrays(chr);
+            starts[i] = boundaryArrays[0];
+            ends[i] = boundaryArrays[1];
+            malformed[i] = boundaryArrays[2];
+        }
+
+        int lastPos = -1;
+        int code = 0;
+        boolean newChromosome = true;
+        while (true) {
+            // next boundary: minimum over all array heads
+            boolean found = false;
+            int position = 0;
+            for (int i = 0; i < numberOfReferences; ++i) {
+                if (startIndex[i] < starts[i].length
+                    && (!found || starts[i][startIndex[i]] < position)) {
+                    position = starts[i][startIndex[i]];
+                    found = true;
+                }
+                if (endIndex[i] < ends[i].length
+                    && (!found || ends[i][endIndex[i]] < position)) {
+                    position = ends[i][endIndex[i]];
+                    found = true;
+                }
+                if (malformedIndex[i] < malformed[i].length
+                    && (!found || malformed[i][malformedIndex[i]] < position)) {
+                    position = malformed[i][malformedIndex[i]];
+                    found = true;
+                }
+            }
+            if (!found) {
+                break;
+            }
+
+            if (newChromosome) {
+                // add start element of chromosome
+                createSegment(new Location(chr,
+                                           getSeqStart(chr),
+                                           position - 1),
+                              0,
+                              target);
+                newChromosome = false;
+            } else {
+                createSegment(new Location(chr,
+                                           lastPos,
+                                           position - 1),
+                              code,
+                              target);
+            }
+
+            // update coverage and code at current boundary
+            for (int i = 0; i < numberOfReferences; ++i) {
+                int bit = 1 << (numberOfReferences - 1 - i);
+                while (startIndex[i] < starts[i].length
+                       && starts[i][startIndex[i]] == position) {
+                    if (coverage[i]++ == 0) {
+                        code |= bit;
+                    }
+                    ++startIndex[i];
+                }
+                while (endIndex[i] < ends[i].length
+                       && ends[i][endIndex[i]] == position) {
+                    if (--coverage[i] == 0) {
+                        code &= ~bit;
+                    }
+                    ++endIndex[i];
+                }
+                while (malformedIndex[i] < malformed[i].length
+                       && malformed[i][malformedIndex[i]] == position) {
+                    ++malformedIndex[i];
+                }
+            }
+
+            // remember last position
+            lastPos = position;
+        }
+
+        if (newChromosome) {
+            return false;
+        }
+
+        // add end element of chromosome
+        createSegment(new Location(chr,
+                                   lastPos,
+                                   getSeqLength(chr)),
+                      0,
+                      target);
+        return true;
+    }
+
+    /**
+     * Construct, divide and analyze the segments of each chromosome in
+     * parallel, then merge the partitions in order of the chromosomes.
+     *
+     * Segments, statistics, pairs, break segments, short segment chains and
+     * dropped peaks are the same as computed by the sweep line construction
+     * and the sequential workers: only the few segments between the last
+     * long segment of a chromosome and the first long segment of the next
+     * one are analyzed while merging.
+     *
+     * @param references reference modifications
+     * @param minLength minimal segment length (inclusive)
+     */
+    private void computePartitioned(
+        final List<BedData> references,
+        final int minLength
+    ) {
+        log.log(Level.INFO, "partitioned segmentation start");
+
+        final List<String> chromosomes = new ArrayList<>(getChromosomes(references));
+        final int numberOfChromosomes = chromosomes.size();
+        final Partition[] partitions = new Partition[numberOfChromosomes];
+        final Job job = Job.current();
+        final AtomicInteger finished = new AtomicInteger(0);
+
+        Parallel2 p2 = ParallelizationFactory.getInstance(Math.max(1, Math.min(numberOfThreads, numberOfChromosomes)));
+        new ParallelForInt2(p2, 0, numberOfChromosomes).loop(new IterationInt() {
+            @Override
+            public void iteration(int chromosome) {
+                if (job != null && job.isCancelled()) {
+                    return;
+                }
+                List<Segment> chromosomeSegments = new ArrayList<>();
+                constructSegmentsSweepLine(chromosomes.get(chromosome), references, chromosomeSegments);
+                chromosomeSegments = restrictToScope(chromosomeSegments);
+                divide(chromosomeSegments, minLength);
+
+                Partition partition = new Partition(chromosomeSegments);
+                partition.computeStatistics();
+                partition.analyze(SegmentationWorker.this);
+                partitions[chromosome] = partition;
+                if (job != null) {
+                    job.setProgress((double) finished.incrementAndGet() / numberOfChromosomes);
+                }
+            }
+        });
+        if (job != null) {
+            job.check();
+        }
+
+        // merge in order of the chromosomes
+        segments.clear();
+        partitionAnalysis = new SegmentPartitionAnalysis(this);
+        SegmentPartitionAnalysis seam = new SegmentPartitionAnalysis(this);
+        for (Partition partition : partitions) {
+            segments.addAll(partition.segments);
+            if (partition.analysis == null) {
+                // no long segment
+                for (Segment segment : partition.segments) {
+                    seam.add(segment);
+                }
+                continue;
+            }
+
+            for (int i = 0; i <= partition.firstLong; ++i) {
+                seam.add(partition.segments.get(i));
+            }
+            partitionAnalysis.add(seam);
+            partitionAnalysis.add(partition.analysis);
+
+            seam = new SegmentPartitionAnalysis(this);
+            seam.seed(partition.segments.get(partition.lastLong));
+            for (int i = partition.lastLong + 1; i < partition.segments.size(); ++i) {
+                seam.add(partition.segments.get(i));
+            }
+        }
+        partitionAnalysis.add(seam);
+        divided = true;
+
+        computeStatistics(Arrays.asList(partitions));
+
+        log.log(Level.INFO, "partitioned segmentation end: {0} chromosomes", numberOfChromosomes);
+    }
+
+    /**
+     * Restrict segments to the regions of the scope.
+     *
+     * Only records overlapping the regions were loaded, so the boundaries
+     * inside the regions are complete. Segments are clipped to the regions,
+     * their codes stay the same.
+     *
+     * @param allSegments segments
+     * @return segments in scope
+     */
+    private List<Segment> restrictToScope(List<Segment> allSegments) {
+        if (scope == null || !scope.hasRegions()) {
+            return allSegments;
+        }
+
+        List<Segment> segmentsInScope = new ArrayList<>();
+        for (Segment segment : allSegments) {
+            for (Location location : scope.clip(segment.getLocation())) {
+                if (location == segment.getLocation()) {
+                    segmentsInScope.add(segment);
+                } else {
+                    createSegment(location, segment.getCode(), segmentsInScope);
+                }
+            }
+        }
+        return segmentsInScope;
+    }
+
     /**
      * Create a new Segment.
      *
@@ -186,6 +486,26 @@ public class SegmentationWorker {
         }
     }
 
+    /**
+     * Create a new Segment with known code.
+     *
+     * @param location
+     * @param code
+     * @param target list the segment is added to
+     */
+    private void createSegment(
+        Location location,
+        int code,
+        List<Segment> target
+    ) {
+        if (location.getLength() > 0) {
+            Segment segment = new Segment(location, code);
+            target.add(segment);
+        } else {
+            System.err.println("Segment invalid: " + location.toString());
+        }
+    }
+
     /**
      * Calculate code for current segment.
      *
@@ -202,7 +522,7 @@ public class SegmentationWorker {
         // calculate code over references
         for (int i = references.size() - 1; i >= 0; i--) {
             // either 0 or 1
-            double cov = loc.coverage(references.get(i).overlappingWith(loc));
+            double cov = references.get(i).coverage(loc);
             if (cov > 0.6) {// all 1's go here
                 code += base;
             }
@@ -227,7 +547,7 @@ public class SegmentationWorker {
         // calculate code over references
         for (int i = 0; i < references.size(); ++i) {
             // either 0 or 1
-            double cov = loc.coverage(references.get(i).overlappingWith(loc));
+            double cov = references.get(i).coverage(loc);
             if (cov > 0.6) {// all 1's go here
                 code += 1 << (references.size() - 1 - i);
             }
@@ -253,33 +573,35 @@ public class SegmentationWorker {
     private void compute(
         int minLength
     ) {
-        divide(minLength);
-        computeStatistics();
+        log.log(Level.INFO, "divide");
+        divide(segments, minLength);
+        divided = true;
+        log.log(Level.INFO, "divide end");
+
+        // printSegmentation();
+
+        Partition partition = new Partition(segments);
+        partition.computeStatistics();
+        computeStatistics(Collections.singletonList(partition));
     }
 
     /**
      *
+     * @param segmentsToDivide segments
      * @param minLength minimal segment length (inclusive)
      *
      */
-    private void divide(
+    private static void divide(
+        List<Segment> segmentsToDivide,
         int minLength
     ) {
-        log.log(Level.INFO, "divide");
-
-        for (Segment segment : segments) {
+        for (Segment segment : segmentsToDivide) {
             if (segment.getLength() <= 0) {
                 System.err.println("Segment too short: " + segment.toString());
             } else {
                 segment.setShortSegment(segment.getLength() < minLength);
             }
         }
-
-        divided = true;
-
-        log.log(Level.INFO, "divide end");
-
-        // printSegmentation();
     }
 
     private void printSegmentation() {
@@ -308,25 +630,21 @@ public class SegmentationWorker {
      * - segment count
      * - segment distribution
      * - total segment length
+     *
+     * @param partitions partitions with computed statistics
      */
-    private void computeStatistics() {
+    private void computeStatistics(List<Partition> partitions) {
         log.log(Level.INFO, "compute statistics start");
 
-        for (Segment segment : segments) {
-            if (!segment.isShortSegment()) {
-                ++segmentCount;
-                totalSegmentLength += segment.getLength();
-                addLength(segmentLengthDistribution, segment.getLength());
-                if (segment.getCode() == 0) {
-                    addLength(segmentUnmodifiedLengthDistribution, segment.getLength());
-                } else {
-                    addLength(segmentModifiedLengthDistribution, segment.getLength());
-                }
-            } else {
-                ++shortSegmentCount;
-                totalShortSegmentLength += segment.getLength();
-                addLength(shortSegmentLengthDistribution, segment.getLength());
-            }
+        for (Partition partition : partitions) {
+            segmentCount += partition.segmentCount;
+            totalSegmentLength += partition.totalSegmentLength;
+            addLengths(segmentLengthDistribution, partition.segmentLengthDistribution);
+            addLengths(segmentUnmodifiedLengthDistribution, partition.segmentUnmodifiedLengthDistribution);
+            addLengths(segmentModifiedLengthDistribution, partition.segmentModifiedLengthDistribution);
+            shortSegmentCount += partition.shortSegmentCount;
+            totalShortSegmentLength += partition.totalShortSegmentLength;
+            addLengths(shortSegmentLengthDistribution, partition.shortSegmentLengthDistribution);
         }
 
         log.log(Level.INFO, "count(segments/short segments):{0}/{1}", new Object[]{segmentCount, shortSegmentCount});
@@ -335,6 +653,18 @@ public class SegmentationWorker {
         log.log(Level.INFO, "compute statistics end");
     }
 
+    /**
+     * Add length counts to length map.
+     *
+     * @param lengths length map
+     * @param additionalLengths length counts to add
+     */
+    private static void addLengths(Map<Integer, Integer> lengths, Map<Integer, Integer> additionalLengths) {
+        for (Map.Entry<Integer, Integer> entry : additionalLengths.entrySet()) {
+            lengths.merge(entry.getKey(), entry.getValue(), Integer::sum);
+        }
+    }
+
     /**
      * Add element to length map.
      *
@@ -342,7 +672,7 @@ public class SegmentationWorker {
      * @param length length
      *
      */
-    private void addLength(Map<Integer, Integer> lengths, int length) {
+    private static void addLength(Map<Integer, Integer> lengths, int length) {
         if (lengths.containsKey(length)) {
             Integer newVal = lengths.get(length) + 1;
             lengths.replace(length, newVal);
@@ -411,10 +741,24 @@ public class SegmentationWorker {
         log.info("Start segmentation");
 
         bedData = loadBedFiles(refFiles);
-        constructSegments(bedData);
+        Job.checkCancelled();
+        partitionAnalysis = null;
+        if (partitioned
+            && sweepLine
+            && numberOfThreads > 1
+            && !getChromosomes(bedData).isEmpty()) {
+            computePartitioned(bedData, minLength);
+        } else {
+            constructSegments(bedData);
+            Job.checkCancelled();
+            segments = restrictToScope(segments);
 
-        //computeStatistics(minLength);
-        compute(minLength);
+            //computeStatistics(minLength);
+            compute(minLength);
+        }
+        if (scope != null) {
+            log.log(Level.INFO, "segments in scope: {0}", segments.size());
+        }
 
         log.info("End segmentation");
 
@@ -422,6 +766,30 @@ public class SegmentationWorker {
 
     }
 
+    /**
+     * Take the segments of a restored session instead of constructing them.
+     * The reference data sets are loaded again for their length
+     * distributions and the dropped peaks; the short segment flags of the
+     * segments are kept.
+     *
+     * @param restoredSegments segments of the session
+     * @return true
+     */
+    public boolean restoreSegmentation(List<Segment> restoredSegments) {
+        log.info("Restore segmentation");
+
+        bedData = loadBedFiles(refFiles);
+        Job.checkCancelled();
+        partitionAnalysis = null;
+        segments = restoredSegments;
+        divided = true;
+
+        Partition partition = new Partition(segments);
+        partition.computeStatistics();
+        computeStatistics(Collections.singletonList(partition));
+        return true;
+    }
+
     public void setSeqLengths(Map<String, Integer> seqLengths) {
         this.seqLengths = seqLengths;
     }
@@ -434,6 +802,60 @@ public class SegmentationWorker {
         this.refFiles = list;
     }
 
+    /**
+     * Set number of threads used for loading the reference files.
+     *
+     * @param numberOfThreads number of threads
+     */
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * Restrict segmentation to an analysis scope: reference records outside
+     * are skipped while loading, segments are clipped to the regions.
+     *
+     * @param scope analysis scope (null: whole genome)
+     */
+    public void setScope(ScopeFilter scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * Select segment construction: sweep line (default) or boundary set.
+     *
+     * @param sweepLine true iff sweep line construction should be used
+     */
+    public void setSweepLine(boolean sweepLine) {
+        this.sweepLine = sweepLine;
+    }
+
+    /**
+     * Select chromosome partitioned (default, if more than one thread is
+     * used) or sequential segmentation.
+     *
+     * @param partitioned true iff segments should be constructed and
+     * analyzed per chromosome in parallel
+     */
+    public void setPartitioned(boolean partitioned) {
+        this.partitioned = partitioned;
+    }
+
+    /**
+     * @return neighbourhood analysis of the segments computed during
+     * partitioned segmentation (null if segmented sequentially)
+     */
+    public SegmentPartitionAnalysis getPartitionAnalysis() {
+        return partitionAnalysis;
+    }
+
+    /**
+     * @return number of segment codes (one bit per reference data set)
+     */
+    public int getNumberOfCodes() {
+        return 1 << refFiles.size();
+    }
+
     public boolean isDivided() {
         return divided;
     }
@@ -484,23 +906,99 @@ public class SegmentationWorker {
         Location queryLocation
     ) {
         Map<String, List<Location>> results = new HashMap<>();
+        String chr = queryLocation.getChr();
+        int queryStart = queryLocation.getStart();
+        int queryEnd = queryLocation.getEnd();
         // calculate code over references
         for (BedData bedFile : bedData) {
-            List<Location> locations = bedFile.overlappingWith(queryLocation);
-            if (locations != null) {
-                for (Location location : locations) {
-                    if (queryLocation.isContained(location)) {
-//                        System.out.println("|" + bedFile.getName());
-                        List<Location> values = results.get(bedFile.getName());
-                        if (values == null) {
-                            values = new ArrayList<>();
-                            results.put(bedFile.getName(), values);
-                        }
-                        values.add(location);
-                    }
+            List<Location> values = new ArrayList<>();
+            bedFile.getIndex().forEachOverlap(chr, queryStart, queryEnd, (start, end, score) -> {
+                if (start >= queryStart && end <= queryEnd) {
+                    values.add(new Location(chr, start, end));
+                }
+            });
+            if (!values.isEmpty()) {
+                List<Location> existing = results.putIfAbsent(bedFile.getName(), values);
+                if (existing != null) {
+                    existing.addAll(values);
                 }
             }
         }
         return results;
     }
+
+    /**
+     * Consecutive segments (of one chromosome) with their statistics and
+     * neighbourhood analysis.
+     */
+    private static class Partition {
+
+        private final List<Segment> segments;
+
+        private long segmentCount = 0;
+        private long totalSegmentLength = 0;
+        private final SortedMap<Integer, Integer> segmentLengthDistribution = new TreeMap<>();
+        private final SortedMap<Integer, Integer> segmentModifiedLengthDistribution = new TreeMap<>();
+        private final SortedMap<Integer, Integer> segmentUnmodifiedLengthDistribution = new TreeMap<>();
+        private long shortSegmentCount = 0;
+        private long totalShortSegmentLength = 0;
+        private final SortedMap<Integer, Integer> shortSegmentLengthDistribution = new TreeMap<>();
+
+        // first and last long segment (-1: none)
+        private int firstLong = -1;
+        private int lastLong = -1;
+        // analysis of the segments after the first up to the last long segment
+        private SegmentPartitionAnalysis analysis = null;
+
+        private Partition(List<Segment> segments) {
+            this.segments = segments;
+        }
+
+        /**
+         * Count segments and their lengths.
+         */
+        private void computeStatistics() {
+            for (Segment segment : segments) {
+                if (!segment.isShortSegment()) {
+                    ++segmentCount;
+                    totalSegmentLength += segment.getLength();
+                    addLength(segmentLengthDistribution, segment.getLength());
+                    if (segment.getCode() == 0) {
+                        addLength(segmentUnmodifiedLengthDistribution, segment.getLength());
+                    } else {
+                        addLength(segmentModifiedLengthDistribution, segment.getLength());
+                    }
+                } else {
+                    ++shortSegmentCount;
+                    totalShortSegmentLength += segment.getLength();
+                    addLength(shortSegmentLengthDistribution, segment.getLength());
+                }
+            }
+        }
+
+        /**
+         * Analyze the segments after the first up to the last long segment.
+         *
+         * @param segmentationWorker segmentation (for dropped peaks)
+         */
+        private void analyze(SegmentationWorker segmentationWorker) {
+            for (int i = 0; i < segments.size(); ++i) {
+                if (!segments.get(i).isShortSegment()) {
+                    if (firstLong < 0) {
+                        firstLong = i;
+                    }
+                    lastLong = i;
+                }
+            }
+            if (firstLong < 0) {
+                return;
+            }
+
+            analysis = new SegmentPartitionAnalysis(segmentationWorker);
+            analysis.seed(segments.get(firstLong));
+            for (int i = firstLong + 1; i <= lastLong; ++i) {
+                analysis.add(segments.get(i));
+            }
+        }
+    }
 }
@@ -63,8 +63,16 @@ public class ShortSegmentWorker {
      *
      */
     private void compute() {
-        computeShortSegmentChains(segmentationWorker.getSegments());
-        computeDroppedPeaks(segmentationWorker.getSegments());
+        SegmentPartitionAnalysis partitionAnalysis = segmentationWorker.getPartitionAnalysis();
+        if (partitionAnalysis != null) {
+            // computed during partitioned segmentation
+            shortSegmentChainsCounts.putAll(partitionAnalysis.getShortSegmentChainsCounts());
+            shortSegmentChainsLengths.putAll(partitionAnalysis.getShortSegmentChainsLengths());
+            droppedPeaks.putAll(partitionAnalysis.getDroppedPeaks());
+        } else {
+            computeShortSegmentChains(segmentationWorker.getSegments());
+            computeDroppedPeaks(segmentationWorker.getSegments());
+        }
     }
 
     /**
@@ -0,0 +1,150 @@
+/**
+ *  Copyright 2016 Lydia Müller, Dirk Zeckzer
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package biovis.hackebeil.server.worker.segmentation;
+
+import java.util.Arrays;
+
+/**
+ * Counts of non-negative long keys: open addressing with linear probing on
+ * primitive arrays, no boxing.
+ *
+ * @author Dirk Zeckzer
+ */
+class SparseCounts {
+
+    private static final long EMPTY = -1L;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] keys;
+    private int[] values;
+    private int size = 0;
+
+    /**
+     * Visitor of the counts.
+     */
+    interface Visitor {
+
+        /**
+         * @param key key
+         * @param count count (> 0)
+         */
+        void visit(long key, int count);
+    }
+
+    /**
+     * Constructor.
+     */
+    SparseCounts() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Add to count of key.
+     *
+     * @param key key (>= 0)
+     * @param count count
+     */
+    void add(long key, int count) {
+        int slot = find(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            ++size;
+            values[slot] = count;
+            if (2 * size > keys.length) {
+                rehash();
+            }
+        } else {
+            values[slot] += count;
+        }
+    }
+
+    /**
+     * @param key key
+     * @return count of key
+     */
+    int get(long key) {
+        int slot = find(key);
+        return keys[slot] == EMPTY ? 0 : values[slot];
+    }
+
+    /**
+     * Add counts.
+     *
+     * @param counts additional counts
+     */
+    void add(SparseCounts counts) {
+        for (int slot = 0; slot < counts.keys.length; ++slot) {
+            if (counts.keys[slot] != EMPTY) {
+                add(counts.keys[slot], counts.values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Visit all keys with their counts.
+     *
+     * @param visitor visitor
+     */
+    void forEach(Visitor visitor) {
+        for (int slot = 0; slot < keys.length; ++slot) {
+            if (keys[slot] != EMPTY) {
+                visitor.visit(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return number of keys
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Slot of key or empty slot where it belongs.
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Double the capacity.
+     */
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(2 * oldKeys.length);
+        for (int slot = 0; slot < oldKeys.length; ++slot) {
+            if (oldKeys[slot] != EMPTY) {
+                int newSlot = find(oldKeys[slot]);
+                keys[newSlot] = oldKeys[slot];
+                values[newSlot] = oldValues[slot];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+}